@@ -18,6 +18,8 @@ package alfio.config;
 
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.DataMigrator;
+import alfio.manager.system.ScheduledJobRuntime;
+import alfio.manager.system.ScheduledJobRuntime.JobOptions;
 import alfio.manager.user.UserManager;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.user.Role;
@@ -30,6 +32,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
@@ -40,12 +44,16 @@ import static java.util.Optional.ofNullable;
 @Log4j2
 public class ConfigurationStatusChecker implements ApplicationListener<ContextRefreshedEvent> {
 
+    private static final String DATA_MIGRATION_JOB = "data-migration";
+
     private final ConfigurationManager configurationManager;
     private final UserRepository userRepository;
     private final AuthorityRepository authorityRepository;
     private final PasswordEncoder passwordEncoder;
     private final String version;
     private final DataMigrator dataMigrator;
+    private final ScheduledJobRuntime scheduledJobRuntime;
+    private final boolean backgroundMigration;
 
     @Autowired
     public ConfigurationStatusChecker(ConfigurationManager configurationManager,
@@ -53,13 +61,19 @@ public class ConfigurationStatusChecker implements ApplicationListener<ContextRe
                                       AuthorityRepository authorityRepository,
                                       PasswordEncoder passwordEncoder,
                                       @Value("${alfio.version}") String version,
-                                      DataMigrator dataMigrator) {
+                                      DataMigrator dataMigrator,
+                                      ScheduledJobRuntime scheduledJobRuntime,
+                                      Environment environment) {
         this.configurationManager = configurationManager;
         this.authorityRepository = authorityRepository;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.version = version;
         this.dataMigrator = dataMigrator;
+        this.scheduledJobRuntime = scheduledJobRuntime;
+        // integration tests expect the data to be migrated before they start
+        boolean defaultValue = !environment.acceptsProfiles(Profiles.of(Initializer.PROFILE_INTEGRATION_TEST));
+        this.backgroundMigration = environment.getProperty("alfio.data-migration.background", Boolean.class, defaultValue);
     }
 
     @Override
@@ -82,11 +96,22 @@ public class ConfigurationStatusChecker implements ApplicationListener<ContextRe
             ofNullable(System.getProperty("recaptcha.secret")).ifPresent(clientApiKey -> configurationManager.saveSystemConfiguration(RECAPTCHA_SECRET, clientApiKey));
 
         }
+        dataMigrator.fillDefaultOptions();
+        log.info("initialized alf.io version {} ", version);
+        // the nodes of a cluster start at the same time: only one of them migrates the data
+        if(!backgroundMigration) {
+            scheduledJobRuntime.runNow(DATA_MIGRATION_JOB, JobOptions.exclusive(), this::migrateData);
+            return;
+        }
+        // data migration is performed in background, so that it doesn't delay the application startup
+        scheduledJobRuntime.run(DATA_MIGRATION_JOB, JobOptions.exclusive(), this::migrateData);
+    }
+
+    private void migrateData() {
         log.info("performing migration from previous version, if any");
         try {
             dataMigrator.migrateEventsToCurrentVersion();
-            log.info("done.");
-            log.info("initialized alf.io version {} ", version);
+            log.info("data migration done.");
         } catch (Exception e) {
             log.error("unable to perform data migration. Please report this issue.", e);
         }
@@ -19,15 +19,25 @@ package alfio.config;
 import alfio.config.support.ArrayColumnMapper;
 import alfio.config.support.JSONColumnMapper;
 import alfio.config.support.PlatformProvider;
+import alfio.config.support.ReplicaRoutingDataSource;
+import alfio.config.support.SchemaFingerprint;
+import alfio.config.support.WorkloadRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource.Workload;
+import alfio.extension.ExtensionLogWriter;
+import alfio.extension.support.AsyncExtensionExecutor;
 import alfio.job.Jobs;
 import alfio.job.executor.BillingDocumentJobExecutor;
+import alfio.job.executor.EmailRetentionJobExecutor;
 import alfio.job.executor.ReservationJobExecutor;
 import alfio.manager.*;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.system.AdminJobManager;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ScheduledJobRuntime;
+import alfio.manager.user.ApiKeyCredentialCache;
 import alfio.repository.EventDeleterRepository;
 import alfio.repository.EventRepository;
+import alfio.repository.ExtensionLogRepository;
 import alfio.repository.system.AdminJobQueueRepository;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.OrganizationRepository;
@@ -42,10 +52,12 @@ import ch.digitalfondue.npjt.mapper.ColumnMapperFactory;
 import ch.digitalfondue.npjt.mapper.ParameterConverter;
 import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.MigrationVersion;
 import org.springframework.context.annotation.*;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -53,6 +65,7 @@ import org.springframework.jdbc.datasource.AbstractDataSource;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -64,9 +77,11 @@ import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -98,14 +113,7 @@ public class DataSourceConfiguration {
         if(platform == PlatformProvider.CLOUD_FOUNDRY) {
             return new FakeCFDataSource();
         } else {
-            HikariDataSource dataSource = new HikariDataSource();
-            dataSource.setJdbcUrl(platform.getUrl(env));
-            dataSource.setUsername(platform.getUsername(env));
-            dataSource.setPassword(platform.getPassword(env));
-            dataSource.setDriverClassName("org.postgresql.Driver");
-            dataSource.setMaximumPoolSize(platform.getMaxActive(env));
-            dataSource.setMinimumIdle(platform.getMinIdle(env));
-            dataSource.setConnectionTimeout(1000L);
+            HikariDataSource dataSource = createPool("alfio-web", platform.getUrl(env), platform.getUsername(env), platform.getPassword(env), platform.getMaxActive(env), platform.getMinIdle(env), 1000L);
 
             log.debug("Connection pool properties: max active {}, initial size {}", dataSource.getMaximumPoolSize(), dataSource.getMinimumIdle());
 
@@ -119,11 +127,80 @@ public class DataSourceConfiguration {
                 log.warn("You're accessing the database using a superuser. This is highly discouraged since it will disable the row security policy checks.");
             }
 
+            DataSource primary = dataSource;
+            if(env.getProperty("datasource.segregated-pools", Boolean.class, false)) {
+                // each scheduled job runs on its own thread and the admin jobs are processed in parallel partitions.
+                // The extension log writer and the async extensions get a couple of connections more
+                // the data migration, executed at startup, is guarded by a lock like the scheduled jobs
+                int jobs = countScheduledJobs() + 1;
+                int backgroundSize = jobs + env.getProperty("alfio.admin-jobs.parallelism", Integer.class, 4) + 2;
+                var background = createWorkloadPool(env, dataSource, "background", backgroundSize);
+                // leader election holds a connection for the whole duration of a job, in addition to the ones used by the job
+                boolean leaderElection = env.getProperty("alfio.jobs.leader-election", Boolean.class, false);
+                primary = new WorkloadRoutingDataSource(Map.of(
+                    Workload.WEB, dataSource,
+                    Workload.BACKGROUND, background,
+                    Workload.EXPORT, createWorkloadPool(env, dataSource, "export", 2),
+                    Workload.JOB_LOCK, leaderElection ? createWorkloadPool(env, dataSource, "job-lock", jobs) : background
+                ));
+            }
+
+            var replicaUrl = env.getProperty("datasource.replica.url");
+            if(StringUtils.isNotBlank(replicaUrl)) {
+                var replica = createPool("alfio-replica", replicaUrl,
+                    env.getProperty("datasource.replica.username", dataSource.getUsername()),
+                    env.getProperty("datasource.replica.password", dataSource.getPassword()),
+                    env.getProperty("datasource.replica.connections.max-active", Integer.class, dataSource.getMaximumPoolSize()),
+                    env.getProperty("datasource.replica.connections.min-idle", Integer.class, dataSource.getMinimumIdle()),
+                    dataSource.getConnectionTimeout());
+                log.info("Read replica configured. Eligible read-only transactions will be routed to {}", replicaUrl);
+                return new ReplicaRoutingDataSource(primary, replica,
+                    env.getProperty("datasource.replica.route-read-only", Boolean.class, false),
+                    Duration.ofSeconds(env.getProperty("datasource.replica.max-lag-seconds", Integer.class, 10)),
+                    Duration.ofSeconds(env.getProperty("datasource.replica.lag-check-interval-seconds", Integer.class, 5)));
+            }
+
             //
-            return dataSource;
+            return primary;
         }
     }
 
+    /**
+     * Creates a dedicated pool for a workload, configured using the following properties:
+     * <ul>
+     *     <li>datasource.[workload].connections.max-active: max number of connections (default: number of scheduled jobs
+     *     + alfio.admin-jobs.parallelism + 3 for "background", 2 for "export", number of scheduled jobs + 1 for "job-lock")</li>
+     *     <li>datasource.[workload].connections.min-idle: min number of idle connections (default 0)</li>
+     *     <li>datasource.[workload].connections.timeout-ms: how long to wait for a connection (default 30000)</li>
+     * </ul>
+     */
+    private static HikariDataSource createWorkloadPool(Environment env, HikariDataSource web, String workload, int defaultMaxActive) {
+        String prefix = "datasource." + workload + ".connections.";
+        return createPool("alfio-" + workload, web.getJdbcUrl(), web.getUsername(), web.getPassword(),
+            env.getProperty(prefix + "max-active", Integer.class, defaultMaxActive),
+            env.getProperty(prefix + "min-idle", Integer.class, 0),
+            env.getProperty(prefix + "timeout-ms", Long.class, 30_000L));
+    }
+
+    private static int countScheduledJobs() {
+        return (int) Arrays.stream(Jobs.class.getDeclaredMethods())
+            .filter(m -> m.isAnnotationPresent(Scheduled.class))
+            .count();
+    }
+
+    private static HikariDataSource createPool(String poolName, String url, String username, String password, int maxActive, int minIdle, long connectionTimeout) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(poolName);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setDriverClassName("org.postgresql.Driver");
+        dataSource.setMaximumPoolSize(maxActive);
+        dataSource.setMinimumIdle(minIdle);
+        dataSource.setConnectionTimeout(connectionTimeout);
+        return dataSource;
+    }
+
     @Bean
     public PlatformTransactionManager platformTransactionManager(DataSource dataSource) {
         return new CustomDataSourceTransactionManager(dataSource);
@@ -134,6 +211,24 @@ public class DataSourceConfiguration {
             super(dataSource);
         }
 
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            var dataSource = obtainDataSource();
+            // the target pool is chosen while the connection is being opened, see ReplicaRoutingDataSource and WorkloadRoutingDataSource
+            boolean previousReplica = ReplicaRoutingDataSource.requestReplica(dataSource instanceof ReplicaRoutingDataSource && ((ReplicaRoutingDataSource) dataSource).isEligible(definition));
+            // a workload requested by the caller is kept, unless the transaction definition asks for a different one
+            var workload = WorkloadRoutingDataSource.fromDefinition(definition);
+            var previousWorkload = workload != null ? WorkloadRoutingDataSource.requestWorkload(workload) : null;
+            try {
+                super.doBegin(transaction, definition);
+            } finally {
+                ReplicaRoutingDataSource.requestReplica(previousReplica);
+                if(workload != null) {
+                    WorkloadRoutingDataSource.requestWorkload(previousWorkload);
+                }
+            }
+        }
+
         @Override
         protected void prepareTransactionalConnection(Connection con, TransactionDefinition definition) throws SQLException {
             super.prepareTransactionalConnection(con, definition);
@@ -158,24 +253,44 @@ public class DataSourceConfiguration {
 
     @Bean
     @Profile("!"+Initializer.PROFILE_INTEGRATION_TEST)
-    public Supplier<Executor> getNewSingleThreadExecutorSupplier() {
-        return Executors::newSingleThreadExecutor;
+    public Supplier<Executor> getAsyncExtensionExecutorSupplier(Environment environment) {
+        return AsyncExtensionExecutor.supplier(environment);
+    }
+
+    @Bean
+    @Profile("!"+Initializer.PROFILE_INTEGRATION_TEST)
+    public ExtensionLogWriter asyncExtensionLogWriter(ExtensionLogRepository extensionLogRepository,
+                                                      PlatformTransactionManager transactionManager,
+                                                      Environment environment) {
+        return ExtensionLogWriter.fromEnvironment(extensionLogRepository, transactionManager, environment);
     }
 
     @Bean
-    public Flyway migrator(DataSource dataSource) {
+    public Flyway migrator(DataSource dataSource, Environment environment) {
         var configuration = Flyway.configure();
         var jdbcTemplate = new JdbcTemplate(dataSource);
         var matches = jdbcTemplate.queryForObject("select count(*) from information_schema.tables where table_name = 'schema_version'", Integer.class);
         var tableName = matches != null && matches > 0 ? "schema_version" : configuration.getTable();
+        var resolver = new PathMatchingResourcePatternResolver();
+        var fingerprint = SchemaFingerprint.compute(resolver, SchemaFingerprint.migrationHistory(jdbcTemplate, tableName));
         configuration.table(tableName)
             .dataSource(dataSource)
             .validateOnMigrate(false)
             .target(MigrationVersion.LATEST)
             .outOfOrder(true)
+            .placeholders(Map.of(SchemaFingerprint.VIEWS_CHECKSUM_PLACEHOLDER, fingerprint.getViewsChecksum()))
             .locations("alfio/db/PGSQL/");
         Flyway migration = new Flyway(configuration);
+        // fast start: if the scripts and the migration history are the same of the last successful migration, there is nothing
+        // to migrate and there is no need to drop and recreate the views, which would lock them while other nodes are serving requests.
+        boolean fastStart = environment.getProperty("alfio.flyway.fast-start", Boolean.class, true);
+        if(fastStart && SchemaFingerprint.load(jdbcTemplate).filter(fingerprint::equals).isPresent()) {
+            log.info("Database schema is up to date. Skipping migration.");
+            return migration;
+        }
         migration.migrate();
+        // the migration has updated the history
+        SchemaFingerprint.compute(resolver, SchemaFingerprint.migrationHistory(jdbcTemplate, tableName)).save(jdbcTemplate);
         return migration;
     }
     
@@ -231,12 +346,13 @@ public class DataSourceConfiguration {
                      SpecialPriceTokenGenerator specialPriceTokenGenerator,
                      WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
                      TicketReservationManager ticketReservationManager,
-                     AdminJobManager adminJobManager
+                     AdminJobManager adminJobManager,
+                     ScheduledJobRuntime scheduledJobRuntime
                      ) {
         return new Jobs(adminReservationRequestManager, fileUploadManager,
             notificationManager, specialPriceTokenGenerator, ticketReservationManager,
             waitingQueueSubscriptionProcessor,
-            adminJobManager);
+            adminJobManager, scheduledJobRuntime);
     }
 
     @Bean
@@ -244,12 +360,15 @@ public class DataSourceConfiguration {
                                     PlatformTransactionManager transactionManager,
                                     ClockProvider clockProvider,
                                     ReservationJobExecutor reservationJobExecutor,
-                                    BillingDocumentJobExecutor billingDocumentJobExecutor) {
+                                    BillingDocumentJobExecutor billingDocumentJobExecutor,
+                                    EmailRetentionJobExecutor emailRetentionJobExecutor,
+                                    Environment environment) {
         return new AdminJobManager(
-            List.of(reservationJobExecutor, billingDocumentJobExecutor),
+            List.of(reservationJobExecutor, billingDocumentJobExecutor, emailRetentionJobExecutor),
             adminJobQueueRepository,
             transactionManager,
-            clockProvider);
+            clockProvider,
+            environment);
     }
 
     @Bean
@@ -266,6 +385,13 @@ public class DataSourceConfiguration {
         return new BillingDocumentJobExecutor(billingDocumentManager, ticketReservationManager, eventRepository, notificationManager, organizationRepository);
     }
 
+    @Bean
+    EmailRetentionJobExecutor emailRetentionJobExecutor(NotificationManager notificationManager,
+                                                        ConfigurationManager configurationManager,
+                                                        ClockProvider clockProvider) {
+        return new EmailRetentionJobExecutor(notificationManager, configurationManager, clockProvider);
+    }
+
     @Bean
     @Profile(Initializer.PROFILE_DEMO)
     DemoModeDataManager demoModeDataManager(UserRepository userRepository,
@@ -273,9 +399,10 @@ public class DataSourceConfiguration {
                                             OrganizationRepository organizationRepository,
                                             EventDeleterRepository eventDeleterRepository,
                                             EventRepository eventRepository,
-                                            ConfigurationManager configurationManager) {
+                                            ConfigurationManager configurationManager,
+                                            ApiKeyCredentialCache apiKeyCredentialCache) {
         return new DemoModeDataManager(userRepository, userOrganizationRepository, organizationRepository,
-            eventDeleterRepository, eventRepository, configurationManager);
+            eventDeleterRepository, eventRepository, configurationManager, apiKeyCredentialCache);
     }
 
     /**
@@ -16,6 +16,7 @@
  */
 package alfio.config;
 
+import alfio.config.authentication.support.APITokenAuthentication;
 import alfio.config.authentication.support.OpenIdAlfioAuthentication;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.security.core.GrantedAuthority;
@@ -91,6 +92,26 @@ class RoleAndOrganizationsTransactionPreparer {
         " union " +
         "(select organization.id from organization where 'ROLE_ADMIN' in (select role from ba_user inner join authority on ba_user.username = authority.username where ba_user.username = ?))";
 
+    private static Set<Integer> findOrganizationIds(Connection connection) throws SQLException {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        // API keys have their organizations already resolved during authentication
+        if (authentication instanceof APITokenAuthentication && ((APITokenAuthentication) authentication).getOrganizationIds() != null) {
+            return ((APITokenAuthentication) authentication).getOrganizationIds();
+        }
+        Set<Integer> orgIds = new TreeSet<>();
+        try (var s = connection.prepareStatement(QUERY_ORG_FOR_USER)) {
+            String username = authentication.getName();
+            s.setString(1, username);
+            s.setString(2, username);
+            try (var rs = s.executeQuery()) {
+                while (rs.next()) {
+                    orgIds.add(rs.getInt(1));
+                }
+            }
+        }
+        return orgIds;
+    }
+
     public static void prepareTransactionalConnection(Connection connection) throws SQLException {
         if (!isInAHttpRequest()) {
             return;
@@ -107,17 +128,7 @@ class RoleAndOrganizationsTransactionPreparer {
             s.execute("reset alfio.currentUserOrgs");
         }
 
-        Set<Integer> orgIds = new TreeSet<>();
-        try (var s = connection.prepareStatement(QUERY_ORG_FOR_USER)) {
-            String username = SecurityContextHolder.getContext().getAuthentication().getName();
-            s.setString(1, username);
-            s.setString(2, username);
-            try (var rs = s.executeQuery()) {
-                while (rs.next()) {
-                    orgIds.add(rs.getInt(1));
-                }
-            }
-        }
+        Set<Integer> orgIds = findOrganizationIds(connection);
 
         if (orgIds.isEmpty()) {
             log.warn("orgIds is empty, was not able to apply currentUserOrgs");
@@ -20,9 +20,8 @@ import alfio.config.authentication.support.APIKeyAuthFilter;
 import alfio.config.authentication.support.APITokenAuthentication;
 import alfio.config.authentication.support.RequestTypeMatchers;
 import alfio.config.authentication.support.WrongAccountTypeException;
+import alfio.manager.user.ApiKeyCredentialCache;
 import alfio.model.user.User;
-import alfio.repository.user.AuthorityRepository;
-import alfio.repository.user.UserRepository;
 import alfio.util.ClockProvider;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
@@ -43,13 +42,10 @@ import static alfio.config.authentication.AuthenticationConstants.*;
 @Order(0)
 public class APITokenAuthWebSecurity extends WebSecurityConfigurerAdapter {
 
-    private final UserRepository userRepository;
-    private final AuthorityRepository authorityRepository;
+    private final ApiKeyCredentialCache apiKeyCredentialCache;
 
-    public APITokenAuthWebSecurity(UserRepository userRepository,
-                                   AuthorityRepository authorityRepository) {
-        this.userRepository = userRepository;
-        this.authorityRepository = authorityRepository;
+    public APITokenAuthWebSecurity(ApiKeyCredentialCache apiKeyCredentialCache) {
+        this.apiKeyCredentialCache = apiKeyCredentialCache;
     }
 
     //https://stackoverflow.com/a/48448901
@@ -61,7 +57,8 @@ public class APITokenAuthWebSecurity extends WebSecurityConfigurerAdapter {
             //
             String apiKey = (String) authentication.getPrincipal();
             //check if user type ->
-            User user = userRepository.findByUsername(apiKey).orElseThrow(() -> new BadCredentialsException("Api key " + apiKey + " don't exists"));
+            var credential = apiKeyCredentialCache.find(apiKey).orElseThrow(() -> new BadCredentialsException("Api key " + apiKey + " don't exists"));
+            User user = credential.getUser();
             if (!user.isEnabled()) {
                 throw new DisabledException("Api key " + apiKey + " is disabled");
             }
@@ -75,7 +72,8 @@ public class APITokenAuthWebSecurity extends WebSecurityConfigurerAdapter {
             return new APITokenAuthentication(
                 authentication.getPrincipal(),
                 authentication.getCredentials(),
-                authorityRepository.findRoles(apiKey).stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
+                credential.getRoles().stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()),
+                credential.getOrganizationIds());
         });
 
 
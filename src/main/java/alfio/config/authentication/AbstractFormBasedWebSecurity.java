@@ -134,6 +134,8 @@ abstract class AbstractFormBasedWebSecurity extends WebSecurityConfigurerAdapter
             .authorizeRequests()
             .antMatchers(HttpMethod.GET, ADMIN_API + "/users/current").hasAnyRole(ADMIN, OWNER, SUPERVISOR)
             .antMatchers(HttpMethod.POST, ADMIN_API + "/users/check", ADMIN_API + "/users/current/edit", ADMIN_API + "/users/current/update-password").hasAnyRole(ADMIN, OWNER, SUPERVISOR)
+            .antMatchers(ADMIN_API + "/configuration/jobs/**").hasRole(ADMIN)
+            .antMatchers(ADMIN_API + "/configuration/datasource/**").hasRole(ADMIN)
             .antMatchers(ADMIN_API + "/configuration/**", ADMIN_API + "/users/**").hasAnyRole(ADMIN, OWNER)
             .antMatchers(ADMIN_API + "/organizations/new").hasRole(ADMIN)
             .antMatchers(ADMIN_API + "/check-in/**").hasAnyRole(ADMIN, OWNER, SUPERVISOR)
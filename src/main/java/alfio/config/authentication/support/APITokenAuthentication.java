@@ -20,20 +20,34 @@ import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 
 import java.util.Collection;
+import java.util.Set;
 
 public class APITokenAuthentication extends AbstractAuthenticationToken {
 
     private final Object principal;
     private final Object credentials;
+    private final Set<Integer> organizationIds;
 
 
     public APITokenAuthentication(Object principal, Object credentials, Collection<? extends GrantedAuthority> authorities) {
+        this(principal, credentials, authorities, null);
+    }
+
+    public APITokenAuthentication(Object principal, Object credentials, Collection<? extends GrantedAuthority> authorities, Set<Integer> organizationIds) {
         super(authorities);
         this.credentials = credentials;
         this.principal = principal;
+        this.organizationIds = organizationIds;
         setAuthenticated(true);
     }
 
+    /**
+     * @return the organizations of the API key, if already known. {@code null} otherwise
+     */
+    public Set<Integer> getOrganizationIds() {
+        return organizationIds;
+    }
+
     @Override
     public Object getCredentials() {
         return credentials;
@@ -0,0 +1,152 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes the connections requested by eligible read-only transactions to a read replica.
+ *
+ * A transaction is eligible if it is declared as read-only and either has the {@link #REPLICA} label, e.g.
+ * {@code @Transactional(readOnly = true, label = ReplicaRoutingDataSource.REPLICA)}, or routing of all read-only
+ * transactions has been enabled. Everything else, including queries executed outside a transaction, goes to the primary.
+ *
+ * The replication lag is checked periodically: if it exceeds the configured threshold, or if the replica cannot be reached,
+ * connections are taken from the primary until the next check.
+ *
+ * The decision is taken by the transaction manager while opening the connection, so that the row-level security settings
+ * are applied to the replica connection as well.
+ */
+@Log4j2
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    public static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> REPLICA_REQUESTED = ThreadLocal.withInitial(() -> false);
+    private static final String LAG_QUERY = "select case when not pg_is_in_recovery() or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0" +
+        " else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final boolean routeAllReadOnly;
+    private final long maxLagMillis;
+    private final long lagCheckIntervalMillis;
+    private final AtomicLong nextLagCheck = new AtomicLong();
+    private volatile boolean replicaAvailable = true;
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    DataSource replica,
+                                    boolean routeAllReadOnly,
+                                    Duration maxLag,
+                                    Duration lagCheckInterval) {
+        this.primary = primary;
+        this.replica = replica;
+        this.routeAllReadOnly = routeAllReadOnly;
+        this.maxLagMillis = maxLag.toMillis();
+        this.lagCheckIntervalMillis = lagCheckInterval.toMillis();
+    }
+
+    public boolean isEligible(TransactionDefinition definition) {
+        if(!definition.isReadOnly()) {
+            return false;
+        }
+        return routeAllReadOnly
+            || (definition instanceof TransactionAttribute && ((TransactionAttribute) definition).getLabels().contains(REPLICA));
+    }
+
+    /**
+     * Sets whether the connections opened by the current thread should be taken from the replica.
+     *
+     * @return the previous value
+     */
+    public static boolean requestReplica(boolean replica) {
+        boolean previous = REPLICA_REQUESTED.get();
+        REPLICA_REQUESTED.set(replica);
+        return previous;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if(REPLICA_REQUESTED.get() && isReplicaUsable()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                log.warn("cannot get a connection from the replica, falling back to primary", e);
+                replicaAvailable = false;
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    List<DataSource> getTargets() {
+        return List.of(primary, replica);
+    }
+
+    @Override
+    public void close() throws Exception {
+        closeIfPossible(replica);
+        closeIfPossible(primary);
+    }
+
+    boolean isReplicaUsable() {
+        long now = System.currentTimeMillis();
+        long next = nextLagCheck.get();
+        // only one thread checks the lag, the others use the last known state
+        if(now >= next && nextLagCheck.compareAndSet(next, now + lagCheckIntervalMillis)) {
+            replicaAvailable = checkLag();
+        }
+        return replicaAvailable;
+    }
+
+    private boolean checkLag() {
+        try (var connection = replica.getConnection();
+             var statement = connection.createStatement();
+             var resultSet = statement.executeQuery(LAG_QUERY)) {
+            resultSet.next();
+            long lagMillis = (long) (resultSet.getDouble(1) * 1000);
+            if(lagMillis > maxLagMillis) {
+                log.warn("replication lag is {} ms, routing read-only transactions to primary", lagMillis);
+                return false;
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("cannot check replication lag, routing read-only transactions to primary", e);
+            return false;
+        }
+    }
+
+    private static void closeIfPossible(DataSource dataSource) throws Exception {
+        if(dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+}
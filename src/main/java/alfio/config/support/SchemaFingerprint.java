@@ -0,0 +1,124 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Fingerprint of the database scripts shipped with the application: one checksum for the versioned migrations
+ * and one for the afterMigrate callbacks, which (re)create the views. It includes also the latest entry of the
+ * migration history, so that a migration applied by someone else is detected.
+ *
+ * The fingerprint is saved in the schema_fingerprint table after every successful migration, so that a node
+ * starting with the same scripts can skip both the migration and the view refresh.
+ * The views checksum is written also by the last afterMigrate callback, whoever runs it: a view refresh performed
+ * with different definitions invalidates the fingerprint.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor
+public class SchemaFingerprint {
+
+    static final String LOCATION = "classpath*:alfio/db/PGSQL/";
+    private static final String MIGRATIONS = "V*";
+    private static final String VIEWS = "afterMigrate__*.sql";
+    /**
+     * placeholder replaced by Flyway in the afterMigrate callback which saves the views checksum
+     */
+    public static final String VIEWS_CHECKSUM_PLACEHOLDER = "viewsChecksum";
+
+    private final String migrationsChecksum;
+    private final String viewsChecksum;
+    private final String migrationHistory;
+
+    /**
+     * Computes the fingerprint of the scripts
+     *
+     * @param resolver used to load the scripts
+     * @param migrationHistory the latest entry of the migration history, see {@link #migrationHistory(JdbcTemplate, String)}
+     */
+    public static SchemaFingerprint compute(ResourcePatternResolver resolver, String migrationHistory) {
+        return new SchemaFingerprint(checksum(resolver, LOCATION + MIGRATIONS), checksum(resolver, LOCATION + VIEWS), migrationHistory);
+    }
+
+    /**
+     * Returns the rank and the checksum of the latest migration recorded in the given history table,
+     * or an empty string if the table doesn't exist yet.
+     */
+    public static String migrationHistory(JdbcTemplate jdbcTemplate, String historyTable) {
+        var matches = jdbcTemplate.queryForObject("select count(*) from information_schema.tables where table_name = ?", Integer.class, historyTable);
+        if(matches == null || matches == 0) {
+            return "";
+        }
+        return jdbcTemplate.query("select installed_rank, checksum from " + historyTable + " order by installed_rank desc limit 1",
+            (rs, rowNum) -> rs.getInt("installed_rank") + ":" + rs.getString("checksum"))
+            .stream()
+            .findFirst()
+            .orElse("");
+    }
+
+    public static Optional<SchemaFingerprint> load(JdbcTemplate jdbcTemplate) {
+        // the history column has been added after the table
+        var matches = jdbcTemplate.queryForObject("select count(*) from information_schema.columns where table_name = 'schema_fingerprint' and column_name = 'migration_history'", Integer.class);
+        if(matches == null || matches == 0) {
+            return Optional.empty();
+        }
+        return jdbcTemplate.query("select migrations_checksum, views_checksum, migration_history from schema_fingerprint where id = 1",
+            (rs, rowNum) -> new SchemaFingerprint(rs.getString("migrations_checksum"), rs.getString("views_checksum"), rs.getString("migration_history")))
+            .stream()
+            .findFirst();
+    }
+
+    public void save(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("insert into schema_fingerprint(id, migrations_checksum, views_checksum, migration_history, update_ts) values(1, ?, ?, ?, now())" +
+            " on conflict(id) do update set migrations_checksum = excluded.migrations_checksum, views_checksum = excluded.views_checksum," +
+            " migration_history = excluded.migration_history, update_ts = excluded.update_ts",
+            migrationsChecksum, viewsChecksum, migrationHistory);
+    }
+
+    static String checksum(ResourcePatternResolver resolver, String pattern) {
+        try {
+            var digest = DigestUtils.getSha256Digest();
+            var resources = resolver.getResources(pattern);
+            Arrays.sort(resources, Comparator.comparing(r -> Objects.requireNonNullElse(r.getFilename(), "")));
+            for (Resource resource : resources) {
+                digest.update(Objects.requireNonNullElse(resource.getFilename(), "").getBytes(StandardCharsets.UTF_8));
+                try (var in = resource.getInputStream()) {
+                    DigestUtils.updateDigest(digest, in);
+                }
+            }
+            return Hex.encodeHexString(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
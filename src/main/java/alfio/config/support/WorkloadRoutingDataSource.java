@@ -0,0 +1,167 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Value;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Takes the connections from a different pool depending on the kind of work being executed, so that background jobs
+ * and exports cannot exhaust the connections needed by the purchase flow:
+ * <ul>
+ *     <li>{@link Workload#WEB}: the thread is serving an HTTP request</li>
+ *     <li>{@link Workload#EXPORT}: transactions having the {@link #EXPORT} label, e.g.
+ *     {@code @Transactional(readOnly = true, label = WorkloadRoutingDataSource.EXPORT)}</li>
+ *     <li>{@link Workload#BACKGROUND}: everything else, i.e. scheduled jobs, admin jobs, async extensions and startup tasks.
+ *     Work which runs on a request thread but is not part of the request, e.g. the extension log, asks for this workload
+ *     explicitly through {@link #executeAs(Workload, Supplier)}</li>
+ *     <li>{@link Workload#JOB_LOCK}: the connections holding the leader election locks of the scheduled jobs, see
+ *     {@link alfio.manager.system.ScheduledJobRuntime}. They are idle for the whole duration of a job, therefore they
+ *     must not be taken from the pool used by the jobs themselves</li>
+ * </ul>
+ */
+public class WorkloadRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    public static final String EXPORT = "export";
+
+    public enum Workload {
+        WEB, BACKGROUND, EXPORT, JOB_LOCK
+    }
+
+    private static final ThreadLocal<Workload> REQUESTED_WORKLOAD = new ThreadLocal<>();
+
+    private final Map<Workload, DataSource> pools;
+
+    public WorkloadRoutingDataSource(Map<Workload, DataSource> pools) {
+        this.pools = new EnumMap<>(pools);
+        for (Workload workload : Workload.values()) {
+            Objects.requireNonNull(this.pools.get(workload), "no pool defined for " + workload);
+        }
+    }
+
+    /**
+     * Sets the workload of the connections opened by the current thread.
+     *
+     * @param workload the workload, or null in order to detect it from the current thread
+     * @return the previous value
+     */
+    public static Workload requestWorkload(Workload workload) {
+        var previous = REQUESTED_WORKLOAD.get();
+        if(workload == null) {
+            REQUESTED_WORKLOAD.remove();
+        } else {
+            REQUESTED_WORKLOAD.set(workload);
+        }
+        return previous;
+    }
+
+    /**
+     * Executes the given action, opening the connections for the given workload.
+     */
+    public static <T> T executeAs(Workload workload, Supplier<T> action) {
+        var previous = requestWorkload(workload);
+        try {
+            return action.get();
+        } finally {
+            requestWorkload(previous);
+        }
+    }
+
+    public static Workload fromDefinition(TransactionDefinition definition) {
+        if(definition instanceof TransactionAttribute && ((TransactionAttribute) definition).getLabels().contains(EXPORT)) {
+            return Workload.EXPORT;
+        }
+        return null;
+    }
+
+    static Workload currentWorkload() {
+        var requested = REQUESTED_WORKLOAD.get();
+        if(requested != null) {
+            return requested;
+        }
+        return RequestContextHolder.getRequestAttributes() != null ? Workload.WEB : Workload.BACKGROUND;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return pools.get(currentWorkload()).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return pools.get(currentWorkload()).getConnection(username, password);
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource pool : pools.values()) {
+            if(pool instanceof AutoCloseable) {
+                ((AutoCloseable) pool).close();
+            }
+        }
+    }
+
+    /**
+     * Collects the statistics of the connection pools behind the given {@link DataSource}.
+     */
+    public static List<PoolStatistics> collectStatistics(DataSource dataSource) {
+        var result = new ArrayList<PoolStatistics>();
+        collectStatistics(dataSource, result);
+        return result;
+    }
+
+    private static void collectStatistics(DataSource dataSource, List<PoolStatistics> result) {
+        if(dataSource instanceof WorkloadRoutingDataSource) {
+            ((WorkloadRoutingDataSource) dataSource).pools.values().forEach(p -> collectStatistics(p, result));
+        } else if(dataSource instanceof ReplicaRoutingDataSource) {
+            ((ReplicaRoutingDataSource) dataSource).getTargets().forEach(p -> collectStatistics(p, result));
+        } else if(dataSource instanceof HikariDataSource) {
+            var hikari = (HikariDataSource) dataSource;
+            var pool = hikari.getHikariPoolMXBean();
+            if(pool != null) {
+                result.add(new PoolStatistics(hikari.getPoolName(), hikari.getMaximumPoolSize(), pool.getActiveConnections(),
+                    pool.getIdleConnections(), pool.getTotalConnections(), pool.getThreadsAwaitingConnection()));
+            } else {
+                result.add(new PoolStatistics(hikari.getPoolName(), hikari.getMaximumPoolSize(), 0, 0, 0, 0));
+            }
+        }
+    }
+
+    @Value
+    public static class PoolStatistics {
+        String name;
+        int maxSize;
+        int active;
+        int idle;
+        int total;
+        int awaiting;
+    }
+}
@@ -18,10 +18,13 @@ package alfio.controller;
 
 import alfio.manager.FileUploadManager;
 import alfio.model.FileBlobMetadata;
+import alfio.model.ImageVariant;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -41,24 +44,70 @@ public class FileController {
     }
 
     @GetMapping("/file/{digest}")
-    public void showFile(@PathVariable("digest") String digest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    public void showFile(@PathVariable("digest") String digest,
+                         @RequestParam(value = "size", required = false) String size,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+
+        var imageSize = ImageVariant.Size.fromString(size);
+        if (imageSize.isPresent()) {
+            showImageVariant(digest, imageSize.get(), request, response);
+            return;
+        }
+
+        if (digest.equals(request.getHeader("If-None-Match"))) {
+            // the content is addressed by its digest, so the copy owned by the client cannot be stale
+            notModified(digest, response);
+            return;
+        }
 
         Optional<FileBlobMetadata> res = manager.findMetadata(digest);
         if (res.isPresent()) {
-            FileBlobMetadata metadata = res.get();
-            if (digest.equals(request.getHeader("If-None-Match"))) {
-                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-            } else {
-                response.setContentType(metadata.getContentType());
-                response.setContentLength(metadata.getContentSize());
-                response.setHeader("ETag", metadata.getId()); //id = digest
-                response.setHeader("Cache-Control", MAX_AGE_6_MONTH);
-                try (var os = response.getOutputStream()) {
-                    manager.outputFile(digest, os);
-                }
-            }
+            showOriginal(res.get(), response);
         } else {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
     }
+
+    private void showImageVariant(String digest, ImageVariant.Size size, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<FileBlobMetadata> res = manager.findMetadata(digest);
+        if (res.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // the format of the variant depends on the Accept header
+        response.setHeader("Vary", "Accept");
+        var metadata = res.get();
+        var accept = StringUtils.defaultString(request.getHeader("Accept"));
+        var variant = manager.findImageVariant(metadata, size, accept.contains("image/webp"));
+        String etag = variant.map(ImageVariant::getId).orElse(digest);
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            notModified(etag, response);
+        } else if (variant.isPresent()) {
+            response.setContentType(variant.get().getContentType());
+            response.setHeader("ETag", etag);
+            response.setHeader("Cache-Control", MAX_AGE_6_MONTH);
+            try (var os = response.getOutputStream()) {
+                manager.outputImageVariant(variant.get(), os);
+            }
+        } else {
+            showOriginal(metadata, response);
+        }
+    }
+
+    private void showOriginal(FileBlobMetadata metadata, HttpServletResponse response) throws IOException {
+        response.setContentType(metadata.getContentType());
+        response.setContentLength(metadata.getContentSize());
+        response.setHeader("ETag", metadata.getId()); //id = digest
+        response.setHeader("Cache-Control", MAX_AGE_6_MONTH);
+        try (var os = response.getOutputStream()) {
+            manager.outputFile(metadata.getId(), os);
+        }
+    }
+
+    private static void notModified(String etag, HttpServletResponse response) {
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", MAX_AGE_6_MONTH);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
 }
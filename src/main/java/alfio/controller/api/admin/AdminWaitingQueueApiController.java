@@ -119,7 +119,7 @@ public class AdminWaitingQueueApiController {
                                          @RequestParam(name = "format", defaultValue = "excel") String format,
                                          Principal principal, HttpServletResponse response) throws IOException {
         var event = eventManager.getSingleEvent(eventName, principal.getName());
-        var found = waitingQueueManager.loadAllSubscriptionsForEvent(event.getId());
+        var found = waitingQueueManager.exportAllSubscriptionsForEvent(event.getId());
 
         var header = new String[] {"Type", "Firstname", "Lastname", "Email", "Language", "Status", "Date"};
         var lines = convertSubscriptions(found, event);
@@ -16,6 +16,7 @@
  */
 package alfio.controller.api.admin;
 
+import alfio.config.support.WorkloadRoutingDataSource;
 import alfio.controller.api.support.TicketHelper;
 import alfio.manager.BillingDocumentManager;
 import alfio.manager.EventManager;
@@ -23,6 +24,7 @@ import alfio.manager.system.AdminJobExecutor;
 import alfio.manager.system.AdminJobManager;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ScheduledJobRuntime;
 import alfio.model.modification.ConfigurationModification;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeys;
@@ -34,6 +36,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.sql.DataSource;
 import java.security.Principal;
 import java.time.Instant;
 import java.time.ZonedDateTime;
@@ -53,6 +56,8 @@ public class ConfigurationApiController {
     private final AdminJobManager adminJobManager;
     private final EventManager eventManager;
     private final ClockProvider clockProvider;
+    private final ScheduledJobRuntime scheduledJobRuntime;
+    private final DataSource dataSource;
 
     @GetMapping(value = "/load")
     public Map<ConfigurationKeys.SettingCategory, List<Configuration>> loadConfiguration(Principal principal) {
@@ -237,6 +242,16 @@ public class ConfigurationApiController {
         )));
     }
 
+    @GetMapping("/jobs/statistics")
+    public List<ScheduledJobRuntime.JobStatistics> getJobStatistics() {
+        return scheduledJobRuntime.getStatistics();
+    }
+
+    @GetMapping("/datasource/statistics")
+    public List<WorkloadRoutingDataSource.PoolStatistics> getConnectionPoolStatistics() {
+        return WorkloadRoutingDataSource.collectStatistics(dataSource);
+    }
+
     @Data
     static class OrganizationConfig {
         private final Organization organization;
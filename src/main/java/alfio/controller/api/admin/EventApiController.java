@@ -35,11 +35,9 @@ import alfio.model.system.ConfigurationKeys;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.transaction.Transaction;
 import alfio.model.user.Organization;
-import alfio.model.user.Role;
 import alfio.model.user.User;
 import alfio.repository.DynamicFieldTemplateRepository;
 import alfio.repository.EventDescriptionRepository;
-import alfio.repository.SponsorScanRepository;
 import alfio.repository.TicketFieldRepository;
 import alfio.util.*;
 import com.opencsv.CSVReader;
@@ -106,7 +104,7 @@ public class EventApiController {
     private final TicketHelper ticketHelper;
     private final DynamicFieldTemplateRepository dynamicFieldTemplateRepository;
     private final UserManager userManager;
-    private final SponsorScanRepository sponsorScanRepository;
+    private final AttendeeManager attendeeManager;
     private final PaymentManager paymentManager;
     private final TemplateManager templateManager;
     private final FileUploadManager fileUploadManager;
@@ -354,7 +352,10 @@ public class EventApiController {
         var username = principal.getName();
         var eInvoicingEnabled = configurationManager.isItalianEInvoicingEnabled(eventManager.getEventAndOrganizationId(eventName, username));
 
-        return eventManager.findAllConfirmedTicketsForCSV(eventName, username).stream().map(trs -> {
+        boolean customFieldsRequested = fields.stream().anyMatch(f -> f.startsWith(CUSTOM_FIELDS_PREFIX));
+
+        return eventManager.findAllConfirmedTicketsForExport(eventName, username, customFieldsRequested).stream().map(p -> {
+            var trs = p.getLeft();
             Ticket t = trs.getTicket();
             var currencyCode = t.getCurrencyCode();
             TicketReservation reservation = trs.getTicketReservation();
@@ -394,8 +395,7 @@ public class EventApiController {
                 if(fields.contains("PEC")) {line.add(optionalInvoicingData.map(ItalianEInvoicing::getPec).orElse(""));}
             }
 
-            //obviously not optimized
-            Map<String, String> additionalValues = ticketFieldRepository.findAllValuesForTicketId(t.getId());
+            Map<String, String> additionalValues = p.getRight();
 
             Predicate<String> contains = FIXED_FIELDS::contains;
 
@@ -423,33 +423,25 @@ public class EventApiController {
         header.add("Sponsor notes");
         header.add("Lead Status");
 
-        Stream<String[]> sponsorScans = userManager.findAllEnabledUsers(principal.getName()).stream()
-            .map(u -> Pair.of(u, userManager.getUserRole(u)))
-            .filter(p -> p.getRight() == Role.SPONSOR)
-            .flatMap(p -> sponsorScanRepository.loadSponsorData(event.getId(), p.getKey().getId(), SponsorScanRepository.DEFAULT_TIMESTAMP)
-                .stream()
-                .map(v -> Pair.of(v, ticketFieldRepository.findAllValuesForTicketId(v.getTicket().getId()))))
-            .map(p -> {
-                DetailedScanData data = p.getLeft();
-                Map<String, String> descriptions = p.getRight();
-                return Pair.of(data, fields.stream().map(x -> descriptions.getOrDefault(x.getName(), "")).collect(toList()));
-            }).map(p -> {
-            List<String> line = new ArrayList<>();
-            Ticket ticket = p.getLeft().getTicket();
-            SponsorScan sponsorScan = p.getLeft().getSponsorScan();
-            User user = userManager.findUser(sponsorScan.getUserId());
-            line.add(user.getUsername());
-            line.add(user.getDescription());
-            line.add(sponsorScan.getTimestamp().toString());
-            line.add(ticket.getFullName());
-            line.add(ticket.getEmail());
-
-            line.addAll(p.getRight());
-
-            line.add(sponsorScan.getNotes());
-            line.add(sponsorScan.getLeadStatus().name());
-            return line.toArray(new String[0]);
-        });
+        Stream<String[]> sponsorScans = attendeeManager.loadSponsorScansForExport(event.getId(), principal.getName()).stream()
+            .map(t -> {
+                List<String> line = new ArrayList<>();
+                User user = t.getLeft();
+                Ticket ticket = t.getMiddle().getTicket();
+                SponsorScan sponsorScan = t.getMiddle().getSponsorScan();
+                Map<String, String> descriptions = t.getRight();
+                line.add(user.getUsername());
+                line.add(user.getDescription());
+                line.add(sponsorScan.getTimestamp().toString());
+                line.add(ticket.getFullName());
+                line.add(ticket.getEmail());
+
+                line.addAll(fields.stream().map(x -> descriptions.getOrDefault(x.getName(), "")).collect(toList()));
+
+                line.add(sponsorScan.getNotes());
+                line.add(sponsorScan.getLeadStatus().name());
+                return line.toArray(new String[0]);
+            });
 
         if ("excel".equals(format)) {
             exportSponsorScanExcel(event.getShortName(), header, sponsorScans, response);
@@ -693,7 +685,7 @@ public class EventApiController {
         header.add("Generated on");
 
         ExportUtils.exportExcel(event.getShortName() + "-billing-documents.xlsx", "Documents", header.toArray(String[]::new),
-            ticketReservationManager.streamAllDocumentsFor(event.getId())
+            ticketReservationManager.findAllDocumentsForExport(event.getId()).stream()
                 .flatMap(entry -> {
                     var reservationWithTransaction = entry.getKey();
                     var reservation = reservationWithTransaction.getTicketReservation();
@@ -20,6 +20,7 @@ package alfio.controller.api.admin;
 import alfio.controller.api.support.PageAndContent;
 import alfio.extension.Extension;
 import alfio.extension.ExtensionService;
+import alfio.extension.support.AsyncExtensionExecutor;
 import alfio.manager.user.UserManager;
 import alfio.model.EventAndOrganizationId;
 import alfio.model.ExtensionLog;
@@ -232,6 +233,12 @@ public class ExtensionApiController {
         return new PageAndContent<>(res.getLeft(), res.getRight());
     }
 
+    @GetMapping("/async-statistics")
+    public List<AsyncExtensionExecutor.Statistics> getAsyncExecutionStatistics(Principal principal) {
+        ensureAdmin(principal);
+        return extensionService.getAsyncExecutionStatistics();
+    }
+
     private void ensureAdmin(Principal principal) {
         Validate.isTrue(userManager.isAdmin(userManager.findUserByUsername(principal.getName())));
     }
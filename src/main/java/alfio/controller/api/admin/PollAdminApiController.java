@@ -26,8 +26,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -139,6 +141,12 @@ public class PollAdminApiController {
         return ResponseEntity.of(pollManager.getStatisticsFor(eventName, pollId));
     }
 
+    @GetMapping(value = "/{pollId}/stats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    ResponseEntity<SseEmitter> streamStatisticsForEvent(@PathVariable("eventName") String eventName,
+                                                        @PathVariable("pollId") Long pollId) {
+        return ResponseEntity.of(pollManager.subscribeToStatistics(eventName, pollId));
+    }
+
     static class UpdatePollStatusForm {
         private final Poll.PollStatus status;
 
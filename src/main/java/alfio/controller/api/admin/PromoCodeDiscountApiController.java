@@ -100,6 +100,6 @@ public class PromoCodeDiscountApiController {
         if(code.isEmpty()) {
             return 0;
         }
-        return promoCodeRepository.countConfirmedPromoCode(promoCodeId, categoriesOrNull(code.get()), null, categoriesOrNull(code.get()) != null ? "X" : null);
+        return promoCodeRepository.countConfirmedPromoCode(promoCodeId, categoriesOrNull(code.get()), categoriesOrNull(code.get()) != null ? "X" : null);
     }
 }
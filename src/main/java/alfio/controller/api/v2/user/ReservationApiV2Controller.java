@@ -60,7 +60,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.util.Assert;
 import org.springframework.util.MultiValueMap;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.Errors;
@@ -75,6 +74,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static alfio.model.PriceContainer.VatStatus.*;
@@ -112,6 +112,8 @@ public class ReservationApiV2Controller {
     private final SubscriptionRepository subscriptionRepository;
     private final TicketRepository ticketRepository;
     private final UserManager userManager;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final PinResolver pinResolver;
 
     /**
      * Note: now it will return for any states of the reservation.
@@ -128,7 +130,7 @@ public class ReservationApiV2Controller {
 
             validateAccessToReservation(principal, reservation);
 
-            var orderSummary = ticketReservationManager.orderSummaryForReservationId(reservationId, purchaseContext);
+            var orderSummary = ticketReservationManager.orderSummaryForReservation(reservation, purchaseContext);
 
             var tickets = ticketReservationManager.findTicketsInReservation(reservationId);
 
@@ -150,12 +152,15 @@ public class ReservationApiV2Controller {
 
                 var ticketFieldsFilterer = bookingInfoTicketLoader.getTicketFieldsFilterer(reservationId, event);
                 var ticketsByCategory = tickets.stream().collect(Collectors.groupingBy(Ticket::getCategoryId));
-                //TODO: cleanup this transformation, we most likely don't need to fully load the ticket category
+                // load all the categories at once, instead of one query per category
+                var categoriesById = ticketCategoryRepository.findActiveByIdsAndEventId(ticketsByCategory.keySet(), event.getId())
+                    .stream()
+                    .collect(toMap(TicketCategory::getId, Function.identity()));
                 var ticketsInReservation = ticketsByCategory
                     .entrySet()
                     .stream()
                     .map(e -> {
-                        var tc = eventManager.getTicketCategoryById(e.getKey(), event.getId());
+                        var tc = Objects.requireNonNull(categoriesById.get(e.getKey()), "cannot find active category "+e.getKey());
                         var ts = e.getValue().stream()
                             .map(t -> bookingInfoTicketLoader.toBookingInfoTicket(t, hasPaidSupplement, event, ticketFieldsFilterer, descriptionsByTicketFieldId, valuesByTicketIds, Map.of(), false))
                             .collect(Collectors.toList());
@@ -184,7 +189,7 @@ public class ReservationApiV2Controller {
             PaymentProxy selectedPaymentProxy = paymentToken.map(PaymentToken::getPaymentProvider).orElse(null);
 
             //
-            var containsCategoriesLinkedToGroups = purchaseContext.event().map(event -> ticketReservationManager.containsCategoriesLinkedToGroups(reservationId, event.getId())).orElse(false);
+            var containsCategoriesLinkedToGroups = purchaseContext.event().map(event -> ticketReservationManager.containsCategoriesLinkedToGroups(event.getId(), tickets)).orElse(false);
             //
             List<ReservationInfo.SubscriptionInfo> subscriptionInfos = null;
             if (purchaseContext.ofType(PurchaseContextType.subscription)) {
@@ -221,7 +226,7 @@ public class ReservationApiV2Controller {
                 additionalInfo.getBillingDetails(),
                 //
                 containsCategoriesLinkedToGroups,
-                getActivePaymentMethods(purchaseContext, ticketsByCategory.keySet(), orderSummary, reservationId),
+                getActivePaymentMethods(purchaseContext, ticketsByCategory.keySet(), orderSummary, additionalInfo.getBillingDetails()),
                 subscriptionInfos
                 ));
         }));
@@ -233,10 +238,10 @@ public class ReservationApiV2Controller {
     private Map<PaymentMethod, PaymentProxyWithParameters> getActivePaymentMethods(PurchaseContext purchaseContext,
                                                                                    Collection<Integer> categoryIds,
                                                                                    OrderSummary orderSummary,
-                                                                                   String reservationId) {
+                                                                                   BillingDetails billingDetails) {
         if(!purchaseContext.isFreeOfCharge()) {
             var blacklistedMethodsForReservation = configurationManager.getBlacklistedMethodsForReservation(purchaseContext, categoryIds);
-            return paymentManager.getPaymentMethods(purchaseContext, new TransactionRequest(orderSummary.getOriginalTotalPrice(), ticketReservationRepository.getBillingDetailsForReservation(reservationId)))
+            return paymentManager.getPaymentMethods(purchaseContext, new TransactionRequest(orderSummary.getOriginalTotalPrice(), billingDetails))
                 .stream()
                 .filter(p -> !blacklistedMethodsForReservation.contains(p.getPaymentMethod()))
                 .filter(p -> TicketReservationManager.isValidPaymentMethod(p, purchaseContext, configurationManager))
@@ -738,22 +743,18 @@ public class ReservationApiV2Controller {
                 return false;
             }
 
-            //ensure pin length, as we will do a like concat(pin,'%'), it could be dangerous to have an empty string...
-            Assert.isTrue(pin.length() >= Subscription.PIN_LENGTH, "Pin must have a length of at least 8 characters");
-
-            var partialUuid = !isUUID ? PinGenerator.pinToPartialUuid(pin, Subscription.PIN_LENGTH) : pin;
             var email = reservationCodeForm.getEmail();
-            var requireEmail = false;
-            int count;
+            List<UUID> subscriptionIds;
             if (isUUID) {
-                count = subscriptionRepository.countSubscriptionById(UUID.fromString(pin));
+                var id = UUID.fromString(pin);
+                subscriptionIds = subscriptionRepository.countSubscriptionById(id) > 0 ? List.of(id) : List.of();
             } else {
-                count = subscriptionRepository.countSubscriptionByPartialUuid(partialUuid);
-                if (count > 1) {
-                    count = subscriptionRepository.countSubscriptionByPartialUuidAndEmail(partialUuid, email);
-                    requireEmail = true;
+                subscriptionIds = pinResolver.findSubscriptionIds(pin, null);
+                if (subscriptionIds.size() > 1) {
+                    subscriptionIds = pinResolver.findSubscriptionIds(pin, email);
                 }
             }
+            int count = subscriptionIds.size();
             log.trace("code count is {}", count);
             if (count == 0) {
                 bindingResult.reject(isUUID ? "subscription.uuid.not.found" : "subscription.pin.not.found");
@@ -766,7 +767,7 @@ public class ReservationApiV2Controller {
                 return false;
             }
 
-            var subscriptionId = isUUID ? UUID.fromString(pin) : requireEmail ? subscriptionRepository.getSubscriptionIdByPartialUuidAndEmail(partialUuid, email) : subscriptionRepository.getSubscriptionIdByPartialUuid(partialUuid);
+            var subscriptionId = subscriptionIds.get(0);
             var subscriptionDescriptor = subscriptionRepository.findDescriptorBySubscriptionId(subscriptionId);
             var subscription = subscriptionRepository.findSubscriptionById(subscriptionId);
             subscription.isValid(Optional.of(bindingResult));
@@ -167,6 +167,12 @@ public final class TemplateProcessor {
         if(purchaseContext.getFileBlobIdIsPresent()) {
             return fileUploadManager.findMetadata(purchaseContext.getFileBlobId()).map(metadata -> {
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                // the image is rendered at most 300x150 in the PDF, there is no need to embed the original
+                var variant = fileUploadManager.findImageVariant(metadata, ImageVariant.Size.MEDIUM, false);
+                if(variant.isPresent()) {
+                    fileUploadManager.outputImageVariant(variant.get(), baos);
+                    return TemplateResource.fillWithImageData(metadata, variant.get().getContentType(), baos.toByteArray());
+                }
                 fileUploadManager.outputFile(metadata.getId(), baos);
                 return TemplateResource.fillWithImageData(metadata, baos.toByteArray());
             });
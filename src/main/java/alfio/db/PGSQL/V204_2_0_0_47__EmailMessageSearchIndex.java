@@ -0,0 +1,48 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.db.PGSQL;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Trigram index for the email log search. The email_message table can be large, therefore the index is built
+ * concurrently, in order not to block the email queue while it is being created. "create index concurrently" cannot
+ * run in a transaction block, and the index depends on the optional pg_trgm extension (see V204_2.0.0.37), hence
+ * the java migration.
+ */
+public class V204_2_0_0_47__EmailMessageSearchIndex extends BaseJavaMigration {
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return false;
+    }
+
+    @Override
+    public void migrate(Context context) {
+        var jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        Integer trgmInstalled = jdbcTemplate.queryForObject("select count(*) from pg_extension where extname = 'pg_trgm'", Integer.class);
+        if (trgmInstalled == null || trgmInstalled == 0) {
+            return;
+        }
+        // must match EmailMessageRepository.SEARCH_TEXT. Each column is coalesced, otherwise a null subject or message
+        // would make the whole text null, and the message would never match
+        jdbcTemplate.execute("create index concurrently if not exists idx_email_message_search_text on email_message using gin ((coalesce(recipient, '') || chr(31) || coalesce(subject, '') || chr(31) || coalesce(message, '')) gin_trgm_ops)");
+    }
+}
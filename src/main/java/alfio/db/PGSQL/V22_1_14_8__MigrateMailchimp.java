@@ -17,6 +17,7 @@
 package alfio.db.PGSQL;
 
 import alfio.extension.Extension;
+import alfio.extension.ExtensionLogWriter;
 import alfio.extension.ExtensionService;
 import alfio.extension.ScriptingExecutionService;
 import alfio.manager.system.ExternalConfiguration;
@@ -67,7 +68,7 @@ public class V22_1_14_8__MigrateMailchimp extends BaseJavaMigration {
         ExtensionRepository extensionRepository = QueryFactory.from(ExtensionRepository.class, "PGSQL", dataSource);
         ExtensionLogRepository extensionLogRepository = QueryFactory.from(ExtensionLogRepository.class, "PGSQL", dataSource);
         PluginRepository pluginRepository = QueryFactory.from(PluginRepository.class, "PGSQL", dataSource);
-        ExtensionService extensionService = new ExtensionService(new ScriptingExecutionService(HttpClient.newHttpClient(), () -> Executors.newSingleThreadExecutor()), extensionRepository, extensionLogRepository, new DataSourceTransactionManager(dataSource), new ExternalConfiguration());
+        ExtensionService extensionService = new ExtensionService(new ScriptingExecutionService(HttpClient.newHttpClient(), () -> Executors.newSingleThreadExecutor()), extensionRepository, extensionLogRepository, new ExternalConfiguration(), ExtensionLogWriter.synchronous(extensionLogRepository, new DataSourceTransactionManager(dataSource)));
 
         extensionService.createOrUpdate(null, null, new Extension("-", "mailchimp", getMailChimpScript(), true));
 
@@ -0,0 +1,231 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.config.support.WorkloadRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource.Workload;
+import alfio.model.ExtensionLog;
+import alfio.repository.ExtensionLogRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists the entries produced by the extensions.
+ *
+ * In asynchronous mode the entries are collected in a bounded buffer and written in JDBC batches by a background thread,
+ * so that a script execution does not need to borrow a second connection from the pool just for logging.
+ * In synchronous mode every entry is written immediately in a new transaction.
+ */
+@Log4j2
+public class ExtensionLogWriter implements AutoCloseable {
+
+    public enum OverflowPolicy {
+        /**
+         * drop SUCCESS and INFO entries, write WARNING and ERROR entries synchronously
+         */
+        DROP_LOW_SEVERITY,
+        /**
+         * write the entry synchronously
+         */
+        CALLER_RUNS,
+        /**
+         * drop the entry
+         */
+        DROP
+    }
+
+    private final ExtensionLogRepository extensionLogRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Entry> buffer;
+    private final int batchSize;
+    private final double successSamplingRate;
+    private final OverflowPolicy overflowPolicy;
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final AtomicLong droppedEntries = new AtomicLong();
+    private final Object flushLock = new Object();
+
+    ExtensionLogWriter(ExtensionLogRepository extensionLogRepository,
+                       PlatformTransactionManager transactionManager,
+                       int bufferSize,
+                       int batchSize,
+                       long flushIntervalMillis,
+                       double successSamplingRate,
+                       OverflowPolicy overflowPolicy) {
+        this.extensionLogRepository = extensionLogRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.batchSize = Math.max(1, batchSize);
+        this.successSamplingRate = successSamplingRate;
+        this.overflowPolicy = overflowPolicy;
+        if(bufferSize > 0) {
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "extension-log-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.writer.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.buffer = null;
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Creates an asynchronous writer, configured using the following properties:
+     * <ul>
+     *     <li>alfio.extension.log.buffer-size: max number of pending entries (default 4096). 0 disables the buffer</li>
+     *     <li>alfio.extension.log.batch-size: max number of entries written in a single batch (default 200)</li>
+     *     <li>alfio.extension.log.flush-interval-ms: interval between two flushes (default 1000)</li>
+     *     <li>alfio.extension.log.success-sampling-rate: fraction of SUCCESS entries to be persisted, between 0 and 1 (default 1)</li>
+     *     <li>alfio.extension.log.overflow-policy: what to do when the buffer is full, see {@link OverflowPolicy} (default DROP_LOW_SEVERITY)</li>
+     * </ul>
+     */
+    public static ExtensionLogWriter fromEnvironment(ExtensionLogRepository extensionLogRepository,
+                                                     PlatformTransactionManager transactionManager,
+                                                     Environment environment) {
+        double samplingRate = environment.getProperty("alfio.extension.log.success-sampling-rate", Double.class, 1.0);
+        return new ExtensionLogWriter(extensionLogRepository,
+            transactionManager,
+            environment.getProperty("alfio.extension.log.buffer-size", Integer.class, 4096),
+            environment.getProperty("alfio.extension.log.batch-size", Integer.class, 200),
+            environment.getProperty("alfio.extension.log.flush-interval-ms", Long.class, 1000L),
+            Math.min(1.0, Math.max(0.0, samplingRate)),
+            environment.getProperty("alfio.extension.log.overflow-policy", OverflowPolicy.class, OverflowPolicy.DROP_LOW_SEVERITY));
+    }
+
+    /**
+     * Creates a writer which persists every entry immediately, in a new transaction.
+     */
+    public static ExtensionLogWriter synchronous(ExtensionLogRepository extensionLogRepository,
+                                                 PlatformTransactionManager transactionManager) {
+        return new ExtensionLogWriter(extensionLogRepository, transactionManager, 0, 1, 0L, 1.0, OverflowPolicy.CALLER_RUNS);
+    }
+
+    public void write(String effectivePath, String path, String name, String description, ExtensionLog.Type type) {
+        if(type == ExtensionLog.Type.SUCCESS && !isSampled()) {
+            return;
+        }
+        var entry = new Entry(effectivePath, path, name, description, type, System.nanoTime());
+        if(buffer == null || writer.isShutdown()) {
+            writeBatch(List.of(entry));
+            return;
+        }
+        if(buffer.offer(entry)) {
+            if(buffer.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+                writer.execute(this::scheduledFlush);
+            }
+        } else {
+            handleOverflow(entry);
+        }
+    }
+
+    /**
+     * Writes all the pending entries.
+     */
+    public void flush() {
+        if(buffer == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            while(buffer.drainTo(batch, batchSize) > 0) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    long getDroppedEntries() {
+        return droppedEntries.get();
+    }
+
+    @Override
+    public void close() {
+        if(writer != null) {
+            writer.shutdown();
+            flush();
+        }
+    }
+
+    private void scheduledFlush() {
+        flushRequested.set(false);
+        try {
+            flush();
+            long dropped = droppedEntries.getAndSet(0);
+            if(dropped > 0) {
+                log.warn("extension log buffer was full, {} entries have been dropped", dropped);
+            }
+        } catch (Exception e) {
+            log.warn("unexpected error while flushing extension log", e);
+        }
+    }
+
+    private void handleOverflow(Entry entry) {
+        boolean writeSynchronously = overflowPolicy == OverflowPolicy.CALLER_RUNS
+            || (overflowPolicy == OverflowPolicy.DROP_LOW_SEVERITY && (entry.type == ExtensionLog.Type.ERROR || entry.type == ExtensionLog.Type.WARNING));
+        if(writeSynchronously) {
+            writeBatch(List.of(entry));
+        } else {
+            droppedEntries.incrementAndGet();
+        }
+    }
+
+    private boolean isSampled() {
+        return successSamplingRate >= 1.0 || (successSamplingRate > 0.0 && ThreadLocalRandom.current().nextDouble() < successSamplingRate);
+    }
+
+    private void writeBatch(List<Entry> entries) {
+        long now = System.nanoTime();
+        var params = entries.stream()
+            .map(e -> new MapSqlParameterSource("effectivePath", e.effectivePath)
+                .addValue("path", e.path)
+                .addValue("name", e.name)
+                .addValue("description", e.description)
+                .addValue("type", e.type.name())
+                .addValue("ageMillis", TimeUnit.NANOSECONDS.toMillis(now - e.createdAtNanos)))
+            .toArray(MapSqlParameterSource[]::new);
+        try {
+            // entries can be written synchronously on a request thread, but they are not part of the request
+            WorkloadRoutingDataSource.executeAs(Workload.BACKGROUND, () -> transactionTemplate.execute(s -> extensionLogRepository.bulkInsert(params)));
+        } catch (Exception e) {
+            log.warn("cannot write {} extension log entries", entries.size(), e);
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Entry {
+        private final String effectivePath;
+        private final String path;
+        private final String name;
+        private final String description;
+        private final ExtensionLog.Type type;
+        private final long createdAtNanos;
+    }
+}
@@ -17,6 +17,7 @@
 
 package alfio.extension;
 
+import alfio.extension.support.AsyncExtensionExecutor;
 import alfio.manager.support.extension.ExtensionCapability;
 import alfio.manager.support.extension.ExtensionEvent;
 import alfio.manager.system.ExternalConfiguration;
@@ -28,20 +29,21 @@ import alfio.model.PurchaseContext;
 import alfio.model.user.Organization;
 import alfio.repository.ExtensionLogRepository;
 import alfio.repository.ExtensionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.AllArgsConstructor;
+import lombok.Value;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.DefaultTransactionDefinition;
-import org.springframework.transaction.support.TransactionCallback;
-import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -63,43 +65,77 @@ public class ExtensionService {
     private final ScriptingExecutionService scriptingExecutionService;
     private final ExtensionRepository extensionRepository;
     private final ExtensionLogRepository extensionLogRepository;
-    private final PlatformTransactionManager platformTransactionManager;
     private final ExternalConfiguration externalConfiguration;
+    private final ExtensionLogWriter extensionLogWriter;
+
+    // extension configuration is modified very rarely, so we cache what is needed for executing the scripts.
+    // Local modifications invalidate the caches, the expiration limits the staleness of modifications made by other instances
+    private final Cache<ActiveScriptsKey, List<ScriptPathNameHash>> activeScripts = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .maximumSize(10_000)
+        .build();
+    private final Cache<ExecutionBundleKey, ExecutionBundle> executionBundles = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .maximumSize(10_000)
+        .build();
+    private final Cache<Pair<ExtensionCapability, String>, Optional<ScriptPathNameHash>> scriptsForCapability = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .maximumSize(10_000)
+        .build();
+
+    @Value
+    private static class ActiveScriptsKey {
+        String event;
+        String basePath;
+        boolean async;
+    }
+
+    @Value
+    private static class ExecutionBundleKey {
+        String path;
+        String name;
+        String hash;
+        String basePath;
+    }
+
+    /**
+     * Everything needed for executing an extension on a given path:
+     * the script, the resolved parameters and the mandatory parameters without a value
+     */
+    @Value
+    private static class ExecutionBundle {
+        String script;
+        Map<String, String> parameters;
+        Set<String> missingMandatoryParameters;
+    }
 
 
     @AllArgsConstructor
     private static final class ExtensionLoggerImpl implements ExtensionLogger {
 
-        private final ExtensionLogRepository extensionLogRepository;
-        private final PlatformTransactionManager platformTransactionManager;
+        private final ExtensionLogWriter extensionLogWriter;
         private final String effectivePath;
         private final String path;
         private final String name;
 
         @Override
         public void logWarning(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.WARNING));
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.WARNING);
         }
 
         @Override
         public void logSuccess(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.SUCCESS));
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.SUCCESS);
         }
 
         @Override
         public void logError(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.ERROR));
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.ERROR);
         }
 
         @Override
         public void logInfo(String msg) {
-            executeInNewTransaction(s -> extensionLogRepository.insert(effectivePath, path, name, msg, ExtensionLog.Type.INFO));
-        }
-
-        private void executeInNewTransaction(TransactionCallback<Integer> t) {
-            DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-            TransactionTemplate template = new TransactionTemplate(platformTransactionManager, definition);
-            template.execute(t);
+            extensionLogWriter.write(effectivePath, path, name, msg, ExtensionLog.Type.INFO);
         }
     }
 
@@ -162,6 +198,7 @@ public class ExtensionService {
                 }
             }
         }
+        extensionsChanged();
     }
 
     void validateCapabilities(ExtensionMetadata extensionMetadata) {
@@ -204,6 +241,7 @@ public class ExtensionService {
     @Transactional
     public void deleteSettingValue(int id, String path) {
         extensionRepository.deleteSettingValue(id, path);
+        extensionsChanged();
     }
 
     private void deleteAndInsertSetting(String level, String path, List<ExtensionMetadataValue> toUpdate) {
@@ -215,17 +253,40 @@ public class ExtensionService {
         for (ExtensionMetadataValue v : filtered) {
             extensionRepository.insertSettingValue(v.getId(), path, v.getValue());
         }
+        extensionsChanged();
     }
 
     @Transactional
     public void toggle(String path, String name, boolean status) {
         extensionRepository.toggle(path, name, status);
+        extensionsChanged();
     }
 
     @Transactional
     public void delete(String path, String name) {
         extensionRepository.deleteEventsForPath(path, name);
         extensionRepository.deleteScriptForPath(path, name);
+        extensionsChanged();
+    }
+
+    private void extensionsChanged() {
+        invalidateCaches();
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            // values loaded while the transaction was still running might be stale, either because
+            // the modification was not yet visible or because it has been rolled back
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateCaches();
+                }
+            });
+        }
+    }
+
+    private void invalidateCaches() {
+        activeScripts.invalidateAll();
+        executionBundles.invalidateAll();
+        scriptsForCapability.invalidateAll();
     }
 
     @Transactional(readOnly = true)
@@ -274,7 +335,8 @@ public class ExtensionService {
         if(!externalConfCapabilities.isEmpty()) {
             return Optional.of(externalConfCapabilities.get(0));
         }
-        return extensionRepository.getFirstScriptForCapability(generatePossiblePath(basePath), capability.name());
+        return scriptsForCapability.get(Pair.of(capability, basePath),
+            k -> extensionRepository.getFirstScriptForCapability(generatePossiblePath(basePath), capability.name()));
     }
 
     public <T> Optional<T> executeCapability(ExtensionCapability capability,
@@ -320,45 +382,38 @@ public class ExtensionService {
                                            Class<T> expectedResult) {
         String path = activePath.getPath();
         String name = activePath.getName();
-        Pair<Set<String>, Map<String, Object>> params = addExtensionParameters(input, basePath, activePath);
-        var context = params.getRight();
-        ExtensionLogger extLogger = new ExtensionLoggerImpl(extensionLogRepository, platformTransactionManager, basePath, path, name);
-
-        if(params.getLeft().isEmpty()) {
-            Supplier<String> scriptGetter = () -> getScript(path, name)+"\n;"+executeInstruction;
+        var bundle = getExecutionBundle(activePath, basePath);
+        Map<String, Object> context = new HashMap<>(input);
+        context.put(EXTENSION_PARAMETERS, bundle.getParameters());
+        ExtensionLogger extLogger = new ExtensionLoggerImpl(extensionLogWriter, basePath, path, name);
+
+        if(bundle.getMissingMandatoryParameters().isEmpty()) {
+            // the compiled script is cached by the scripting service, the key must then identify the whole source
+            String scriptHash = activePath.getHash() + ";" + executeInstruction;
+            Supplier<String> scriptGetter = () -> bundle.getScript()+"\n;"+executeInstruction;
             if(async) {
-                scriptingExecutionService.executeScriptAsync(path, name, activePath.getHash(), scriptGetter, context, extLogger);
+                scriptingExecutionService.executeScriptAsync(path, name, scriptHash, scriptGetter, context, extLogger);
             } else {
-                Object res = scriptingExecutionService.executeScript(name, activePath.getHash(), scriptGetter, context, expectedResult, extLogger);
+                Object res = scriptingExecutionService.executeScript(name, scriptHash, scriptGetter, context, expectedResult, extLogger);
                 context.put("output", res);
             }
         } else {
-            extLogger.logInfo("script not run, missing parameters: " + params.getLeft());
+            extLogger.logInfo("script not run, missing parameters: " + bundle.getMissingMandatoryParameters());
         }
         return context;
     }
 
-    /*
-    * Return a copy of the input with added parameters and a set of missing mandatory parameters, if any
-    * */
-    private Pair<Set<String>, Map<String,Object>> addExtensionParameters(Map<String, Object> input, String basePath, ScriptPathNameHash activePath) {
-        if(ExternalConfiguration.isExternalPath(activePath.getPath())) {
-            return getExternalExtensionParameters(input, activePath);
-        } else {
-            return getExtensionParameters(input, basePath, activePath);
-        }
-    }
-
-    private Pair<Set<String>, Map<String, Object>> getExternalExtensionParameters(Map<String, Object> input, ScriptPathNameHash activePath) {
-        Map<String, Object> copy = new HashMap<>(input);
-        // we assume that external parameters are defined correctly.
-        copy.put(EXTENSION_PARAMETERS, externalConfiguration.getParametersForExtension(activePath.getName()));
-        return Pair.of(Set.of(), copy);
+    private ExecutionBundle getExecutionBundle(ScriptPathNameHash activePath, String basePath) {
+        var key = new ExecutionBundleKey(activePath.getPath(), activePath.getName(), activePath.getHash(), basePath);
+        return executionBundles.get(key, k -> loadExecutionBundle(activePath, basePath));
     }
 
-
-    private Pair<Set<String>, Map<String, Object>> getExtensionParameters(Map<String, Object> input, String basePath, ScriptPathNameHash activePath) {
-        Map<String, Object> copy = new HashMap<>(input);
+    private ExecutionBundle loadExecutionBundle(ScriptPathNameHash activePath, String basePath) {
+        String script = getScript(activePath.getPath(), activePath.getName());
+        if(ExternalConfiguration.isExternalPath(activePath.getPath())) {
+            // we assume that external parameters are defined correctly.
+            return new ExecutionBundle(script, externalConfiguration.getParametersForExtension(activePath.getName()), Set.of());
+        }
         Map<String, String> nameAndValues = extensionRepository.findParametersForScript(activePath.getName(), activePath.getPath(), generatePossiblePath(basePath))
             .stream()
             .collect(Collectors.toMap(NameAndValue::getName, NameAndValue::getValue));
@@ -366,9 +421,7 @@ public class ExtensionService {
         Set<String> mandatory = new HashSet<>(extensionRepository.findMandatoryParametersForScript(activePath.getName(), activePath.getPath()));
 
         mandatory.removeAll(nameAndValues.keySet());
-
-        copy.put(EXTENSION_PARAMETERS, nameAndValues);
-        return Pair.of(mandatory, copy);
+        return new ExecutionBundle(script, Collections.unmodifiableMap(nameAndValues), Collections.unmodifiableSet(mandatory));
     }
 
     private List<ScriptPathNameHash> getActiveScriptsForEvent(String event, String basePath, boolean async) {
@@ -380,10 +433,12 @@ public class ExtensionService {
         //  - -org
         //  - -
         // the one with the longest path win
-        Set<String> paths = generatePossiblePath(basePath);
-        var allExtensions = new ArrayList<>(externalConfiguration.getAllExtensionsFor(event, async));
-        allExtensions.addAll(extensionRepository.findActive(paths, async, event));
-        return allExtensions;
+        return activeScripts.get(new ActiveScriptsKey(event, basePath, async), k -> {
+            Set<String> paths = generatePossiblePath(basePath);
+            var allExtensions = new ArrayList<>(externalConfiguration.getAllExtensionsFor(event, async));
+            allExtensions.addAll(extensionRepository.findActive(paths, async, event));
+            return Collections.unmodifiableList(allExtensions);
+        });
     }
 
     private static Set<String> generatePossiblePath(String basePath, Comparator<String> comparator) {
@@ -415,11 +470,17 @@ public class ExtensionService {
     @Transactional(readOnly = true)
     public Pair<List<ExtensionLog>, Integer> getLog(String path, String name, ExtensionLog.Type type, int pageSize, int offset) {
         String typeAsString = type != null ? type.name() : null;
+        // make sure that the pending entries are visible
+        extensionLogWriter.flush();
         int count = extensionLogRepository.countPages(path, name, typeAsString);
         List<ExtensionLog> logs = extensionLogRepository.getPage(path, name, typeAsString, pageSize, offset);
         return Pair.of(logs, count);
     }
 
+    public List<AsyncExtensionExecutor.Statistics> getAsyncExecutionStatistics() {
+        return scriptingExecutionService.getAsyncExecutionStatistics();
+    }
+
     public static String toPath(EventAndOrganizationId event) {
         return "-" + event.getOrganizationId() + "-" + event.getId();
     }
@@ -18,6 +18,7 @@
 package alfio.extension;
 
 import alfio.extension.exception.OutOfBoundariesException;
+import alfio.extension.support.AsyncExtensionExecutor;
 import alfio.extension.support.SandboxContextFactory;
 import alfio.util.Json;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -29,12 +30,11 @@ import org.springframework.stereotype.Service;
 
 import java.net.http.HttpClient;
 import java.time.Duration;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -55,15 +55,25 @@ public class ScriptingExecutionService {
     private final Supplier<Executor> executorSupplier;
     private final ScriptableObject sealedScope;
 
+    // one executor for each extension, so that a slow extension cannot delay the others
     private final Cache<String, Executor> asyncExecutors = Caffeine.newBuilder()
         .expireAfterAccess(Duration.ofHours(12))
         .removalListener((String key, Executor value, RemovalCause cause) -> {
             if (value instanceof ExecutorService) {
                 ((ExecutorService) value).shutdown();
+            } else if (value instanceof AsyncExtensionExecutor) {
+                ((AsyncExtensionExecutor) value).shutdown();
             }
         })
         .build();
 
+    // scripts compiled in interpreted mode can be safely shared and executed concurrently.
+    // The key identifies the script source, so that a modified script is compiled again
+    private final Cache<String, Script> compiledScripts = Caffeine.newBuilder()
+        .maximumSize(500)
+        .expireAfterAccess(Duration.ofHours(12))
+        .build();
+
     static {
         ContextFactory.initGlobal(new SandboxContextFactory());
     }
@@ -85,17 +95,38 @@ public class ScriptingExecutionService {
         }
     }
 
+    /**
+     * Executes the script identified by the given hash. The script is fetched and compiled only if it hasn't been compiled before.
+     */
     public <T> T executeScript(String name, String hash, Supplier<String> scriptFetcher, Map<String, Object> params, Class<T> clazz, ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, scriptFetcher.get(), params, clazz, extensionLogger);
+        return executeScriptFinally(name, cx -> compiledScripts.get(hash, k -> cx.compileString(scriptFetcher.get(), name, 1, null)), params, clazz, extensionLogger);
     }
 
     public void executeScriptAsync(String path, String name, String hash, Supplier<String> scriptFetcher, Map<String, Object> params,  ExtensionLogger extensionLogger) {
-        Optional.ofNullable(asyncExecutors.get(path, key -> executorSupplier.get()))
-            .ifPresent(it -> it.execute(() -> executeScript(name, hash, scriptFetcher, params, Object.class, extensionLogger)));
+        Optional.ofNullable(asyncExecutors.get(path + "/" + name, key -> executorSupplier.get()))
+            .ifPresent(it -> {
+                try {
+                    it.execute(() -> executeScript(name, hash, scriptFetcher, params, Object.class, extensionLogger));
+                } catch (RejectedExecutionException ex) {
+                    log.warn("async execution of extension {} on path {} has been rejected", name, path);
+                    extensionLogger.logError("Script not executed: too many pending executions.");
+                }
+            });
+    }
+
+    /**
+     * Returns the statistics of the asynchronous executors, one for each extension.
+     */
+    public List<AsyncExtensionExecutor.Statistics> getAsyncExecutionStatistics() {
+        return asyncExecutors.asMap().entrySet().stream()
+            .filter(e -> e.getValue() instanceof AsyncExtensionExecutor)
+            .map(e -> ((AsyncExtensionExecutor) e.getValue()).getStatistics(e.getKey()))
+            .sorted(Comparator.comparing(AsyncExtensionExecutor.Statistics::getExtension))
+            .collect(Collectors.toList());
     }
 
     public <T> T executeScript(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, script, params, clazz, extensionLogger);
+        return executeScriptFinally(name, cx -> cx.compileString(script, name, 1, null), params, clazz, extensionLogger);
     }
 
     public static class JavaClassInterop {
@@ -118,7 +149,7 @@ public class ScriptingExecutionService {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T executeScriptFinally(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
+    private <T> T executeScriptFinally(String name, Function<Context, Script> scriptProvider, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
         Context cx = Context.enter();
         try {
             if(params == null) {
@@ -145,7 +176,7 @@ public class ScriptingExecutionService {
                 }
             }
             Object res;
-            res = cx.evaluateString(scope, script, name, 1, null);
+            res = scriptProvider.apply(cx).exec(cx, scope);
             extensionLogger.logSuccess("Script executed successfully.");
             if (res instanceof NativeJavaObject) {
                 NativeJavaObject nativeRes = (NativeJavaObject) res;
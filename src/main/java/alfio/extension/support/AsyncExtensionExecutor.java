@@ -0,0 +1,280 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension.support;
+
+import alfio.config.support.WorkloadRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource.Workload;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executor dedicated to the asynchronous execution of a single extension.
+ *
+ * It has a bounded queue and a limited number of threads. Each execution is interrupted if it runs for
+ * longer than the configured timeout, so that a blocked HTTP call cannot stall the extension forever. Scripts stuck
+ * in a CPU-bound loop don't react to interruption: they are stopped by {@link SandboxContextFactory}, which checks
+ * {@link #isCurrentExecutionTimedOut()} while observing the instruction count.
+ */
+@Log4j2
+public class AsyncExtensionExecutor implements Executor {
+
+    public enum OverflowPolicy {
+        /**
+         * wait until there is room in the queue. No execution is lost, and the callers are slowed down to the pace
+         * of the extension. This is the default
+         */
+        BLOCK,
+        /**
+         * execute the script in the calling thread. Use with care: the script runs within the caller's transaction
+         * and is not subject to the execution timeout. Opt-in
+         */
+        CALLER_RUNS,
+        /**
+         * reject the execution. The rejection is counted in the statistics and reported to the extension log.
+         * Opt-in: the side effects of the rejected executions are lost
+         */
+        DISCARD
+    }
+
+    private static final int RUNNING = 0;
+    private static final int COMPLETED = 1;
+    private static final int TIMING_OUT = 2;
+    private static final int TIMED_OUT = 3;
+
+    // state of the execution running on the current thread, if any
+    private static final ThreadLocal<AtomicInteger> CURRENT_EXECUTION = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor delegate;
+    private final ScheduledExecutorService watchdog;
+    private final Duration timeout;
+    private final OverflowPolicy overflowPolicy;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalExecutionNanos = new LongAdder();
+    private final AtomicLong maxExecutionNanos = new AtomicLong();
+
+    AsyncExtensionExecutor(int concurrency,
+                           int queueCapacity,
+                           Duration timeout,
+                           OverflowPolicy overflowPolicy,
+                           ThreadFactory threadFactory,
+                           ScheduledExecutorService watchdog) {
+        this.delegate = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        // idle extensions don't need to keep a thread alive
+        this.delegate.allowCoreThreadTimeOut(true);
+        this.watchdog = watchdog;
+        this.timeout = timeout;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Creates a supplier of executors, configured using the following properties:
+     * <ul>
+     *     <li>alfio.extension.async.concurrency: max number of concurrent executions for a single extension (default 1)</li>
+     *     <li>alfio.extension.async.queue-capacity: max number of pending executions for a single extension (default 500)</li>
+     *     <li>alfio.extension.async.timeout-seconds: max duration of a single execution (default 60)</li>
+     *     <li>alfio.extension.async.overflow-policy: what to do when the queue is full, see {@link OverflowPolicy} (default BLOCK)</li>
+     *     <li>alfio.extension.async.virtual-threads: run the extensions on virtual threads, if supported by the JVM (default false)</li>
+     * </ul>
+     */
+    public static Supplier<Executor> supplier(Environment environment) {
+        int concurrency = Math.max(1, environment.getProperty("alfio.extension.async.concurrency", Integer.class, 1));
+        int queueCapacity = Math.max(1, environment.getProperty("alfio.extension.async.queue-capacity", Integer.class, 500));
+        var timeout = Duration.ofSeconds(environment.getProperty("alfio.extension.async.timeout-seconds", Integer.class, 60));
+        var overflowPolicy = environment.getProperty("alfio.extension.async.overflow-policy", OverflowPolicy.class, OverflowPolicy.BLOCK);
+        var threadFactory = environment.getProperty("alfio.extension.async.virtual-threads", Boolean.class, false) ? virtualThreadFactory() : platformThreadFactory();
+        var watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "extension-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return () -> new AsyncExtensionExecutor(concurrency, queueCapacity, timeout, overflowPolicy, threadFactory, watchdog);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long enqueuedAt = System.nanoTime();
+        Runnable task = () -> run(command, enqueuedAt);
+        try {
+            delegate.execute(task);
+        } catch (RejectedExecutionException ex) {
+            if(delegate.isShutdown()) {
+                rejected.increment();
+                throw ex;
+            }
+            // an extension thread waiting for its own executor could wait forever
+            boolean callerRunsRequired = overflowPolicy == OverflowPolicy.CALLER_RUNS
+                || (overflowPolicy == OverflowPolicy.BLOCK && CURRENT_EXECUTION.get() != null);
+            if(callerRunsRequired) {
+                runInCallerThread(command);
+            } else if(overflowPolicy == OverflowPolicy.BLOCK) {
+                waitForCapacity(task, ex);
+            } else {
+                rejected.increment();
+                throw ex;
+            }
+        }
+    }
+
+    private void runInCallerThread(Runnable command) {
+        callerRuns.increment();
+        // the connections opened by the script must not be taken from the pool reserved to the HTTP requests
+        WorkloadRoutingDataSource.executeAs(Workload.BACKGROUND, () -> {
+            command.run();
+            return null;
+        });
+    }
+
+    private void waitForCapacity(Runnable task, RejectedExecutionException rejection) {
+        blocked.increment();
+        long start = System.nanoTime();
+        try {
+            delegate.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw rejection;
+        }
+        if(delegate.isShutdown() && delegate.remove(task)) {
+            rejected.increment();
+            throw rejection;
+        }
+        // the workers could have been released while we were waiting
+        delegate.prestartCoreThread();
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if(waitMillis >= 1000) {
+            log.warn("waited {} ms for room in the queue of an async extension", waitMillis);
+        }
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public Statistics getStatistics(String extension) {
+        long executed = completed.sum() + failed.sum();
+        return new Statistics(extension,
+            delegate.getQueue().size(),
+            delegate.getActiveCount(),
+            completed.sum(),
+            failed.sum(),
+            timedOut.sum(),
+            rejected.sum(),
+            callerRuns.sum(),
+            blocked.sum(),
+            executed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / executed) : 0,
+            executed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalExecutionNanos.sum() / executed) : 0,
+            TimeUnit.NANOSECONDS.toMillis(maxExecutionNanos.get()));
+    }
+
+    /**
+     * Returns true if the current thread is running an asynchronous execution which has exceeded its timeout.
+     */
+    static boolean isCurrentExecutionTimedOut() {
+        var state = CURRENT_EXECUTION.get();
+        return state != null && state.get() >= TIMING_OUT;
+    }
+
+    private void run(Runnable command, long enqueuedAt) {
+        long startedAt = System.nanoTime();
+        totalWaitNanos.add(startedAt - enqueuedAt);
+        var thread = Thread.currentThread();
+        var state = new AtomicInteger(RUNNING);
+        CURRENT_EXECUTION.set(state);
+        var timeoutTask = watchdog.schedule(() -> {
+            // the execution is interrupted only if it is still running
+            if(state.compareAndSet(RUNNING, TIMING_OUT)) {
+                timedOut.increment();
+                thread.interrupt();
+                state.set(TIMED_OUT);
+            }
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            command.run();
+            completed.increment();
+        } catch (Exception ex) {
+            // the error has been already reported to the extension log
+            failed.increment();
+            log.trace("error while executing extension", ex);
+        } finally {
+            timeoutTask.cancel(false);
+            CURRENT_EXECUTION.remove();
+            if(!state.compareAndSet(RUNNING, COMPLETED)) {
+                // the watchdog has interrupted this thread: wait until it's done, then clear the
+                // interrupted flag, so that it doesn't leak into the next execution
+                while(state.get() == TIMING_OUT) {
+                    Thread.onSpinWait();
+                }
+                Thread.interrupted();
+            }
+            long executionNanos = System.nanoTime() - startedAt;
+            totalExecutionNanos.add(executionNanos);
+            maxExecutionNanos.accumulateAndGet(executionNanos, Math::max);
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        var counter = new AtomicInteger();
+        return r -> {
+            var thread = new Thread(r, "extension-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            // virtual threads are available starting from Java 21
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not supported by the current JVM. Falling back to platform threads.");
+            return platformThreadFactory();
+        }
+    }
+
+    @Value
+    public static class Statistics {
+        String extension;
+        int queued;
+        int active;
+        long completed;
+        long failed;
+        long timedOut;
+        long rejected;
+        long callerRuns;
+        long blocked;
+        long averageWaitMillis;
+        long averageExecutionMillis;
+        long maxExecutionMillis;
+    }
+}
@@ -59,6 +59,11 @@ public class SandboxContextFactory extends ContextFactory {
             // get control back through catch or finally.
             throw new ExecutionTimeoutException("Script execution timeout.");
         }
+        if (AsyncExtensionExecutor.isCurrentExecutionTimedOut()) {
+            // the async execution has exceeded its own timeout. The interrupt sent by the watchdog
+            // is ignored by a CPU-bound script, therefore we stop it here
+            throw new ExecutionTimeoutException("Async script execution timeout.");
+        }
     }
 
     @Override
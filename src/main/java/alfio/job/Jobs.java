@@ -20,6 +20,8 @@ import alfio.config.Initializer;
 import alfio.manager.*;
 import alfio.manager.system.AdminJobExecutor;
 import alfio.manager.system.AdminJobManager;
+import alfio.manager.system.ScheduledJobRuntime;
+import alfio.manager.system.ScheduledJobRuntime.JobOptions;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.time.DateUtils;
@@ -29,6 +31,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.Date;
 import java.util.Map;
 
@@ -36,6 +39,7 @@ import java.util.Map;
  * <p>Scheduled jobs. Important: all the jobs must be able to run on multiple instance at the same time.</p>
  * <p>Take great care in placing a select id ... for update skip locked to avoid multiple job execution for the same object</p>
  * <p>Note: it's a separate package, as we need to ensure that the called method are public (and possibly @Transactional!)</p>
+ * <p>The methods annotated with {@link Scheduled} only trigger the jobs, which are then executed by {@link ScheduledJobRuntime}.</p>
  *
  */
 @Component
@@ -51,6 +55,10 @@ public class Jobs {
     private static final int FIVE_SECONDS = 1000 * 5;
     private static final int THIRTY_MINUTES = 30 * ONE_MINUTE;
 
+    private static final Duration SHORT_JITTER = Duration.ofSeconds(1);
+    private static final Duration MEDIUM_JITTER = Duration.ofSeconds(5);
+    private static final Duration LONG_JITTER = Duration.ofSeconds(30);
+
     private final AdminReservationRequestManager adminReservationRequestManager;
     private final FileUploadManager fileUploadManager;
     private final NotificationManager notificationManager;
@@ -58,122 +66,159 @@ public class Jobs {
     private final TicketReservationManager ticketReservationManager;
     private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
     private final AdminJobManager adminJobManager;
+    private final ScheduledJobRuntime jobRuntime;
 
 
     //cron each minute: "0 0/1 * * * ?"
 
     @Scheduled(fixedRate = ONE_MINUTE * 60)
     public void cleanupUnreferencedBlobFiles() {
-        log.trace("running job cleanupUnreferencedBlobFiles");
-        try {
-            fileUploadManager.cleanupUnreferencedBlobFiles(DateUtils.addDays(new Date(), -1));
-        } finally {
-            log.trace("end job cleanupUnreferencedBlobFiles");
-        }
+        jobRuntime.run("cleanupUnreferencedBlobFiles", JobOptions.singleNode(LONG_JITTER), () -> {
+            log.trace("running job cleanupUnreferencedBlobFiles");
+            try {
+                fileUploadManager.cleanupUnreferencedBlobFiles(DateUtils.addDays(new Date(), -1));
+            } finally {
+                log.trace("end job cleanupUnreferencedBlobFiles");
+            }
+        });
     }
 
 
     @Scheduled(fixedRate = THIRTY_SECONDS)
     public void generateSpecialPriceCodes() {
-        log.trace("running job generateSpecialPriceCodes");
-        try {
-            specialPriceTokenGenerator.generatePendingCodes();
-        } finally {
-            log.trace("end job generateSpecialPriceCodes");
-        }
+        jobRuntime.run("generateSpecialPriceCodes", JobOptions.singleNode(MEDIUM_JITTER), () -> {
+            log.trace("running job generateSpecialPriceCodes");
+            try {
+                specialPriceTokenGenerator.generatePendingCodes();
+            } finally {
+                log.trace("end job generateSpecialPriceCodes");
+            }
+        });
     }
 
 
     //run each hour
     @Scheduled(cron = "0 0 0/1 * * ?")
     public void sendOfflinePaymentReminderToEventOrganizers() {
-        log.trace("running job sendOfflinePaymentReminderToEventOrganizers");
-        try {
-            adminJobManager.scheduleExecution(AdminJobExecutor.JobName.SEND_OFFLINE_PAYMENT_TO_ORGANIZER, Map.of());
-        } finally {
-            log.trace("end job sendOfflinePaymentReminderToEventOrganizers");
-        }
+        scheduleAdminJob(AdminJobExecutor.JobName.SEND_OFFLINE_PAYMENT_TO_ORGANIZER, "sendOfflinePaymentReminderToEventOrganizers");
+    }
+
+    //run each day at 03:30
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void deleteExpiredEmails() {
+        scheduleAdminJob(AdminJobExecutor.JobName.DELETE_EXPIRED_EMAILS, "deleteExpiredEmails");
     }
 
 
     @Scheduled(fixedRate = FIVE_SECONDS)
     public void sendEmails() {
-        log.trace("running job sendEmails");
-        try {
-            notificationManager.sendWaitingMessages();
-        } finally {
-            log.trace("end job sendEmails");
-        }
+        var options = JobOptions.allNodes(SHORT_JITTER).withBacklog(notificationManager::countWaitingMessages);
+        jobRuntime.runAndCount("sendEmails", options, () -> {
+            log.trace("running job sendEmails");
+            try {
+                return notificationManager.sendWaitingMessages();
+            } finally {
+                log.trace("end job sendEmails");
+            }
+        });
     }
 
     @Scheduled(fixedRate = FIVE_SECONDS)
     public void processReservationRequests() {
-        log.trace("running job processReservationRequests");
-        try {
-            long start = System.currentTimeMillis();
-            Pair<Integer, Integer> result = adminReservationRequestManager.processPendingReservations();
-            if (result.getLeft() > 0 || result.getRight() > 0) {
-                log.info("ProcessReservationRequests: got {} success and {} failures. Elapsed {} ms", result.getLeft(), result.getRight(), System.currentTimeMillis() - start);
+        jobRuntime.runAndCount("processReservationRequests", JobOptions.allNodes(SHORT_JITTER), () -> {
+            log.trace("running job processReservationRequests");
+            try {
+                long start = System.currentTimeMillis();
+                Pair<Integer, Integer> result = adminReservationRequestManager.processPendingReservations();
+                if (result.getLeft() > 0 || result.getRight() > 0) {
+                    log.info("ProcessReservationRequests: got {} success and {} failures. Elapsed {} ms", result.getLeft(), result.getRight(), System.currentTimeMillis() - start);
+                }
+                return result.getLeft() + result.getRight();
+            } finally {
+                log.trace("end job processReservationRequests");
             }
-        } finally {
-            log.trace("end job processReservationRequests");
-        }
+        });
     }
 
 
     @Scheduled(fixedRate = THIRTY_MINUTES)
     public void sendOfflinePaymentReminder() {
-        log.trace("running job sendOfflinePaymentReminder");
-        try {
-            adminJobManager.scheduleExecution(AdminJobExecutor.JobName.SEND_OFFLINE_PAYMENT_REMINDER, Map.of());
-        } finally {
-            log.trace("end job sendOfflinePaymentReminder");
-        }
+        scheduleAdminJob(AdminJobExecutor.JobName.SEND_OFFLINE_PAYMENT_REMINDER, "sendOfflinePaymentReminder");
     }
 
     @Scheduled(fixedRate = THIRTY_MINUTES)
     public void sendTicketAssignmentReminder() {
-        log.trace("running job sendTicketAssignmentReminder");
-        try {
-            adminJobManager.scheduleExecution(AdminJobExecutor.JobName.SEND_TICKET_ASSIGNMENT_REMINDER, Map.of());
-        } finally {
-            log.trace("end job sendTicketAssignmentReminder");
-        }
+        scheduleAdminJob(AdminJobExecutor.JobName.SEND_TICKET_ASSIGNMENT_REMINDER, "sendTicketAssignmentReminder");
     }
 
 
     @Scheduled(fixedRate = THIRTY_SECONDS)
     public void cleanupExpiredPendingReservation() {
-        log.trace("running job cleanupExpiredPendingReservation");
-        try {
-            //cleanup reservation that have a expiration older than "now minus 10 minutes": this give some additional slack.
-            final Date expirationDate = DateUtils.addMinutes(new Date(), -10);
-            ticketReservationManager.cleanupExpiredReservations(expirationDate);
-            ticketReservationManager.cleanupExpiredOfflineReservations(expirationDate);
-            ticketReservationManager.markExpiredInPaymentReservationAsStuck(expirationDate);
-        } finally {
-            log.trace("end job cleanupExpiredPendingReservation");
-        }
+        jobRuntime.run("cleanupExpiredPendingReservation", JobOptions.singleNode(MEDIUM_JITTER), () -> {
+            log.trace("running job cleanupExpiredPendingReservation");
+            try {
+                //cleanup reservation that have a expiration older than "now minus 10 minutes": this give some additional slack.
+                final Date expirationDate = DateUtils.addMinutes(new Date(), -10);
+                ticketReservationManager.cleanupExpiredReservations(expirationDate);
+                ticketReservationManager.cleanupExpiredOfflineReservations(expirationDate);
+                ticketReservationManager.markExpiredInPaymentReservationAsStuck(expirationDate);
+            } finally {
+                log.trace("end job cleanupExpiredPendingReservation");
+            }
+        });
     }
 
 
     @Scheduled(fixedRate = THIRTY_SECONDS)
     public void processReleasedTickets() {
-        log.trace("running job processReleasedTickets");
-        try {
-            waitingQueueSubscriptionProcessor.handleWaitingTickets();
-        } finally {
-            log.trace("end job processReleasedTickets");
-        }
+        jobRuntime.run("processReleasedTickets", JobOptions.singleNode(MEDIUM_JITTER), () -> {
+            log.trace("running job processReleasedTickets");
+            try {
+                waitingQueueSubscriptionProcessor.handleWaitingTickets();
+            } finally {
+                log.trace("end job processReleasedTickets");
+            }
+        });
     }
 
     @Scheduled(fixedRateString = "#{environment.acceptsProfiles('dev') ? (1000 * 60) : (30 * 60 * 1000)}")
     public void checkOfflinePaymentsStatus() {
-        log.trace("running job checkOfflinePaymentsStatus");
-        try {
-            adminJobManager.scheduleExecution(AdminJobExecutor.JobName.CHECK_OFFLINE_PAYMENTS, Map.of());
-        } finally {
-            log.trace("end job checkOfflinePaymentsStatus");
-        }
+        scheduleAdminJob(AdminJobExecutor.JobName.CHECK_OFFLINE_PAYMENTS, "checkOfflinePaymentsStatus");
+    }
+
+    @Scheduled(fixedDelay = ONE_MINUTE)
+    public void processAdminJobs() {
+        var options = JobOptions.allNodes(MEDIUM_JITTER).withBacklog(adminJobManager::countPendingRequests);
+        jobRuntime.run("processAdminJobs", options, () -> {
+            log.trace("running job processAdminJobs");
+            try {
+                adminJobManager.processPendingRequests();
+            } finally {
+                log.trace("end job processAdminJobs");
+            }
+        });
+    }
+
+    @Scheduled(cron = "#{environment.acceptsProfiles('dev') ? '0 * * * * *' : '0 0 0 * * *'}")
+    public void cleanupExpiredAdminJobs() {
+        jobRuntime.run("cleanupExpiredAdminJobs", JobOptions.singleNode(LONG_JITTER), () -> {
+            log.trace("running job cleanupExpiredAdminJobs");
+            try {
+                adminJobManager.cleanupExpiredRequests();
+            } finally {
+                log.trace("end job cleanupExpiredAdminJobs");
+            }
+        });
+    }
+
+    private void scheduleAdminJob(AdminJobExecutor.JobName jobName, String name) {
+        jobRuntime.run(name, JobOptions.singleNode(LONG_JITTER), () -> {
+            log.trace("running job {}", name);
+            try {
+                adminJobManager.scheduleExecution(jobName, Map.of());
+            } finally {
+                log.trace("end job {}", name);
+            }
+        });
     }
 }
@@ -27,17 +27,18 @@ import alfio.util.RenderedTemplate;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Component;
 
-import java.util.EnumSet;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Component
 @AllArgsConstructor
 public class BillingDocumentJobExecutor implements AdminJobExecutor {
 
+    private static final int BATCH_SIZE = 50;
+
     private final BillingDocumentManager billingDocumentManager;
     private final TicketReservationManager ticketReservationManager;
     private final EventRepository eventRepository;
@@ -51,26 +52,70 @@ public class BillingDocumentJobExecutor implements AdminJobExecutor {
 
     @Override
     public String process(AdminJobSchedule schedule) {
-        var metadata = schedule.getMetadata();
-        int eventId = Objects.requireNonNull((Integer) metadata.get("eventId"));
-        var username = (String) metadata.get("username");
-        var event = eventRepository.findById(eventId);
-        var counter = new AtomicInteger();
-        Pattern.compile(",")
-            .splitAsStream(Objects.requireNonNull((String) metadata.get("ids")))
-            .map(String::trim)
-            .map(Long::valueOf)
-            .forEach(id -> {
-                var billingDocument = billingDocumentManager.getDocumentById(id).orElseThrow();
-                var reservation = ticketReservationManager.findById(billingDocument.getReservationId()).orElseThrow();
-                billingDocumentManager.createBillingDocument(event, reservation, username, ticketReservationManager.orderSummaryForReservation(reservation, event));
-                counter.incrementAndGet();
-            });
-        if(counter.get() > 0) {
+        var ids = documentIds(schedule);
+        int generated = regenerate(schedule, ids);
+        onComplete(schedule, List.of(String.valueOf(generated)));
+        return "generated";
+    }
+
+    @Override
+    public List<Partition> partition(AdminJobSchedule schedule) {
+        int batches = (documentIds(schedule).size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        return IntStream.range(0, batches).mapToObj(Partition::batch).collect(Collectors.toList());
+    }
+
+    @Override
+    public String process(AdminJobSchedule schedule, Partition partition) {
+        return String.valueOf(regenerate(schedule, batch(schedule, partition)));
+    }
+
+    @Override
+    public String process(AdminJobSchedule schedule, Partition partition, Checkpoint checkpoint) {
+        // each document is committed on its own, so that a retry does not generate it again
+        var ids = batch(schedule, partition);
+        ids.forEach(id -> checkpoint.runOnce(String.valueOf(id), () -> regenerate(schedule, List.of(id))));
+        return String.valueOf(ids.size());
+    }
+
+    @Override
+    public void onComplete(AdminJobSchedule schedule, List<String> results) {
+        int generated = results.stream().filter(Objects::nonNull).mapToInt(Integer::parseInt).sum();
+        if(generated > 0) {
+            var event = eventRepository.findById(eventId(schedule));
             var organization = organizationRepository.getById(event.getOrganizationId());
             notificationManager.sendSimpleEmail(event, null, organization.getEmail(), "Invoice Regeneration complete",
-                () -> RenderedTemplate.plaintext("Invoice regeneration for event "+event.getDisplayName()+ " is now complete. "+counter.get()+" invoices generated.", Map.of()));
+                () -> RenderedTemplate.plaintext("Invoice regeneration for event "+event.getDisplayName()+ " is now complete. "+generated+" invoices generated.", Map.of()));
         }
-        return "generated";
+    }
+
+    private int regenerate(AdminJobSchedule schedule, List<Long> ids) {
+        var username = (String) schedule.getMetadata().get("username");
+        var event = eventRepository.findById(eventId(schedule));
+        var counter = new AtomicInteger();
+        ids.forEach(id -> {
+            var billingDocument = billingDocumentManager.getDocumentById(id).orElseThrow();
+            var reservation = ticketReservationManager.findById(billingDocument.getReservationId()).orElseThrow();
+            billingDocumentManager.createBillingDocument(event, reservation, username, ticketReservationManager.orderSummaryForReservation(reservation, event));
+            counter.incrementAndGet();
+        });
+        return counter.get();
+    }
+
+    private static List<Long> batch(AdminJobSchedule schedule, Partition partition) {
+        var ids = documentIds(schedule);
+        int from = partition.getIdAsInt() * BATCH_SIZE;
+        return ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+    }
+
+    private static int eventId(AdminJobSchedule schedule) {
+        return Objects.requireNonNull((Integer) schedule.getMetadata().get("eventId"));
+    }
+
+    private static List<Long> documentIds(AdminJobSchedule schedule) {
+        return Pattern.compile(",")
+            .splitAsStream(Objects.requireNonNull((String) schedule.getMetadata().get("ids")))
+            .map(String::trim)
+            .map(Long::valueOf)
+            .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,62 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.job.executor;
+
+import alfio.manager.NotificationManager;
+import alfio.manager.system.AdminJobExecutor;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.system.AdminJobSchedule;
+import alfio.util.ClockProvider;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static alfio.manager.system.AdminJobExecutor.JobName.DELETE_EXPIRED_EMAILS;
+import static alfio.model.system.ConfigurationKeys.EMAIL_RETENTION_DAYS;
+
+/**
+ * Deletes the messages sent more than {@link alfio.model.system.ConfigurationKeys#EMAIL_RETENTION_DAYS} days ago. The retention is disabled by default.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class EmailRetentionJobExecutor implements AdminJobExecutor {
+
+    private final NotificationManager notificationManager;
+    private final ConfigurationManager configurationManager;
+    private final ClockProvider clockProvider;
+
+    @Override
+    public Set<JobName> getJobNames() {
+        return EnumSet.of(DELETE_EXPIRED_EMAILS);
+    }
+
+    @Override
+    public String process(AdminJobSchedule schedule) {
+        int retentionDays = configurationManager.getForSystem(EMAIL_RETENTION_DAYS).getValueAsIntOrDefault(0);
+        if(retentionDays <= 0) {
+            return null;
+        }
+        int deleted = notificationManager.deleteCompletedMessages(ZonedDateTime.now(clockProvider.getClock()).minusDays(retentionDays));
+        log.info("deleted {} emails older than {} days", deleted, retentionDays);
+        return "deleted " + deleted + " emails";
+    }
+}
@@ -23,7 +23,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static alfio.manager.system.AdminJobExecutor.JobName.*;
 
@@ -64,4 +66,62 @@ public class ReservationJobExecutor implements AdminJobExecutor {
         }
         return "OK";
     }
+
+    @Override
+    public List<Partition> partition(AdminJobSchedule schedule) {
+        switch(schedule.getJobName()) {
+            case CHECK_OFFLINE_PAYMENTS:
+            case SEND_OFFLINE_PAYMENT_TO_ORGANIZER:
+                return toEventPartitions(ticketReservationManager.findActiveEventIds());
+            case SEND_TICKET_ASSIGNMENT_REMINDER:
+                return toEventPartitions(ticketReservationManager.findNotifiableEventIds());
+            default:
+                return List.of(Partition.whole());
+        }
+    }
+
+    @Override
+    public String process(AdminJobSchedule schedule, Partition partition) {
+        if(partition.getType() != Partition.Type.EVENT) {
+            return process(schedule);
+        }
+        int eventId = partition.getIdAsInt();
+        switch(schedule.getJobName()) {
+            case CHECK_OFFLINE_PAYMENTS:
+                ticketReservationManager.checkOfflinePaymentsStatus(eventId);
+                break;
+            case SEND_TICKET_ASSIGNMENT_REMINDER:
+                ticketReservationManager.sendReminderForTicketAssignment(eventId);
+                ticketReservationManager.sendReminderForOptionalData(eventId);
+                break;
+            case SEND_OFFLINE_PAYMENT_TO_ORGANIZER:
+                ticketReservationManager.sendReminderForOfflinePaymentsToEventManagers(eventId);
+                break;
+            default:
+                return null;
+        }
+        return "OK";
+    }
+
+    @Override
+    public String process(AdminJobSchedule schedule, Partition partition, Checkpoint checkpoint) {
+        if(partition.getType() != Partition.Type.EVENT || schedule.getJobName() != SEND_TICKET_ASSIGNMENT_REMINDER) {
+            return AdminJobExecutor.super.process(schedule, partition, checkpoint);
+        }
+        // the two reminders are independent: if the second one fails, the first one must not be sent again
+        int eventId = partition.getIdAsInt();
+        checkpoint.runOnce("assignment", () -> {
+            ticketReservationManager.sendReminderForTicketAssignment(eventId);
+            return null;
+        });
+        checkpoint.runOnce("optional-data", () -> {
+            ticketReservationManager.sendReminderForOptionalData(eventId);
+            return null;
+        });
+        return "OK";
+    }
+
+    private static List<Partition> toEventPartitions(List<Integer> eventIds) {
+        return eventIds.stream().map(Partition::event).collect(Collectors.toList());
+    }
 }
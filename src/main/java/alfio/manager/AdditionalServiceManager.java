@@ -16,6 +16,8 @@
  */
 package alfio.manager;
 
+import alfio.config.support.ReplicaRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource;
 import alfio.model.AdditionalService;
 import alfio.model.AdditionalServiceItemExport;
 import alfio.model.AdditionalServiceText;
@@ -97,6 +99,7 @@ public class AdditionalServiceManager {
         additionalServiceRepository.delete(additionalServiceId, eventId);
     }
 
+    @Transactional(readOnly = true, label = {ReplicaRoutingDataSource.REPLICA, WorkloadRoutingDataSource.EXPORT})
     public List<AdditionalServiceItemExport> exportItemsForEvent(AdditionalService.AdditionalServiceType type,
                                                                  int eventId,
                                                                  String locale) {
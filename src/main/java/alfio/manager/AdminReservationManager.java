@@ -50,7 +50,6 @@ import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -72,7 +71,6 @@ import static alfio.model.Audit.EntityType.TICKET;
 import static alfio.model.Audit.EventType.CANCEL_TICKET;
 import static alfio.model.Audit.EventType.UPDATE_TICKET;
 import static alfio.model.modification.DateTimeModification.fromZonedDateTime;
-import static alfio.util.EventUtil.generateEmptyTickets;
 import static alfio.util.MonetaryUtil.unitToCents;
 import static alfio.util.Wrappers.optionally;
 import static java.util.Collections.singletonList;
@@ -575,8 +573,7 @@ public class AdminReservationManager {
     }
 
     private void createMissingTickets(Event event, int tickets) {
-        final MapSqlParameterSource[] params = generateEmptyTickets(event, Date.from(event.now(clockProvider).toInstant()), tickets, Ticket.TicketStatus.FREE).toArray(MapSqlParameterSource[]::new);
-        ticketRepository.bulkTicketInitialization(params);
+        ticketRepository.bulkTicketInitialization(event.getId(), null, 0, event.now(clockProvider), Ticket.TicketStatus.FREE, tickets, created -> {});
     }
 
     @Transactional
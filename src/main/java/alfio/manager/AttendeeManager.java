@@ -16,6 +16,8 @@
  */
 package alfio.manager;
 
+import alfio.config.support.ReplicaRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource;
 import alfio.manager.support.CheckInStatus;
 import alfio.manager.support.DefaultCheckInResult;
 import alfio.manager.support.SponsorAttendeeData;
@@ -25,16 +27,21 @@ import alfio.model.*;
 import alfio.model.result.ErrorCode;
 import alfio.model.result.Result;
 import alfio.model.support.TicketWithAdditionalFields;
+import alfio.model.user.Role;
+import alfio.model.user.User;
 import alfio.repository.*;
 import alfio.repository.user.UserRepository;
 import alfio.util.ClockProvider;
 import alfio.util.EventUtil;
 import lombok.AllArgsConstructor;
+import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -51,6 +58,19 @@ public class AttendeeManager {
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
     private final ClockProvider clockProvider;
 
+    /**
+     * Loads the scans of all the enabled sponsors visible to the given user, together with the values of the
+     * additional fields of the scanned tickets, so that the export can be written after the transaction has been closed.
+     */
+    @Transactional(readOnly = true, label = {ReplicaRoutingDataSource.REPLICA, WorkloadRoutingDataSource.EXPORT})
+    public List<Triple<User, DetailedScanData, Map<String, String>>> loadSponsorScansForExport(int eventId, String username) {
+        return userManager.findAllEnabledUsers(username).stream()
+            .filter(u -> userManager.getUserRole(u) == Role.SPONSOR)
+            .flatMap(u -> sponsorScanRepository.loadSponsorData(eventId, u.getId(), SponsorScanRepository.DEFAULT_TIMESTAMP).stream()
+                .map(data -> Triple.of(u, data, ticketFieldRepository.findAllValuesForTicketId(data.getTicket().getId()))))
+            .collect(Collectors.toList());
+    }
+
     public TicketAndCheckInResult registerSponsorScan(String eventShortName, String ticketUid, String notes, SponsorScan.LeadStatus leadStatus, String username) {
         int userId = userRepository.getByUsername(username).getId();
         Optional<EventAndOrganizationId> maybeEvent = eventRepository.findOptionalEventAndOrganizationIdByShortName(eventShortName);
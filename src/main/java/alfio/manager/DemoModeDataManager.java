@@ -18,6 +18,7 @@ package alfio.manager;
 
 import alfio.config.Initializer;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.user.ApiKeyCredentialCache;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.user.User;
 import alfio.repository.EventDeleterRepository;
@@ -44,6 +45,7 @@ public class DemoModeDataManager {
     private final EventDeleterRepository eventDeleterRepository;
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
+    private final ApiKeyCredentialCache apiKeyCredentialCache;
 
     public List<Integer> findExpiredUsers(Date date) {
         return userRepository.findUsersToDeleteOlderThan(date, User.Type.DEMO);
@@ -56,7 +58,10 @@ public class DemoModeDataManager {
             var disabledEventIds = eventRepository.disableEventsForUsers(userIds);
             log.info("found {} events to delete", disabledEventIds.size());
             disabledEventIds.forEach(eventDeleterRepository::deleteAllForEvent);
-            userIds.forEach(userRepository::deleteUserAndReferences);
+            userIds.forEach(userId -> {
+                userRepository.deleteUserAndReferences(userId);
+                apiKeyCredentialCache.invalidate(userId);
+            });
             int deletedOrganizations = organizationRepository.deleteOrganizationsIfEmpty(organizationIds);
             log.info("deleted {} empty organizations", deletedOrganizations);
         }
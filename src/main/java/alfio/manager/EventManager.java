@@ -17,8 +17,11 @@
 package alfio.manager;
 
 import alfio.config.Initializer;
+import alfio.config.support.ReplicaRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource;
 import alfio.controller.form.SearchOptions;
 import alfio.manager.support.CategoryEvaluator;
+import alfio.manager.support.EventCodeIndex;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -33,11 +36,11 @@ import alfio.model.result.ErrorCode;
 import alfio.model.result.Result;
 import alfio.model.support.CheckInOutputColorConfiguration;
 import alfio.model.support.CheckInOutputColorConfiguration.ColorConfiguration;
+import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.Organization;
 import alfio.repository.*;
-import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.ClockProvider;
 import alfio.util.Json;
@@ -45,12 +48,14 @@ import alfio.util.MonetaryUtil;
 import alfio.util.RequestUtils;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.IterableUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.flywaydb.core.Flyway;
 import org.springframework.core.env.Environment;
@@ -115,10 +120,10 @@ public class EventManager {
     private final ExtensionManager extensionManager;
     private final GroupRepository groupRepository;
     private final NamedParameterJdbcTemplate jdbcTemplate;
-    private final ConfigurationRepository configurationRepository;
     private final PaymentManager paymentManager;
     private final ClockProvider clockProvider;
     private final SubscriptionRepository subscriptionRepository;
+    private final EventCodeIndex eventCodeIndex;
 
 
     public Event getSingleEvent(String eventName, String username) {
@@ -382,8 +387,7 @@ public class EventManager {
         if(seatsDifference != 0) {
             Event modified = eventRepository.findById(eventId);
             if(seatsDifference > 0) {
-                final MapSqlParameterSource[] params = generateEmptyTickets(modified, Date.from(ZonedDateTime.now(clockProvider.withZone(modified.getZoneId())).toInstant()), seatsDifference, TicketStatus.RELEASED).toArray(MapSqlParameterSource[]::new);
-                ticketRepository.bulkTicketInitialization(params);
+                createTickets(modified, null, 0, ZonedDateTime.now(clockProvider.withZone(modified.getZoneId())), TicketStatus.RELEASED, seatsDifference);
             } else {
                 List<Integer> ids = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, Math.abs(seatsDifference), singletonList(TicketStatus.FREE.name()));
                 Validate.isTrue(ids.size() == Math.abs(seatsDifference), "cannot lock enough tickets for deletion.");
@@ -582,35 +586,41 @@ public class EventManager {
         reallocateTickets(ticketCategory, Optional.empty(), event);
     }
 
-    MapSqlParameterSource[] prepareTicketsBulkInsertParameters(ZonedDateTime creation,
-                                                               Event event, int requestedTickets, TicketStatus ticketStatus) {
-
-        //FIXME: the date should be inserted as ZonedDateTime !
-        Date creationDate = Date.from(creation.toInstant());
-
+    List<TicketAllocation> planTicketsCreation(Event event, int requestedTickets) {
         List<TicketCategory> categories = ticketCategoryRepository.findAllTicketCategories(event.getId());
-        Stream<MapSqlParameterSource> boundedTickets = categories.stream()
-                .filter(IS_CATEGORY_BOUNDED)
-                .flatMap(tc -> generateTicketsForCategory(tc, event, creationDate, 0));
-        int generatedTickets = categories.stream()
+        List<TicketAllocation> allocations = categories.stream()
                 .filter(IS_CATEGORY_BOUNDED)
-                .mapToInt(TicketCategory::getMaxTickets)
+                .map(tc -> new TicketAllocation(tc.getId(), tc.getSrcPriceCts(), tc.getMaxTickets()))
+                .collect(toCollection(ArrayList::new));
+        int generatedTickets = allocations.stream()
+                .mapToInt(TicketAllocation::getCount)
                 .sum();
-        if(generatedTickets >= requestedTickets) {
-            return boundedTickets.toArray(MapSqlParameterSource[]::new);
+        if(generatedTickets < requestedTickets) {
+            allocations.add(new TicketAllocation(null, 0, requestedTickets - generatedTickets));
+        }
+        return allocations;
+    }
+
+    private void createTickets(EventAndOrganizationId event,
+                               Integer categoryId,
+                               int srcPriceCts,
+                               ZonedDateTime creation,
+                               TicketStatus ticketStatus,
+                               int count) {
+        long start = System.currentTimeMillis();
+        int created = ticketRepository.bulkTicketInitialization(event.getId(), categoryId, srcPriceCts, creation, ticketStatus, count,
+            progress -> log.debug("created {}/{} tickets for event {}", progress, count, event.getId()));
+        if(created >= TicketRepository.BULK_CHUNK_SIZE) {
+            log.info("created {} tickets for event {} in {} ms", created, event.getId(), System.currentTimeMillis() - start);
         }
-
-        return Stream.concat(boundedTickets, generateEmptyTickets(event, creationDate, requestedTickets - generatedTickets, ticketStatus)).toArray(MapSqlParameterSource[]::new);
     }
 
-    private Stream<MapSqlParameterSource> generateTicketsForCategory(TicketCategory tc,
-                                                                     Event event,
-                                                                     Date creationDate,
-                                                                     int existing) {
-        Optional<TicketCategory> filteredTC = Optional.of(tc).filter(TicketCategory::isBounded);
-        int missingTickets = filteredTC.map(c -> Math.abs(c.getMaxTickets() - existing)).orElseGet(() -> eventRepository.countExistingTickets(event.getId()) - existing);
-        return generateStreamForTicketCreation(missingTickets)
-                    .map(ps -> buildTicketParams(event.getId(), creationDate, filteredTC, tc.getSrcPriceCts(), ps));
+    @Getter
+    @AllArgsConstructor
+    static final class TicketAllocation {
+        private final Integer categoryId;
+        private final int srcPriceCts;
+        private final int count;
     }
 
     private void createCategoriesForEvent(EventModification em, Event event) {
@@ -663,6 +673,7 @@ public class EventManager {
             requireNonNullElse(tc.getTicketCheckInStrategy(), ONCE_PER_EVENT),
             requireNonNullElseGet(tc.getMetadata(), AlfioMetadata::empty),
             requireNonNullElse(tc.getTicketAccessType(), TicketCategory.TicketAccessType.INHERIT));
+        eventCodeIndex.invalidate(eventId);
         TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(category.getKey(), eventId);
         if(tc.isBounded()) {
             List<Integer> lockedTickets = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, ticketCategory.getMaxTickets(), asList(TicketStatus.FREE.name(), TicketStatus.RELEASED.name()));
@@ -708,11 +719,8 @@ public class EventManager {
                     colorConfiguration = new CheckInOutputColorConfiguration(colorConfiguration.getDefaultColorName(), newList);
                 }
             }
-            if(existingConfiguration) {
-                configurationRepository.updateEventLevel(event.getId(), event.getOrganizationId(), CHECK_IN_COLOR_CONFIGURATION.name(), Json.toJson(colorConfiguration));
-            } else {
-                configurationRepository.insertEventLevel(event.getOrganizationId(), event.getId(), CHECK_IN_COLOR_CONFIGURATION.name(), Json.toJson(colorConfiguration), null);
-            }
+            // saved through ConfigurationManager, so that the values derived from the configuration are refreshed
+            configurationManager.saveConfig(Configuration.from(event, CHECK_IN_COLOR_CONFIGURATION), Json.toJson(colorConfiguration));
 
         }
     }
@@ -753,6 +761,7 @@ public class EventManager {
                 atZone(tc.getTicketValidityStart(), zoneId),
                 atZone(tc.getTicketValidityEnd(), zoneId),
                 requireNonNullElse(tc.getTicketCheckInStrategy(), ONCE_PER_EVENT), tc.getTicketAccessType());
+        eventCodeIndex.invalidate(eventId);
         TicketCategory updated = ticketCategoryRepository.getByIdAndActive(tc.getId(), eventId);
         int addedTickets = 0;
         if(original.isBounded() ^ tc.isBounded()) {
@@ -851,15 +860,15 @@ public class EventManager {
                 throw new IllegalStateException("Cannot invalidate "+absDifference+" tickets. There are only "+actualDifference+" free tickets");
             }
             ticketRepository.invalidateTickets(ids);
-            final MapSqlParameterSource[] params = generateEmptyTickets(event, Date.from(event.now(clockProvider).toInstant()), absDifference, TicketStatus.RELEASED).toArray(MapSqlParameterSource[]::new);
-            ticketRepository.bulkTicketInitialization(params);
+            createTickets(event, null, 0, event.now(clockProvider), TicketStatus.RELEASED, absDifference);
         }
     }
 
     private void createAllTicketsForEvent(Event event, EventModification em) {
         Validate.notNull(em.getAvailableSeats());
-        final MapSqlParameterSource[] params = prepareTicketsBulkInsertParameters(event.now(clockProvider), event, em.getAvailableSeats(), TicketStatus.FREE);
-        ticketRepository.bulkTicketInitialization(params);
+        var creation = event.now(clockProvider);
+        planTicketsCreation(event, em.getAvailableSeats())
+            .forEach(a -> createTickets(event, a.getCategoryId(), a.getSrcPriceCts(), creation, TicketStatus.FREE, a.getCount()));
     }
 
     private int insertEvent(EventModification em) {
@@ -950,6 +959,11 @@ public class EventManager {
         }
 
         promoCodeRepository.addPromoCode(promoCode, eventId, organizationId, start, end, discountAmount, discountType, Json.GSON.toJson(categoriesId), maxUsage, description, emailReference, codeType, hiddenCategoryId);
+        if(eventId != null) {
+            eventCodeIndex.invalidate(eventId);
+        } else {
+            eventCodeIndex.invalidateAll();
+        }
     }
     
     public void deletePromoCode(int promoCodeId) {
@@ -979,12 +993,22 @@ public class EventManager {
         return StringUtils.removeEnd(baseUrl, "/") + "/event/" + event.getShortName() + "/";
     }
 
-    public List<TicketWithReservationAndTransaction> findAllConfirmedTicketsForCSV(String eventName, String username) {
+    /**
+     * Loads the confirmed tickets of the given event, together with the values of their additional fields,
+     * so that the export can be written after the transaction has been closed.
+     */
+    @Transactional(readOnly = true, label = {ReplicaRoutingDataSource.REPLICA, WorkloadRoutingDataSource.EXPORT})
+    public List<Pair<TicketWithReservationAndTransaction, Map<String, String>>> findAllConfirmedTicketsForExport(String eventName,
+                                                                                                              String username,
+                                                                                                              boolean loadAdditionalValues) {
         EventAndOrganizationId event = getEventAndOrganizationId(eventName, username);
         checkOwnership(event, username, event.getOrganizationId());
-        return ticketRepository.findAllConfirmedForCSV(event.getId());
+        return ticketRepository.findAllConfirmedForCSV(event.getId()).stream()
+            .map(trs -> Pair.of(trs, loadAdditionalValues ? ticketFieldRepository.findAllValuesForTicketId(trs.getTicket().getId()) : Map.<String, String>of()))
+            .collect(toList());
     }
 
+    @Transactional(readOnly = true, label = ReplicaRoutingDataSource.REPLICA)
     public List<Event> getPublishedEvents(SearchOptions searchOptions) {
         return eventRepository.findVisibleBySearchOptions(searchOptions.getSubscriptionCodeUUIDOrNull(),
             searchOptions.getOrganizer(),
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.config.support.ReplicaRoutingDataSource;
 import alfio.manager.support.extension.ExtensionCapability;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
@@ -45,7 +46,7 @@ import static org.apache.commons.lang3.ObjectUtils.firstNonNull;
 
 @Component
 @AllArgsConstructor
-@Transactional(readOnly = true)
+@Transactional(readOnly = true, label = ReplicaRoutingDataSource.REPLICA)
 public class EventStatisticsManager {
 
     private final EventRepository eventRepository;
@@ -16,21 +16,26 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.FileBlobCache;
 import alfio.model.FileBlobMetadata;
+import alfio.model.ImageVariant;
 import alfio.model.modification.UploadBase64FileModification;
 import alfio.repository.FileUploadRepository;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalCause;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.imgscalr.Scalr;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.time.Duration;
@@ -47,38 +52,109 @@ public class FileUploadManager {
      */
     static final int MAXIMUM_ALLOWED_SIZE = 1024 * 200;
     private final FileUploadRepository repository;
-    private final Cache<String, File> cache = Caffeine.newBuilder()
-        .maximumSize(20)
-        .expireAfterWrite(Duration.ofMinutes(20))
-        .removalListener((String key, File value, RemovalCause cause) -> {
-            if(value != null) {
-                boolean result = value.delete();
-                log.trace("deleted {}: {}", key, result);
-            }
-        })
+    /**
+     * Maximum size of the local copy of file_blob is 64MB
+     */
+    private static final long FILE_CACHE_MAX_SIZE = 64L * 1024 * 1024;
+    private static final long VARIANT_CACHE_MAX_SIZE = 32L * 1024 * 1024;
+    private static final float VARIANT_COMPRESSION_QUALITY = 0.8f;
+    // the JDK cannot write WebP images. Variants are generated in WebP format only if a plugin is available
+    private static final boolean WEBP_SUPPORTED = ImageIO.getImageWritersByMIMEType("image/webp").hasNext();
+    private final FileBlobCache fileCache = FileBlobCache.inTemporaryDirectory(FILE_CACHE_MAX_SIZE);
+    // variants are generated from the content of fileCache, therefore they must be stored in a separate cache
+    private final FileBlobCache variantCache = FileBlobCache.inTemporaryDirectory(VARIANT_CACHE_MAX_SIZE);
+    // content is addressed by digest, so the metadata can change only when a file_blob is deleted
+    private final Cache<String, FileBlobMetadata> metadataCache = Caffeine.newBuilder()
+        .maximumSize(2000)
+        .expireAfterWrite(Duration.ofHours(1))
         .build();
 
     public Optional<FileBlobMetadata> findMetadata(String id) {
-        return repository.findById(id);
+        var cached = metadataCache.getIfPresent(id);
+        if(cached != null) {
+            return Optional.of(cached);
+        }
+        var result = repository.findById(id);
+        result.ifPresent(metadata -> metadataCache.put(id, metadata));
+        return result;
     }
 
     public void outputFile(String id, OutputStream out) {
-        var file = cache.get(id, identifier -> repository.file(id));
-        if(file == null || !file.exists()) { //fallback, the file will not be cached though
-            cache.invalidate(id);
-            file = repository.file(id);
+        try {
+            fileCache.transferTo(id, os -> repository.copyContent(id, os), out);
+        } catch(EOFException ex){
+            // this happens when the browser closes the stream on its end.
+            log.trace("got EOFException", ex);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while copying data", e);
+        }
+    }
+
+
+    /**
+     * Returns the variant of the given image which fits in the requested size.
+     * If the original image is already small enough, or if it is not an image, the result is empty.
+     *
+     * @param metadata the original image
+     * @param size the requested size
+     * @param webpAccepted whether the client is able to display WebP images
+     * @return the variant, if needed
+     */
+    public Optional<ImageVariant> findImageVariant(FileBlobMetadata metadata, ImageVariant.Size size, boolean webpAccepted) {
+        var attributes = metadata.getAttributes();
+        if(!StringUtils.startsWith(metadata.getContentType(), "image/")
+            || !attributes.containsKey(FileBlobMetadata.ATTR_IMG_WIDTH)
+            || !attributes.containsKey(FileBlobMetadata.ATTR_IMG_HEIGHT)) {
+            return Optional.empty();
+        }
+        int width = Integer.parseInt(attributes.get(FileBlobMetadata.ATTR_IMG_WIDTH));
+        int height = Integer.parseInt(attributes.get(FileBlobMetadata.ATTR_IMG_HEIGHT));
+        if(Math.max(width, height) <= size.getMaxSize()) {
+            return Optional.empty();
+        }
+        if(webpAccepted && WEBP_SUPPORTED) {
+            return Optional.of(new ImageVariant(metadata.getId(), size, "image/webp", "webp"));
+        } else if("image/jpeg".equals(metadata.getContentType())) {
+            return Optional.of(new ImageVariant(metadata.getId(), size, "image/jpeg", "jpeg"));
         }
+        return Optional.of(new ImageVariant(metadata.getId(), size, "image/png", "png"));
+    }
 
-        try (var fis = new FileInputStream(file)){
-            fis.transferTo(out);
+    public void outputImageVariant(ImageVariant variant, OutputStream out) {
+        try {
+            variantCache.transferTo(variant.getId(), os -> writeImageVariant(variant, os), out);
         } catch(EOFException ex){
-            // this happens when the browser closes the stream on its end.
             log.trace("got EOFException", ex);
         } catch (IOException e) {
             throw new IllegalStateException("Error while copying data", e);
         }
     }
 
+    private void writeImageVariant(ImageVariant variant, OutputStream out) {
+        var original = new ByteArrayOutputStream();
+        outputFile(variant.getSourceId(), original);
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(original.toByteArray()));
+            Validate.validState(image != null, "cannot decode image %s", variant.getSourceId());
+            int maxSize = variant.getSize().getMaxSize();
+            BufferedImage resized = Scalr.resize(image, Scalr.Method.QUALITY, Scalr.Mode.AUTOMATIC, maxSize, maxSize, Scalr.OP_ANTIALIAS);
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(variant.getFormatName()).next();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if(!"png".equals(variant.getFormatName()) && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType(param.getCompressionTypes()[0]);
+                param.setCompressionQuality(VARIANT_COMPRESSION_QUALITY);
+            }
+            try (var ios = ImageIO.createImageOutputStream(out)) {
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(resized, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while resizing image", e);
+        }
+    }
 
     public String insertFile(UploadBase64FileModification file) {
         Validate.exclusiveBetween(1, MAXIMUM_ALLOWED_SIZE, file.getFile().length);
@@ -87,12 +163,18 @@ public class FileUploadManager {
             return digest;
         }
         repository.upload(file, digest, getAttributes(file));
+        metadataCache.invalidate(digest);
         return digest;
     }
 
     public void cleanupUnreferencedBlobFiles(Date date) {
         int deleted = repository.cleanupUnreferencedBlobFiles(date);
         log.debug("removed {} unused file_blob", deleted);
+        if(deleted > 0) {
+            metadataCache.invalidateAll();
+            fileCache.invalidateAll();
+            variantCache.invalidateAll();
+        }
     }
 
     private Map<String, String> getAttributes(UploadBase64FileModification file) {
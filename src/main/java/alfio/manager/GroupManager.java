@@ -186,11 +186,8 @@ public class GroupManager {
         boolean preventDuplication = configuration.getType() == ONCE_PER_VALUE;
         boolean limitAssignments = preventDuplication || configuration.getType() == LIMITED_QUANTITY;
         if(limitAssignments) {
-            //reload and lock configuration
-            configuration = groupRepository.getConfigurationForUpdate(configuration.getId());
-            int existing = groupRepository.countExistingWhitelistedTickets(item.getId(), configuration.getId());
             int expected = preventDuplication ? 1 : Optional.ofNullable(configuration.getMaxAllocation()).orElse(0);
-            if(existing >= expected) {
+            if(groupRepository.claimMemberAllocation(configuration.getId(), item.getId(), expected) == 0) {
                 return false;
             }
         }
@@ -210,7 +207,7 @@ public class GroupManager {
             return exactMatch;
         }
         String partial = StringUtils.substringAfterLast(trimmed, "@");
-        return partial.length() > 0 ? groupRepository.findItemEndsWith(configuration.getId(), configuration.getGroupId(), "%@"+partial) : Optional.empty();
+        return partial.length() > 0 ? groupRepository.findItemByDomain(configuration.getGroupId(), partial) : Optional.empty();
     }
 
     @Transactional
@@ -73,6 +73,8 @@ import static java.util.Objects.requireNonNullElseGet;
 @Log4j2
 public class NotificationManager {
 
+    private static final int RETENTION_BATCH_SIZE = 5000;
+
     private final Mailer mailer;
     private final MessageSourceManager messageSourceManager;
     private final EmailMessageRepository emailMessageRepository;
@@ -371,6 +373,26 @@ public class NotificationManager {
         }
     }
 
+    public int countWaitingMessages() {
+        return emailMessageRepository.countWaitingForProcessing();
+    }
+
+    /**
+     * Deletes the messages which have been sent or discarded before the given date.
+     *
+     * @param threshold messages completed before this date will be deleted
+     * @return the number of deleted messages
+     */
+    public int deleteCompletedMessages(ZonedDateTime threshold) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = Optional.ofNullable(tx.execute(status -> emailMessageRepository.deleteCompletedBefore(threshold, RETENTION_BATCH_SIZE))).orElse(0);
+            total += deleted;
+        } while(deleted == RETENTION_BATCH_SIZE);
+        return total;
+    }
+
     @Transactional
     public int sendWaitingMessages() {
         emailMessageRepository.setToRetryOldInProcess(ZonedDateTime.now(clockProvider.getClock()).minusHours(1));
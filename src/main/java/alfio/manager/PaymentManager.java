@@ -21,6 +21,7 @@ import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
 import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
 import alfio.model.transaction.*;
 import alfio.model.transaction.capabilities.ClientServerTokenRequest;
 import alfio.model.transaction.capabilities.ExtractPaymentTokenFromTransaction;
@@ -29,14 +30,20 @@ import alfio.model.transaction.capabilities.RefundRequest;
 import alfio.repository.AuditingRepository;
 import alfio.repository.TransactionRepository;
 import alfio.repository.user.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -55,6 +62,13 @@ public class PaymentManager {
 
     private final List<PaymentProvider> paymentProviders; // injected by Spring
 
+    // the matrix is invalidated as soon as the configuration changes on this node. The expiration takes care of
+    // changes made on other nodes, and of time-dependent options (e.g. offline payment deadline)
+    private final Cache<ProviderMatrixKey, ProviderMatrix> providerMatrixCache = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .maximumSize(1000)
+        .build();
+
     public Optional<PaymentProvider> lookupProviderByTransactionAndCapabilities(Transaction transaction, List<Class<? extends Capability>> capabilities) {
         return paymentProviders.stream()
             .filter(filterByCapabilities(capabilities))
@@ -98,11 +112,17 @@ public class PaymentManager {
     Stream<PaymentProvider> streamActiveProvidersByProxyAndCapabilities(PaymentProxy paymentProxy,
                                                                                 PaymentContext paymentContext,
                                                                                 List<Class<? extends Capability>> capabilities) {
-        return paymentProviders.stream()
-            .filter(pp -> pp.getPaymentProxy() == paymentProxy && pp.isActive(paymentContext))
+        return providerMatrix(paymentContext).activeProviders(paymentProxy).stream()
             .filter(filterByCapabilities(capabilities));
     }
 
+    private ProviderMatrix providerMatrix(PaymentContext paymentContext) {
+        return providerMatrixCache.get(ProviderMatrixKey.from(paymentContext, configurationManager.getConfigurationVersion()),
+            k -> new ProviderMatrix(paymentProviders.stream()
+                .filter(pp -> pp.isActive(paymentContext))
+                .collect(Collectors.groupingBy(PaymentProvider::getPaymentProxy, () -> new EnumMap<>(PaymentProxy.class), Collectors.toList()))));
+    }
+
     private static Predicate<PaymentProvider> filterByCapabilities(List<Class<? extends Capability>> capabilities) {
         return p -> capabilities.isEmpty() || capabilities.stream().allMatch(c -> c.isInstance(p));
     }
@@ -123,10 +143,10 @@ public class PaymentManager {
     }
 
     private Set<PaymentMethod> paymentMethodsByProxy(PaymentContext context, TransactionRequest transactionRequest, PaymentProxy proxy) {
-        return paymentProviders.stream()
+        return providerMatrix(context).supportedMethods(proxy, SupportedMethodsKey.from(transactionRequest), () -> paymentProviders.stream()
             .filter(pp -> pp.getPaymentProxy() == proxy)
             .flatMap(pp -> pp.getSupportedPaymentMethods(context, transactionRequest).stream())
-            .collect(Collectors.toSet());
+            .collect(Collectors.toSet()));
     }
 
     public List<PaymentMethodDTO> getPaymentMethods(PurchaseContext purchaseContext, TransactionRequest transactionRequest) {
@@ -218,8 +238,9 @@ public class PaymentManager {
     }
 
     private Stream<? extends Map.Entry<String, ?>> getProviderOptions(PaymentContext context, PaymentProxy pp) {
-        return streamActiveProvidersByProxy(pp, context)
-            .flatMap(it -> it.getModelOptions(context).entrySet().stream().filter(kv -> kv.getValue() != null));
+        return providerMatrix(context).modelOptions(pp, () -> streamActiveProvidersByProxy(pp, context)
+            .<Map.Entry<String, ?>>flatMap(it -> it.getModelOptions(context).entrySet().stream().filter(kv -> kv.getValue() != null))
+            .collect(Collectors.toList())).stream();
     }
 
     public PaymentToken buildPaymentToken(String gatewayToken, PaymentProxy proxy, PaymentContext context) {
@@ -294,4 +315,84 @@ public class PaymentManager {
             return paymentMethod;
         }
     }
+
+    /**
+     * Identifies a {@link PaymentContext} for the purpose of caching the result of the provider evaluation.
+     * The purchase context is part of the key, since the evaluation may depend on its properties (e.g. online/offline event)
+     */
+    @Data
+    private static final class ProviderMatrixKey {
+        private final long configurationVersion;
+        private final ConfigurationPathLevel pathLevel;
+        private final OptionalInt organizationId;
+        private final OptionalInt eventId;
+        private final OptionalInt categoryId;
+        private final PurchaseContext.PurchaseContextType purchaseContextType;
+        private final String purchaseContextIdentifier;
+
+        private static ProviderMatrixKey from(PaymentContext context, long configurationVersion) {
+            var level = context.getConfigurationLevel();
+            var purchaseContext = context.getPurchaseContext();
+            return new ProviderMatrixKey(configurationVersion,
+                level.getPathLevel(),
+                level.getOrganizationId(),
+                level.getEventId(),
+                level.getTicketCategoryId(),
+                purchaseContext != null ? purchaseContext.getType() : null,
+                purchaseContext != null ? purchaseContext.getPublicIdentifier() : null);
+        }
+    }
+
+    /**
+     * The subset of a {@link TransactionRequest} which is relevant for determining the supported payment methods
+     */
+    @Data
+    private static final class SupportedMethodsKey {
+        private final PaymentProxy paymentProxy;
+        private final Integer priceWithVAT;
+        private final String currencyCode;
+        private final String billingCountry;
+
+        private static SupportedMethodsKey from(TransactionRequest transactionRequest) {
+            var price = transactionRequest.getPrice();
+            var billingDetails = transactionRequest.getBillingDetails();
+            return new SupportedMethodsKey(null,
+                price != null ? price.getPriceWithVAT() : null,
+                price != null ? price.getCurrencyCode() : null,
+                billingDetails != null ? StringUtils.trimToNull(billingDetails.getCountry()) : null);
+        }
+
+        private SupportedMethodsKey withProxy(PaymentProxy proxy) {
+            return new SupportedMethodsKey(proxy, priceWithVAT, currencyCode, billingCountry);
+        }
+    }
+
+    /**
+     * Active providers, supported methods and model options for a given {@link PaymentContext}.
+     * Active providers are computed eagerly, the rest is evaluated lazily and then kept in memory.
+     */
+    private static final class ProviderMatrix {
+        private final Map<PaymentProxy, List<PaymentProvider>> activeProviders;
+        private final Map<SupportedMethodsKey, Set<PaymentMethod>> supportedMethods = new ConcurrentHashMap<>();
+        private final Map<PaymentProxy, List<Map.Entry<String, ?>>> modelOptions = new ConcurrentHashMap<>();
+
+        private ProviderMatrix(Map<PaymentProxy, List<PaymentProvider>> activeProviders) {
+            this.activeProviders = activeProviders;
+        }
+
+        private List<PaymentProvider> activeProviders(PaymentProxy paymentProxy) {
+            return activeProviders.getOrDefault(paymentProxy, List.of());
+        }
+
+        private Set<PaymentMethod> supportedMethods(PaymentProxy paymentProxy,
+                                                    SupportedMethodsKey key,
+                                                    Supplier<Set<PaymentMethod>> loader) {
+            return supportedMethods.computeIfAbsent(key.withProxy(paymentProxy), k -> loader.get());
+        }
+
+        private List<Map.Entry<String, ?>> modelOptions(PaymentProxy paymentProxy,
+                                                        Supplier<List<Map.Entry<String, ?>>> loader) {
+            return modelOptions.computeIfAbsent(paymentProxy, k -> loader.get());
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.Ticket;
+import alfio.model.subscription.Subscription;
+import alfio.repository.SubscriptionRepository;
+import alfio.repository.TicketRepository;
+import alfio.util.PinGenerator;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resolves the PINs generated by {@link PinGenerator}. Each lookup is a single probe on the PIN key index
+ * of the ticket and subscription tables.
+ */
+@Component
+@AllArgsConstructor
+public class PinResolver {
+
+    private final TicketRepository ticketRepository;
+    private final SubscriptionRepository subscriptionRepository;
+
+    /**
+     * Finds the tickets of the given event matching the PIN.
+     *
+     * @param eventId the event ID
+     * @param pin the ticket PIN
+     * @param status the expected ticket status
+     * @return the matching tickets. More than one ticket can match the same PIN.
+     */
+    public List<Ticket> findTickets(int eventId, String pin, Ticket.TicketStatus status) {
+        return PinGenerator.pinToKey(pin)
+            .map(key -> ticketRepository.findByEventIdAndPinKey(eventId, key, status))
+            .orElse(List.of());
+    }
+
+    /**
+     * Finds the IDs of the subscriptions matching the PIN. At most two results are returned, which is enough to
+     * detect an ambiguous PIN.
+     *
+     * @param pin the subscription PIN
+     * @param email if not null, the subscription owner's email address
+     * @return the matching subscription IDs
+     */
+    public List<UUID> findSubscriptionIds(String pin, String email) {
+        return PinGenerator.pinToKey(pin, Subscription.PIN_LENGTH)
+            .map(key -> email != null ? subscriptionRepository.findIdsByPinKeyAndEmail(key, email) : subscriptionRepository.findIdsByPinKey(key))
+            .orElse(List.of());
+    }
+}
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.PollTallyPublisher;
 import alfio.model.EventAndOrganizationId;
 import alfio.model.Ticket;
 import alfio.model.modification.PollModification;
@@ -26,6 +27,8 @@ import alfio.model.result.Result;
 import alfio.repository.*;
 import alfio.util.Json;
 import alfio.util.PinGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.AllArgsConstructor;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -35,7 +38,9 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -52,6 +57,13 @@ public class PollManager {
     private final NamedParameterJdbcTemplate jdbcTemplate;
     private final TicketSearchRepository ticketSearchRepository;
     private final AuditingRepository auditingRepository;
+    private final PinResolver pinResolver;
+    private final PollTallyPublisher pollTallyPublisher;
+    // the number of allowed participants is shown on the live dashboards, which can be refreshed every second
+    private final Cache<Pair<Integer, List<String>>, Integer> allowedParticipantsCache = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofSeconds(10))
+        .maximumSize(1000)
+        .build();
 
     public Result<List<Poll>> getActiveForEvent(String eventName, String pin) {
         return validatePinAndEvent(pin, eventName)
@@ -188,6 +200,7 @@ public class PollManager {
                 Validate.isTrue(ids.size() == result, "Unable to tag tickets");
                 var auditingResults = auditingRepository.registerTicketTag(ids, List.of(Map.of("tag", tag)));
                 Validate.isTrue(auditingResults == ids.size(), "Error while writing auditing");
+                allowedParticipantsCache.invalidate(Pair.of(event.getId(), poll.getAllowedTags()));
                 return true;
             });
     }
@@ -202,6 +215,7 @@ public class PollManager {
                 Validate.isTrue(result == 1, "Error while removing tag");
                 var auditingResults = auditingRepository.registerTicketUntag(ticketIds, List.of(Map.of("tag", tag)));
                 Validate.isTrue(auditingResults == ticketIds.size(), "Error while writing auditing");
+                allowedParticipantsCache.invalidate(Pair.of(event.getId(), poll.getAllowedTags()));
                 return ticketRepository.getTicketsForEventByTags(event.getId(), poll.getAllowedTags());
             });
     }
@@ -226,16 +240,28 @@ public class PollManager {
     public Optional<PollStatistics> getStatisticsFor(String eventName, long pollId) {
         return eventRepository.findOptionalEventAndOrganizationIdByShortName(eventName)
             .flatMap(event -> pollRepository.findSingleForEvent(event.getId(), pollId)
-                .map(p -> {
-                    int allowedParticipants;
-                    if(p.getAllowedTags().isEmpty()) {
-                        allowedParticipants = eventRepository.findStatisticsFor(event.getId()).getCheckedInTickets();
-                    } else {
-                        allowedParticipants = ticketRepository.countTicketsMatchingTagsAndStatus(event.getId(), p.getAllowedTags(), List.of(Ticket.TicketStatus.CHECKED_IN.name()));
-                    }
-                    var statistics = pollRepository.getStatisticsFor(p.getId(), event.getId());
-                    return new PollStatistics(statistics.stream().mapToInt(PollOptionStatistics::getVotes).sum(), allowedParticipants, statistics);
-                }));
+                .map(p -> buildStatistics(event.getId(), p)));
+    }
+
+    public Optional<SseEmitter> subscribeToStatistics(String eventName, long pollId) {
+        return eventRepository.findOptionalEventAndOrganizationIdByShortName(eventName)
+            .flatMap(event -> pollRepository.findSingleForEvent(event.getId(), pollId)
+                .map(p -> pollTallyPublisher.subscribe(event.getId(), p.getId(), buildStatistics(event.getId(), p),
+                    () -> countAllowedParticipants(event.getId(), p.getAllowedTags()))));
+    }
+
+    private PollStatistics buildStatistics(int eventId, Poll poll) {
+        var statistics = pollRepository.getStatisticsFor(poll.getId(), eventId);
+        return new PollStatistics(statistics.stream().mapToInt(PollOptionStatistics::getVotes).sum(), countAllowedParticipants(eventId, poll.getAllowedTags()), statistics);
+    }
+
+    private int countAllowedParticipants(int eventId, List<String> allowedTags) {
+        return allowedParticipantsCache.get(Pair.of(eventId, allowedTags), key -> {
+            if(allowedTags.isEmpty()) {
+                return eventRepository.findStatisticsFor(eventId).getCheckedInTickets();
+            }
+            return ticketRepository.countTicketsMatchingTagsAndStatus(eventId, allowedTags, List.of(Ticket.TicketStatus.CHECKED_IN.name()));
+        });
     }
 
     private void insertOptions(List<PollOptionModification> options, EventAndOrganizationId event, Long pollId) {
@@ -275,9 +301,8 @@ public class PollManager {
             .checkPrecondition(() -> PinGenerator.isPinValid(pin), ErrorCode.custom("pin.invalid", ""))
             .build(eventOptional::get)
             .flatMap(event -> {
-                var partialUuid = PinGenerator.pinToPartialUuid(pin);
                 // find checkedIn ticket
-                var tickets = ticketRepository.findByEventIdAndPartialUUIDForUpdate(event.getId(), partialUuid + "%", Ticket.TicketStatus.CHECKED_IN);
+                var tickets = pinResolver.findTickets(event.getId(), pin, Ticket.TicketStatus.CHECKED_IN);
                 int numResults = tickets.size();
                 if(numResults != 1) {
                     return Result.error(ErrorCode.custom(numResults > 1 ? "pin.duplicate" : "pin.invalid", ""));
@@ -17,6 +17,7 @@
 package alfio.manager;
 
 import alfio.controller.form.ReservationForm;
+import alfio.manager.support.EventCodeIndex;
 import alfio.manager.support.response.ValidatedResponse;
 import alfio.model.Event;
 import alfio.model.PromoCodeDiscount;
@@ -61,6 +62,7 @@ public class PromoCodeRequestManager {
     private final EventRepository eventRepository;
     private final TicketReservationManager ticketReservationManager;
     private final ClockProvider clockProvider;
+    private final EventCodeIndex eventCodeIndex;
 
     enum PromoCodeType {
         SPECIAL_PRICE, PROMO_CODE_DISCOUNT, TICKET_CATEGORY_CODE, NOT_FOUND
@@ -81,6 +83,11 @@ public class PromoCodeRequestManager {
 
         return eventRepository.findOptionalByShortName(eventName).flatMap(e -> {
 
+            if(!eventCodeIndex.mightContain(e, trimmedCode)) {
+                queryStringHandler.accept("errors", ErrorsCode.STEP_1_CODE_NOT_FOUND);
+                return Optional.empty();
+            }
+
             var checkedCode = checkCode(e, trimmedCode);
 
             var codeType = checkPromoCodeType(e.getId(), trimmedCode);
@@ -133,7 +140,8 @@ public class PromoCodeRequestManager {
     public ValidatedResponse<Pair<Optional<SpecialPrice>, Optional<PromoCodeDiscount>>> checkCode(Event event, String promoCode) {
         ZoneId eventZoneId = event.getZoneId();
         ZonedDateTime now = ZonedDateTime.now(clockProvider.withZone(eventZoneId));
-        Optional<String> maybeSpecialCode = Optional.ofNullable(StringUtils.trimToNull(promoCode));
+        Optional<String> maybeSpecialCode = Optional.ofNullable(StringUtils.trimToNull(promoCode))
+            .filter(trimmedCode -> eventCodeIndex.mightContain(event, trimmedCode));
         Optional<SpecialPrice> specialCode = maybeSpecialCode.flatMap(specialPriceRepository::getByCode);
         Optional<PromoCodeDiscount> promotionCodeDiscount = maybeSpecialCode.flatMap((trimmedCode) -> promoCodeRepository.findPublicPromoCodeInEventOrOrganization(event.getId(), trimmedCode));
 
@@ -179,7 +187,7 @@ public class PromoCodeRequestManager {
     }
 
     private boolean isDiscountCodeUsageExceeded(PromoCodeDiscount discount) {
-        return discount.getMaxUsage() != null && discount.getMaxUsage() <= promoCodeRepository.countConfirmedPromoCode(discount.getId(), categoriesOrNull(discount), null, categoriesOrNull(discount) != null ? "X" : null);
+        return discount.getMaxUsage() != null && discount.getMaxUsage() <= promoCodeRepository.countUsedPromoCode(discount.getId(), categoriesOrNull(discount), categoriesOrNull(discount) != null ? "X" : null);
     }
 
     private Pair<Optional<String>, BindingResult> makeSimpleReservation(Event event,
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.config.support.ReplicaRoutingDataSource;
 import alfio.model.Event;
 import alfio.model.PurchaseContext;
 import alfio.model.TicketReservation;
@@ -33,7 +34,7 @@ import java.util.List;
 import static java.util.stream.Collectors.toList;
 
 @Component
-@Transactional(readOnly = true)
+@Transactional(readOnly = true, label = ReplicaRoutingDataSource.REPLICA)
 @AllArgsConstructor
 public class PurchaseContextSearchManager {
 
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.EventCodeIndex;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.EventAndOrganizationId;
@@ -55,13 +56,16 @@ public class SpecialPriceTokenGenerator {
     private final TicketCategoryRepository ticketCategoryRepository;
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
+    private final EventCodeIndex eventCodeIndex;
 
     @Autowired
     public SpecialPriceTokenGenerator(ConfigurationManager configurationManager,
                                       SpecialPriceRepository specialPriceRepository,
                                       TicketCategoryRepository ticketCategoryRepository,
-                                      EventRepository eventRepository) {
+                                      EventRepository eventRepository,
+                                      EventCodeIndex eventCodeIndex) {
         this.specialPriceRepository = specialPriceRepository;
+        this.eventCodeIndex = eventCodeIndex;
         this.configurationManager = configurationManager;
         this.ticketCategoryRepository = ticketCategoryRepository;
         this.eventRepository = eventRepository;
@@ -90,6 +94,7 @@ public class SpecialPriceTokenGenerator {
             try {
                 log.trace("generate code for special price with id {}", specialPrice.getId());
                 specialPriceRepository.updateCode(nextValidCode(maxLength), specialPrice.getId());
+                eventCodeIndex.invalidate(event.getId());
                 log.trace("done.");
                 return;
             } catch (DataAccessException e) {
@@ -16,6 +16,8 @@
  */
 package alfio.manager;
 
+import alfio.config.support.ReplicaRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource;
 import alfio.controller.api.support.TicketHelper;
 import alfio.controller.form.UpdateTicketOwnerForm;
 import alfio.controller.support.TemplateProcessor;
@@ -95,6 +97,7 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -132,6 +135,12 @@ public class TicketReservationManager {
     public static final String NOT_YET_PAID_TRANSACTION_ID = "not-paid";
     private static final String STUCK_TICKETS_MSG = "there are stuck tickets for the event %s. Please check admin area.";
     private static final String STUCK_TICKETS_SUBJECT = "warning: stuck tickets found";
+    private static final long INVOICE_SEQUENCE_LOCK_WAIT_WARNING_THRESHOLD_MS = 500L;
+    private static final Set<TicketReservationStatus> PAYMENT_PENDING_STATUSES = EnumSet.of(PENDING, IN_PAYMENT,
+        EXTERNAL_PROCESSING_PAYMENT, WAITING_EXTERNAL_CONFIRMATION, OFFLINE_PAYMENT, DEFERRED_OFFLINE_PAYMENT);
+    // statuses whose tickets are already included in the promo code usage counters (see promo_code_usage)
+    private static final Set<TicketReservationStatus> PROMO_CODE_USAGE_STATUSES = EnumSet.of(IN_PAYMENT,
+        EXTERNAL_PROCESSING_PAYMENT, WAITING_EXTERNAL_CONFIRMATION, OFFLINE_PAYMENT, DEFERRED_OFFLINE_PAYMENT, COMPLETE, STUCK);
 
     private final EventRepository eventRepository;
     private final OrganizationRepository organizationRepository;
@@ -148,7 +157,6 @@ public class TicketReservationManager {
     private final MessageSourceManager messageSourceManager;
     private final TemplateManager templateManager;
     private final TransactionTemplate requiresNewTransactionTemplate;
-    private final TransactionTemplate serializedTransactionTemplate;
     private final TransactionTemplate nestedTransactionTemplate;
     private final WaitingQueueManager waitingQueueManager;
     private final TicketFieldRepository ticketFieldRepository;
@@ -239,9 +247,6 @@ public class TicketReservationManager {
         this.templateManager = templateManager;
         this.waitingQueueManager = waitingQueueManager;
         this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
-        DefaultTransactionDefinition serialized = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-        serialized.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
-        this.serializedTransactionTemplate = new TransactionTemplate(transactionManager, serialized);
         this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
         this.ticketFieldRepository = ticketFieldRepository;
         this.additionalServiceRepository = additionalServiceRepository;
@@ -597,7 +602,7 @@ public class TicketReservationManager {
             //save billing data in case we have to go back to PENDING
             ticketReservationRepository.updateBillingData(spec.getVatStatus(), reservation.getSrcPriceCts(), reservation.getFinalPriceCts(),
                 reservation.getVatCts(), reservation.getDiscountCts(), reservation.getCurrencyCode(), spec.getVatNr(), spec.getVatCountryCode(), spec.isInvoiceRequested(), spec.getReservationId());
-            if(isDiscountCodeUsageExceeded(spec.getReservationId())) {
+            if(isDiscountCodeUsageExceeded(spec.getReservationId(), true)) {
                 return PaymentResult.failed(ErrorsCode.STEP_2_DISCOUNT_CODE_USAGE_EXCEEDED);
             }
             if(reservationCost.requiresPayment()) {
@@ -670,8 +675,7 @@ public class TicketReservationManager {
     private void transitionToComplete(PaymentSpecification spec, TotalPrice reservationCost, PaymentProxy paymentProxy, String username) {
         var status = ticketReservationRepository.findOptionalStatusAndValidationById(spec.getReservationId()).orElseThrow().getStatus();
         if(status != COMPLETE) {
-            generateInvoiceNumber(spec, reservationCost);
-            completeReservation(spec, paymentProxy, true, true, username);
+            completeReservation(spec, paymentProxy, true, true, username, () -> generateInvoiceNumber(spec, reservationCost));
         }
     }
 
@@ -691,39 +695,91 @@ public class TicketReservationManager {
         });
 
         String invoiceNumber = optionalInvoiceNumber.orElseGet(() -> {
-                int invoiceSequence = invoiceSequencesRepository.lockReservationForUpdate(spec.getPurchaseContext().getOrganizationId());
-                invoiceSequencesRepository.incrementSequenceFor(spec.getPurchaseContext().getOrganizationId());
-                String pattern = configurationManager
-                    .getFor(ConfigurationKeys.INVOICE_NUMBER_PATTERN, spec.getPurchaseContext().getConfigurationLevel())
-                    .getValueOrDefault("%d");
-                return String.format(ObjectUtils.firstNonNull(StringUtils.trimToNull(pattern), "%d"), invoiceSequence);
+            String pattern = configurationManager
+                .getFor(ConfigurationKeys.INVOICE_NUMBER_PATTERN, spec.getPurchaseContext().getConfigurationLevel())
+                .getValueOrDefault("%d");
+            int invoiceSequence = allocateInvoiceSequence(spec.getPurchaseContext().getOrganizationId());
+            return String.format(ObjectUtils.firstNonNull(StringUtils.trimToNull(pattern), "%d"), invoiceSequence);
         });
 
         ticketReservationRepository.setInvoiceNumber(reservationId, invoiceNumber);
     }
 
+    /**
+     * Allocates the next number of the organization's invoice sequence.
+     * The sequence row stays locked until the current transaction ends: this is what guarantees that there are no gaps,
+     * since a rollback releases the number as well. Therefore, this method must be called as late as possible.
+     *
+     * @param organizationId the organization ID
+     * @return the allocated number
+     */
+    private int allocateInvoiceSequence(int organizationId) {
+        long start = System.nanoTime();
+        int invoiceSequence = invoiceSequencesRepository.lockReservationForUpdate(organizationId);
+        long lockWaitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        invoiceSequencesRepository.incrementSequenceFor(organizationId);
+        if(lockWaitMillis >= INVOICE_SEQUENCE_LOCK_WAIT_WARNING_THRESHOLD_MS) {
+            log.warn("waited {} ms for the invoice sequence lock of organization {}", lockWaitMillis, organizationId);
+        } else {
+            log.trace("waited {} ms for the invoice sequence lock of organization {}", lockWaitMillis, organizationId);
+        }
+        return invoiceSequence;
+    }
+
     private boolean isDiscountCodeUsageExceeded(String reservationId) {
+        return isDiscountCodeUsageExceeded(reservationId, false);
+    }
+
+    /**
+     * Checks the usage of the promo code applied to the reservation against its max usage.
+     *
+     * If lockPromoCode is true, the check is serialized with the other checkouts using the same promo code:
+     * <ul>
+     *     <li>if the tickets of the reservation have been already counted (e.g. IN_PAYMENT), we only need to wait for
+     *     concurrent checkouts to complete, thus the lock is acquired in a short, separate transaction</li>
+     *     <li>otherwise the lock is held until the current transaction completes, so that the reservation is confirmed
+     *     before any other checkout can read the counters</li>
+     * </ul>
+     */
+    private boolean isDiscountCodeUsageExceeded(String reservationId, boolean lockPromoCode) {
         TicketReservation reservation = ticketReservationRepository.findReservationById(reservationId);
         if(reservation.getPromoCodeDiscountId() != null) {
             final PromoCodeDiscount promoCode = promoCodeDiscountRepository.findById(reservation.getPromoCodeDiscountId());
             if(promoCode.getMaxUsage() == null) {
                 return false;
             }
-            int currentTickets = ticketReservationRepository.countTicketsInReservationForCategories(reservationId, categoriesOrNull(promoCode));
-            return Boolean.TRUE.equals(serializedTransactionTemplate.execute(status -> {
-                Integer confirmedPromoCode = promoCodeDiscountRepository.countConfirmedPromoCode(promoCode.getId(), categoriesOrNull(promoCode), reservationId, categoriesOrNull(promoCode) != null ? "X" : null);
-                return promoCode.getMaxUsage() < currentTickets + confirmedPromoCode;
-            }));
+            var categories = categoriesOrNull(promoCode);
+            boolean alreadyCounted = PROMO_CODE_USAGE_STATUSES.contains(reservation.getStatus());
+            int currentTickets = alreadyCounted ? 0 : ticketReservationRepository.countTicketsInReservationForCategories(reservationId, categories);
+            Supplier<Boolean> check = () -> {
+                if(lockPromoCode) {
+                    Validate.isTrue(promoCodeDiscountRepository.lockPromoCodeForUpdate(promoCode.getId()).equals(promoCode.getId()));
+                }
+                int used = promoCodeDiscountRepository.countUsedPromoCode(promoCode.getId(), categories, categories != null ? "X" : null);
+                return promoCode.getMaxUsage() < currentTickets + used;
+            };
+            if(lockPromoCode && alreadyCounted) {
+                return Boolean.TRUE.equals(requiresNewTransactionTemplate.execute(status -> check.get()));
+            }
+            return check.get();
         }
         return false;
     }
 
     public boolean containsCategoriesLinkedToGroups(String reservationId, int eventId) {
+        return containsCategoriesLinkedToGroups(eventId, () -> ticketRepository.findTicketsInReservation(reservationId));
+    }
+
+    public boolean containsCategoriesLinkedToGroups(int eventId, List<Ticket> ticketsInReservation) {
+        return containsCategoriesLinkedToGroups(eventId, () -> ticketsInReservation);
+    }
+
+    private boolean containsCategoriesLinkedToGroups(int eventId, Supplier<List<Ticket>> ticketsSupplier) {
         List<LinkedGroup> allLinks = groupManager.getLinksForEvent(eventId);
         if(allLinks.isEmpty()) {
             return false;
         }
-        return ticketRepository.findTicketsInReservation(reservationId).stream()
+        return ticketsSupplier.get().stream()
             .anyMatch(t -> allLinks.stream().anyMatch(lg -> lg.getTicketCategoryId() == null || lg.getTicketCategoryId().equals(t.getCategoryId())));
     }
 
@@ -1175,6 +1231,21 @@ public class TicketReservationManager {
      * Set the tickets attached to the reservation to the ACQUIRED state and the ticket reservation to the COMPLETE state. Additionally it will save email/fullName/billingaddress/userLanguage.
      */
     void completeReservation(PaymentSpecification spec, PaymentProxy paymentProxy, boolean sendReservationConfirmationEmail, boolean sendTickets, String username) {
+        completeReservation(spec, paymentProxy, sendReservationConfirmationEmail, sendTickets, username, () -> {});
+    }
+
+    /**
+     * Completes the reservation.
+     *
+     * @param invoiceNumberGenerator called once all the items have been acquired, right before notifying the extensions
+     *                               and sending the confirmation emails, which are the only steps that need the invoice number.
+     */
+    private void completeReservation(PaymentSpecification spec,
+                                     PaymentProxy paymentProxy,
+                                     boolean sendReservationConfirmationEmail,
+                                     boolean sendTickets,
+                                     String username,
+                                     Runnable invoiceNumberGenerator) {
         String reservationId = spec.getReservationId();
         var purchaseContext = spec.getPurchaseContext();
         final TicketReservation reservation = ticketReservationRepository.findReservationById(reservationId);
@@ -1191,7 +1262,6 @@ public class TicketReservationManager {
         List<Ticket> tickets = null;
         if(paymentProxy != PaymentProxy.OFFLINE) {
             tickets = acquireItems(paymentProxy, reservationId, spec.getEmail(), spec.getCustomerName(), spec.getLocale().getLanguage(), spec.getBillingAddress(), spec.getCustomerReference(), spec.getPurchaseContext(), sendTickets);
-            extensionManager.handleReservationConfirmation(reservation, ticketReservationRepository.getBillingDetailsForReservation(reservationId), spec.getPurchaseContext());
         }
 
         Date eventTime = new Date();
@@ -1205,6 +1275,12 @@ public class TicketReservationManager {
             auditingRepository.insert(reservationId, userId, purchaseContext, Audit.EventType.PRIVACY_POLICY_ACCEPTED, eventTime, Audit.EntityType.RESERVATION, reservationId, singletonList(singletonMap("privacyPolicyUrl", spec.getPurchaseContext().getPrivacyPolicyUrl())));
         }
 
+        invoiceNumberGenerator.run();
+
+        if(paymentProxy != PaymentProxy.OFFLINE) {
+            extensionManager.handleReservationConfirmation(ticketReservationRepository.findReservationById(reservationId), ticketReservationRepository.getBillingDetailsForReservation(reservationId), spec.getPurchaseContext());
+        }
+
         if(sendReservationConfirmationEmail) {
             TicketReservation updatedReservation = ticketReservationRepository.findReservationById(reservationId);
             sendConfirmationEmailIfNecessary(updatedReservation, tickets, purchaseContext, locale, username);
@@ -1530,7 +1606,7 @@ public class TicketReservationManager {
             appliedSubscription);
     }
 
-    private String formatPromoCode(PromoCodeDiscount promoCodeDiscount, List<Ticket> tickets, Locale locale, PurchaseContext purchaseContext) {
+    private String formatPromoCode(PromoCodeDiscount promoCodeDiscount, List<Ticket> tickets, Locale locale, PurchaseContext purchaseContext, Map<Integer, String> categoryNames) {
 
         if(promoCodeDiscount.getCodeType() == CodeType.DYNAMIC) {
             return messageSourceManager.getMessageSourceFor(purchaseContext).getMessage("reservation.dynamic.discount.description", null, locale); //we don't expose the internal promo code
@@ -1546,7 +1622,7 @@ public class TicketReservationManager {
             .map(Ticket::getCategoryId)
             .collect(toSet())
             .stream()
-            .map(categoryId -> ticketCategoryRepository.getByIdAndActive(categoryId, promoCodeDiscount.getEventId()).getName())
+            .map(categoryId -> categoryNames.computeIfAbsent(categoryId, id -> ticketCategoryRepository.getByIdAndActive(id, promoCodeDiscount.getEventId()).getName()))
             .collect(Collectors.joining(", ", "(", ")"));
 
 
@@ -1566,7 +1642,8 @@ public class TicketReservationManager {
         boolean free = reservationCost.getPriceWithVAT() == 0;
         String refundedAmount = null;
 
-        boolean hasRefund = auditingRepository.countAuditsOfTypeForReservation(reservation.getId(), Audit.EventType.REFUND) > 0;
+        boolean hasRefund = canHaveBeenRefunded(reservation.getStatus())
+            && auditingRepository.hasAuditsOfTypeForReservation(reservation.getId(), Audit.EventType.REFUND);
 
         if(hasRefund) {
             refundedAmount = paymentManager.getInfo(reservation, context).getPaymentInformation().getRefundedAmount();
@@ -1618,35 +1695,39 @@ public class TicketReservationManager {
         var currencyCode = reservationCost.getCurrencyCode();
         List<TicketPriceContainer> tickets = ticketsToInclude.stream()
             .map(t -> TicketPriceContainer.from(t, reservationVatStatus, purchaseContext.getVat(), purchaseContext.getVatStatus(), promoCodeDiscount)).collect(toList());
-        purchaseContext.event().ifPresent(event -> tickets.stream()
-            .collect(Collectors.groupingBy(TicketPriceContainer::getCategoryId))
-            .forEach((categoryId, ticketsByCategory) -> {
-                final int subTotal = ticketsByCategory.stream().mapToInt(TicketPriceContainer::getSummarySrcPriceCts).sum();
-                final int subTotalBeforeVat = SummaryPriceContainer.getSummaryPriceBeforeVatCts(ticketsByCategory);
-                TicketPriceContainer firstTicket = ticketsByCategory.get(0);
-                final int ticketPriceCts = firstTicket.getSummarySrcPriceCts();
-                final int priceBeforeVat = SummaryPriceContainer.getSummaryPriceBeforeVatCts(singletonList(firstTicket));
-                String categoryName = ticketCategoryRepository.getByIdAndActive(categoryId, event.getId()).getName();
-                summary.add(new SummaryRow(categoryName, formatCents(ticketPriceCts, currencyCode), formatCents(priceBeforeVat, currencyCode), ticketsByCategory.size(), formatCents(subTotal, currencyCode), formatCents(subTotalBeforeVat, currencyCode), subTotal, SummaryType.TICKET));
-            }));
+        Map<Integer, String> categoryNames = new HashMap<>();
+        purchaseContext.event().ifPresent(event -> {
+            var ticketsByCategory = tickets.stream().collect(Collectors.groupingBy(TicketPriceContainer::getCategoryId));
+            if(!ticketsByCategory.isEmpty()) {
+                ticketCategoryRepository.findActiveByIdsAndEventId(ticketsByCategory.keySet(), event.getId())
+                    .forEach(tc -> categoryNames.put(tc.getId(), tc.getName()));
+            }
+            ticketsByCategory.forEach((categoryId, categoryTickets) -> {
+                var prices = SummaryPriceAggregate.of(categoryTickets, TicketPriceContainer::getSummarySrcPriceCts);
+                String categoryName = categoryNames.computeIfAbsent(categoryId, id -> ticketCategoryRepository.getByIdAndActive(id, event.getId()).getName());
+                summary.add(new SummaryRow(categoryName, formatCents(prices.getUnitPriceCts(), currencyCode), formatCents(prices.getUnitPriceBeforeVatCts(), currencyCode), prices.getCount(), formatCents(prices.getSubTotalCts(), currencyCode), formatCents(prices.getSubTotalBeforeVatCts(), currencyCode), prices.getSubTotalCts(), SummaryType.TICKET));
+            });
+        });
 
-        summary.addAll(additionalServicesToInclude
-            .map(entry -> {
-                String language = locale.getLanguage();
-                AdditionalServiceText title = additionalServiceTextRepository.findBestMatchByLocaleAndType(entry.getKey().getId(), language, AdditionalServiceText.TextType.TITLE);
-                if(!title.getLocale().equals(language) || title.getId() == -1) {
-                    log.debug("additional service {}: title not found for locale {}", title.getAdditionalServiceId(), language);
-                }
-                List<AdditionalServiceItemPriceContainer> prices = generateASIPriceContainers(purchaseContext, null).apply(entry).collect(toList());
-                AdditionalServiceItemPriceContainer first = prices.get(0);
-                final int subtotal = prices.stream().mapToInt(AdditionalServiceItemPriceContainer::getSrcPriceCts).sum();
-                final int subtotalBeforeVat = SummaryPriceContainer.getSummaryPriceBeforeVatCts(prices);
-                return new SummaryRow(title.getValue(), formatCents(first.getSrcPriceCts(), currencyCode), formatCents(SummaryPriceContainer.getSummaryPriceBeforeVatCts(singletonList(first)), currencyCode), prices.size(), formatCents(subtotal, currencyCode), formatCents(subtotalBeforeVat, currencyCode), subtotal, SummaryType.ADDITIONAL_SERVICE);
-            }).collect(toList()));
+        var additionalServices = additionalServicesToInclude.collect(toList());
+        if(!additionalServices.isEmpty()) {
+            String language = locale.getLanguage();
+            var titles = additionalServiceTextRepository.findBestMatchesByLocaleAndType(additionalServices.stream().map(p -> p.getKey().getId()).collect(toSet()), language, AdditionalServiceText.TextType.TITLE);
+            summary.addAll(additionalServices.stream()
+                .map(entry -> {
+                    AdditionalServiceText title = titles.get(entry.getKey().getId());
+                    if(!title.getLocale().equals(language) || title.getId() == -1) {
+                        log.debug("additional service {}: title not found for locale {}", title.getAdditionalServiceId(), language);
+                    }
+                    List<AdditionalServiceItemPriceContainer> items = generateASIPriceContainers(purchaseContext, null).apply(entry).collect(toList());
+                    var prices = SummaryPriceAggregate.of(items, AdditionalServiceItemPriceContainer::getSrcPriceCts);
+                    return new SummaryRow(title.getValue(), formatCents(prices.getUnitPriceCts(), currencyCode), formatCents(prices.getUnitPriceBeforeVatCts(), currencyCode), prices.getCount(), formatCents(prices.getSubTotalCts(), currencyCode), formatCents(prices.getSubTotalBeforeVatCts(), currencyCode), prices.getSubTotalCts(), SummaryType.ADDITIONAL_SERVICE);
+                }).collect(toList()));
+        }
 
         Optional.ofNullable(promoCodeDiscount).ifPresent(promo -> {
             String formattedSingleAmount = "-" + (DiscountType.isFixedAmount(promo.getDiscountType())  ? formatCents(promo.getDiscountAmount(), currencyCode) : (promo.getDiscountAmount()+"%"));
-            summary.add(new SummaryRow(formatPromoCode(promo, ticketsToInclude, locale, purchaseContext),
+            summary.add(new SummaryRow(formatPromoCode(promo, ticketsToInclude, locale, purchaseContext, categoryNames),
                 formattedSingleAmount,
                 formattedSingleAmount,
                 reservationCost.getDiscountAppliedCount(),
@@ -1774,6 +1855,14 @@ public class TicketReservationManager {
         return configurationManager.getFor(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, ConfigurationLevel.ticketCategory(eventAndOrganizationId, ticketCategoryId)).getValueAsIntOrDefault(5);
     }
 
+    /**
+     * A refund can be issued only after the payment has been confirmed. Reservations which are still waiting
+     * for a payment (and are therefore polled by the frontend) don't need to be checked.
+     */
+    private static boolean canHaveBeenRefunded(TicketReservationStatus status) {
+        return !PAYMENT_PENDING_STATUSES.contains(status);
+    }
+
     public Optional<TicketReservation> findByIdForEvent(String reservationId, int eventId) {
         return ticketReservationRepository.findOptionalReservationByIdAndEventId(reservationId, eventId);
     }
@@ -2034,40 +2123,70 @@ public class TicketReservationManager {
 
     //called each hour
     public void sendReminderForOfflinePaymentsToEventManagers() {
-        eventRepository.findAllActives(ZonedDateTime.now(clockProvider.getClock())).stream().filter(event -> {
-            ZonedDateTime dateTimeForEvent = event.now(clockProvider);
-            return dateTimeForEvent.truncatedTo(ChronoUnit.HOURS).getHour() == 5; //only for the events at 5:00 local time
-        }).forEachOrdered(event -> {
-            ZonedDateTime dateTimeForEvent = event.now(clockProvider).truncatedTo(ChronoUnit.DAYS).plusDays(1);
-            List<TicketReservationInfo> reservations = ticketReservationRepository.findAllOfflinePaymentReservationWithExpirationBeforeForUpdate(dateTimeForEvent, event.getId());
-            log.info("for event {} there are {} pending offline payments to handle", event.getId(), reservations.size());
-            if(!reservations.isEmpty()) {
-                Organization organization = organizationRepository.getById(event.getOrganizationId());
-                List<String> cc = notificationManager.getCCForEventOrganizer(event);
-                String subject = String.format("There are %d pending offline payments that will expire in event: %s", reservations.size(), event.getDisplayName());
-                String baseUrl = configurationManager.getFor(BASE_URL, ConfigurationLevel.event(event)).getRequiredValue();
-                Map<String, Object> model = TemplateResource.prepareModelForOfflineReservationExpiringEmailForOrganizer(event, reservations, baseUrl);
-                notificationManager.sendSimpleEmail(event, null, organization.getEmail(), cc, subject, () ->
-                    templateManager.renderTemplate(event, TemplateResource.OFFLINE_RESERVATION_EXPIRING_EMAIL_FOR_ORGANIZER, model, Locale.ENGLISH));
-                extensionManager.handleOfflineReservationsWillExpire(event, reservations);
-            }
-        });
+        eventRepository.findAllActives(ZonedDateTime.now(clockProvider.getClock())).stream()
+            .filter(this::isOfflinePaymentsReminderTimeForOrganizer)
+            .forEachOrdered(this::sendOfflinePaymentsReminderToEventManagers);
+    }
+
+    public void sendReminderForOfflinePaymentsToEventManagers(int eventId) {
+        eventRepository.findOptionalById(eventId)
+            .filter(this::isOfflinePaymentsReminderTimeForOrganizer)
+            .ifPresent(this::sendOfflinePaymentsReminderToEventManagers);
+    }
+
+    private boolean isOfflinePaymentsReminderTimeForOrganizer(Event event) {
+        ZonedDateTime dateTimeForEvent = event.now(clockProvider);
+        return dateTimeForEvent.truncatedTo(ChronoUnit.HOURS).getHour() == 5; //only for the events at 5:00 local time
+    }
+
+    private void sendOfflinePaymentsReminderToEventManagers(Event event) {
+        ZonedDateTime dateTimeForEvent = event.now(clockProvider).truncatedTo(ChronoUnit.DAYS).plusDays(1);
+        List<TicketReservationInfo> reservations = ticketReservationRepository.findAllOfflinePaymentReservationWithExpirationBeforeForUpdate(dateTimeForEvent, event.getId());
+        log.info("for event {} there are {} pending offline payments to handle", event.getId(), reservations.size());
+        if(!reservations.isEmpty()) {
+            Organization organization = organizationRepository.getById(event.getOrganizationId());
+            List<String> cc = notificationManager.getCCForEventOrganizer(event);
+            String subject = String.format("There are %d pending offline payments that will expire in event: %s", reservations.size(), event.getDisplayName());
+            String baseUrl = configurationManager.getFor(BASE_URL, ConfigurationLevel.event(event)).getRequiredValue();
+            Map<String, Object> model = TemplateResource.prepareModelForOfflineReservationExpiringEmailForOrganizer(event, reservations, baseUrl);
+            notificationManager.sendSimpleEmail(event, null, organization.getEmail(), cc, subject, () ->
+                templateManager.renderTemplate(event, TemplateResource.OFFLINE_RESERVATION_EXPIRING_EMAIL_FOR_ORGANIZER, model, Locale.ENGLISH));
+            extensionManager.handleOfflineReservationsWillExpire(event, reservations);
+        }
     }
 
     public void sendReminderForTicketAssignment() {
-        getNotifiableEventsStream()
-                .map(e -> Pair.of(e, ticketRepository.findAllReservationsConfirmedButNotAssignedForUpdate(e.getId())))
-                .filter(p -> !p.getRight().isEmpty())
-                .forEach(p -> Wrappers.voidTransactionWrapper(this::sendAssignmentReminder, p));
+        getNotifiableEventsStream().forEach(this::sendTicketAssignmentReminderForEvent);
+    }
+
+    public void sendReminderForTicketAssignment(int eventId) {
+        eventRepository.findOptionalById(eventId).ifPresent(this::sendTicketAssignmentReminderForEvent);
+    }
+
+    private void sendTicketAssignmentReminderForEvent(Event event) {
+        var reservationIds = ticketRepository.findAllReservationsConfirmedButNotAssignedForUpdate(event.getId());
+        if(!reservationIds.isEmpty()) {
+            Wrappers.voidTransactionWrapper(this::sendAssignmentReminder, Pair.of(event, reservationIds));
+        }
     }
 
     public void sendReminderForOptionalData() {
-        getNotifiableEventsStream()
-                .filter(e -> configurationManager.getFor(OPTIONAL_DATA_REMINDER_ENABLED, ConfigurationLevel.event(e)).getValueAsBooleanOrDefault())
-                .filter(e -> ticketFieldRepository.countAdditionalFieldsForEvent(e.getId()) > 0)
-                .map(e -> Pair.of(e, ticketRepository.findAllAssignedButNotYetNotifiedForUpdate(e.getId())))
-                .filter(p -> !p.getRight().isEmpty())
-                .forEach(p -> Wrappers.voidTransactionWrapper(this::sendOptionalDataReminder, p));
+        getNotifiableEventsStream().forEach(this::sendOptionalDataReminderForEvent);
+    }
+
+    public void sendReminderForOptionalData(int eventId) {
+        eventRepository.findOptionalById(eventId).ifPresent(this::sendOptionalDataReminderForEvent);
+    }
+
+    private void sendOptionalDataReminderForEvent(Event event) {
+        if(!configurationManager.getFor(OPTIONAL_DATA_REMINDER_ENABLED, ConfigurationLevel.event(event)).getValueAsBooleanOrDefault()
+            || ticketFieldRepository.countAdditionalFieldsForEvent(event.getId()) == 0) {
+            return;
+        }
+        var tickets = ticketRepository.findAllAssignedButNotYetNotifiedForUpdate(event.getId());
+        if(!tickets.isEmpty()) {
+            Wrappers.voidTransactionWrapper(this::sendOptionalDataReminder, Pair.of(event, tickets));
+        }
     }
 
     private void sendOptionalDataReminder(Pair<Event, List<Ticket>> eventAndTickets) {
@@ -2091,6 +2210,13 @@ public class TicketReservationManager {
         });
     }
 
+    /**
+     * Returns the IDs of the events whose attendees can receive a reminder today.
+     */
+    public List<Integer> findNotifiableEventIds() {
+        return getNotifiableEventsStream().map(Event::getId).collect(toList());
+    }
+
     Stream<Event> getNotifiableEventsStream() {
         return eventRepository.findAll().stream()
                 .filter(e -> {
@@ -2240,6 +2366,14 @@ public class TicketReservationManager {
             .map(entry -> Pair.of(reservations.get(entry.getKey()), entry.getValue()));
     }
 
+    /**
+     * Loads all the billing documents of the given event, grouped by reservation, for the XLS export.
+     */
+    @Transactional(readOnly = true, label = {ReplicaRoutingDataSource.REPLICA, WorkloadRoutingDataSource.EXPORT})
+    public List<Pair<TicketReservationWithTransaction, List<BillingDocument>>> findAllDocumentsForExport(int eventId) {
+        return streamAllDocumentsFor(eventId).collect(toList());
+    }
+
     public Integer countInvoices(int eventId) {
         return ticketReservationRepository.countInvoices(eventId);
     }
@@ -2592,6 +2726,16 @@ public class TicketReservationManager {
             .forEach(this::checkOfflinePaymentsForEvent);
     }
 
+    public void checkOfflinePaymentsStatus(int eventId) {
+        eventRepository.findOptionalById(eventId).ifPresent(this::checkOfflinePaymentsForEvent);
+    }
+
+    public List<Integer> findActiveEventIds() {
+        return eventRepository.findAllActives(ZonedDateTime.now(clockProvider.getClock())).stream()
+            .map(Event::getId)
+            .collect(toList());
+    }
+
     public Optional<String> createSubscriptionReservation(SubscriptionDescriptor subscriptionDescriptor,
                                                           Locale locale,
                                                           BindingResult bindingResult,
@@ -16,6 +16,8 @@
  */
 package alfio.manager;
 
+import alfio.config.support.ReplicaRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
@@ -37,6 +39,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -128,6 +131,11 @@ public class WaitingQueueManager {
         return waitingQueueRepository.loadAllWaiting(eventId);
     }
 
+    @Transactional(readOnly = true, label = {ReplicaRoutingDataSource.REPLICA, WorkloadRoutingDataSource.EXPORT})
+    public List<WaitingQueueSubscription> exportAllSubscriptionsForEvent(int eventId) {
+        return loadAllSubscriptionsForEvent(eventId);
+    }
+
     public Optional<WaitingQueueSubscription> updateSubscriptionStatus(int id, WaitingQueueSubscription.Status newStatus, WaitingQueueSubscription.Status currentStatus) {
         return Optional.of(waitingQueueRepository.updateStatus(id, newStatus, currentStatus))
             .filter(i -> i > 0)
@@ -0,0 +1,161 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.model.EventAndOrganizationId;
+import alfio.repository.PromoCodeDiscountRepository;
+import alfio.repository.SpecialPriceRepository;
+import alfio.repository.TicketCategoryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index of the codes which can be used on the public pages of an event: special price codes,
+ * promo / access codes (defined at event or organization level) and ticket category codes.
+ *
+ * A code which is not in the index is rejected without querying the database. The index of an event is rebuilt
+ * after every local change to its codes and expires after a while, in order to pick up the changes made on other nodes.
+ *
+ * Rejected codes are counted for each client address, over a fixed time window.
+ */
+@Component
+@Log4j2
+public class EventCodeIndex {
+
+    private final SpecialPriceRepository specialPriceRepository;
+    private final PromoCodeDiscountRepository promoCodeDiscountRepository;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final Cache<Integer, Set<String>> codesByEvent;
+    private final Cache<String, AtomicInteger> guessesByAddress;
+    private final int guessRateWarningThreshold;
+
+    /**
+     * Configuration properties:
+     * <ul>
+     *     <li>alfio.code-index.expiration-seconds: max age of the index of an event (default 60)</li>
+     *     <li>alfio.code-index.max-codes: max number of codes kept in the index, across all the events (default 500000)</li>
+     *     <li>alfio.code-index.guess-window-seconds: length of the window used to count the invalid codes sent by a client (default 60)</li>
+     *     <li>alfio.code-index.guess-warning-threshold: log a warning when a client sends more invalid codes than this within the window (default 30)</li>
+     * </ul>
+     */
+    public EventCodeIndex(SpecialPriceRepository specialPriceRepository,
+                          PromoCodeDiscountRepository promoCodeDiscountRepository,
+                          TicketCategoryRepository ticketCategoryRepository,
+                          Environment environment) {
+        this.specialPriceRepository = specialPriceRepository;
+        this.promoCodeDiscountRepository = promoCodeDiscountRepository;
+        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.codesByEvent = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(environment.getProperty("alfio.code-index.expiration-seconds", Integer.class, 60)))
+            // events can have from a handful to hundreds of thousands of codes, therefore the limit is on the number of codes
+            .maximumWeight(environment.getProperty("alfio.code-index.max-codes", Long.class, 500_000L))
+            .weigher((Integer eventId, Set<String> codes) -> Math.max(1, codes.size()))
+            .build();
+        this.guessesByAddress = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(environment.getProperty("alfio.code-index.guess-window-seconds", Integer.class, 60)))
+            .maximumSize(100_000)
+            .build();
+        this.guessRateWarningThreshold = environment.getProperty("alfio.code-index.guess-warning-threshold", Integer.class, 30);
+    }
+
+    /**
+     * Returns {@code false} if the given code is certainly not valid for the given event.
+     * If the code is not valid, the attempt is recorded for the current client address.
+     *
+     * @param event the event
+     * @param code the trimmed code
+     * @return {@code true} if the code might be valid and must be checked on the database
+     */
+    public boolean mightContain(EventAndOrganizationId event, String code) {
+        boolean result = codesByEvent.get(event.getId(), id -> loadCodes(event)).contains(code);
+        if(!result) {
+            currentClientAddress().ifPresent(this::recordGuess);
+        }
+        return result;
+    }
+
+    /**
+     * Invalidates the index of the given event. If a transaction is active, the index is invalidated again
+     * after commit, so that a concurrent reader cannot cache the codes as they were before the change.
+     */
+    public void invalidate(int eventId) {
+        codesByEvent.invalidate(eventId);
+        afterCommit(() -> codesByEvent.invalidate(eventId));
+    }
+
+    /**
+     * Invalidates the index of all the events. To be used for changes at organization level.
+     */
+    public void invalidateAll() {
+        codesByEvent.invalidateAll();
+        afterCommit(codesByEvent::invalidateAll);
+    }
+
+    /**
+     * Returns the number of invalid codes sent by the given client address in the current window.
+     */
+    public int getGuessCount(String clientAddress) {
+        return Optional.ofNullable(guessesByAddress.getIfPresent(clientAddress)).map(AtomicInteger::get).orElse(0);
+    }
+
+    void recordGuess(String clientAddress) {
+        int count = guessesByAddress.get(clientAddress, k -> new AtomicInteger()).incrementAndGet();
+        if(count == guessRateWarningThreshold + 1) {
+            log.warn("client {} sent more than {} invalid codes", clientAddress, guessRateWarningThreshold);
+        }
+    }
+
+    private Set<String> loadCodes(EventAndOrganizationId event) {
+        var codes = new HashSet<String>(specialPriceRepository.findAllCodesForEvent(event.getId()));
+        codes.addAll(promoCodeDiscountRepository.findPublicCodesForEvent(event.getId(), event.getOrganizationId()));
+        codes.addAll(ticketCategoryRepository.findAllCodesForEvent(event.getId()));
+        log.trace("loaded {} codes for event {}", codes.size(), event.getId());
+        return codes;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static Optional<String> currentClientAddress() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if(attributes instanceof ServletRequestAttributes) {
+            return Optional.ofNullable(((ServletRequestAttributes) attributes).getRequest().getRemoteAddr());
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Local copy of the content stored in the file_blob table.
+ *
+ * Since the content is addressed by its digest, a cached file never becomes stale. Each copy is written in its own file
+ * and becomes visible only once completed, so that concurrent readers never see partial content. Files are deleted
+ * when the total size of the cache exceeds the configured limit.
+ */
+@Log4j2
+public class FileBlobCache {
+
+    private static final Pattern VALID_KEY = Pattern.compile("^[A-Za-z0-9_-]+$");
+
+    private final Path directory;
+    private final Cache<String, CachedFile> cache;
+
+    public FileBlobCache(Path directory, long maxSizeInBytes) {
+        this.directory = directory;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxSizeInBytes)
+            .weigher((String key, CachedFile value) -> (int) Math.min(Integer.MAX_VALUE, value.size))
+            .removalListener((String key, CachedFile value, RemovalCause cause) -> {
+                if(value != null) {
+                    // on POSIX systems, readers which have already opened the file can complete their work
+                    try {
+                        boolean result = Files.deleteIfExists(value.path);
+                        log.trace("deleted {}: {}", key, result);
+                    } catch (IOException e) {
+                        log.warn("cannot delete cached file {}", value.path, e);
+                    }
+                }
+            })
+            .build();
+    }
+
+    public static FileBlobCache inTemporaryDirectory(long maxSizeInBytes) {
+        try {
+            var directory = Files.createTempDirectory("alfio-file-blob");
+            directory.toFile().deleteOnExit();
+            return new FileBlobCache(directory, maxSizeInBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot create file cache directory", e);
+        }
+    }
+
+    /**
+     * Copies the content identified by the given key to the given {@link OutputStream}.
+     *
+     * @param key the content digest
+     * @param loader writes the content, if it is not already cached
+     * @param out destination
+     */
+    public void transferTo(String key, Consumer<OutputStream> loader, OutputStream out) throws IOException {
+        Validate.isTrue(VALID_KEY.matcher(key).matches(), "invalid key");
+        try {
+            transferFile(cache.get(key, k -> store(k, loader)), out);
+        } catch (NoSuchFileException e) {
+            // the file has been evicted between the lookup and the read
+            cache.invalidate(key);
+            transferFile(cache.get(key, k -> store(k, loader)), out);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static void transferFile(CachedFile file, OutputStream out) throws IOException {
+        try (var channel = FileChannel.open(file.path, StandardOpenOption.READ)) {
+            var target = Channels.newChannel(out);
+            long position = 0;
+            long size = channel.size();
+            while(position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    private CachedFile store(String key, Consumer<OutputStream> loader) {
+        Path file = null;
+        try {
+            file = Files.createTempFile(directory, key + "-", ".blob");
+            file.toFile().deleteOnExit();
+            try (var os = Files.newOutputStream(file)) {
+                loader.accept(os);
+            }
+            return new CachedFile(file, Files.size(file));
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if(file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.trace("cannot delete {}", file, e);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class CachedFile {
+        private final Path path;
+        private final long size;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.model.poll.PollOptionStatistics;
+import alfio.model.poll.PollStatistics;
+import alfio.repository.PollRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the poll tallies to the admin clients, using Server-Sent Events.
+ *
+ * A client receives a "snapshot" event with the full statistics when it subscribes. Then, once per second, the tallies
+ * of the polls having at least one subscriber are reloaded from the vote counters and a "delta" event is sent, containing
+ * only the options whose votes have changed.
+ */
+@Component
+@Log4j2
+public class PollTallyPublisher {
+
+    private static final long EMITTER_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final PollRepository pollRepository;
+    private final Map<Long, Topic> topics = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public PollTallyPublisher(PollRepository pollRepository) {
+        this.pollRepository = pollRepository;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "poll-tally-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::publish, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public SseEmitter subscribe(int eventId, long pollId, PollStatistics snapshot, IntSupplier allowedParticipants) {
+        var emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        var topic = topics.compute(pollId, (id, existing) -> {
+            var t = existing != null ? existing : new Topic(eventId, pollId, allowedParticipants);
+            t.emitters.add(emitter);
+            return t;
+        });
+        Runnable unsubscribe = () -> unsubscribe(topic, emitter);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        send(topic, emitter, "snapshot", snapshot);
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        topics.values().forEach(topic -> topic.emitters.forEach(SseEmitter::complete));
+        topics.clear();
+    }
+
+    void publish() {
+        topics.values().forEach(topic -> {
+            try {
+                var delta = topic.computeDelta(pollRepository.getStatisticsFor(topic.pollId, topic.eventId), topic.allowedParticipants.getAsInt());
+                if(delta != null) {
+                    topic.emitters.forEach(emitter -> send(topic, emitter, "delta", delta));
+                }
+            } catch (Exception ex) {
+                log.warn("Cannot publish tally for poll {}", topic.pollId, ex);
+            }
+        });
+    }
+
+    private void unsubscribe(Topic topic, SseEmitter emitter) {
+        topics.computeIfPresent(topic.pollId, (id, t) -> {
+            t.emitters.remove(emitter);
+            return t.emitters.isEmpty() ? null : t;
+        });
+    }
+
+    private void send(Topic topic, SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException ex) {
+            // the client has gone away
+            log.trace("Cannot send {} to subscriber of poll {}", name, topic.pollId, ex);
+            unsubscribe(topic, emitter);
+        }
+    }
+
+    @RequiredArgsConstructor
+    static final class Topic {
+        private final int eventId;
+        private final long pollId;
+        private final IntSupplier allowedParticipants;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private Map<Long, Integer> lastVotes = Map.of();
+        private int lastAllowedParticipants = -1;
+
+        /**
+         * Returns the changes since the last invocation, or null if nothing has changed.
+         * Must be invoked by a single thread.
+         */
+        TallyDelta computeDelta(List<PollOptionStatistics> statistics, int allowedParticipants) {
+            var votes = statistics.stream().collect(Collectors.toMap(PollOptionStatistics::getOptionId, PollOptionStatistics::getVotes));
+            var changedOptions = new ArrayList<PollOptionStatistics>();
+            votes.forEach((optionId, count) -> {
+                if(!count.equals(lastVotes.get(optionId))) {
+                    changedOptions.add(new PollOptionStatistics(count, optionId));
+                }
+            });
+            lastVotes.keySet().stream()
+                .filter(optionId -> !votes.containsKey(optionId))
+                .forEach(optionId -> changedOptions.add(new PollOptionStatistics(0, optionId)));
+            if(changedOptions.isEmpty() && allowedParticipants == lastAllowedParticipants) {
+                return null;
+            }
+            lastVotes = votes;
+            lastAllowedParticipants = allowedParticipants;
+            int totalVotes = votes.values().stream().mapToInt(Integer::intValue).sum();
+            return new TallyDelta(totalVotes, allowedParticipants, changedOptions);
+        }
+    }
+
+    @Value
+    public static class TallyDelta {
+        int totalVotes;
+        int allowedParticipants;
+        List<PollOptionStatistics> changedOptions;
+    }
+}
@@ -17,9 +17,13 @@
 package alfio.manager.system;
 
 import alfio.model.system.AdminJobSchedule;
+import lombok.Value;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public interface AdminJobExecutor {
 
@@ -29,7 +33,8 @@ public interface AdminJobExecutor {
         SEND_OFFLINE_PAYMENT_REMINDER,
         UNKNOWN,
         SEND_OFFLINE_PAYMENT_TO_ORGANIZER,
-        REGENERATE_INVOICES;
+        REGENERATE_INVOICES,
+        DELETE_EXPIRED_EMAILS;
 
         public static JobName safeValueOf(String value) {
             return Arrays.stream(values())
@@ -51,4 +56,103 @@ public interface AdminJobExecutor {
      * @return an optional message, can be null
      */
     String process(AdminJobSchedule schedule);
+
+    /**
+     * Splits the scheduled job in independent units of work, which can be processed in parallel,
+     * each one in its own transaction.
+     * The default implementation returns a single partition, covering the whole job.
+     *
+     * @param schedule info about the job
+     * @return the partitions to be processed
+     */
+    default List<Partition> partition(AdminJobSchedule schedule) {
+        return List.of(Partition.whole());
+    }
+
+    /**
+     * Process a single partition of the scheduled job
+     *
+     * @param schedule info about the job
+     * @param partition the partition, as returned by {@link #partition(AdminJobSchedule)}
+     * @return an optional message, can be null
+     */
+    default String process(AdminJobSchedule schedule, Partition partition) {
+        return process(schedule);
+    }
+
+    /**
+     * Process a single partition of the scheduled job, using the given {@link Checkpoint} to split the work in units
+     * which are committed independently. If the partition is retried, the units already committed are skipped.
+     * The default implementation processes the whole partition as a single unit.
+     *
+     * @param schedule info about the job
+     * @param partition the partition, as returned by {@link #partition(AdminJobSchedule)}
+     * @param checkpoint keeps track of the units of work already completed
+     * @return an optional message, can be null
+     */
+    default String process(AdminJobSchedule schedule, Partition partition, Checkpoint checkpoint) {
+        return checkpoint.runOnce(Checkpoint.WHOLE_PARTITION, () -> process(schedule, partition)).orElse(null);
+    }
+
+    /**
+     * Invoked once all the partitions of the job have been successfully processed.
+     *
+     * @param schedule info about the job
+     * @param results the messages returned by each partition
+     */
+    default void onComplete(AdminJobSchedule schedule, List<String> results) {
+    }
+
+    interface Checkpoint {
+
+        String WHOLE_PARTITION = "-";
+
+        /**
+         * Executes the given unit of work in its own transaction, and records it as completed in the same transaction.
+         * Units which have been completed by a previous attempt are skipped.
+         *
+         * @param unit the identifier of the unit, must be unique within the partition
+         * @param work the work to execute
+         * @return the result of the work, or empty if the unit had already been completed
+         */
+        <T> Optional<T> runOnce(String unit, Supplier<T> work);
+    }
+
+    @Value
+    class Partition {
+
+        public enum Type {
+            WHOLE, EVENT, ORGANIZATION, BATCH
+        }
+
+        Type type;
+        String id;
+
+        /**
+         * The key used to track the progress of the partition in the job queue
+         */
+        public String getKey() {
+            return type.name() + ":" + id;
+        }
+
+        public int getIdAsInt() {
+            return Integer.parseInt(id);
+        }
+
+        public static Partition whole() {
+            return new Partition(Type.WHOLE, "-");
+        }
+
+        public static Partition event(int eventId) {
+            return new Partition(Type.EVENT, String.valueOf(eventId));
+        }
+
+        public static Partition organization(int organizationId) {
+            return new Partition(Type.ORGANIZATION, String.valueOf(organizationId));
+        }
+
+        public static Partition batch(int index) {
+            return new Partition(Type.BATCH, String.valueOf(index));
+        }
+    }
 }
@@ -17,83 +17,148 @@
 package alfio.manager.system;
 
 import alfio.manager.system.AdminJobExecutor.JobName;
+import alfio.manager.system.AdminJobExecutor.Partition;
 import alfio.model.result.ErrorCode;
 import alfio.model.result.Result;
 import alfio.model.system.AdminJobSchedule;
 import alfio.repository.system.AdminJobQueueRepository;
 import alfio.util.ClockProvider;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.core.env.Environment;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import static alfio.model.system.AdminJobSchedule.Status.EXECUTED;
 import static java.util.stream.Collectors.*;
 
+/**
+ * Executes the jobs scheduled in the admin_job_queue.
+ *
+ * Each job is split in partitions by its executors (see {@link AdminJobExecutor#partition(AdminJobSchedule)}). Partitions are
+ * processed in parallel on a bounded pool, and retried in case of error.
+ * A single job cannot use more than half of the pool, so that a long-running job does not block the short ones.
+ *
+ * The progress of each partition is recorded in the queue. A job left RUNNING by a node which has been stopped is claimed
+ * again once its lease expires, and only the partitions which have not been executed yet are processed.
+ * Within a partition, each unit of work (see {@link AdminJobExecutor.Checkpoint}) is committed together with its progress,
+ * so that a retry does not repeat the side effects of the units already completed.
+ */
 @Transactional
 @Log4j2
 public class AdminJobManager {
 
+    private static final String PARTITION_EXECUTED = "EXECUTED";
+    private static final String PARTITION_FAILED = "FAILED";
+    private static final long RETRY_BACKOFF_MILLIS = 500L;
+
     private final Map<JobName, List<AdminJobExecutor>> executorsByJobId;
+    private final Set<String> supportedJobNames;
     private final AdminJobQueueRepository adminJobQueueRepository;
-    private final TransactionTemplate nestedTransactionTemplate;
+    private final TransactionTemplate requiresNewTransactionTemplate;
     private final Set<String> executedStatuses;
     private final Set<String> notExecutedStatuses;
     private final ClockProvider clockProvider;
+    private final ThreadPoolExecutor partitionExecutor;
+    private final int maxConcurrentPartitionsPerJob;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Set<Long> runningSchedules = ConcurrentHashMap.newKeySet();
 
+    /**
+     * Creates the manager, configured using the following properties:
+     * <ul>
+     *     <li>alfio.admin-jobs.parallelism: max number of partitions processed at the same time (default 4)</li>
+     *     <li>alfio.admin-jobs.max-attempts: max number of attempts for processing a partition (default 3)</li>
+     *     <li>alfio.admin-jobs.lease-minutes: time after which a RUNNING job without progress can be claimed again (default 10)</li>
+     * </ul>
+     */
     public AdminJobManager(List<AdminJobExecutor> jobExecutors,
                            AdminJobQueueRepository adminJobQueueRepository,
                            PlatformTransactionManager transactionManager,
-                           ClockProvider clockProvider) {
+                           ClockProvider clockProvider,
+                           Environment environment) {
+        this(jobExecutors,
+            adminJobQueueRepository,
+            transactionManager,
+            clockProvider,
+            environment.getProperty("alfio.admin-jobs.parallelism", Integer.class, 4),
+            environment.getProperty("alfio.admin-jobs.max-attempts", Integer.class, 3),
+            Duration.ofMinutes(environment.getProperty("alfio.admin-jobs.lease-minutes", Integer.class, 10)));
+    }
+
+    AdminJobManager(List<AdminJobExecutor> jobExecutors,
+                    AdminJobQueueRepository adminJobQueueRepository,
+                    PlatformTransactionManager transactionManager,
+                    ClockProvider clockProvider,
+                    int parallelism,
+                    int maxAttempts,
+                    Duration lease) {
 
         this.executorsByJobId = jobExecutors.stream()
             .flatMap(je -> je.getJobNames().stream().map(n -> Pair.of(n, je)))
             .collect(groupingBy(Pair::getLeft, () -> new EnumMap<>(JobName.class), mapping(Pair::getValue, toList())));
+        this.supportedJobNames = executorsByJobId.keySet().stream().map(Enum::name).collect(toSet());
         this.adminJobQueueRepository = adminJobQueueRepository;
-        this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
         var executed = EnumSet.of(EXECUTED);
         this.executedStatuses = executed.stream().map(Enum::name).collect(toSet());
         this.notExecutedStatuses = EnumSet.complementOf(executed).stream().map(Enum::name).collect(toSet());
         this.clockProvider = clockProvider;
+        int threads = Math.max(1, parallelism);
+        var counter = new AtomicInteger();
+        this.partitionExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            var thread = new Thread(r, "admin-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.partitionExecutor.allowCoreThreadTimeOut(true);
+        this.maxConcurrentPartitionsPerJob = Math.max(1, threads / 2);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.lease = lease;
+    }
+
+    public int countPendingRequests() {
+        return adminJobQueueRepository.countPendingSchedules();
     }
 
-    @Scheduled(fixedDelay = 60 * 1000)
-    void processPendingRequests() {
+    /**
+     * Claims the pending jobs and starts processing them. This method does not wait for the jobs to be completed.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void processPendingRequests() {
         log.trace("Processing pending requests");
-        adminJobQueueRepository.loadPendingSchedules()
-            .stream()
-            .map(this::processPendingRequest)
-            .filter(p -> !p.getRight().isEmpty())
-            .forEach(scheduleWithResults -> {
-                var schedule = scheduleWithResults.getLeft();
-                var partitionedResults = scheduleWithResults.getRight().stream().collect(Collectors.partitioningBy(Result::isSuccess));
-                if(!partitionedResults.get(false).isEmpty()) {
-                    partitionedResults.get(false).forEach(r -> log.warn("Processing failed for {}: {}", schedule.getJobName(), r.getErrors()));
-                    adminJobQueueRepository.updateSchedule(schedule.getId(), AdminJobSchedule.Status.FAILED, ZonedDateTime.now(clockProvider.getClock()), Map.of());
-                } else {
-                    partitionedResults.get(true).forEach(result -> {
-                        if(result.getData() != null) {
-                            log.trace("Message from {}: {}", schedule.getJobName(), result.getData());
-                        }
-                    });
-                    adminJobQueueRepository.updateSchedule(schedule.getId(), EXECUTED, ZonedDateTime.now(clockProvider.getClock()), Map.of());
-                }
-            });
+        if(supportedJobNames.isEmpty()) {
+            return;
+        }
+        var now = ZonedDateTime.now(clockProvider.getClock());
+        if(!runningSchedules.isEmpty()) {
+            requiresNewTransactionTemplate.execute(status -> adminJobQueueRepository.renewLease(Set.copyOf(runningSchedules), now));
+        }
+        var claimed = requiresNewTransactionTemplate.execute(status -> adminJobQueueRepository.claimPendingSchedules(supportedJobNames, now, now.minus(lease)));
+        Objects.requireNonNull(claimed).stream()
+            .filter(schedule -> runningSchedules.add(schedule.getId()))
+            .forEach(this::startProcessing);
         log.trace("done processing pending requests");
     }
 
-    @Scheduled(cron = "#{environment.acceptsProfiles('dev') ? '0 * * * * *' : '0 0 0 * * *'}")
-    void cleanupExpiredRequests() {
+    public void cleanupExpiredRequests() {
         log.trace("Cleanup expired requests");
         ZonedDateTime now = ZonedDateTime.now(clockProvider.getClock());
         int deleted = adminJobQueueRepository.removePastSchedules(now.minusDays(1), executedStatuses);
@@ -116,16 +181,220 @@ public class AdminJobManager {
         }
     }
 
-    private Pair<AdminJobSchedule, List<Result<String>>> processPendingRequest(AdminJobSchedule schedule) {
-        return Pair.of(schedule, executorsByJobId.getOrDefault(schedule.getJobName(), List.of())
-            .stream()
-            .map(s -> {
-                try {
-                    return Result.success(nestedTransactionTemplate.execute(status -> s.process(schedule)));
-                } catch (Exception ex) {
-                    return Result.<String>error(ErrorCode.custom("exception", ex.getMessage()));
+    @PreDestroy
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shutdown() {
+        // interrupted jobs will be resumed once their lease expires
+        partitionExecutor.shutdownNow();
+    }
+
+    private void startProcessing(AdminJobSchedule schedule) {
+        var executors = executorsByJobId.getOrDefault(schedule.getJobName(), List.of());
+        List<PartitionTask> tasks;
+        try {
+            tasks = requiresNewTransactionTemplate.execute(status -> IntStream.range(0, executors.size()).boxed()
+                .flatMap(i -> {
+                    var executor = executors.get(i);
+                    // the key must not depend on the executor class, which could be a proxy
+                    var keyPrefix = executors.size() == 1 ? schedule.getJobName().name() : schedule.getJobName().name() + "." + i;
+                    return executor.partition(schedule).stream().map(p -> new PartitionTask(keyPrefix, executor, p));
+                })
+                .filter(task -> !PARTITION_EXECUTED.equals(schedule.getProgress().get(task.getKey())))
+                .collect(toList()));
+        } catch (Exception ex) {
+            log.warn("Cannot partition job {}", schedule.getJobName(), ex);
+            complete(schedule, executors, List.of(Pair.<PartitionTask, Result<String>>of(null, Result.error(ErrorCode.custom("exception", ex.getMessage())))));
+            return;
+        }
+        new ScheduleRun(schedule, executors, Objects.requireNonNull(tasks)).start();
+    }
+
+    private Result<String> processPartition(AdminJobSchedule schedule, PartitionTask task) {
+        Exception lastError = null;
+        var checkpoint = new PartitionCheckpoint(schedule, task);
+        for(int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                var message = task.executor.process(schedule, task.partition, checkpoint);
+                recordProgress(schedule, task, PARTITION_EXECUTED);
+                return Result.success(message);
+            } catch (Exception ex) {
+                lastError = ex;
+                log.debug("Attempt {} of {} failed for partition {} of job {}", attempt, maxAttempts, task.getKey(), schedule.getJobName(), ex);
+                if(attempt < maxAttempts && !waitBeforeRetry(attempt)) {
+                    break;
+                }
+            }
+        }
+        recordProgress(schedule, task, PARTITION_FAILED);
+        return Result.error(ErrorCode.custom("exception", lastError.getMessage()));
+    }
+
+    private void recordProgress(AdminJobSchedule schedule, PartitionTask task, String status) {
+        try {
+            requiresNewTransactionTemplate.execute(s -> adminJobQueueRepository.updatePartitionProgress(schedule.getId(), task.getKey(), status, ZonedDateTime.now(clockProvider.getClock())));
+        } catch (Exception ex) {
+            log.warn("Cannot record progress for partition {} of job {}", task.getKey(), schedule.getJobName(), ex);
+        }
+    }
+
+    private void complete(AdminJobSchedule schedule, List<AdminJobExecutor> executors, Collection<Pair<PartitionTask, Result<String>>> results) {
+        try {
+            var failures = results.stream().map(Pair::getRight).filter(r -> !r.isSuccess()).collect(toList());
+            AdminJobSchedule.Status status;
+            if(!failures.isEmpty()) {
+                failures.forEach(r -> log.warn("Processing failed for {}: {}", schedule.getJobName(), r.getErrors()));
+                status = AdminJobSchedule.Status.FAILED;
+            } else {
+                results.forEach(p -> {
+                    if(p.getRight().getData() != null) {
+                        log.trace("Message from {}: {}", schedule.getJobName(), p.getRight().getData());
+                    }
+                });
+                status = notifyCompletion(schedule, executors, results);
+            }
+            var finalStatus = status;
+            requiresNewTransactionTemplate.execute(s -> adminJobQueueRepository.updateSchedule(schedule.getId(), finalStatus, ZonedDateTime.now(clockProvider.getClock()), Map.of()));
+        } catch (Exception ex) {
+            log.warn("Cannot complete job {}", schedule.getJobName(), ex);
+        } finally {
+            runningSchedules.remove(schedule.getId());
+        }
+    }
+
+    private AdminJobSchedule.Status notifyCompletion(AdminJobSchedule schedule, List<AdminJobExecutor> executors, Collection<Pair<PartitionTask, Result<String>>> results) {
+        for (var executor : executors) {
+            var messages = results.stream()
+                .filter(p -> p.getLeft().executor == executor)
+                .map(p -> p.getRight().getData())
+                .collect(toList());
+            try {
+                requiresNewTransactionTemplate.execute(s -> {
+                    executor.onComplete(schedule, messages);
+                    return null;
+                });
+            } catch (Exception ex) {
+                log.warn("Processing failed for {}", schedule.getJobName(), ex);
+                return AdminJobSchedule.Status.FAILED;
+            }
+        }
+        return EXECUTED;
+    }
+
+    private static boolean waitBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class PartitionTask {
+        private final String keyPrefix;
+        private final AdminJobExecutor executor;
+        private final Partition partition;
+
+        private String getKey() {
+            return keyPrefix + "/" + partition.getKey();
+        }
+    }
+
+    /**
+     * Runs each unit of work of a partition in its own transaction. The completion of the unit is recorded as the last
+     * statement of the transaction, so that the row of the job is locked only for the time of the commit.
+     */
+    private final class PartitionCheckpoint implements AdminJobExecutor.Checkpoint {
+        private final AdminJobSchedule schedule;
+        private final PartitionTask task;
+        private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+        private PartitionCheckpoint(AdminJobSchedule schedule, PartitionTask task) {
+            this.schedule = schedule;
+            this.task = task;
+            var prefix = unitKey("");
+            schedule.getProgress().forEach((key, status) -> {
+                if(key.startsWith(prefix) && PARTITION_EXECUTED.equals(status)) {
+                    completed.add(key);
                 }
-            })
-            .collect(Collectors.toList()));
+            });
+        }
+
+        @Override
+        public <T> Optional<T> runOnce(String unit, Supplier<T> work) {
+            var key = unitKey(unit);
+            if(completed.contains(key)) {
+                log.trace("Skipping unit {}, already completed", key);
+                return Optional.empty();
+            }
+            var result = requiresNewTransactionTemplate.execute(status -> {
+                var r = work.get();
+                adminJobQueueRepository.updatePartitionProgress(schedule.getId(), key, PARTITION_EXECUTED, ZonedDateTime.now(clockProvider.getClock()));
+                return r;
+            });
+            completed.add(key);
+            return Optional.ofNullable(result);
+        }
+
+        private String unitKey(String unit) {
+            return task.getKey() + "#" + unit;
+        }
+    }
+
+    /**
+     * Keeps track of the partitions of a single job. At most {@link #maxConcurrentPartitionsPerJob} partitions are
+     * submitted at the same time, the next one is submitted as soon as one completes.
+     */
+    private final class ScheduleRun {
+        private final AdminJobSchedule schedule;
+        private final List<AdminJobExecutor> executors;
+        private final Queue<PartitionTask> pending;
+        private final AtomicInteger remaining;
+        private final Queue<Pair<PartitionTask, Result<String>>> results = new ConcurrentLinkedQueue<>();
+
+        private ScheduleRun(AdminJobSchedule schedule, List<AdminJobExecutor> executors, List<PartitionTask> tasks) {
+            this.schedule = schedule;
+            this.executors = executors;
+            this.pending = new ConcurrentLinkedQueue<>(tasks);
+            this.remaining = new AtomicInteger(tasks.size());
+        }
+
+        private void start() {
+            if(remaining.get() == 0) {
+                complete(schedule, executors, results);
+                return;
+            }
+            for(int i = 0; i < maxConcurrentPartitionsPerJob; i++) {
+                submitNext();
+            }
+        }
+
+        private void submitNext() {
+            var task = pending.poll();
+            if(task == null) {
+                return;
+            }
+            try {
+                partitionExecutor.execute(() -> {
+                    try {
+                        results.add(Pair.of(task, processPartition(schedule, task)));
+                    } finally {
+                        partitionCompleted();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // we're shutting down. The job will be claimed again once its lease expires
+                runningSchedules.remove(schedule.getId());
+            }
+        }
+
+        private void partitionCompleted() {
+            if(remaining.decrementAndGet() == 0) {
+                complete(schedule, executors, results);
+            } else {
+                submitNext();
+            }
+        }
     }
 }
@@ -20,25 +20,26 @@ import alfio.manager.BillingDocumentManager;
 import alfio.manager.TicketReservationManager;
 import alfio.model.*;
 import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.DataMigrationStep;
 import alfio.model.system.EventMigration;
 import alfio.model.transaction.PaymentProxy;
 import alfio.repository.*;
 import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.system.DataMigrationStepRepository;
 import alfio.repository.system.EventMigrationRepository;
 import alfio.util.ClockProvider;
 import alfio.util.MonetaryUtil;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -46,6 +47,7 @@ import org.springframework.transaction.support.TransactionTemplate;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.IntStream;
@@ -62,7 +64,17 @@ public class DataMigrator {
 
     private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d\\.)([0-9.]*)(-SNAPSHOT)?");
     private static final Map<String, String> PRICE_UPDATE_BY_KEY = new LinkedHashMap<>();
+    private static final int BATCH_SIZE = 500;
+    private static final String FILL_RESERVATIONS_LANGUAGE = "fill-reservations-language";
+    private static final String FIX_RESERVATION_PRICE = "fix-reservation-price";
+    private static final String FIX_VAT_STATUS = "fix-vat-status";
+    // the following queries must return the keys in ascending order, starting after :lastKey
+    private static final String RESERVATIONS_WITHOUT_LANGUAGE = "select id from tickets_reservation where user_language is null and id > :lastKey order by id limit :limit";
+    private static final String RESERVATIONS_WITHOUT_PRICE = "select id from tickets_reservation where src_price_cts = 0 and payment_method <> 'NONE'" +
+        " and status not in ('CANCELLED', 'CREDIT_NOTE_ISSUED') and event_id_fk is not null and id > :lastKey order by id limit :limit";
+    private static final String RESERVATIONS_WITHOUT_VAT_STATUS = "select id from tickets_reservation where vat_status is null and id > :lastKey order by id limit :limit";
     private final EventMigrationRepository eventMigrationRepository;
+    private final DataMigrationStepRepository dataMigrationStepRepository;
     private final EventRepository eventRepository;
     private final TicketCategoryRepository ticketCategoryRepository;
     private final BigDecimal currentVersion;
@@ -102,8 +114,10 @@ public class DataMigrator {
                         AdditionalServiceItemRepository additionalServiceItemRepository,
                         AdditionalServiceRepository additionalServiceRepository,
                         BillingDocumentManager billingDocumentManager,
-                        ClockProvider clockProvider) {
+                        ClockProvider clockProvider,
+                        DataMigrationStepRepository dataMigrationStepRepository) {
         this.eventMigrationRepository = eventMigrationRepository;
+        this.dataMigrationStepRepository = dataMigrationStepRepository;
         this.eventRepository = eventRepository;
         this.ticketCategoryRepository = ticketCategoryRepository;
         this.configurationRepository = configurationRepository;
@@ -121,37 +135,82 @@ public class DataMigrator {
         this.clockProvider = clockProvider;
     }
 
+    /**
+     * Migrates the data to the current version.
+     *
+     * Only the events which have not been migrated yet are loaded. The global steps are executed in batches of
+     * {@value #BATCH_SIZE} records, each one in its own transaction. The progress of each step is saved in the data_migration_step
+     * table, so that a step is executed only once for each build, and can be resumed if it has been interrupted.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void migrateEventsToCurrentVersion() {
-        List<Event> events = eventRepository.findAll();
-        events.forEach(this::migrateEventToCurrentVersion);
-        fillReservationsLanguage();
-        fillDefaultOptions();
-        fixReservationPrice(events);
-        fixVatStatus();
+        List<Event> events = eventRepository.findEventsToMigrate(currentVersionAsString, buildTimestamp);
+        log.debug("found {} event(s) to migrate", events.size());
+        events.forEach(event -> {
+            try {
+                migrateEventToCurrentVersion(event);
+            } catch (Exception e) {
+                log.error("cannot migrate event {}", event.getShortName(), e);
+            }
+        });
+        runStep(FILL_RESERVATIONS_LANGUAGE, RESERVATIONS_WITHOUT_LANGUAGE, this::fillReservationsLanguage);
+        runStep(FIX_RESERVATION_PRICE, RESERVATIONS_WITHOUT_PRICE, this::fixReservationPrice);
+        runStep(FIX_VAT_STATUS, RESERVATIONS_WITHOUT_VAT_STATUS, this::fixVatStatus);
     }
 
-    private void fixVatStatus() {
-        transactionTemplate.execute(ts -> {
-            int rows = jdbc.update("update tickets_reservation set vat_status = (select vat_status from event where id = event_id_fk) where vat_status is null", Map.of());
-            log.debug("update VAT/GST on {} reservations", rows);
-            return null;
-        });
+    private void runStep(String name, String chunkQuery, Consumer<List<String>> processor) {
+        var step = dataMigrationStepRepository.findByName(name).filter(this::isUpToDate);
+        if(step.filter(s -> s.getStatus() == DataMigrationStep.Status.COMPLETE).isPresent()) {
+            log.trace("step {} already completed. Skipping.", name);
+            return;
+        }
+        String lastKey = step.map(DataMigrationStep::getLastKey).orElse("");
+        if(step.isEmpty()) {
+            dataMigrationStepRepository.start(name, currentVersionAsString, buildTimestamp);
+        } else {
+            log.info("resuming step {} after key {}", name, lastKey);
+        }
+        int processed = processInChunks(chunkQuery, lastKey, processor, key -> dataMigrationStepRepository.updateProgress(name, key));
+        dataMigrationStepRepository.complete(name);
+        log.debug("step {} completed. {} record(s) processed", name, processed);
     }
 
-    private void fixReservationPrice(List<Event> events) {
-        transactionTemplate.execute(ts -> {
-            Map<Integer, List<String>> candidates = jdbc.queryForList("select id, event_id_fk from tickets_reservation where src_price_cts = 0 and payment_method <> 'NONE' and status not in ('CANCELLED', 'CREDIT_NOTE_ISSUED') order by 2", Map.of())
-                .stream()
-                .map(m -> Pair.of((Integer) m.get("event_id_fk"), (String) m.get("id")))
-                .collect(groupingBy(Pair::getKey, mapping(Pair::getValue, toList())));
-
-            for(var entry : candidates.entrySet()) {
-                var event = events.stream().filter(e -> e.getId() == entry.getKey()).findFirst().orElseThrow();
-                ListUtils.partition(entry.getValue(), 1000) // limit query size and batch update size
-                    .forEach(reservations -> fixReservationsForEvent(event, reservations));
+    private boolean isUpToDate(DataMigrationStep step) {
+        return step.getCurrentVersion().equals(currentVersionAsString) && !step.getBuildTimestamp().isBefore(buildTimestamp);
+    }
+
+    private int processInChunks(String chunkQuery, String startKey, Consumer<List<String>> processor, Consumer<String> progressListener) {
+        String lastKey = startKey;
+        int processed = 0;
+        while(true) {
+            var params = new MapSqlParameterSource("lastKey", lastKey).addValue("limit", BATCH_SIZE);
+            List<String> keys = Objects.requireNonNull(transactionTemplate.execute(ts -> {
+                var chunk = jdbc.queryForList(chunkQuery, params, String.class);
+                if(!chunk.isEmpty()) {
+                    processor.accept(chunk);
+                    progressListener.accept(chunk.get(chunk.size() - 1));
+                }
+                return chunk;
+            }));
+            processed += keys.size();
+            if(keys.size() < BATCH_SIZE) {
+                return processed;
             }
-            return null;
-        });
+            lastKey = keys.get(keys.size() - 1);
+        }
+    }
+
+    private void fixVatStatus(List<String> reservationIds) {
+        int rows = jdbc.update("update tickets_reservation set vat_status = (select vat_status from event where id = event_id_fk) where id in (:ids) and vat_status is null", new MapSqlParameterSource("ids", reservationIds));
+        log.debug("update VAT/GST on {} reservations", rows);
+    }
+
+    private void fixReservationPrice(List<String> reservationIds) {
+        jdbc.queryForList("select id, event_id_fk from tickets_reservation where id in (:ids)", new MapSqlParameterSource("ids", reservationIds))
+            .stream()
+            .map(m -> Pair.of((Integer) m.get("event_id_fk"), (String) m.get("id")))
+            .collect(groupingBy(Pair::getKey, mapping(Pair::getValue, toList())))
+            .forEach((eventId, reservations) -> fixReservationsForEvent(eventRepository.findById(eventId), reservations));
     }
 
     private void fixReservationsForEvent(Event event, List<String> reservations) {
@@ -185,7 +244,7 @@ public class DataMigrator {
         }
     }
 
-    private void fillDefaultOptions() {
+    public void fillDefaultOptions() {
         transactionTemplate.execute(ts -> {
             Integer count = jdbc.queryForObject("select count(*) from configuration where c_key = :key", new MapSqlParameterSource("key", ConfigurationKeys.GOOGLE_ANALYTICS_ANONYMOUS_MODE.getValue()), Integer.class);
             if(count == null || count == 0) {
@@ -265,15 +324,12 @@ public class DataMigrator {
     }
 
     void fillReservationsLanguage() {
-        transactionTemplate.execute(s -> {
-            jdbc.queryForList("select id from tickets_reservation where user_language is null", new EmptySqlParameterSource(), String.class)
-                    .forEach(id -> {
-                        MapSqlParameterSource param = new MapSqlParameterSource("reservationId", id);
-                        String language = optionally(() -> jdbc.queryForObject("select user_language from ticket where tickets_reservation_id = :reservationId limit 1", param, String.class)).orElse("en");
-                        jdbc.update("update tickets_reservation set user_language = :userLanguage where id = :reservationId", param.addValue("userLanguage", language));
-                    });
-            return null;
-        });
+        processInChunks(RESERVATIONS_WITHOUT_LANGUAGE, "", this::fillReservationsLanguage, key -> {});
+    }
+
+    private void fillReservationsLanguage(List<String> reservationIds) {
+        jdbc.update("update tickets_reservation tr set user_language = coalesce((select user_language from ticket where tickets_reservation_id = tr.id limit 1), 'en') where tr.id in (:ids)",
+            new MapSqlParameterSource("ids", reservationIds));
     }
 
     private void fillDescriptions(Event event) {
@@ -26,9 +26,12 @@ import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.ObjectUtils.firstNonNull;
@@ -43,6 +46,7 @@ public class ReservationPriceCalculator implements PriceContainer {
     final PurchaseContext purchaseContext;
     private final List<Subscription> subscriptions;
     private final Optional<Subscription> appliedSubscription;
+    private BigDecimal taxablePrice;
 
     @Override
     public int getSrcPriceCts() {
@@ -91,11 +95,24 @@ public class ReservationPriceCalculator implements PriceContainer {
 
     @Override
     public BigDecimal getTaxablePrice() {
+        // getFinalPrice() and getVAT() both need the taxable price, so we compute it only once
+        if(taxablePrice == null) {
+            taxablePrice = calculateTaxablePrice();
+        }
+        return taxablePrice;
+    }
+
+    private BigDecimal calculateTaxablePrice() {
+        // tickets having the same category and source price have also the same taxable price
+        var vatPercentage = getVatPercentageOrZero();
+        Map<Pair<Integer, Integer>, BigDecimal> ticketTaxablePrices = new HashMap<>();
         var ticketsTaxablePrice = tickets.stream()
-            .map(t -> TicketPriceContainer.from(t, reservation.getVatStatus(), getVatPercentageOrZero(), purchaseContext.getVatStatus(), discount).getTaxablePrice())
+            .map(t -> ticketTaxablePrices.computeIfAbsent(Pair.of(t.getCategoryId(), t.getSrcPriceCts()),
+                k -> TicketPriceContainer.from(t, reservation.getVatStatus(), vatPercentage, purchaseContext.getVatStatus(), discount).getTaxablePrice()))
             .reduce(BigDecimal.ZERO, BigDecimal::add);
+        var additionalServicesById = additionalServices.stream().collect(Collectors.toMap(AdditionalService::getId, Function.identity(), (a, b) -> a));
         var additionalServiceTaxablePrice = additionalServiceItems.stream()
-            .map(asi -> AdditionalServiceItemPriceContainer.from(asi, additionalServices.stream().filter(as -> as.getId() == asi.getAdditionalServiceId()).findFirst().orElseThrow(), purchaseContext, discount).getTaxablePrice())
+            .map(asi -> AdditionalServiceItemPriceContainer.from(asi, Optional.ofNullable(additionalServicesById.get(asi.getAdditionalServiceId())).orElseThrow(), purchaseContext, discount).getTaxablePrice())
             .reduce(BigDecimal.ZERO, BigDecimal::add);
         var subscriptionsPrice = subscriptions.stream().map(s -> SubscriptionPriceContainer.from(s, purchaseContext, discount).getTaxablePrice())
             .reduce(BigDecimal.ZERO, BigDecimal::add);
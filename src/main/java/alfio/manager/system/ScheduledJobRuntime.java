@@ -0,0 +1,310 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.config.support.WorkloadRoutingDataSource;
+import alfio.config.support.WorkloadRoutingDataSource.Workload;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the scheduled jobs.
+ *
+ * The Spring scheduler only triggers the jobs: each job is executed on its own thread, so that a slow job cannot delay
+ * the others. A job is skipped if its previous execution is still running.
+ * Jobs which must run on a single node of the cluster are guarded by a PostgreSQL advisory lock, if enabled by
+ * the "alfio.jobs.leader-election" property. Exclusive jobs (see {@link JobOptions#exclusive()}) are always guarded.
+ */
+@Component
+@Log4j2
+public class ScheduledJobRuntime {
+
+    private final DataSource dataSource;
+    private final boolean leaderElectionEnabled;
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+
+    public ScheduledJobRuntime(DataSource dataSource, Environment environment) {
+        this.dataSource = dataSource;
+        this.leaderElectionEnabled = environment.getProperty("alfio.jobs.leader-election", Boolean.class, false);
+    }
+
+    /**
+     * Triggers the execution of a job.
+     *
+     * @param name the job name
+     * @param options execution options
+     * @param job the job. Returns the number of processed items
+     */
+    public void runAndCount(String name, JobOptions options, IntSupplier job) {
+        var state = jobs.computeIfAbsent(name, JobState::new);
+        state.backlog.set(options.backlog);
+        if(!state.pending.compareAndSet(false, true)) {
+            state.skipped.increment();
+            log.debug("job {} is still running. Skipping execution", name);
+            return;
+        }
+        long delay = options.maxJitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(options.maxJitter.toMillis() + 1);
+        try {
+            state.executor.schedule(() -> execute(state, options, job), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the runtime is shutting down
+            state.pending.set(false);
+        }
+    }
+
+    /**
+     * Triggers the execution of a job.
+     *
+     * @param name the job name
+     * @param options execution options
+     * @param job the job
+     */
+    public void run(String name, JobOptions options, Runnable job) {
+        runAndCount(name, options, () -> {
+            job.run();
+            return -1;
+        });
+    }
+
+    /**
+     * Executes a job in the calling thread, with the same guarantees of {@link #run(String, JobOptions, Runnable)}.
+     *
+     * @param name the job name
+     * @param options execution options. The jitter is ignored
+     * @param job the job
+     */
+    public void runNow(String name, JobOptions options, Runnable job) {
+        var state = jobs.computeIfAbsent(name, JobState::new);
+        if(!state.pending.compareAndSet(false, true)) {
+            state.skipped.increment();
+            log.debug("job {} is still running. Skipping execution", name);
+            return;
+        }
+        execute(state, options, () -> {
+            job.run();
+            return -1;
+        });
+    }
+
+    public List<JobStatistics> getStatistics() {
+        return jobs.values().stream()
+            .map(JobState::toStatistics)
+            .sorted(Comparator.comparing(JobStatistics::getName))
+            .collect(Collectors.toList());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(s -> s.executor.shutdownNow());
+    }
+
+    private void execute(JobState state, JobOptions options, IntSupplier job) {
+        try {
+            if(options.singleNode && (leaderElectionEnabled || options.lockRequired)) {
+                executeIfLeader(state, job);
+            } else {
+                executeAndRecord(state, job);
+            }
+        } finally {
+            state.pending.set(false);
+        }
+    }
+
+    private void executeIfLeader(JobState state, IntSupplier job) {
+        // session-level advisory lock on a dedicated connection: the job is free to open and commit its own transactions
+        try (Connection connection = openLockConnection()) {
+            if(!tryLock(connection, "select pg_try_advisory_lock(?)", state.lockKey)) {
+                state.notLeader.increment();
+                log.trace("job {} is running on another node", state.name);
+                return;
+            }
+            try {
+                executeAndRecord(state, job);
+            } finally {
+                tryLock(connection, "select pg_advisory_unlock(?)", state.lockKey);
+            }
+        } catch (SQLException e) {
+            log.warn("cannot acquire lock for job {}", state.name, e);
+        }
+    }
+
+    private Connection openLockConnection() throws SQLException {
+        // the lock connection is taken from its own pool, so that it doesn't compete with the connections used by the jobs
+        var previous = WorkloadRoutingDataSource.requestWorkload(Workload.JOB_LOCK);
+        try {
+            return dataSource.getConnection();
+        } finally {
+            WorkloadRoutingDataSource.requestWorkload(previous);
+        }
+    }
+
+    private static boolean tryLock(Connection connection, String statement, long key) throws SQLException {
+        try (var ps = connection.prepareStatement(statement)) {
+            ps.setLong(1, key);
+            try (var rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void executeAndRecord(JobState state, IntSupplier job) {
+        var start = Instant.now();
+        state.lastStart.set(start);
+        long startNanos = System.nanoTime();
+        try {
+            int processed = job.getAsInt();
+            state.lastItemsProcessed.set(processed >= 0 ? processed : null);
+            state.lastError.set(null);
+        } catch (Exception e) {
+            state.failures.increment();
+            state.lastError.set(e.getMessage());
+            log.warn("unexpected error while running job {}", state.name, e);
+        } finally {
+            state.runs.increment();
+            state.lastDurationMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    @Value
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class JobOptions {
+        /**
+         * the job must run on a single node of the cluster
+         */
+        boolean singleNode;
+        /**
+         * max random delay before the execution, to spread the load of the nodes
+         */
+        Duration maxJitter;
+        /**
+         * number of items waiting to be processed, used only for statistics
+         */
+        IntSupplier backlog;
+        /**
+         * the job is guarded by the advisory lock even if the leader election is disabled
+         */
+        boolean lockRequired;
+
+        public static JobOptions allNodes(Duration maxJitter) {
+            return new JobOptions(false, maxJitter, null, false);
+        }
+
+        public static JobOptions singleNode(Duration maxJitter) {
+            return new JobOptions(true, maxJitter, null, false);
+        }
+
+        /**
+         * The job must never run concurrently on two nodes of the cluster. If it's running on another node,
+         * the execution is skipped.
+         */
+        public static JobOptions exclusive() {
+            return new JobOptions(true, Duration.ZERO, null, true);
+        }
+
+        public JobOptions withBacklog(IntSupplier backlog) {
+            return new JobOptions(singleNode, maxJitter, backlog, lockRequired);
+        }
+    }
+
+    @Value
+    public static class JobStatistics {
+        String name;
+        boolean running;
+        long runs;
+        long failures;
+        long skippedOverlapping;
+        long skippedNotLeader;
+        Instant lastStart;
+        Long lastDurationMillis;
+        Integer lastItemsProcessed;
+        String lastError;
+        Integer backlog;
+    }
+
+    private static final class JobState {
+        private final String name;
+        private final long lockKey;
+        private final ScheduledExecutorService executor;
+        private final AtomicBoolean pending = new AtomicBoolean(false);
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder notLeader = new LongAdder();
+        private final AtomicReference<Instant> lastStart = new AtomicReference<>();
+        private final AtomicReference<Long> lastDurationMillis = new AtomicReference<>();
+        private final AtomicReference<Integer> lastItemsProcessed = new AtomicReference<>();
+        private final AtomicReference<String> lastError = new AtomicReference<>();
+        private final AtomicReference<IntSupplier> backlog = new AtomicReference<>();
+
+        private JobState(String name) {
+            this.name = name;
+            this.lockKey = ("alfio-job:" + name).hashCode();
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "job-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private JobStatistics toStatistics() {
+            return new JobStatistics(name,
+                pending.get(),
+                runs.sum(),
+                failures.sum(),
+                skipped.sum(),
+                notLeader.sum(),
+                lastStart.get(),
+                lastDurationMillis.get(),
+                lastItemsProcessed.get(),
+                lastError.get(),
+                evaluateBacklog());
+        }
+
+        private Integer evaluateBacklog() {
+            var supplier = backlog.get();
+            if(supplier == null) {
+                return null;
+            }
+            try {
+                return supplier.getAsInt();
+            } catch (Exception e) {
+                log.trace("cannot evaluate backlog for job {}", name, e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.user;
+
+import alfio.model.user.User;
+import alfio.repository.user.AuthorityRepository;
+import alfio.repository.user.UserRepository;
+import alfio.repository.user.join.UserOrganizationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Short-lived cache of the credentials resolved for an API key: the user, its roles and the organizations it belongs to.
+ *
+ * Entries are keyed by the SHA-256 hash of the API key, so that the keys are not kept in memory. They are invalidated
+ * explicitly when the user is modified, disabled or deleted on this node, and expire after a few seconds in order to
+ * pick up the changes made on other nodes.
+ */
+@Component
+public class ApiKeyCredentialCache {
+
+    private final UserRepository userRepository;
+    private final AuthorityRepository authorityRepository;
+    private final UserOrganizationRepository userOrganizationRepository;
+    private final Cache<String, ApiKeyCredential> cache;
+
+    /**
+     * Configuration properties:
+     * <ul>
+     *     <li>alfio.api-key.cache.expiration-seconds: max age of a cached credential (default 30). 0 disables the cache</li>
+     *     <li>alfio.api-key.cache.max-size: max number of cached credentials (default 10000)</li>
+     * </ul>
+     */
+    public ApiKeyCredentialCache(UserRepository userRepository,
+                                 AuthorityRepository authorityRepository,
+                                 UserOrganizationRepository userOrganizationRepository,
+                                 Environment environment) {
+        this.userRepository = userRepository;
+        this.authorityRepository = authorityRepository;
+        this.userOrganizationRepository = userOrganizationRepository;
+        int expiration = environment.getProperty("alfio.api-key.cache.expiration-seconds", Integer.class, 30);
+        this.cache = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(expiration))
+            .maximumSize(expiration > 0 ? environment.getProperty("alfio.api-key.cache.max-size", Integer.class, 10_000) : 0)
+            .build();
+    }
+
+    /**
+     * Returns the credential for the given API key, if a user with that key exists.
+     */
+    public Optional<ApiKeyCredential> find(String apiKey) {
+        return Optional.ofNullable(cache.get(DigestUtils.sha256Hex(apiKey), k -> load(apiKey)));
+    }
+
+    /**
+     * Invalidates the credential of the given user. If a transaction is active, the credential is invalidated again
+     * after commit, so that a concurrent request cannot cache it as it was before the change.
+     */
+    public void invalidate(int userId) {
+        cache.asMap().values().removeIf(c -> c.user.getId() == userId);
+        afterCommit(() -> cache.asMap().values().removeIf(c -> c.user.getId() == userId));
+    }
+
+    private ApiKeyCredential load(String apiKey) {
+        return userRepository.findByUsername(apiKey)
+            .map(user -> new ApiKeyCredential(user,
+                authorityRepository.findRoles(apiKey),
+                new TreeSet<>(userOrganizationRepository.findOrganizationsForUsers(List.of(user.getId())))))
+            .orElse(null);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    public static class ApiKeyCredential {
+        private final User user;
+        private final List<String> roles;
+        private final Set<Integer> organizationIds;
+    }
+}
@@ -64,6 +64,7 @@ public class UserManager {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final InvoiceSequencesRepository invoiceSequencesRepository;
+    private final ApiKeyCredentialCache apiKeyCredentialCache;
 
     private List<Authority> getUserAuthorities(User user) {
         return authorityRepository.findGrantedAuthorities(user.getUsername());
@@ -271,6 +272,7 @@ public class UserManager {
             authorityRepository.revokeAll(username);
             authorityRepository.create(username, role.getRoleName());
         }
+        apiKeyCredentialCache.invalidate(id);
     }
 
     public void updateUserContactInfo(int id, String firstName, String lastName, String emailAddress) {
@@ -350,6 +352,7 @@ public class UserManager {
         User currentUser = userRepository.findEnabledByUsername(currentUsername).orElseThrow(IllegalArgumentException::new);
         Assert.isTrue(userId != currentUser.getId(), "sorry but you cannot delete your own account.");
         userRepository.deleteUserAndReferences(userId);
+        apiKeyCredentialCache.invalidate(userId);
     }
 
     public void enable(int userId, String currentUsername, boolean status) {
@@ -357,6 +360,7 @@ public class UserManager {
         Assert.isTrue(userId != currentUser.getId(), "sorry but you cannot commit suicide");
 
         userRepository.toggleEnabled(userId, status);
+        apiKeyCredentialCache.invalidate(userId);
     }
 
     public ValidationResult validateUser(Integer id, String username, String firstName, String lastName, String emailAddress) {
@@ -0,0 +1,59 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Resized copy of an uploaded image. Variants are addressed by the digest of the original image, their size and their format.
+ */
+@Value
+public class ImageVariant {
+
+    String sourceId;
+    Size size;
+    String contentType;
+    String formatName;
+
+    public String getId() {
+        return sourceId + "_" + size.name().toLowerCase() + "_" + formatName;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Size {
+        SMALL(320),
+        MEDIUM(640),
+        LARGE(1280);
+
+        /**
+         * max width and height, in pixels
+         */
+        private final int maxSize;
+
+        public static Optional<Size> fromString(String value) {
+            return Arrays.stream(values())
+                .filter(s -> s.name().equalsIgnoreCase(value))
+                .findFirst();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import alfio.util.MonetaryUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Aggregated prices of a group of homogeneous items (e.g. tickets of the same category, or items of the same
+ * additional service), as shown in the order summary.
+ * <p>
+ * Items sharing the same source price are evaluated only once, and the totals are accumulated in cents.
+ * The VAT computation is delegated to {@link PriceContainer}, so that the rounding rules defined in {@link MonetaryUtil}
+ * are applied exactly as if each item had been evaluated on its own.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class SummaryPriceAggregate {
+
+    private final int unitPriceCts;
+    private final int unitPriceBeforeVatCts;
+    private final int count;
+    private final int subTotalCts;
+    private final int subTotalBeforeVatCts;
+
+    /**
+     * Aggregates the given elements. All elements must share the same currency, discount and VAT settings.
+     *
+     * @param elements the elements to aggregate. Must not be empty
+     * @param summaryPriceCts function that extracts the price to show in the summary
+     * @return the aggregated prices. Unit prices refer to the first element of the list
+     */
+    public static <T extends PriceContainer> SummaryPriceAggregate of(List<T> elements, ToIntFunction<T> summaryPriceCts) {
+        if(elements.isEmpty()) {
+            throw new IllegalArgumentException("Cannot aggregate an empty list");
+        }
+        var first = elements.get(0);
+        var currencyCode = first.getCurrencyCode();
+        Map<Integer, PricePoint> pricePoints = new LinkedHashMap<>();
+        for (T element : elements) {
+            pricePoints.computeIfAbsent(element.getSrcPriceCts(), k -> new PricePoint(summaryPriceCts.applyAsInt(element), element.getNetPrice())).count++;
+        }
+        long subTotalCts = 0;
+        BigDecimal subTotalBeforeVat = BigDecimal.ZERO;
+        for (PricePoint pricePoint : pricePoints.values()) {
+            subTotalCts += (long) pricePoint.summaryPriceCts * pricePoint.count;
+            subTotalBeforeVat = subTotalBeforeVat.add(pricePoint.netPrice.multiply(BigDecimal.valueOf(pricePoint.count)));
+        }
+        var firstPricePoint = pricePoints.get(first.getSrcPriceCts());
+        return new SummaryPriceAggregate(firstPricePoint.summaryPriceCts,
+            MonetaryUtil.unitToCents(firstPricePoint.netPrice, currencyCode),
+            elements.size(),
+            Math.toIntExact(subTotalCts),
+            MonetaryUtil.unitToCents(subTotalBeforeVat, currencyCode));
+    }
+
+    @RequiredArgsConstructor
+    private static class PricePoint {
+        private final int summaryPriceCts;
+        private final BigDecimal netPrice;
+        private int count;
+    }
+}
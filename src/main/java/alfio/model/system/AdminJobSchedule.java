@@ -37,18 +37,24 @@ public class AdminJobSchedule {
     private final Status status;
     private final ZonedDateTime executionTimestamp;
     private final Map<String, Object> metadata;
+    /**
+     * status of each processed partition, by partition key
+     */
+    private final Map<String, String> progress;
 
     public AdminJobSchedule(@Column("id") long id,
                             @Column("job_name") String jobName,
                             @Column("request_ts") ZonedDateTime requestTimestamp,
                             @Column("status") Status status,
                             @Column("execution_ts") ZonedDateTime executionTimestamp,
-                            @Column("metadata") @JSONData Map<String, Object> metadata) {
+                            @Column("metadata") @JSONData Map<String, Object> metadata,
+                            @Column("progress") @JSONData Map<String, String> progress) {
         this.id = id;
         this.jobName = JobName.safeValueOf(jobName);
         this.requestTimestamp = requestTimestamp;
         this.status = status;
         this.executionTimestamp = executionTimestamp;
         this.metadata = metadata;
+        this.progress = progress != null ? progress : Map.of();
     }
 }
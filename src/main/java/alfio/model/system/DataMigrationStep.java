@@ -0,0 +1,48 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model.system;
+
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import lombok.Getter;
+
+import java.time.ZonedDateTime;
+
+@Getter
+public class DataMigrationStep {
+
+    public enum Status {
+        RUNNING, COMPLETE
+    }
+
+    private final String name;
+    private final String currentVersion;
+    private final ZonedDateTime buildTimestamp;
+    private final Status status;
+    private final String lastKey;
+
+    public DataMigrationStep(@Column("name") String name,
+                             @Column("current_version") String currentVersion,
+                             @Column("build_ts") ZonedDateTime buildTimestamp,
+                             @Column("status") String status,
+                             @Column("last_key") String lastKey) {
+        this.name = name;
+        this.currentVersion = currentVersion;
+        this.buildTimestamp = buildTimestamp;
+        this.status = Status.valueOf(status);
+        this.lastKey = lastKey;
+    }
+}
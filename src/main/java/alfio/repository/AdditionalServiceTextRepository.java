@@ -73,6 +73,25 @@ public interface AdditionalServiceTextRepository {
 
     }
 
+    @Query("select id, additional_service_id_fk, locale, type, value from additional_service_description where additional_service_id_fk in (:additionalServiceIds) and type = :type order by id")
+    List<AdditionalServiceText> findAllByAdditionalServiceIdsAndType(@Bind("additionalServiceIds") Collection<Integer> additionalServiceIds, @Bind("type") AdditionalServiceText.TextType type);
+
+    /**
+     * Set-based version of {@link #findBestMatchByLocaleAndType(int, String, AdditionalServiceText.TextType)}.
+     *
+     * @return the best match for each of the given additional services
+     */
+    default Map<Integer, AdditionalServiceText> findBestMatchesByLocaleAndType(Collection<Integer> additionalServiceIds, String locale, AdditionalServiceText.TextType type) {
+        if (additionalServiceIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, AdditionalServiceText> res = new HashMap<>();
+        findAllByAdditionalServiceIdsAndType(additionalServiceIds, type).forEach(t -> res.merge(t.getAdditionalServiceId(), t,
+            (existing, candidate) -> !existing.getLocale().equals(locale) && candidate.getLocale().equals(locale) ? candidate : existing));
+        additionalServiceIds.forEach(id -> res.computeIfAbsent(id, k -> new AdditionalServiceText(-1, k, locale, type, "N/A")));
+        return res;
+    }
+
     default AdditionalServiceText findBestMatchByLocaleAndType(int additionalServiceId, String locale, AdditionalServiceText.TextType type) {
         return findByLocaleAndType(additionalServiceId, locale, type)
             .orElseGet(() -> {
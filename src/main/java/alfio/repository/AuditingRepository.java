@@ -21,10 +21,13 @@ import alfio.model.Audit;
 import alfio.model.Event;
 import alfio.model.PurchaseContext;
 import alfio.model.support.JSONData;
+import alfio.repository.audit.DeferredInsert;
 import alfio.util.Json;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
 import java.util.Collection;
@@ -35,13 +38,26 @@ import java.util.Map;
 @QueryRepository
 public interface AuditingRepository {
 
-    @Query("insert into auditing(reservation_id, user_id, event_id, event_type, event_time, entity_type, entity_id, modifications) " +
-        " values (:reservationId, :userId, :eventId, :eventType, :eventTime, :entityType, :entityId, :modifications)")
-    int insert(@Bind("reservationId") String reservationId, @Bind("userId") Integer userId,
-               @Bind("eventId") Integer eventId,
-               @Bind("eventType") Audit.EventType eventType, @Bind("eventTime") Date eventTime,
-               @Bind("entityType") Audit.EntityType entityType, @Bind("entityId") String entityId,
-               @Bind("modifications") String modifications);
+    /**
+     * Audit records are written right before commit, see {@link DeferredInsert}
+     */
+    DeferredInsert PENDING_AUDITS = new DeferredInsert("auditing",
+        List.of("reservation_id", "user_id", "event_id", "event_type", "event_time", "entity_type", "entity_id", "modifications"));
+
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default int insert(String reservationId, Integer userId, Integer eventId, Audit.EventType eventType, Date eventTime,
+                       Audit.EntityType entityType, String entityId, String modifications) {
+        PENDING_AUDITS.add(getNamedParameterJdbcTemplate(), new MapSqlParameterSource("reservation_id", reservationId)
+            .addValue("user_id", userId)
+            .addValue("event_id", eventId)
+            .addValue("event_type", eventType != null ? eventType.name() : null)
+            .addValue("event_time", eventTime)
+            .addValue("entity_type", entityType != null ? entityType.name() : null)
+            .addValue("entity_id", entityId)
+            .addValue("modifications", modifications));
+        return 1;
+    }
 
 
     default int insert(String reservationId, Integer userId, Integer eventId, Audit.EventType eventType, Date eventTime, Audit.EntityType entityType,
@@ -68,14 +84,37 @@ public interface AuditingRepository {
     }
 
 
+    default List<Audit> findAllForReservation(String reservationId) {
+        PENDING_AUDITS.flush();
+        return loadAllForReservation(reservationId);
+    }
+
+    default Integer countAuditsOfTypeForReservation(String reservationId, Audit.EventType eventType) {
+        PENDING_AUDITS.flush();
+        return loadCountOfTypeForReservation(reservationId, eventType);
+    }
+
+    default boolean hasAuditsOfTypeForReservation(String reservationId, Audit.EventType eventType) {
+        PENDING_AUDITS.flush();
+        return loadExistsOfTypeForReservation(reservationId, eventType);
+    }
+
+    default Integer countAuditsOfTypesInTheSameDay(String reservationId, Collection<String> eventTypes, ZonedDateTime date) {
+        PENDING_AUDITS.flush();
+        return loadCountOfTypesInTheSameDay(reservationId, eventTypes, date);
+    }
+
     @Query("select * from auditing_user where reservation_id = :reservationId order by event_time asc")
-    List<Audit> findAllForReservation(@Bind("reservationId") String reservationId);
+    List<Audit> loadAllForReservation(@Bind("reservationId") String reservationId);
 
     @Query("select count(*) from auditing_user where reservation_id = :reservationId and event_type = :eventType")
-    Integer countAuditsOfTypeForReservation(@Bind("reservationId") String reservationId, @Bind("eventType") Audit.EventType eventType);
+    Integer loadCountOfTypeForReservation(@Bind("reservationId") String reservationId, @Bind("eventType") Audit.EventType eventType);
+
+    @Query("select exists(select 1 from auditing where reservation_id = :reservationId and event_type = :eventType)")
+    boolean loadExistsOfTypeForReservation(@Bind("reservationId") String reservationId, @Bind("eventType") Audit.EventType eventType);
 
     @Query("select count(*) from auditing_user where reservation_id = :reservationId and event_type in (:eventTypes) and date_trunc('day', :referenceDate::timestamp) = date_trunc('day', event_time)")
-    Integer countAuditsOfTypesInTheSameDay(@Bind("reservationId") String reservationId, @Bind("eventTypes") Collection<String> eventTypes, @Bind("referenceDate") ZonedDateTime date);
+    Integer loadCountOfTypesInTheSameDay(@Bind("reservationId") String reservationId, @Bind("eventTypes") Collection<String> eventTypes, @Bind("referenceDate") ZonedDateTime date);
 
     @Query("insert into auditing(reservation_id, user_id, event_id, event_type, event_time, entity_type, entity_id, modifications) " +
         " select tickets_reservation_id, null, event_id, 'UPDATE_TICKET_CATEGORY', current_timestamp, 'TICKET', concat('', id), null from ticket where category_id = :ticketCategoryId and tickets_reservation_id is not null")
@@ -82,18 +82,24 @@ public interface EmailMessageRepository {
                 " where (" +
                 " (event_id is not null and event_id in (select id from event where end_ts > now())) or " +
                 " (subscription_descriptor_id_fk is not null and subscription_descriptor_id_fk in (select id from subscription_descriptor where validity_to is null or validity_to > now())) " +
-                ") and (status = 'WAITING' or status = 'RETRY') limit 100 for update skip locked")
+                ") and status in ('WAITING', 'RETRY') order by request_ts limit 100 for update skip locked")
     List<EmailMessage> loadAllWaitingForProcessing();
 
+    @Query("select count(*) from email_message where status in ('WAITING', 'RETRY')")
+    int countWaitingForProcessing();
+
     @Query("update email_message set status = 'SENT', sent_ts = :sentTimestamp, html_message = null where id = :id and checksum = :checksum and status in (:expectedStatuses)")
     int updateStatusToSent(@Bind("id") int id, @Bind("checksum") String checksum, @Bind("sentTimestamp") ZonedDateTime sentTimestamp, @Bind("expectedStatuses") List<String> expectedStatuses);
 
     String LIGHTWEIGHT_FIELDS = "id, event_id, subscription_descriptor_id_fk, status, recipient, subject, message, checksum, request_ts, sent_ts, attempts, email_cc, organization_id_fk ";
+    // must match the expression of the trigram index "idx_email_message_search_text" (see V204_2_0_0_47__EmailMessageSearchIndex)
+    String SEARCH_TEXT = "(coalesce(recipient, '') || chr(31) || coalesce(subject, '') || chr(31) || coalesce(message, ''))";
+
     String FIND_MAILS_BY_EVENT = "select " + LIGHTWEIGHT_FIELDS + " from email_message where event_id = :eventId and " +
-        " (:search is null or (recipient like :search or subject like :search or message like :search)) order by sent_ts desc, id ";
+        " (:search is null or " + SEARCH_TEXT + " like :search) order by sent_ts desc, id ";
 
     String FIND_MAILS_BY_SUBSCRIPTION = "select " + LIGHTWEIGHT_FIELDS + " from email_message where subscription_descriptor_id_fk = :subscriptionId and " +
-        " (:search is null or (recipient like :search or subject like :search or message like :search)) order by sent_ts desc, id ";
+        " (:search is null or " + SEARCH_TEXT + " like :search) order by sent_ts desc, id ";
 
     @Query("select * from (" + FIND_MAILS_BY_EVENT +" limit :pageSize offset :page) as d_tbl")
     List<LightweightMailMessage> findByEventId(@Bind("eventId") int eventId, @Bind("page") int page, @Bind("pageSize") int pageSize, @Bind("search") String search);
@@ -132,4 +138,8 @@ public interface EmailMessageRepository {
 
     @Query("update email_message set status = 'RETRY', attempts = coalesce(attempts, 0) +1 where status = 'IN_PROCESS' and request_ts < :date")
     int setToRetryOldInProcess(@Bind("date") ZonedDateTime date);
+
+    @Query("delete from email_message where id in (select id from email_message where status in ('SENT', 'ERROR')" +
+        " and coalesce(sent_ts, request_ts) < :threshold limit :limit)")
+    int deleteCompletedBefore(@Bind("threshold") ZonedDateTime threshold, @Bind("limit") int limit);
 }
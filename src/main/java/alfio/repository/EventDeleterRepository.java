@@ -16,6 +16,7 @@
  */
 package alfio.repository;
 
+import alfio.repository.audit.ScanAuditRepository;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
@@ -111,6 +112,9 @@ public interface EventDeleterRepository {
     int deleteSubscriptionLinks(@Bind("eventId") int eventId);
 
     default void deleteAllForEvent(int eventId) {
+        // pending records must be written now, otherwise they would reference a deleted event at commit time
+        AuditingRepository.PENDING_AUDITS.flush();
+        ScanAuditRepository.PENDING_SCANS.flush();
         deletePolls(eventId);
         deleteWaitingQueue(eventId);
         deleteWhitelistedTickets(eventId);
@@ -82,6 +82,10 @@ public interface EventRepository {
     @Query("select * from event order by start_ts, end_ts")
     List<Event> findAll();
 
+    @Query("select * from event e where not exists(select 1 from event_migration m where m.event_id = e.id" +
+        " and m.current_version = :currentVersion and m.build_ts >= :buildTimestamp) order by start_ts, end_ts")
+    List<Event> findEventsToMigrate(@Bind("currentVersion") String currentVersion, @Bind("buildTimestamp") ZonedDateTime buildTimestamp);
+
     @Query("select * from event where id in(:ids) order by start_ts, end_ts")
     List<Event> findByIds(@Bind("ids") Collection<Integer> ids);
 
@@ -21,6 +21,8 @@ import alfio.model.ExtensionLog;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.util.List;
 
@@ -34,6 +36,19 @@ public interface ExtensionLogRepository {
                @Bind("description") String description,
                @Bind("type") ExtensionLog.Type type);
 
+    /**
+     * Inserts the given entries in a single JDBC batch.
+     * Each entry must define "effectivePath", "path", "name", "description", "type" and "ageMillis", the latter being
+     * the time elapsed since the entry has been produced, so that event_ts reflects the moment in which the entry was logged
+     * and not the moment in which it has been flushed.
+     */
+    default int[] bulkInsert(MapSqlParameterSource[] entries) {
+        return getNamedParameterJdbcTemplate().batchUpdate("insert into extension_log(effective_path, path, name, description, type, event_ts)" +
+            " values (:effectivePath, :path, :name, :description, :type, current_timestamp - (:ageMillis * interval '1 millisecond'))", entries);
+    }
+
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
     String FIND_EXTENSION_LOG = "select * from extension_log where ((:path is null or path = :path) and (:name is null or name = :name)) and (:type is null or type = :type) order by event_ts desc";
 
     @Query("select count(*) from (" + FIND_EXTENSION_LOG + ") as el_tbl")
@@ -74,21 +74,21 @@ public interface FileUploadRepository {
 
     NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
 
-    default File file(String id) {
-        try {
-            File cachedFile = File.createTempFile("fileupload-cache", ".tmp");
-            cachedFile.deleteOnExit();
-            SqlParameterSource param = new MapSqlParameterSource("id", id);
-            getNamedParameterJdbcTemplate().query("select content from file_blob where id = :id", param, rs -> {
-                try (InputStream is = rs.getBinaryStream("content"); OutputStream os = new FileOutputStream(cachedFile)) {
-                    is.transferTo(os);
-                } catch (IOException e) {
-                    throw new IllegalStateException("Error while copying data", e);
-                }
-            });
-            return cachedFile;
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
+    default void copyContent(String id, OutputStream os) {
+        SqlParameterSource param = new MapSqlParameterSource("id", id);
+        Boolean found = getNamedParameterJdbcTemplate().query("select content from file_blob where id = :id", param, rs -> {
+            if(!rs.next()) {
+                return false;
+            }
+            try (InputStream is = rs.getBinaryStream("content")) {
+                is.transferTo(os);
+                return true;
+            } catch (IOException e) {
+                throw new IllegalStateException("Error while copying data", e);
+            }
+        });
+        if(!Boolean.TRUE.equals(found)) {
+            throw new IllegalStateException("file_blob " + id + " not found");
         }
     }
 
@@ -122,14 +122,27 @@ public interface GroupRepository {
     @Query("select * from group_member_active wi where wi.a_group_id_fk = :groupId and lower(wi.value) = lower(:value)")
     Optional<GroupMember> findItemByValueExactMatch(@Bind("groupId") int groupId, @Bind("value") String value);
 
-    @Query("select * from group_member_active wi where wi.a_group_id_fk = :groupId and lower(wi.value) like lower(:value) limit 1")
-    Optional<GroupMember> findItemEndsWith(@Bind("configurationId") int configurationId,
-                                           @Bind("groupId") int groupId,
-                                           @Bind("value") String value);
-
-    @Query("select count(*) from whitelisted_ticket where group_member_id_fk = :itemId and group_link_id_fk = :configurationId")
-    int countExistingWhitelistedTickets(@Bind("itemId") int itemId,
-                                        @Bind("configurationId") int configurationId);
+    /**
+     * Finds a member whose value ends with "@" + domain. The expression matches the group_member_domain_idx index.
+     */
+    @Query("select * from group_member_active wi where wi.a_group_id_fk = :groupId" +
+        " and lower(reverse(split_part(reverse(wi.value), '@', 1))) = lower(:domain) and wi.value like '%@%' limit 1")
+    Optional<GroupMember> findItemByDomain(@Bind("groupId") int groupId,
+                                           @Bind("domain") String domain);
+
+    /**
+     * Increments the allocation counter of the given member, if the counter is lower than maxAllocation.
+     * Only the member's counter row is locked, so that members of the same group can be allocated concurrently.
+     *
+     * @return 1 if the allocation has been claimed, 0 otherwise
+     */
+    @Query("insert into group_member_allocation(group_link_id_fk, group_member_id_fk, allocated, organization_id_fk)" +
+        " select :configurationId, id, 1, organization_id_fk from group_member where id = :itemId and :maxAllocation > 0" +
+        " on conflict(group_link_id_fk, group_member_id_fk) do update set allocated = group_member_allocation.allocated + 1" +
+        " where group_member_allocation.allocated < :maxAllocation")
+    int claimMemberAllocation(@Bind("configurationId") int configurationId,
+                              @Bind("itemId") int itemId,
+                              @Bind("maxAllocation") int maxAllocation);
 
     @Query("delete from whitelisted_ticket where ticket_id_fk in (:ticketIds)")
     int deleteExistingWhitelistedTickets(@Bind("ticketIds") List<Integer> ticketIds);
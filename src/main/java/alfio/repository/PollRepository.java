@@ -102,9 +102,9 @@ public interface PollRepository {
                        @Bind("ticketId") int ticketId,
                        @Bind("orgId") int organizationId);
 
-    @Query("select pa.poll_option_id_fk, count(*) as votes from poll_answer pa" +
-        "    join poll p on p.id = pa.poll_id_fk " +
-        " where p.id = :pollId and p.event_id_fk = :eventId group by 1")
+    @Query("select c.poll_option_id_fk, sum(c.votes) as votes from poll_answer_counter c" +
+        "    join poll p on p.id = c.poll_id_fk " +
+        " where p.id = :pollId and p.event_id_fk = :eventId group by 1 having sum(c.votes) > 0")
     List<PollOptionStatistics> getStatisticsFor(@Bind("pollId") Long pollId, @Bind("eventId") int eventId);
 
     @Query("delete from poll where id = :pollId and event_id_fk = :eventId and organization_id_fk = :orgId")
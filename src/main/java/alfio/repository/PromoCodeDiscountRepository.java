@@ -90,13 +90,27 @@ public interface PromoCodeDiscountRepository {
         +" order by event_id_fk is null limit 1")
     Optional<PromoCodeDiscount> findPublicPromoCodeInEventOrOrganization(@Bind("eventId") int eventId, @Bind("promoCode") String promoCode);
 
+    @Query("select promo_code from promo_code where code_type <> 'DYNAMIC' and (event_id_fk = :eventId or (event_id_fk is null and organization_id_fk = :organizationId))")
+    List<String> findPublicCodesForEvent(@Bind("eventId") int eventId, @Bind("organizationId") int organizationId);
+
     @Query("select count(*) from promo_code where event_id_fk = :eventId or (event_id_fk is null and organization_id_fk = :organizationId)")
     Integer countByEventAndOrganizationId(@Bind("eventId") int eventId, @Bind("organizationId") int organizationId);
 
-    @Query("select count(b.id) from tickets_reservation a, ticket b" +
-        " where (:currentId is null or a.id <> :currentId) and a.status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK') and a.promo_code_id_fk = :id" +
-        " and b.tickets_reservation_id = a.id and (:categoriesJson is null or b.category_id in (:categories))")
-    Integer countConfirmedPromoCode(@Bind("id") int id, @Bind("categories") Collection<Integer> categories, @Bind("currentId") String currentReservationId, @Bind("categoriesJson") String categoriesJson);
+    /**
+     * Returns the number of tickets bought with the given promo code, for the given categories.
+     * The value is read from the counters in promo_code_usage, which are maintained by triggers
+     */
+    @Query("select coalesce(sum(confirmed), 0) from promo_code_usage where promo_code_id_fk = :id" +
+        " and (:categoriesJson is null or ticket_category_id_fk in (:categories))")
+    Integer countConfirmedPromoCode(@Bind("id") int id, @Bind("categories") Collection<Integer> categories, @Bind("categoriesJson") String categoriesJson);
+
+    /**
+     * Same as {@link #countConfirmedPromoCode(int, Collection, String)}, but includes also the tickets of the reservations
+     * for which a payment is in progress
+     */
+    @Query("select coalesce(sum(confirmed + pending), 0) from promo_code_usage where promo_code_id_fk = :id" +
+        " and (:categoriesJson is null or ticket_category_id_fk in (:categories))")
+    Integer countUsedPromoCode(@Bind("id") int id, @Bind("categories") Collection<Integer> categories, @Bind("categoriesJson") String categoriesJson);
 
     @Query("update promo_code set valid_to = :end where id = :id")
     int updateEventPromoCodeEnd(@Bind("id") int id, @Bind("end") ZonedDateTime end);
@@ -113,4 +127,7 @@ public interface PromoCodeDiscountRepository {
 
     @Query("select id from promo_code where code_type = 'ACCESS' and id = :id for update")
     Integer lockAccessCodeForUpdate(@Bind("id") int id);
+
+    @Query("select id from promo_code where id = :id for update")
+    Integer lockPromoCodeForUpdate(@Bind("id") int id);
 }
@@ -18,11 +18,11 @@ package alfio.repository;
 
 import alfio.model.SpecialPrice;
 import alfio.model.TicketCategory;
+import alfio.model.support.Array;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
 import ch.digitalfondue.npjt.QueryType;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
@@ -71,6 +71,11 @@ public interface SpecialPriceRepository {
     @Query("select count(*) from special_price where code = :code")
     Integer countByCode(@Bind("code") String code);
 
+    // PENDING and TAKEN codes are included, since they go back to FREE when a reservation expires or a ticket is released
+    @Query("select sp.code from special_price sp join ticket_category tc on tc.id = sp.ticket_category_id" +
+        " where tc.event_id = :eventId and sp.code is not null and sp.status in ('FREE', 'PENDING', 'TAKEN')")
+    List<String> findAllCodesForEvent(@Bind("eventId") int eventId);
+
     @Query("update special_price set status = :status, session_id = null, access_code_id_fk = :accessCodeId where id in (:ids)")
     int batchUpdateStatus(@Bind("ids") List<Integer> ids, @Bind("status") SpecialPrice.Status status, @Bind("accessCodeId") Integer accessCodeId);
 
@@ -94,19 +99,21 @@ public interface SpecialPriceRepository {
 
     NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
 
-    default void bulkInsert(TicketCategory ticketCategory, int requiredTokens) {
+    @Query("insert into special_price (code, price_cts, ticket_category_id, status, sent_ts)" +
+        " select code, :priceInCents, :ticketCategoryId, :status, null from unnest(:codes::text[]) as code")
+    int insertCodes(@Bind("codes") @Array List<String> codes,
+                    @Bind("priceInCents") int priceInCents,
+                    @Bind("ticketCategoryId") int ticketCategoryId,
+                    @Bind("status") String status);
 
-        MapSqlParameterSource[] params = Stream.generate(MapSqlParameterSource::new)
-            .limit(requiredTokens)
-            .peek(ps -> {
-                ps.addValue("code", UUID.randomUUID().toString());
-                ps.addValue("priceInCents", ticketCategory.getSrcPriceCts());
-                ps.addValue("ticketCategoryId", ticketCategory.getId());
-                ps.addValue("status", SpecialPrice.Status.WAITING.name());
-            }).toArray(MapSqlParameterSource[]::new);
-
-        getNamedParameterJdbcTemplate()
-            .batchUpdate("insert into special_price (code, price_cts, ticket_category_id, status, sent_ts) values(:code, :priceInCents, :ticketCategoryId, :status, null)", params);
+    default void bulkInsert(TicketCategory ticketCategory, int requiredTokens) {
+        int inserted = 0;
+        while(inserted < requiredTokens) {
+            var codes = Stream.generate(() -> UUID.randomUUID().toString())
+                .limit(Math.min(TicketRepository.BULK_CHUNK_SIZE, requiredTokens - inserted))
+                .collect(Collectors.toList());
+            inserted += insertCodes(codes, ticketCategory.getSrcPriceCts(), ticketCategory.getId(), SpecialPrice.Status.WAITING.name());
+        }
     }
 
 
@@ -236,17 +236,17 @@ public interface SubscriptionRepository {
     @Query("select * from subscription where id = :id")
     Subscription findSubscriptionById(@Bind("id") UUID id);
 
-    @Query("select count(*) from subscription where substring(replace(id::text,'-',''), 0, 11) like concat(:partialUuid, '%') and email_address = :email")
-    int countSubscriptionByPartialUuidAndEmail(@Bind("partialUuid") String partialUuid, @Bind("email") String email);
+    /**
+     * The first 9 hex digits of the subscription ID, see {@link alfio.util.PinGenerator#pinToKey(String, int)}.
+     * It must match the expression used by the subscription_pin_key_idx index.
+     */
+    String PIN_KEY = "substring(replace(id::text, '-', ''), 1, 9)";
 
-    @Query("select count(*) from subscription where substring(replace(id::text,'-',''), 0, 11) like concat(:partialUuid, '%')")
-    int countSubscriptionByPartialUuid(@Bind("partialUuid") String partialUuid);
+    @Query("select id from subscription where " + PIN_KEY + " = :pinKey limit 2")
+    List<UUID> findIdsByPinKey(@Bind("pinKey") String pinKey);
 
-    @Query("select id from subscription where substring(replace(id::text,'-',''), 0, 11) like concat(:partialUuid, '%') and email_address = :email")
-    UUID getSubscriptionIdByPartialUuidAndEmail(@Bind("partialUuid") String partialUuid, @Bind("email") String email);
-
-    @Query("select id from subscription where substring(replace(id::text,'-',''), 0, 11) like concat(:partialUuid, '%')")
-    UUID getSubscriptionIdByPartialUuid(@Bind("partialUuid") String partialUuid);
+    @Query("select id from subscription where " + PIN_KEY + " = :pinKey and email_address = :email limit 2")
+    List<UUID> findIdsByPinKeyAndEmail(@Bind("pinKey") String pinKey, @Bind("email") String email);
 
     @Query("select * from subscription where id = (select subscription_id_fk from tickets_reservation where id = :reservationId)")
     Optional<Subscription> findAppliedSubscriptionByReservationId(@Bind("reservationId") String id);
@@ -70,9 +70,15 @@ public interface TicketCategoryRepository {
     @Query("select * from ticket_category_with_currency where id in(:ids)")
     List<TicketCategory> findByIds(@Bind("ids") Collection<Integer> ids);
 
+    @Query("select * from ticket_category_with_currency where id in(:ids) and event_id = :eventId and tc_status = 'ACTIVE'")
+    List<TicketCategory> findActiveByIdsAndEventId(@Bind("ids") Collection<Integer> ids, @Bind("eventId") int eventId);
+
     @Query("select * from ticket_category_with_currency where event_id = :eventId and category_code = :code and tc_status = 'ACTIVE'")
     Optional<TicketCategory> findCodeInEvent(@Bind("eventId") int eventId, @Bind("code") String code);
 
+    @Query("select category_code from ticket_category where event_id = :eventId and category_code is not null and tc_status = 'ACTIVE'")
+    List<String> findAllCodesForEvent(@Bind("eventId") int eventId);
+
     @Query("select count(*) from ticket_category_with_currency where event_id = :eventId and tc_status = 'ACTIVE' and bounded = false")
     Integer countUnboundedCategoriesByEventId(@Bind("eventId") int eventId);
 
@@ -31,6 +31,9 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @QueryRepository
 public interface TicketRepository {
@@ -42,18 +45,52 @@ public interface TicketRepository {
     String SORT_TICKETS = "order by category_id asc, uuid asc";
 
 
-    //TODO: refactor, try to move the MapSqlParameterSource inside the default method!
-    default void bulkTicketInitialization(MapSqlParameterSource[] args) {
-        getNamedParameterJdbcTemplate().batchUpdate("insert into ticket (uuid, creation, category_id, event_id, status, original_price_cts, paid_price_cts, src_price_cts)"
-            + "values(:uuid, :creation, :categoryId, :eventId, :status, 0, 0, :srcPriceCts)", args);
+    /**
+     * max number of rows affected by a single bulk statement
+     */
+    int BULK_CHUNK_SIZE = 5000;
+
+    @Query("insert into ticket (uuid, creation, category_id, event_id, status, original_price_cts, paid_price_cts, src_price_cts)" +
+        " select uuid, :creation, :categoryId, :eventId, :status, 0, 0, :srcPriceCts from unnest(:uuids::text[]) as uuid")
+    int insertTickets(@Bind("uuids") @Array List<String> uuids,
+                      @Bind("creation") ZonedDateTime creation,
+                      @Bind("categoryId") Integer categoryId,
+                      @Bind("eventId") int eventId,
+                      @Bind("status") String status,
+                      @Bind("srcPriceCts") int srcPriceCts);
+
+    /**
+     * Creates the given number of tickets, {@link #BULK_CHUNK_SIZE} at a time, so that
+     * the memory needed does not depend on the number of tickets.
+     *
+     * @param progressListener receives the number of tickets created so far, after each chunk
+     * @return the number of created tickets
+     */
+    default int bulkTicketInitialization(int eventId,
+                                         Integer categoryId,
+                                         int srcPriceCts,
+                                         ZonedDateTime creation,
+                                         Ticket.TicketStatus status,
+                                         int count,
+                                         IntConsumer progressListener) {
+        int created = 0;
+        while(created < count) {
+            var uuids = Stream.generate(() -> UUID.randomUUID().toString())
+                .limit(Math.min(BULK_CHUNK_SIZE, count - created))
+                .collect(Collectors.toList());
+            created += insertTickets(uuids, creation, categoryId, eventId, status.name(), srcPriceCts);
+            progressListener.accept(created);
+        }
+        return created;
     }
 
     default void bulkTicketUpdate(List<Integer> ids, TicketCategory ticketCategory) {
-        MapSqlParameterSource[] params = ids.stream().map(id -> new MapSqlParameterSource("id", id)
-            .addValue("categoryId", ticketCategory.getId())
-            .addValue("srcPriceCts", ticketCategory.getSrcPriceCts()))
-            .toArray(MapSqlParameterSource[]::new);
-        getNamedParameterJdbcTemplate().batchUpdate("update ticket set category_id = :categoryId, src_price_cts = :srcPriceCts where id = :id", params);
+        for(int i = 0; i < ids.size(); i += BULK_CHUNK_SIZE) {
+            var params = new MapSqlParameterSource("ids", ids.subList(i, Math.min(ids.size(), i + BULK_CHUNK_SIZE)))
+                .addValue("categoryId", ticketCategory.getId())
+                .addValue("srcPriceCts", ticketCategory.getSrcPriceCts());
+            getNamedParameterJdbcTemplate().update("update ticket set category_id = :categoryId, src_price_cts = :srcPriceCts where id in (:ids)", params);
+        }
     }
 
     @Query("select id from ticket where status in (:requiredStatuses) and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null order by id limit :amount for update")
@@ -169,8 +206,14 @@ public interface TicketRepository {
     @Query("select * from ticket where uuid = :uuid for update")
     Optional<Ticket> findByUUIDForUpdate(@Bind("uuid") String uuid);
 
-    @Query("select * from ticket where event_id = :eventId and status = :status and uuid like :uuid for update")
-    List<Ticket> findByEventIdAndPartialUUIDForUpdate(@Bind("eventId") int eventId, @Bind("uuid") String partialUUID, @Bind("status") Ticket.TicketStatus status);
+    /**
+     * The first 7 hex digits of the ticket UUID, see {@link alfio.util.PinGenerator#pinToKey(String)}.
+     * It must match the expression used by the ticket_event_id_pin_key_idx index.
+     */
+    String PIN_KEY = "substring(uuid, 1, 7)";
+
+    @Query("select * from ticket where event_id = :eventId and " + PIN_KEY + " = :pinKey and status = :status")
+    List<Ticket> findByEventIdAndPinKey(@Bind("eventId") int eventId, @Bind("pinKey") String pinKey, @Bind("status") Ticket.TicketStatus status);
 
     @Query("update ticket set email_address = :email, full_name = :fullName, first_name = :firstName, last_name = :lastName where uuid = :ticketIdentifier")
     int updateTicketOwner(@Bind("ticketIdentifier") String ticketIdentifier, @Bind("email") String email, @Bind("fullName") String fullName, @Bind("firstName") String firstName, @Bind("lastName") String lastName);
@@ -237,7 +280,13 @@ public interface TicketRepository {
             " from ticket t " +
             " left outer join latest_ticket_update ltu on t.id = ltu.ticket_id and ltu.event_id = :eventId " +
             " where t.event_id = :eventId and t.full_name is not null and t.email_address is not null and (coalesce(ltu.last_update, t.creation) > :changedSince)  order by t.id asc")
-    List<Integer> findAllAssignedByEventId(@Bind("eventId") int eventId, @Bind("changedSince") Date changedSince);
+    List<Integer> loadAllAssignedByEventId(@Bind("eventId") int eventId, @Bind("changedSince") Date changedSince);
+
+    default List<Integer> findAllAssignedByEventId(int eventId, Date changedSince) {
+        // latest_ticket_update is based on the auditing table, therefore the pending records must be written first
+        AuditingRepository.PENDING_AUDITS.flush();
+        return loadAllAssignedByEventId(eventId, changedSince);
+    }
 
     @Query("select * from reservation_and_ticket_and_tx where t_id is not null and t_status in (" + CONFIRMED + ") and t_event_id = :eventId order by tr_confirmation_ts, t_id")
     List<TicketWithReservationAndTransaction> findAllConfirmedForCSV(@Bind("eventId") int eventId);
@@ -34,35 +34,34 @@ public interface TicketSearchRepository {
     String APPLY_FILTER = " (:search is null or (lower(tr_id) like lower(:search) or lower(t_uuid) like lower(:search) or lower(t_full_name) like lower(:search) or lower(t_first_name) like lower(:search) or lower(t_last_name) like lower(:search) or lower(t_email_address) like lower(:search) or " +
         "  lower(tr_full_name) like lower(:search) or lower(tr_first_name) like lower(:search) or lower(tr_last_name) like lower(:search) or lower(tr_email_address) like lower(:search) or lower(tr_customer_reference) like lower(:search) or lower(promo_code) like lower(:search) or lower(special_price_token) like lower(:search))) ";
 
-    String APPLY_FILTER_SUBSCRIPTION = " (:search is null or (lower(tr_id) like lower(:search) or lower(s_id::text) like lower(:search) or lower(s_first_name) like lower(:search) or lower(s_last_name) like lower(:search) or lower(s_email_address) like lower(:search) " +
-        "  or lower(tr_first_name) like lower(:search) or lower(tr_last_name) like lower(:search) or lower(tr_email_address) like lower(:search) or lower(tr_customer_reference) like lower(:search) or lower(promo_code) like lower(:search) )) ";
-
     String FIND_ALL_MODIFIED_TICKETS_WITH_RESERVATION_AND_TRANSACTION = "select * from reservation_and_ticket_and_tx where t_id is not null and t_status in ('PENDING', 'ACQUIRED', 'TO_BE_PAID', 'CANCELLED', 'CHECKED_IN') and t_category_id = :categoryId and t_event_id = :eventId and " + APPLY_FILTER;
 
     String FIND_ALL_CONFIRMED_TICKETS_FOR_EVENT = "select * from reservation_and_ticket_and_tx where t_id is not null and t_status in ('ACQUIRED', 'TO_BE_PAID', 'CHECKED_IN') and t_event_id = :eventId and " + APPLY_FILTER;
 
-    String FIND_ALL_TICKETS_INCLUDING_NEW = "select * from reservation_and_ticket_and_tx where tr_event_id = :eventId and tr_id is not null and tr_status in (:status) and " + APPLY_FILTER;
-
-    String FIND_ALL_SUBSCRIPTION_INCLUDING_NEW = "select * from reservation_and_subscription_and_tx where s_descriptor_id = :subscriptionDescriptorId::uuid and tr_id is not null and tr_status in (:status) and " + APPLY_FILTER_SUBSCRIPTION;
-
-    String RESERVATION_FIELDS = "tr_id id, tr_validity validity, tr_status status, tr_full_name full_name, tr_first_name first_name, tr_last_name last_name, tr_email_address email_address," +
-        "tr_billing_address billing_address, tr_confirmation_ts confirmation_ts, tr_latest_reminder_ts latest_reminder_ts, tr_payment_method payment_method," +
-        "tr_offline_payment_reminder_sent offline_payment_reminder_sent, tr_promo_code_id_fk promo_code_id_fk, tr_automatic automatic," +
-        "tr_user_language user_language, tr_direct_assignment direct_assignment, tr_invoice_number invoice_number, tr_invoice_model invoice_model," +
-        "tr_vat_status vat_status, tr_vat_nr vat_nr, tr_vat_country vat_country, tr_invoice_requested invoice_requested, tr_used_vat_percent used_vat_percent," +
-        "tr_vat_included vat_included, tr_creation_ts creation_ts, tr_registration_ts registration_ts, tr_customer_reference customer_reference, tr_billing_address_company billing_address_company, tr_invoicing_additional_information invoicing_additional_information," +
-        "tr_src_price_cts src_price_cts, tr_final_price_cts final_price_cts, tr_vat_cts vat_cts, tr_discount_cts discount_cts, tr_currency_code currency_code ";
-
     String RESERVATION_SEARCH_FIELD = "tr_id, tr_validity, tr_status, tr_full_name, tr_first_name, tr_last_name, tr_email_address, tr_billing_address, tr_confirmation_ts, tr_latest_reminder_ts, tr_payment_method, tr_offline_payment_reminder_sent, tr_promo_code_id_fk," +
         " tr_automatic, tr_user_language, tr_direct_assignment, tr_invoice_number, tr_invoice_model, tr_vat_status, tr_vat_nr, tr_vat_country, tr_invoice_requested, tr_used_vat_percent, tr_vat_included, tr_creation_ts, tr_registration_ts, tr_customer_reference," +
         " tr_billing_address_company, tr_invoicing_additional_information, tr_billing_address_line1, tr_billing_address_line2, tr_billing_address_city, tr_billing_address_state, tr_billing_address_zip, tickets_count," +
         " tr_src_price_cts, tr_final_price_cts, tr_vat_cts, tr_discount_cts, tr_currency_code ";
 
+    String RESERVATION_TABLE_FIELDS = "tr.id, tr.validity, tr.status, tr.full_name, tr.first_name, tr.last_name, tr.email_address, tr.billing_address, tr.confirmation_ts, tr.latest_reminder_ts," +
+        " tr.payment_method, tr.offline_payment_reminder_sent, tr.promo_code_id_fk, tr.automatic, tr.user_language, tr.direct_assignment, tr.invoice_number, tr.invoice_model," +
+        " tr.vat_status, tr.vat_nr, tr.vat_country, tr.invoice_requested, tr.used_vat_percent, tr.vat_included, tr.creation_ts, tr.registration_ts, tr.customer_reference," +
+        " tr.billing_address_company, tr.invoicing_additional_information, tr.src_price_cts, tr.final_price_cts, tr.vat_cts, tr.discount_cts, tr.currency_code ";
+
+    // reservation_search_index is maintained by triggers on tickets_reservation, ticket and subscription.
+    String RESERVATIONS_FOR_EVENT = " from tickets_reservation tr where tr.event_id_fk = :eventId and tr.status in (:status) and " +
+        " (:search is null or tr.id in (select rs.reservation_id_fk from reservation_search_index rs where rs.event_id_fk = :eventId and rs.search_text like lower(:search))) ";
+
+    String RESERVATIONS_FOR_SUBSCRIPTION = " from tickets_reservation tr where tr.status in (:status) " +
+        " and exists (select 1 from subscription s where s.reservation_id_fk = tr.id and s.subscription_descriptor_fk = :subscriptionDescriptorId::uuid) and " +
+        " (:search is null or tr.id in (select rs.reservation_id_fk from reservation_search_index rs where rs.subscription_descriptor_id_fk = :subscriptionDescriptorId::uuid and rs.search_text like lower(:search))) ";
+
+    String RESERVATIONS_ORDER = " order by tr.confirmation_ts desc nulls last, tr.validity, tr.id ";
+
     String TRANSACTION_FIELDS = "bt_id, bt_gtw_tx_id, bt_gtw_payment_id, bt_reservation_id, bt_t_timestamp, bt_price_cts, bt_currency, bt_description, bt_payment_proxy, bt_gtw_fee, bt_plat_fee, bt_status, bt_metadata";
 
     String PROMO_CODE_FIELDS = "promo_code, special_price_token";
 
-
     @Query("select * from (" + FIND_ALL_MODIFIED_TICKETS_WITH_RESERVATION_AND_TRANSACTION + " limit :pageSize offset :page) as d_tbl order by tr_confirmation_ts asc, tr_id, t_uuid")
     List<TicketWithReservationAndTransaction> findAllModifiedTicketsWithReservationAndTransaction(@Bind("eventId") int eventId,
                                                                                                   @Bind("categoryId") int categoryId,
@@ -82,14 +81,14 @@ public interface TicketSearchRepository {
                                                                  @Bind("categoryId") int categoryId,
                                                                  @Bind("search") String search);
 
-    @Query("select distinct "+RESERVATION_FIELDS+" from (" + FIND_ALL_TICKETS_INCLUDING_NEW + ") as d_tbl order by tr_confirmation_ts desc nulls last, tr_validity limit :pageSize offset :page")
+    @Query("select " + RESERVATION_TABLE_FIELDS + RESERVATIONS_FOR_EVENT + RESERVATIONS_ORDER + " limit :pageSize offset :page")
     List<TicketReservation> findReservationsForEvent(@Bind("eventId") int eventId,
                                                      @Bind("page") int page,
                                                      @Bind("pageSize") int pageSize,
                                                      @Bind("search") String search,
                                                      @Bind("status") List<String> toFilter);
 
-    @Query("select distinct "+RESERVATION_FIELDS+" from (" + FIND_ALL_SUBSCRIPTION_INCLUDING_NEW + ") as d_tbl order by tr_confirmation_ts desc nulls last, tr_validity limit :pageSize offset :page")
+    @Query("select " + RESERVATION_TABLE_FIELDS + RESERVATIONS_FOR_SUBSCRIPTION + RESERVATIONS_ORDER + " limit :pageSize offset :page")
     List<TicketReservation> findReservationsForSubscription(@Bind("subscriptionDescriptorId") UUID subscriptionDescriptorId,
                                                             @Bind("page") int page,
                                                             @Bind("pageSize") int pageSize,
@@ -108,12 +107,12 @@ public interface TicketSearchRepository {
     @Query("select distinct on(tr_id) "+RESERVATION_SEARCH_FIELD+", "+TRANSACTION_FIELDS+"," +PROMO_CODE_FIELDS+" from reservation_and_ticket_and_tx where tr_id in (:reservationIds)")
     List<TicketReservationWithTransaction> findAllReservationsById(@Bind("reservationIds") Collection<String> reservationIds);
 
-    @Query("select count(distinct tr_id) from (" + FIND_ALL_TICKETS_INCLUDING_NEW +" ) as d_tbl")
+    @Query("select count(*)" + RESERVATIONS_FOR_EVENT)
     Integer countReservationsForEvent(@Bind("eventId") int eventId,
                                       @Bind("search") String search,
                                       @Bind("status") List<String> toFilter);
 
-    @Query("select count(distinct tr_id) from (" + FIND_ALL_SUBSCRIPTION_INCLUDING_NEW +" ) as d_tbl")
+    @Query("select count(*)" + RESERVATIONS_FOR_SUBSCRIPTION)
     Integer countReservationsForSubscription(@Bind("subscriptionDescriptorId") UUID subscriptionDescriptorId,
                                              @Bind("search") String search,
                                              @Bind("status") List<String> toFilter);
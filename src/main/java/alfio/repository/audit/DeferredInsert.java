@@ -0,0 +1,144 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository.audit;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Collects the rows inserted during a transaction and writes them using multi-row inserts right before commit,
+ * so that the hot transactions don't pay a round-trip for every audit record.
+ *
+ * Rows are written immediately if there is no active transaction.
+ */
+public final class DeferredInsert {
+
+    static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private final String table;
+    private final List<String> columns;
+
+    public DeferredInsert(String table, List<String> columns) {
+        this.table = table;
+        this.columns = List.copyOf(columns);
+    }
+
+    /**
+     * Adds a row. The parameter names must match the column names.
+     */
+    public void add(NamedParameterJdbcTemplate jdbcTemplate, MapSqlParameterSource row) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(jdbcTemplate, List.of(row));
+            return;
+        }
+        var pending = findPendingRows().orElseGet(() -> {
+            var p = new PendingRows(jdbcTemplate);
+            TransactionSynchronizationManager.registerSynchronization(p);
+            return p;
+        });
+        pending.rows.add(row);
+    }
+
+    /**
+     * Writes the rows collected so far in the current transaction. Must be called before reading from the table.
+     */
+    public void flush() {
+        findPendingRows().ifPresent(PendingRows::flush);
+    }
+
+    public static Calendar toUTCCalendar(ZonedDateTime dateTime) {
+        if(dateTime == null) {
+            return null;
+        }
+        var calendar = Calendar.getInstance(TimeZone.getTimeZone(ZoneOffset.UTC));
+        calendar.setTimeInMillis(dateTime.toInstant().toEpochMilli());
+        return calendar;
+    }
+
+    private Optional<PendingRows> findPendingRows() {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Optional.empty();
+        }
+        // synchronizations of suspended transactions are not returned, so that REQUIRES_NEW transactions have their own rows
+        return TransactionSynchronizationManager.getSynchronizations().stream()
+            .filter(s -> s instanceof PendingRows && ((PendingRows) s).owner() == this)
+            .map(PendingRows.class::cast)
+            .findFirst();
+    }
+
+    private void write(NamedParameterJdbcTemplate jdbcTemplate, List<MapSqlParameterSource> rows) {
+        for(int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            var chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT));
+            var parameters = new MapSqlParameterSource();
+            var values = new ArrayList<String>(chunk.size());
+            for(int i = 0; i < chunk.size(); i++) {
+                var row = chunk.get(i);
+                var placeholders = new ArrayList<String>(columns.size());
+                for(String column : columns) {
+                    String name = column + "_" + i;
+                    int sqlType = row.getSqlType(column);
+                    if(sqlType == MapSqlParameterSource.TYPE_UNKNOWN) {
+                        parameters.addValue(name, row.getValue(column));
+                    } else {
+                        parameters.addValue(name, row.getValue(column), sqlType);
+                    }
+                    placeholders.add(":" + name);
+                }
+                values.add("(" + String.join(", ", placeholders) + ")");
+            }
+            jdbcTemplate.update("insert into " + table + "(" + String.join(", ", columns) + ") values " + String.join(", ", values), parameters);
+        }
+    }
+
+    private final class PendingRows implements TransactionSynchronization {
+
+        private final NamedParameterJdbcTemplate jdbcTemplate;
+        private final List<MapSqlParameterSource> rows = new ArrayList<>();
+
+        private PendingRows(NamedParameterJdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        private DeferredInsert owner() {
+            return DeferredInsert.this;
+        }
+
+        private void flush() {
+            if(!rows.isEmpty()) {
+                var toBeWritten = new ArrayList<>(rows);
+                rows.clear();
+                write(jdbcTemplate, toBeWritten);
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            flush();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            rows.clear();
+        }
+    }
+}
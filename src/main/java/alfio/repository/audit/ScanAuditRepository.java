@@ -21,21 +21,44 @@ import alfio.model.audit.ScanAudit;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import java.sql.Types;
 import java.time.ZonedDateTime;
 import java.util.List;
 
 @QueryRepository
 public interface ScanAuditRepository {
-    @Query("insert into scan_audit(ticket_uuid, event_id_fk, scan_ts, username, check_in_status, operation) values(:ticketUuid, :eventId, :scanTs, :username, :status, :operation)")
-    Integer insert(@Bind("ticketUuid") String ticketUuid,
-                   @Bind("eventId") int eventId,
-                   @Bind("scanTs") ZonedDateTime timestamp,
-                   @Bind("username") String username,
-                   @Bind("status") CheckInStatus checkInStatus,
-                   @Bind("operation") ScanAudit.Operation operation);
+    /**
+     * Scan records are written right before commit, see {@link DeferredInsert}
+     */
+    DeferredInsert PENDING_SCANS = new DeferredInsert("scan_audit",
+        List.of("ticket_uuid", "event_id_fk", "scan_ts", "username", "check_in_status", "operation"));
+
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default Integer insert(String ticketUuid,
+                           int eventId,
+                           ZonedDateTime timestamp,
+                           String username,
+                           CheckInStatus checkInStatus,
+                           ScanAudit.Operation operation) {
+        PENDING_SCANS.add(getNamedParameterJdbcTemplate(), new MapSqlParameterSource("ticket_uuid", ticketUuid)
+            .addValue("event_id_fk", eventId)
+            .addValue("scan_ts", DeferredInsert.toUTCCalendar(timestamp), Types.TIMESTAMP)
+            .addValue("username", username)
+            .addValue("check_in_status", checkInStatus.name())
+            .addValue("operation", operation.name()));
+        return 1;
+    }
+
+    default List<ScanAudit> findAllForEvent(int eventId) {
+        PENDING_SCANS.flush();
+        return loadAllForEvent(eventId);
+    }
 
     @Query("select * from scan_audit where event_id_fk = :eventId")
-    List<ScanAudit> findAllForEvent(@Bind("eventId") int eventId);
+    List<ScanAudit> loadAllForEvent(@Bind("eventId") int eventId);
 
 }
\ No newline at end of file
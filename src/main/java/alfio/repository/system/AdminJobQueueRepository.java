@@ -22,8 +22,10 @@ import alfio.model.system.AdminJobSchedule;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,8 +33,28 @@ import java.util.Set;
 @QueryRepository
 public interface AdminJobQueueRepository {
 
-    @Query("select * from admin_job_queue where status = 'SCHEDULED' for update skip locked")
-    List<AdminJobSchedule> loadPendingSchedules();
+    /**
+     * Marks as RUNNING the pending schedules, and the RUNNING schedules whose lease has expired.
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "update admin_job_queue set status = 'RUNNING', execution_ts = :now where id in (" +
+        "select id from admin_job_queue where job_name in (:jobNames) and (status = 'SCHEDULED' or (status = 'RUNNING' and execution_ts < :leaseExpiration))" +
+        " for update skip locked) returning *")
+    List<AdminJobSchedule> claimPendingSchedules(@Bind("jobNames") Collection<String> jobNames,
+                                                 @Bind("now") ZonedDateTime now,
+                                                 @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    @Query("update admin_job_queue set execution_ts = :now where id in (:ids) and status = 'RUNNING'")
+    int renewLease(@Bind("ids") Collection<Long> ids, @Bind("now") ZonedDateTime now);
+
+    @Query("update admin_job_queue set progress = coalesce(progress, '{}'::jsonb) || jsonb_build_object(:partition::text, :status::text)," +
+        " execution_ts = :now where id = :id")
+    int updatePartitionProgress(@Bind("id") long id,
+                                @Bind("partition") String partitionKey,
+                                @Bind("status") String status,
+                                @Bind("now") ZonedDateTime now);
+
+    @Query("select count(*) from admin_job_queue where status = 'SCHEDULED'")
+    int countPendingSchedules();
 
     @Query("update admin_job_queue set status = :status, execution_ts = :executionDate, metadata = to_json(:metadata::json) where id = :id")
     int updateSchedule(@Bind("id") long id,
@@ -0,0 +1,42 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository.system;
+
+import alfio.model.system.DataMigrationStep;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+@QueryRepository
+public interface DataMigrationStepRepository {
+
+    @Query("select * from data_migration_step where name = :name")
+    Optional<DataMigrationStep> findByName(@Bind("name") String name);
+
+    @Query("insert into data_migration_step(name, current_version, build_ts, status, last_key) values(:name, :currentVersion, :buildTimestamp, 'RUNNING', null)" +
+        " on conflict(name) do update set current_version = excluded.current_version, build_ts = excluded.build_ts, status = 'RUNNING', last_key = null, completed_ts = null")
+    int start(@Bind("name") String name, @Bind("currentVersion") String currentVersion, @Bind("buildTimestamp") ZonedDateTime buildTimestamp);
+
+    @Query("update data_migration_step set last_key = :lastKey where name = :name")
+    int updateProgress(@Bind("name") String name, @Bind("lastKey") String lastKey);
+
+    @Query("update data_migration_step set status = 'COMPLETE', completed_ts = now() where name = :name")
+    int complete(@Bind("name") String name);
+}
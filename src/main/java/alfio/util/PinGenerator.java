@@ -22,6 +22,7 @@ import org.springframework.util.Assert;
 
 import java.math.BigInteger;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 @UtilityClass
@@ -62,6 +63,22 @@ public class PinGenerator {
         return StringUtils.leftPad(num.toString(16), pinLength+1, '0');
     }
 
+    /**
+     * Converts the given PIN to its lookup key, i.e. the first pinLength+1 hex digits of the UUID which generated it.
+     * Returns an empty Optional if the PIN is not valid or cannot have been generated by {@link #uuidToPin(String, int)}
+     *
+     * @param pin the PIN
+     * @param pinLength the expected PIN length
+     * @return the lookup key
+     */
+    public static Optional<String> pinToKey(String pin, int pinLength) {
+        if(!isPinValid(pin, pinLength)) {
+            return Optional.empty();
+        }
+        return Optional.of(pinToPartialUuid(pin.strip(), pinLength))
+            .filter(partialUuid -> partialUuid.length() == pinLength + 1);
+    }
+
     public static boolean isPinValid(String pin, int pinLength) {
         return pin != null
             && (pin.strip().length() == pinLength || pin.strip().length() == pinLength + 1)
@@ -76,6 +93,10 @@ public class PinGenerator {
         return pinToPartialUuid(pin, PIN_LENGTH);
     }
 
+    public static Optional<String> pinToKey(String pin) {
+        return pinToKey(pin, PIN_LENGTH);
+    }
+
     public static boolean isPinValid(String pin) {
         return isPinValid(pin, PIN_LENGTH);
     }
@@ -571,6 +571,10 @@ public enum TemplateResource {
 
 
     public static ImageData fillWithImageData(FileBlobMetadata m, byte[] image) {
+        return fillWithImageData(m, m.getContentType(), image);
+    }
+
+    public static ImageData fillWithImageData(FileBlobMetadata m, String contentType, byte[] image) {
 
         Map<String, String> attributes = m.getAttributes();
         if (attributes.containsKey(FileBlobMetadata.ATTR_IMG_WIDTH) && attributes.containsKey(FileBlobMetadata.ATTR_IMG_HEIGHT)) {
@@ -587,7 +591,7 @@ public enum TemplateResource {
                 resizedWidth = 300;
                 resizedHeight = height * resizedWidth / width;
             }
-            return new ImageData("data:" + m.getContentType() + ";base64," + Base64.getEncoder().encodeToString(image), resizedWidth, resizedHeight);
+            return new ImageData("data:" + contentType + ";base64," + Base64.getEncoder().encodeToString(image), resizedWidth, resizedHeight);
         }
         return new ImageData(null, null, null);
     }
@@ -0,0 +1,277 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- pg_trgm makes "like '%term%'" searches indexable. If the extension cannot be installed (e.g. missing privileges),
+-- we skip the trigram indexes: the search still works, just without index support
+do $$
+begin
+    create extension if not exists pg_trgm;
+exception when others then
+    raise notice 'cannot install pg_trgm, search indexes will not be created: %', sqlerrm;
+end
+$$;
+
+-- search index for the admin reservation list. One row per reservation, kept up to date by the triggers below.
+create table reservation_search_index (
+    reservation_id_fk character(36) primary key not null constraint reservation_search_index_reservation_id_fk references tickets_reservation(id) on delete cascade,
+    event_id_fk integer,
+    subscription_descriptor_id_fk uuid,
+    organization_id_fk integer not null,
+    search_text text not null
+);
+
+create index idx_reservation_search_index_event_id on reservation_search_index(event_id_fk) where event_id_fk is not null;
+create index idx_reservation_search_index_subscription_descriptor_id on reservation_search_index(subscription_descriptor_id_fk) where subscription_descriptor_id_fk is not null;
+create index idx_tickets_reservation_event_id_fk on tickets_reservation(event_id_fk);
+
+alter table reservation_search_index enable row level security;
+alter table reservation_search_index force row level security;
+create policy reservation_search_index_access_policy on reservation_search_index to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+-- the searchable text of a reservation, in lower case
+create or replace function reservation_search_text(character(36)) returns text as $$
+    select lower(concat_ws(' ', tr.id, tr.full_name, tr.first_name, tr.last_name, tr.email_address, tr.customer_reference, tr.invoice_number, pc.promo_code,
+        (select string_agg(concat_ws(' ', t.uuid, t.full_name, t.first_name, t.last_name, t.email_address, sp.code), ' ')
+            from ticket t left join special_price sp on sp.id = t.special_price_id_fk where t.tickets_reservation_id = tr.id),
+        (select string_agg(concat_ws(' ', s.id, s.first_name, s.last_name, s.email_address), ' ')
+            from subscription s where s.reservation_id_fk = tr.id)))
+    from tickets_reservation tr
+    left join promo_code pc on pc.id = tr.promo_code_id_fk
+    where tr.id = $1
+$$ language sql stable;
+
+create or replace function refresh_reservation_search_index(character(36)) returns void as $$
+    insert into reservation_search_index(reservation_id_fk, event_id_fk, subscription_descriptor_id_fk, organization_id_fk, search_text)
+        select tr.id, tr.event_id_fk, (select s.subscription_descriptor_fk from subscription s where s.reservation_id_fk = tr.id limit 1), tr.organization_id_fk, reservation_search_text(tr.id)
+        from tickets_reservation tr where tr.id = $1
+    on conflict(reservation_id_fk) do update set event_id_fk = excluded.event_id_fk,
+        subscription_descriptor_id_fk = excluded.subscription_descriptor_id_fk,
+        organization_id_fk = excluded.organization_id_fk,
+        search_text = excluded.search_text
+$$ language sql;
+
+-- statement level triggers: bulk updates refresh each reservation only once.
+-- Updates not involving searchable columns (e.g. status changes) are ignored.
+create or replace function reservation_search_index_reservation_insert() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(n.id) from new_rows n;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_reservation_update() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(n.id) from new_rows n join old_rows o on o.id = n.id
+        where (n.full_name, n.first_name, n.last_name, n.email_address, n.customer_reference, n.invoice_number, n.promo_code_id_fk, n.event_id_fk)
+            is distinct from (o.full_name, o.first_name, o.last_name, o.email_address, o.customer_reference, o.invoice_number, o.promo_code_id_fk, o.event_id_fk);
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_ticket_insert() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(r.reservation_id)
+        from (select distinct n.tickets_reservation_id reservation_id from new_rows n where n.tickets_reservation_id is not null) r;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_ticket_update() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(r.reservation_id) from (
+        select n.tickets_reservation_id reservation_id from new_rows n join old_rows o on o.id = n.id
+            where (n.tickets_reservation_id, n.uuid, n.full_name, n.first_name, n.last_name, n.email_address, n.special_price_id_fk)
+                is distinct from (o.tickets_reservation_id, o.uuid, o.full_name, o.first_name, o.last_name, o.email_address, o.special_price_id_fk)
+        union
+        select o.tickets_reservation_id from new_rows n join old_rows o on o.id = n.id
+            where n.tickets_reservation_id is distinct from o.tickets_reservation_id
+    ) r where r.reservation_id is not null;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_subscription_insert() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(r.reservation_id)
+        from (select distinct n.reservation_id_fk reservation_id from new_rows n) r;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_subscription_update() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(r.reservation_id) from (
+        select n.reservation_id_fk reservation_id from new_rows n join old_rows o on o.id = n.id
+            where (n.reservation_id_fk, n.first_name, n.last_name, n.email_address)
+                is distinct from (o.reservation_id_fk, o.first_name, o.last_name, o.email_address)
+        union
+        select o.reservation_id_fk from new_rows n join old_rows o on o.id = n.id
+            where n.reservation_id_fk is distinct from o.reservation_id_fk
+    ) r where r.reservation_id is not null;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_ticket_delete() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(r.reservation_id)
+        from (select distinct o.tickets_reservation_id reservation_id from old_rows o where o.tickets_reservation_id is not null) r;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_subscription_delete() returns trigger as $$
+begin
+    perform refresh_reservation_search_index(r.reservation_id)
+        from (select distinct o.reservation_id_fk reservation_id from old_rows o where o.reservation_id_fk is not null) r;
+    return null;
+end;
+$$ language plpgsql;
+
+-- row level variants, for PostgreSQL versions without transition tables (< 10).
+-- The row triggers only collect the affected reservations in a temporary table; a statement level trigger then
+-- refreshes each of them once, so that a bulk update doesn't rebuild the same reservation for every ticket.
+create or replace function reservation_search_index_enqueue(character(36)) returns void as $$
+begin
+    if $1 is null then
+        return;
+    end if;
+    if to_regclass('pg_temp.reservation_search_index_pending') is null then
+        create temporary table reservation_search_index_pending(reservation_id character(36) not null) on commit delete rows;
+    end if;
+    insert into reservation_search_index_pending(reservation_id) values($1);
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_flush() returns trigger as $$
+begin
+    if to_regclass('pg_temp.reservation_search_index_pending') is not null then
+        perform refresh_reservation_search_index(r.reservation_id)
+            from (select distinct p.reservation_id from reservation_search_index_pending p) r;
+        delete from reservation_search_index_pending;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_reservation_row() returns trigger as $$
+begin
+    if tg_op = 'INSERT' or (new.full_name, new.first_name, new.last_name, new.email_address, new.customer_reference, new.invoice_number, new.promo_code_id_fk, new.event_id_fk)
+            is distinct from (old.full_name, old.first_name, old.last_name, old.email_address, old.customer_reference, old.invoice_number, old.promo_code_id_fk, old.event_id_fk) then
+        perform reservation_search_index_enqueue(new.id);
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_ticket_row() returns trigger as $$
+begin
+    if tg_op = 'INSERT' then
+        perform reservation_search_index_enqueue(new.tickets_reservation_id);
+    elsif tg_op = 'DELETE' then
+        perform reservation_search_index_enqueue(old.tickets_reservation_id);
+    elsif (new.tickets_reservation_id, new.uuid, new.full_name, new.first_name, new.last_name, new.email_address, new.special_price_id_fk)
+            is distinct from (old.tickets_reservation_id, old.uuid, old.full_name, old.first_name, old.last_name, old.email_address, old.special_price_id_fk) then
+        perform reservation_search_index_enqueue(new.tickets_reservation_id);
+        if old.tickets_reservation_id is distinct from new.tickets_reservation_id then
+            perform reservation_search_index_enqueue(old.tickets_reservation_id);
+        end if;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function reservation_search_index_subscription_row() returns trigger as $$
+begin
+    if tg_op = 'DELETE' then
+        perform reservation_search_index_enqueue(old.reservation_id_fk);
+    elsif tg_op = 'INSERT' or (new.reservation_id_fk, new.first_name, new.last_name, new.email_address)
+            is distinct from (old.reservation_id_fk, old.first_name, old.last_name, old.email_address) then
+        perform reservation_search_index_enqueue(new.reservation_id_fk);
+        if tg_op = 'UPDATE' and old.reservation_id_fk is distinct from new.reservation_id_fk then
+            perform reservation_search_index_enqueue(old.reservation_id_fk);
+        end if;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+-- the "referencing" clause is not recognized before PostgreSQL 10, so the statements are executed dynamically
+do $$
+begin
+    if current_setting('server_version_num')::integer >= 100000 then
+        execute 'create trigger reservation_search_index_reservation_insert_trigger
+            after insert on tickets_reservation referencing new table as new_rows
+            for each statement execute procedure reservation_search_index_reservation_insert()';
+        execute 'create trigger reservation_search_index_reservation_update_trigger
+            after update on tickets_reservation referencing new table as new_rows old table as old_rows
+            for each statement execute procedure reservation_search_index_reservation_update()';
+        execute 'create trigger reservation_search_index_ticket_insert_trigger
+            after insert on ticket referencing new table as new_rows
+            for each statement execute procedure reservation_search_index_ticket_insert()';
+        execute 'create trigger reservation_search_index_ticket_update_trigger
+            after update on ticket referencing new table as new_rows old table as old_rows
+            for each statement execute procedure reservation_search_index_ticket_update()';
+        execute 'create trigger reservation_search_index_ticket_delete_trigger
+            after delete on ticket referencing old table as old_rows
+            for each statement execute procedure reservation_search_index_ticket_delete()';
+        execute 'create trigger reservation_search_index_subscription_insert_trigger
+            after insert on subscription referencing new table as new_rows
+            for each statement execute procedure reservation_search_index_subscription_insert()';
+        execute 'create trigger reservation_search_index_subscription_update_trigger
+            after update on subscription referencing new table as new_rows old table as old_rows
+            for each statement execute procedure reservation_search_index_subscription_update()';
+        execute 'create trigger reservation_search_index_subscription_delete_trigger
+            after delete on subscription referencing old table as old_rows
+            for each statement execute procedure reservation_search_index_subscription_delete()';
+    else
+        create trigger reservation_search_index_reservation_row_trigger
+            after insert or update on tickets_reservation
+            for each row execute procedure reservation_search_index_reservation_row();
+        create trigger reservation_search_index_reservation_flush_trigger
+            after insert or update on tickets_reservation
+            for each statement execute procedure reservation_search_index_flush();
+        create trigger reservation_search_index_ticket_row_trigger
+            after insert or update or delete on ticket
+            for each row execute procedure reservation_search_index_ticket_row();
+        create trigger reservation_search_index_ticket_flush_trigger
+            after insert or update or delete on ticket
+            for each statement execute procedure reservation_search_index_flush();
+        create trigger reservation_search_index_subscription_row_trigger
+            after insert or update or delete on subscription
+            for each row execute procedure reservation_search_index_subscription_row();
+        create trigger reservation_search_index_subscription_flush_trigger
+            after insert or update or delete on subscription
+            for each statement execute procedure reservation_search_index_flush();
+    end if;
+end
+$$;
+
+-- initial load
+insert into reservation_search_index(reservation_id_fk, event_id_fk, subscription_descriptor_id_fk, organization_id_fk, search_text)
+    select tr.id, tr.event_id_fk, (select s.subscription_descriptor_fk from subscription s where s.reservation_id_fk = tr.id limit 1), tr.organization_id_fk, reservation_search_text(tr.id)
+    from tickets_reservation tr;
+
+do $$
+begin
+    if exists(select 1 from pg_extension where extname = 'pg_trgm') then
+        create index idx_reservation_search_index_search_text on reservation_search_index using gin (search_text gin_trgm_ops);
+    end if;
+end
+$$;
@@ -0,0 +1,32 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- bodies and attachments are already compressed by TOAST. Starting from PostgreSQL 14 we can use lz4, which is way faster.
+-- The new method will be applied only to new values.
+do $$
+begin
+    if current_setting('server_version_num')::integer >= 140000 then
+        begin
+            execute 'alter table email_message alter column message set compression lz4';
+            execute 'alter table email_message alter column html_message set compression lz4';
+            execute 'alter table email_message alter column attachments set compression lz4';
+        exception when others then
+            raise notice 'lz4 compression is not available: %', sqlerrm;
+        end;
+    end if;
+end
+$$;
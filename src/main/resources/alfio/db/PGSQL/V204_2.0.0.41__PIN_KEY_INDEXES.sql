@@ -0,0 +1,20 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- PIN lookups, see PinResolver. The expressions must match TicketRepository.PIN_KEY and SubscriptionRepository.PIN_KEY
+create index ticket_event_id_pin_key_idx on ticket(event_id, substring(uuid, 1, 7));
+create index subscription_pin_key_idx on subscription(substring(replace(id::text, '-', ''), 1, 9));
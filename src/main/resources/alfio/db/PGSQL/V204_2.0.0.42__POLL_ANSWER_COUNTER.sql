@@ -0,0 +1,60 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- votes by option, maintained by a trigger on poll_answer.
+-- Each option has up to 16 counters (shard = ticket id mod 16), so that concurrent votes don't wait on the same row
+create table poll_answer_counter (
+    poll_id_fk bigint not null constraint "poll_answer_counter_poll_id_fk" references poll(id) on delete cascade,
+    poll_option_id_fk bigint not null constraint "poll_answer_counter_option_id_fk" references poll_option(id) on delete cascade,
+    shard smallint not null,
+    votes integer not null default 0,
+    organization_id_fk integer not null constraint "poll_answer_counter_org_id_fk" references organization(id),
+    primary key (poll_option_id_fk, shard)
+);
+
+create index poll_answer_counter_poll_id_idx on poll_answer_counter(poll_id_fk);
+
+alter table poll_answer_counter enable row level security;
+alter table poll_answer_counter force row level security;
+create policy poll_answer_counter_access_policy on poll_answer_counter to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+create or replace function poll_answer_counter_trigger_fn() returns trigger
+as $$
+begin
+    if (tg_op = 'DELETE' or (tg_op = 'UPDATE' and old.poll_option_id_fk <> new.poll_option_id_fk)) then
+        update poll_answer_counter set votes = votes - 1
+            where poll_option_id_fk = old.poll_option_id_fk and shard = mod(coalesce(old.ticket_id_fk, 0), 16);
+    end if;
+    if (tg_op = 'INSERT' or (tg_op = 'UPDATE' and old.poll_option_id_fk <> new.poll_option_id_fk)) then
+        insert into poll_answer_counter(poll_id_fk, poll_option_id_fk, shard, votes, organization_id_fk)
+            values (new.poll_id_fk, new.poll_option_id_fk, mod(coalesce(new.ticket_id_fk, 0), 16), 1, new.organization_id_fk)
+            on conflict (poll_option_id_fk, shard) do update set votes = poll_answer_counter.votes + 1;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger poll_answer_counter_trigger
+    after insert or update or delete on poll_answer
+    for each row execute procedure poll_answer_counter_trigger_fn();
+
+insert into poll_answer_counter(poll_id_fk, poll_option_id_fk, shard, votes, organization_id_fk)
+    select poll_id_fk, poll_option_id_fk, mod(coalesce(ticket_id_fk, 0), 16), count(*), organization_id_fk
+    from poll_answer
+    group by poll_id_fk, poll_option_id_fk, mod(coalesce(ticket_id_fk, 0), 16), organization_id_fk;
@@ -0,0 +1,54 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- number of tickets assigned to each member of a LIMITED_QUANTITY or ONCE_PER_VALUE group link.
+-- The counter is incremented by GroupRepository.claimMemberAllocation and decremented when the whitelisted ticket is deleted
+create table group_member_allocation (
+    group_link_id_fk integer not null constraint "group_member_allocation_group_link_id_fk" references group_link(id) on delete cascade,
+    group_member_id_fk integer not null constraint "group_member_allocation_group_member_id_fk" references group_member(id) on delete cascade,
+    allocated integer not null default 0,
+    organization_id_fk integer not null constraint "group_member_allocation_org_id_fk" references organization(id),
+    primary key (group_link_id_fk, group_member_id_fk)
+);
+
+alter table group_member_allocation enable row level security;
+alter table group_member_allocation force row level security;
+create policy group_member_allocation_access_policy on group_member_allocation to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+insert into group_member_allocation(group_link_id_fk, group_member_id_fk, allocated, organization_id_fk)
+    select group_link_id_fk, group_member_id_fk, count(*), organization_id_fk
+    from whitelisted_ticket
+    group by group_link_id_fk, group_member_id_fk, organization_id_fk;
+
+create or replace function release_group_member_allocation_fn() returns trigger
+as $$
+begin
+    update group_member_allocation set allocated = allocated - 1
+        where group_link_id_fk = old.group_link_id_fk and group_member_id_fk = old.group_member_id_fk and allocated > 0;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger release_group_member_allocation_trigger
+    after delete on whitelisted_ticket
+    for each row execute procedure release_group_member_allocation_fn();
+
+-- member lookup: exact match and match on the e-mail domain (text after the last '@')
+create index group_member_lower_value_idx on group_member(a_group_id_fk, lower(value));
+create index group_member_domain_idx on group_member(a_group_id_fk, lower(reverse(split_part(reverse(value), '@', 1))));
@@ -0,0 +1,132 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- number of tickets bought using a promo code, for each ticket category.
+-- "confirmed" counts the tickets of reservations that have been confirmed (same statuses as the former aggregate query),
+-- "pending" counts the tickets of reservations for which a payment is in progress.
+-- The counters are maintained by the triggers defined below, on both tickets_reservation and ticket.
+create table promo_code_usage (
+    promo_code_id_fk integer not null constraint "promo_code_usage_promo_code_id_fk" references promo_code(id) on delete cascade,
+    ticket_category_id_fk integer not null constraint "promo_code_usage_ticket_category_id_fk" references ticket_category(id) on delete cascade,
+    confirmed integer not null default 0,
+    pending integer not null default 0,
+    organization_id_fk integer not null constraint "promo_code_usage_org_id_fk" references organization(id),
+    primary key (promo_code_id_fk, ticket_category_id_fk)
+);
+
+alter table promo_code_usage enable row level security;
+alter table promo_code_usage force row level security;
+create policy promo_code_usage_access_policy on promo_code_usage to public
+    using (alfio_check_row_access(organization_id_fk))
+    with check (alfio_check_row_access(organization_id_fk));
+
+create or replace function promo_code_usage_state(status varchar) returns varchar
+as $$
+    select case
+        when status in ('OFFLINE_PAYMENT', 'DEFERRED_OFFLINE_PAYMENT', 'COMPLETE', 'STUCK') then 'CONFIRMED'
+        when status in ('IN_PAYMENT', 'EXTERNAL_PROCESSING_PAYMENT', 'WAITING_EXTERNAL_CONFIRMATION') then 'PENDING'
+    end
+$$ language sql immutable;
+
+insert into promo_code_usage(promo_code_id_fk, ticket_category_id_fk, confirmed, pending, organization_id_fk)
+    select tr.promo_code_id_fk, t.category_id,
+           count(*) filter (where promo_code_usage_state(tr.status) = 'CONFIRMED'),
+           count(*) filter (where promo_code_usage_state(tr.status) = 'PENDING'),
+           tr.organization_id_fk
+    from tickets_reservation tr
+        join ticket t on t.tickets_reservation_id = tr.id
+    where tr.promo_code_id_fk is not null and t.category_id is not null and promo_code_usage_state(tr.status) is not null
+    group by tr.promo_code_id_fk, t.category_id, tr.organization_id_fk;
+
+-- adds delta to the counter identified by the given state. Negative deltas never create a new row,
+-- since the promo code might have been already deleted
+create or replace function promo_code_usage_add(promo_code_id integer, category_id integer, state varchar, delta integer, organization_id integer) returns void
+as $$
+begin
+    if promo_code_id is null or category_id is null or state is null or delta = 0 then
+        return;
+    end if;
+    if delta > 0 then
+        insert into promo_code_usage(promo_code_id_fk, ticket_category_id_fk, confirmed, pending, organization_id_fk)
+            values (promo_code_id, category_id,
+                    case when state = 'CONFIRMED' then delta else 0 end,
+                    case when state = 'PENDING' then delta else 0 end,
+                    organization_id)
+            on conflict (promo_code_id_fk, ticket_category_id_fk) do update
+                set confirmed = promo_code_usage.confirmed + excluded.confirmed,
+                    pending = promo_code_usage.pending + excluded.pending;
+    else
+        update promo_code_usage
+            set confirmed = greatest(0, confirmed + case when state = 'CONFIRMED' then delta else 0 end),
+                pending = greatest(0, pending + case when state = 'PENDING' then delta else 0 end)
+            where promo_code_id_fk = promo_code_id and ticket_category_id_fk = category_id;
+    end if;
+end;
+$$ language plpgsql;
+
+-- a reservation changed status or promo code: move its tickets from the old counter to the new one
+create or replace function promo_code_usage_reservation_fn() returns trigger
+as $$
+declare
+    r record;
+begin
+    for r in select category_id, count(*)::integer as cnt from ticket
+                where tickets_reservation_id = new.id and category_id is not null
+                group by category_id order by category_id
+    loop
+        perform promo_code_usage_add(old.promo_code_id_fk, r.category_id, promo_code_usage_state(old.status), -r.cnt, old.organization_id_fk);
+        perform promo_code_usage_add(new.promo_code_id_fk, r.category_id, promo_code_usage_state(new.status), r.cnt, new.organization_id_fk);
+    end loop;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger promo_code_usage_reservation_trigger
+    after update of status, promo_code_id_fk on tickets_reservation
+    for each row
+    when (old.status is distinct from new.status or old.promo_code_id_fk is distinct from new.promo_code_id_fk)
+    execute procedure promo_code_usage_reservation_fn();
+
+-- a ticket has been added to / removed from a reservation, or it changed category
+create or replace function promo_code_usage_ticket_fn() returns trigger
+as $$
+declare
+    r record;
+begin
+    if tg_op = 'UPDATE' and old.tickets_reservation_id is not distinct from new.tickets_reservation_id
+        and old.category_id is not distinct from new.category_id then
+        return null;
+    end if;
+    if tg_op in ('UPDATE', 'DELETE') and old.tickets_reservation_id is not null then
+        select promo_code_id_fk, status, organization_id_fk into r from tickets_reservation where id = old.tickets_reservation_id;
+        if found then
+            perform promo_code_usage_add(r.promo_code_id_fk, old.category_id, promo_code_usage_state(r.status), -1, r.organization_id_fk);
+        end if;
+    end if;
+    if tg_op in ('UPDATE', 'INSERT') and new.tickets_reservation_id is not null then
+        select promo_code_id_fk, status, organization_id_fk into r from tickets_reservation where id = new.tickets_reservation_id;
+        if found then
+            perform promo_code_usage_add(r.promo_code_id_fk, new.category_id, promo_code_usage_state(r.status), 1, r.organization_id_fk);
+        end if;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger promo_code_usage_ticket_trigger
+    after insert or delete or update of tickets_reservation_id, category_id on ticket
+    for each row execute procedure promo_code_usage_ticket_fn();
@@ -0,0 +1,25 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- single row table, holds the fingerprint of the schema migrations and of the view definitions
+-- which have been applied by the last full startup. See alfio.config.support.SchemaFingerprint
+create table schema_fingerprint (
+    id integer primary key default 1 check (id = 1),
+    migrations_checksum text not null,
+    views_checksum text not null,
+    update_ts timestamp with time zone not null default now()
+);
@@ -0,0 +1,21 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- supports the retention job (EmailMessageRepository.deleteCompletedBefore), which would otherwise scan the whole table.
+-- The index is built concurrently, so that the email queue is not blocked in the meantime: Flyway runs this migration
+-- outside of a transaction, therefore it must not contain other statements.
+create index concurrently if not exists idx_email_message_completed on email_message(coalesce(sent_ts, request_ts)) where status in ('SENT', 'ERROR');
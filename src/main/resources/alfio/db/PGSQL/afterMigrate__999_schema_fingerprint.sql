@@ -0,0 +1,21 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- runs after the views have been recreated, and records the checksum of the view definitions which have been applied.
+-- The placeholder is provided by alfio.config.DataSourceConfiguration
+insert into schema_fingerprint(id, migrations_checksum, views_checksum, update_ts) values(1, '', '${viewsChecksum}', now())
+    on conflict(id) do update set views_checksum = excluded.views_checksum, update_ts = excluded.update_ts;
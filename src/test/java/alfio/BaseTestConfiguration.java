@@ -18,9 +18,11 @@ package alfio;
 
 import alfio.config.Initializer;
 import alfio.config.support.PlatformProvider;
+import alfio.extension.ExtensionLogWriter;
 import alfio.manager.FileDownloadManager;
 import alfio.manager.system.ExternalConfiguration;
 import alfio.model.system.ConfigurationKeys;
+import alfio.repository.ExtensionLogRepository;
 import alfio.test.util.IntegrationTestUtil;
 import alfio.util.BaseIntegrationTest;
 import alfio.util.ClockProvider;
@@ -30,6 +32,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
 import java.io.ByteArrayOutputStream;
@@ -102,6 +105,13 @@ public class BaseTestConfiguration {
         return () -> Runnable::run;
     }
 
+    @Bean
+    @Profile(Initializer.PROFILE_INTEGRATION_TEST)
+    public ExtensionLogWriter synchronousExtensionLogWriter(ExtensionLogRepository extensionLogRepository,
+                                                            PlatformTransactionManager transactionManager) {
+        return ExtensionLogWriter.synchronous(extensionLogRepository, transactionManager);
+    }
+
     @Bean
     @Profile(Initializer.PROFILE_INTEGRATION_TEST)
     public ExternalConfiguration externalConfiguration() {
@@ -0,0 +1,104 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private Connection primaryConnection;
+    private Connection replicaConnection;
+    private ResultSet lagResult;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replica = mock(DataSource.class);
+        primaryConnection = mock(Connection.class);
+        replicaConnection = mock(Connection.class);
+        lagResult = mock(ResultSet.class);
+        var statement = mock(Statement.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(lagResult);
+        when(lagResult.next()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.requestReplica(false);
+    }
+
+    @Test
+    void onlyLabeledReadOnlyTransactionsAreEligible() {
+        var dataSource = new ReplicaRoutingDataSource(primary, replica, false, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        var labeled = new RuleBasedTransactionAttribute();
+        labeled.setReadOnly(true);
+        labeled.setLabels(List.of(ReplicaRoutingDataSource.REPLICA));
+        assertTrue(dataSource.isEligible(labeled));
+        var readOnly = new DefaultTransactionDefinition();
+        readOnly.setReadOnly(true);
+        assertFalse(dataSource.isEligible(readOnly));
+        labeled.setReadOnly(false);
+        assertFalse(dataSource.isEligible(labeled));
+        assertTrue(new ReplicaRoutingDataSource(primary, replica, true, Duration.ofSeconds(10), Duration.ofSeconds(5)).isEligible(readOnly));
+    }
+
+    @Test
+    void routeToReplicaOnlyIfRequested() throws SQLException {
+        var dataSource = new ReplicaRoutingDataSource(primary, replica, false, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        when(lagResult.getDouble(1)).thenReturn(0.5);
+        assertSame(primaryConnection, dataSource.getConnection());
+        ReplicaRoutingDataSource.requestReplica(true);
+        assertSame(replicaConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void fallbackToPrimaryIfReplicaIsLagging() throws SQLException {
+        var dataSource = new ReplicaRoutingDataSource(primary, replica, false, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        when(lagResult.getDouble(1)).thenReturn(30.0);
+        ReplicaRoutingDataSource.requestReplica(true);
+        assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void fallbackToPrimaryIfReplicaIsNotReachable() throws SQLException {
+        var dataSource = new ReplicaRoutingDataSource(primary, replica, false, Duration.ofSeconds(10), Duration.ZERO);
+        when(replica.getConnection()).thenThrow(new SQLException("down"));
+        ReplicaRoutingDataSource.requestReplica(true);
+        assertSame(primaryConnection, dataSource.getConnection());
+    }
+}
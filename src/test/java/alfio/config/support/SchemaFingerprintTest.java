@@ -0,0 +1,73 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SchemaFingerprintTest {
+
+    @Test
+    void fingerprintIsStable() {
+        var resolver = new PathMatchingResourcePatternResolver();
+        var first = SchemaFingerprint.compute(resolver, "1:42");
+        assertEquals(first, SchemaFingerprint.compute(resolver, "1:42"));
+        assertNotEquals(first.getMigrationsChecksum(), first.getViewsChecksum());
+    }
+
+    @Test
+    void fingerprintChangesWhenHistoryChanges() {
+        var resolver = new PathMatchingResourcePatternResolver();
+        assertNotEquals(SchemaFingerprint.compute(resolver, "1:42"), SchemaFingerprint.compute(resolver, "2:43"));
+    }
+
+    @Test
+    void checksumDoesNotDependOnResourceOrder() throws Exception {
+        var resolver = mock(ResourcePatternResolver.class);
+        var first = named("afterMigrate__001.sql", "create view a as select 1");
+        var second = named("afterMigrate__002.sql", "create view b as select 2");
+        when(resolver.getResources("pattern")).thenReturn(new Resource[] { first, second }, new Resource[] { second, first });
+        assertEquals(SchemaFingerprint.checksum(resolver, "pattern"), SchemaFingerprint.checksum(resolver, "pattern"));
+    }
+
+    @Test
+    void checksumChangesWhenDefinitionChanges() throws Exception {
+        var resolver = mock(ResourcePatternResolver.class);
+        when(resolver.getResources("pattern")).thenReturn(
+            new Resource[] { named("afterMigrate__001.sql", "create view a as select 1") },
+            new Resource[] { named("afterMigrate__001.sql", "create view a as select 2") });
+        assertNotEquals(SchemaFingerprint.checksum(resolver, "pattern"), SchemaFingerprint.checksum(resolver, "pattern"));
+    }
+
+    private static Resource named(String name, String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import alfio.config.support.WorkloadRoutingDataSource.Workload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WorkloadRoutingDataSourceTest {
+
+    private Connection webConnection;
+    private Connection backgroundConnection;
+    private Connection exportConnection;
+    private Connection lockConnection;
+    private WorkloadRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        webConnection = mock(Connection.class);
+        backgroundConnection = mock(Connection.class);
+        exportConnection = mock(Connection.class);
+        lockConnection = mock(Connection.class);
+        dataSource = new WorkloadRoutingDataSource(Map.of(
+            Workload.WEB, pool(webConnection),
+            Workload.BACKGROUND, pool(backgroundConnection),
+            Workload.EXPORT, pool(exportConnection),
+            Workload.JOB_LOCK, pool(lockConnection)
+        ));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        WorkloadRoutingDataSource.requestWorkload(null);
+    }
+
+    @Test
+    void useBackgroundPoolOutsideHttpRequests() throws SQLException {
+        assertSame(backgroundConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void useWebPoolWhileServingHttpRequests() throws SQLException {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertSame(webConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void useExportPoolIfRequested() throws SQLException {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        var previous = WorkloadRoutingDataSource.requestWorkload(Workload.EXPORT);
+        assertNull(previous);
+        assertSame(exportConnection, dataSource.getConnection());
+        WorkloadRoutingDataSource.requestWorkload(previous);
+        assertSame(webConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void useBackgroundPoolIfRequestedWhileServingHttpRequests() throws SQLException {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertSame(backgroundConnection, WorkloadRoutingDataSource.executeAs(Workload.BACKGROUND, this::openConnection));
+        assertSame(webConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void exportWorkloadIsDetectedFromTransactionLabel() {
+        var attribute = new RuleBasedTransactionAttribute();
+        attribute.setLabels(List.of(WorkloadRoutingDataSource.EXPORT));
+        assertEquals(Workload.EXPORT, WorkloadRoutingDataSource.fromDefinition(attribute));
+        assertNull(WorkloadRoutingDataSource.fromDefinition(new DefaultTransactionDefinition()));
+    }
+
+    @Test
+    void everyWorkloadMustHaveAPool() {
+        assertThrows(NullPointerException.class, () -> new WorkloadRoutingDataSource(Map.of(Workload.WEB, mock(DataSource.class))));
+    }
+
+    private Connection openConnection() {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DataSource pool(Connection connection) throws SQLException {
+        var pool = mock(DataSource.class);
+        when(pool.getConnection()).thenReturn(connection);
+        return pool;
+    }
+}
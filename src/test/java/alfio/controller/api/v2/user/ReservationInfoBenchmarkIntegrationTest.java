@@ -0,0 +1,190 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.controller.api.ControllerConfiguration;
+import alfio.manager.EventManager;
+import alfio.manager.TicketReservationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import alfio.util.BaseIntegrationTest;
+import alfio.util.ClockProvider;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.AVAILABLE_SEATS;
+import static alfio.test.util.IntegrationTestUtil.initEvent;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the number of queries and the latency of {@link ReservationApiV2Controller#getReservationInfo(String, java.security.Principal)},
+ * which is polled by the frontend during the payment.
+ */
+@SpringBootTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class, ControllerConfiguration.class, ReservationInfoBenchmarkIntegrationTest.QueryCounterConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Transactional
+@Log4j2
+class ReservationInfoBenchmarkIntegrationTest extends BaseIntegrationTest {
+
+    private static final Map<String, String> DESCRIPTION = Collections.singletonMap("en", "desc");
+    private static final int ITERATIONS = 50;
+
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private ReservationApiV2Controller reservationApiV2Controller;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void ensureConfiguration() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+    }
+
+    @Test
+    void queriesAndLatencyPerCall() {
+        var counter = (QueryCountingJdbcTemplate) jdbcTemplate;
+        int singleTicket = measure(createReservation(1, 1), counter, 1, 1);
+        int fourTickets = measure(createReservation(1, 4), counter, 1, 4);
+        int threeCategories = measure(createReservation(3, 1), counter, 3, 1);
+        assertTrue(singleTicket > 0);
+        // the number of queries must not depend on the number of tickets or categories (N+1)
+        assertEquals(singleTicket, fourTickets, "1 ticket: " + singleTicket + " queries per call, 4 tickets: " + fourTickets);
+        assertTrue(threeCategories <= singleTicket, "3 categories: " + threeCategories + " queries per call, 1 category: " + singleTicket);
+    }
+
+    private int measure(String reservationId, QueryCountingJdbcTemplate counter, int numberOfCategories, int ticketsPerCategory) {
+        // warm up
+        assertEquals(HttpStatus.OK, reservationApiV2Controller.getReservationInfo(reservationId, null).getStatusCode());
+        int before = counter.count();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            var response = reservationApiV2Controller.getReservationInfo(reservationId, null);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+        }
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        int queriesPerCall = (counter.count() - before) / ITERATIONS;
+        log.info("getReservationInfo with {} categories, {} tickets each: {} queries/call, {} µs/call (avg over {} calls)", numberOfCategories, ticketsPerCategory, queriesPerCall, elapsedMicros / ITERATIONS, ITERATIONS);
+        return queriesPerCall;
+    }
+
+    private String createReservation(int numberOfCategories, int ticketsPerCategory) {
+        var categories = new ArrayList<TicketCategoryModification>();
+        for (int i = 0; i < numberOfCategories; i++) {
+            categories.add(new TicketCategoryModification(null, "category-" + i, TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS / numberOfCategories,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        }
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getKey();
+        var modifications = ticketCategoryRepository.findAllTicketCategories(event.getId()).stream()
+            .map(tc -> {
+                var tr = new TicketReservationModification();
+                tr.setAmount(ticketsPerCategory);
+                tr.setTicketCategoryId(tc.getId());
+                return new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+            })
+            .collect(Collectors.toList());
+        return ticketReservationManager.createTicketReservation(event, modifications, List.of(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class QueryCounterConfiguration {
+        @Bean
+        static BeanPostProcessor queryCounterPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if(bean instanceof NamedParameterJdbcTemplate && !(bean instanceof QueryCountingJdbcTemplate)) {
+                        return new QueryCountingJdbcTemplate((NamedParameterJdbcTemplate) bean);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    private static class QueryCountingJdbcTemplate extends NamedParameterJdbcTemplate {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        QueryCountingJdbcTemplate(NamedParameterJdbcTemplate delegate) {
+            super(delegate.getJdbcOperations());
+        }
+
+        @Override
+        protected PreparedStatementCreator getPreparedStatementCreator(String sql, SqlParameterSource paramSource, Consumer<PreparedStatementCreatorFactory> customizer) {
+            counter.incrementAndGet();
+            return super.getPreparedStatementCreator(sql, paramSource, customizer);
+        }
+
+        int count() {
+            return counter.get();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension;
+
+import alfio.model.ExtensionLog;
+import alfio.repository.ExtensionLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ExtensionLogWriterTest {
+
+    private static final long ONE_HOUR = 3_600_000L;
+    private ExtensionLogRepository extensionLogRepository;
+    private PlatformTransactionManager transactionManager;
+    private ExtensionLogWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        extensionLogRepository = mock(ExtensionLogRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(writer != null) {
+            writer.close();
+        }
+    }
+
+    @Test
+    void synchronousWriterPersistsImmediately() {
+        writer = ExtensionLogWriter.synchronous(extensionLogRepository, transactionManager);
+        writer.write("-0", "-", "name", "description", ExtensionLog.Type.SUCCESS);
+        assertEquals(List.of("SUCCESS"), capturedTypes(1));
+    }
+
+    @Test
+    void entriesAreWrittenInBatchOnFlush() {
+        writer = new ExtensionLogWriter(extensionLogRepository, transactionManager, 10, 100, ONE_HOUR, 1.0, ExtensionLogWriter.OverflowPolicy.DROP_LOW_SEVERITY);
+        writer.write("-0", "-", "name", "first", ExtensionLog.Type.INFO);
+        writer.write("-0", "-", "name", "second", ExtensionLog.Type.SUCCESS);
+        verify(extensionLogRepository, never()).bulkInsert(any());
+        writer.flush();
+        assertEquals(List.of("INFO", "SUCCESS"), capturedTypes(1));
+    }
+
+    @Test
+    void successEntriesAreSampled() {
+        writer = new ExtensionLogWriter(extensionLogRepository, transactionManager, 0, 1, 0L, 0.0, ExtensionLogWriter.OverflowPolicy.CALLER_RUNS);
+        writer.write("-0", "-", "name", "description", ExtensionLog.Type.SUCCESS);
+        writer.write("-0", "-", "name", "description", ExtensionLog.Type.ERROR);
+        assertEquals(List.of("ERROR"), capturedTypes(1));
+    }
+
+    @Test
+    void lowSeverityEntriesAreDroppedWhenBufferIsFull() {
+        writer = new ExtensionLogWriter(extensionLogRepository, transactionManager, 1, 100, ONE_HOUR, 1.0, ExtensionLogWriter.OverflowPolicy.DROP_LOW_SEVERITY);
+        writer.write("-0", "-", "name", "buffered", ExtensionLog.Type.INFO);
+        writer.write("-0", "-", "name", "dropped", ExtensionLog.Type.SUCCESS);
+        writer.write("-0", "-", "name", "written", ExtensionLog.Type.ERROR);
+        assertEquals(List.of("ERROR"), capturedTypes(1));
+        assertEquals(1L, writer.getDroppedEntries());
+    }
+
+    private List<String> capturedTypes(int expectedInvocations) {
+        var captor = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(extensionLogRepository, times(expectedInvocations)).bulkInsert(captor.capture());
+        return captor.getAllValues().stream()
+            .flatMap(Arrays::stream)
+            .map(p -> (String) p.getValue("type"))
+            .collect(Collectors.toList());
+    }
+}
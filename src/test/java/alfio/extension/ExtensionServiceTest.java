@@ -19,12 +19,15 @@ package alfio.extension;
 import alfio.manager.support.extension.ExtensionCapability;
 import alfio.manager.support.extension.ExtensionEvent;
 import alfio.manager.system.ExternalConfiguration;
+import alfio.model.ExtensionSupport;
+import alfio.repository.ExtensionRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -32,7 +35,8 @@ import static alfio.manager.support.extension.ExtensionCapability.CREATE_GUEST_L
 import static alfio.manager.support.extension.ExtensionCapability.CREATE_VIRTUAL_ROOM;
 import static alfio.manager.support.extension.ExtensionEvent.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.mock;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 class ExtensionServiceTest {
 
@@ -40,7 +44,7 @@ class ExtensionServiceTest {
 
     @BeforeEach
     void setUp() {
-        extensionService = new ExtensionService(null, null, null, mock(PlatformTransactionManager.class), mock(ExternalConfiguration.class));
+        extensionService = new ExtensionService(null, null, null, mock(ExternalConfiguration.class), mock(ExtensionLogWriter.class));
     }
 
     @Test
@@ -61,6 +65,29 @@ class ExtensionServiceTest {
         assertThrows(IllegalArgumentException.class, () -> extensionService.validateCapabilities(metadata));
     }
 
+    @Test
+    void executionMetadataIsCachedUntilExtensionsAreModified() {
+        var scriptingExecutionService = mock(ScriptingExecutionService.class);
+        var extensionRepository = mock(ExtensionRepository.class);
+        var service = new ExtensionService(scriptingExecutionService, extensionRepository, null, mock(ExternalConfiguration.class), mock(ExtensionLogWriter.class));
+        when(extensionRepository.findActive(anySet(), eq(false), eq(RESERVATION_CONFIRMED.name())))
+            .thenReturn(List.of(new ExtensionSupport.ScriptPathNameHash("-", "name", "hash")));
+        when(extensionRepository.getScript("-", "name")).thenReturn("script");
+
+        service.executeScriptsForEvent(RESERVATION_CONFIRMED.name(), "-0-1", Map.of(), Object.class);
+        service.executeScriptsForEvent(RESERVATION_CONFIRMED.name(), "-0-1", Map.of(), Object.class);
+        verify(extensionRepository, times(1)).findActive(anySet(), eq(false), eq(RESERVATION_CONFIRMED.name()));
+        verify(extensionRepository, times(1)).getScript("-", "name");
+        verify(extensionRepository, times(1)).findParametersForScript(eq("name"), eq("-"), anySet());
+        verify(extensionRepository, times(1)).findMandatoryParametersForScript("name", "-");
+        verify(scriptingExecutionService, times(2)).executeScript(eq("name"), anyString(), any(), anyMap(), eq(Object.class), any());
+
+        service.toggle("-", "name", true);
+        service.executeScriptsForEvent(RESERVATION_CONFIRMED.name(), "-0-1", Map.of(), Object.class);
+        verify(extensionRepository, times(2)).findActive(anySet(), eq(false), eq(RESERVATION_CONFIRMED.name()));
+        verify(extensionRepository, times(2)).getScript("-", "name");
+    }
+
     private ExtensionMetadata generateMetadata(Collection<ExtensionEvent> events, Collection<ExtensionCapability> capabilities) {
         return new ExtensionMetadata("id",
             "displayName",
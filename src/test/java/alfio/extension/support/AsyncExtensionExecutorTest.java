@@ -0,0 +1,152 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.extension.support;
+
+import alfio.extension.ExtensionLogger;
+import alfio.extension.ScriptingExecutionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class AsyncExtensionExecutorTest {
+
+    private ScheduledExecutorService watchdog;
+    private AsyncExtensionExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        watchdog = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(executor != null) {
+            executor.shutdown();
+        }
+        watchdog.shutdownNow();
+    }
+
+    @Test
+    void runInCallerThreadWhenQueueIsFull() throws Exception {
+        executor = new AsyncExtensionExecutor(1, 1, Duration.ofSeconds(10), AsyncExtensionExecutor.OverflowPolicy.CALLER_RUNS, Executors.defaultThreadFactory(), watchdog);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> {});
+        var executingThread = new AtomicReference<Thread>();
+        executor.execute(() -> executingThread.set(Thread.currentThread()));
+        assertSame(Thread.currentThread(), executingThread.get());
+        release.countDown();
+        var statistics = executor.getStatistics("ext");
+        assertEquals(1, statistics.getCallerRuns());
+        assertEquals(0, statistics.getRejected());
+    }
+
+    @Test
+    void rejectWhenQueueIsFull() throws Exception {
+        executor = new AsyncExtensionExecutor(1, 1, Duration.ofSeconds(10), AsyncExtensionExecutor.OverflowPolicy.DISCARD, Executors.defaultThreadFactory(), watchdog);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> {});
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+        release.countDown();
+        assertEquals(1, executor.getStatistics("ext").getRejected());
+    }
+
+    @Test
+    void waitForCapacityByDefault() throws Exception {
+        executor = (AsyncExtensionExecutor) AsyncExtensionExecutor.supplier(new MockEnvironment().withProperty("alfio.extension.async.queue-capacity", "1")).get();
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> {});
+        var executed = new CountDownLatch(1);
+        var caller = new Thread(() -> executor.execute(executed::countDown));
+        caller.start();
+        // the caller waits until there is room in the queue
+        caller.join(200);
+        assertTrue(caller.isAlive());
+        release.countDown();
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+        assertTrue(executed.await(5, TimeUnit.SECONDS));
+        var statistics = executor.getStatistics("ext");
+        assertEquals(1, statistics.getBlocked());
+        assertEquals(0, statistics.getRejected());
+        assertEquals(0, statistics.getCallerRuns());
+    }
+
+    @Test
+    void interruptExecutionAfterTimeout() throws Exception {
+        executor = new AsyncExtensionExecutor(1, 10, Duration.ofMillis(100), AsyncExtensionExecutor.OverflowPolicy.DISCARD, Executors.defaultThreadFactory(), watchdog);
+        var interrupted = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getStatistics("ext").getTimedOut());
+    }
+
+    @Test
+    void stopCpuBoundScriptAfterTimeout() {
+        executor = new AsyncExtensionExecutor(1, 10, Duration.ofMillis(200), AsyncExtensionExecutor.OverflowPolicy.DISCARD, Executors.defaultThreadFactory(), watchdog);
+        var scriptingExecutionService = new ScriptingExecutionService(Mockito.mock(HttpClient.class), () -> executor);
+        var extensionLogger = Mockito.mock(ExtensionLogger.class);
+        scriptingExecutionService.executeScriptAsync("-", "loop", "loop-hash", () -> "while(true) {}", Map.of(), extensionLogger);
+        // the sandbox would stop the script after 15 seconds
+        verify(extensionLogger, timeout(5000)).logError(startsWith("Error while executing script"));
+        assertEquals(1, executor.getStatistics("ext").getTimedOut());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.job.executor;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.EventManager;
+import alfio.manager.NotificationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.system.AdminJobSchedule;
+import alfio.repository.EventRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import alfio.util.BaseIntegrationTest;
+import alfio.util.ClockProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static alfio.manager.system.AdminJobExecutor.JobName.DELETE_EXPIRED_EMAILS;
+import static alfio.model.system.ConfigurationKeys.EMAIL_RETENTION_DAYS;
+import static alfio.test.util.IntegrationTestUtil.AVAILABLE_SEATS;
+import static alfio.test.util.IntegrationTestUtil.initEvent;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Transactional
+class EmailRetentionJobExecutorIntegrationTest extends BaseIntegrationTest {
+
+    private final ConfigurationRepository configurationRepository;
+    private final OrganizationRepository organizationRepository;
+    private final UserManager userManager;
+    private final EventManager eventManager;
+    private final EventRepository eventRepository;
+    private final NotificationManager notificationManager;
+    private final EmailRetentionJobExecutor emailRetentionJobExecutor;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private Event event;
+    private ZonedDateTime now;
+
+    @Autowired
+    EmailRetentionJobExecutorIntegrationTest(ConfigurationRepository configurationRepository,
+                                             OrganizationRepository organizationRepository,
+                                             UserManager userManager,
+                                             EventManager eventManager,
+                                             EventRepository eventRepository,
+                                             NotificationManager notificationManager,
+                                             EmailRetentionJobExecutor emailRetentionJobExecutor,
+                                             NamedParameterJdbcTemplate jdbcTemplate) {
+        this.configurationRepository = configurationRepository;
+        this.organizationRepository = organizationRepository;
+        this.userManager = userManager;
+        this.eventManager = eventManager;
+        this.eventRepository = eventRepository;
+        this.notificationManager = notificationManager;
+        this.emailRetentionJobExecutor = emailRetentionJobExecutor;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @BeforeEach
+    void init() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                "desc", BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        now = ZonedDateTime.now(ClockProvider.clock());
+    }
+
+    @Test
+    void deleteOnlyCompletedMessagesOlderThanThreshold() {
+        insertMessages(2, "SENT", now.minusDays(41), now.minusDays(40));
+        insertMessages(1, "ERROR", now.minusDays(40), null);
+        insertMessages(1, "SENT", now.minusDays(41), now.minusDays(1));
+        insertMessages(1, "WAITING", now.minusDays(40), null);
+        insertMessages(1, "RETRY", now.minusDays(40), null);
+
+        assertEquals(3, notificationManager.deleteCompletedMessages(now.minusDays(30)));
+        assertEquals(Map.of("SENT", 1, "WAITING", 1, "RETRY", 1), countByStatus());
+    }
+
+    @Test
+    void deleteInBatches() {
+        // one full batch, plus one message
+        insertMessages(5001, "SENT", now.minusDays(41), now.minusDays(40));
+        insertMessages(1, "SENT", now.minusDays(2), now.minusDays(1));
+
+        assertEquals(5001, notificationManager.deleteCompletedMessages(now.minusDays(30)));
+        assertEquals(Map.of("SENT", 1), countByStatus());
+    }
+
+    @Test
+    void jobDeletesMessagesOlderThanRetention() {
+        insertMessages(1, "SENT", now.minusDays(41), now.minusDays(40));
+        insertMessages(1, "SENT", now.minusDays(11), now.minusDays(10));
+        insertMessages(1, "WAITING", now.minusDays(40), null);
+
+        configurationRepository.deleteByKey(EMAIL_RETENTION_DAYS.getValue());
+        // the retention is disabled by default
+        assertNull(emailRetentionJobExecutor.process(schedule()));
+        assertEquals(Map.of("SENT", 2, "WAITING", 1), countByStatus());
+
+        configurationRepository.insert(EMAIL_RETENTION_DAYS.getValue(), "30", "");
+        assertEquals("deleted 1 emails", emailRetentionJobExecutor.process(schedule()));
+        assertEquals(Map.of("SENT", 1, "WAITING", 1), countByStatus());
+    }
+
+    private void insertMessages(int count, String status, ZonedDateTime requestTimestamp, ZonedDateTime sentTimestamp) {
+        var params = new MapSqlParameterSource("eventId", event.getId())
+            .addValue("organizationId", event.getOrganizationId())
+            .addValue("status", status)
+            .addValue("checksum", UUID.randomUUID().toString())
+            .addValue("count", count)
+            .addValue("requestTs", requestTimestamp.toOffsetDateTime(), Types.TIMESTAMP_WITH_TIMEZONE)
+            .addValue("sentTs", sentTimestamp != null ? sentTimestamp.toOffsetDateTime() : null, Types.TIMESTAMP_WITH_TIMEZONE);
+        int inserted = jdbcTemplate.update("insert into email_message(event_id, organization_id_fk, status, recipient, subject, message, checksum, request_ts, sent_ts)" +
+            " select :eventId, :organizationId, :status, 'test@example.com', 'subject', 'message', :checksum || i, cast(:requestTs as timestamptz), cast(:sentTs as timestamptz)" +
+            " from generate_series(1, :count) i", params);
+        assertEquals(count, inserted);
+    }
+
+    private Map<String, Integer> countByStatus() {
+        var result = new HashMap<String, Integer>();
+        jdbcTemplate.query("select status, count(*) as cnt from email_message where event_id = :eventId group by status",
+            Map.of("eventId", event.getId()),
+            rs -> { result.put(rs.getString("status"), rs.getInt("cnt")); });
+        return result;
+    }
+
+    private static AdminJobSchedule schedule() {
+        return new AdminJobSchedule(1L, DELETE_EXPIRED_EMAILS.name(), ZonedDateTime.now(ClockProvider.clock()), AdminJobSchedule.Status.RUNNING, null, Map.of(), Map.of());
+    }
+}
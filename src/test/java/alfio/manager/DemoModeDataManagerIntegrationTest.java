@@ -19,6 +19,7 @@ package alfio.manager;
 import alfio.TestConfiguration;
 import alfio.config.DataSourceConfiguration;
 import alfio.config.Initializer;
+import alfio.manager.user.ApiKeyCredentialCache;
 import alfio.manager.user.UserManager;
 import alfio.model.TicketCategory;
 import alfio.model.metadata.AlfioMetadata;
@@ -66,6 +67,7 @@ class DemoModeDataManagerIntegrationTest extends BaseIntegrationTest {
     private final EventManager eventManager;
     private final EventRepository eventRepository;
     private final DemoModeDataManager demoModeDataManager;
+    private final ApiKeyCredentialCache apiKeyCredentialCache;
 
     @Autowired
     DemoModeDataManagerIntegrationTest(ConfigurationRepository configurationRepository,
@@ -74,7 +76,8 @@ class DemoModeDataManagerIntegrationTest extends BaseIntegrationTest {
                                        NamedParameterJdbcTemplate jdbcTemplate,
                                        EventManager eventManager,
                                        EventRepository eventRepository,
-                                       DemoModeDataManager demoModeDataManager) {
+                                       DemoModeDataManager demoModeDataManager,
+                                       ApiKeyCredentialCache apiKeyCredentialCache) {
         this.configurationRepository = configurationRepository;
         this.organizationRepository = organizationRepository;
         this.userManager = userManager;
@@ -82,6 +85,7 @@ class DemoModeDataManagerIntegrationTest extends BaseIntegrationTest {
         this.eventManager = eventManager;
         this.eventRepository = eventRepository;
         this.demoModeDataManager = demoModeDataManager;
+        this.apiKeyCredentialCache = apiKeyCredentialCache;
     }
 
     @BeforeEach
@@ -103,8 +107,10 @@ class DemoModeDataManagerIntegrationTest extends BaseIntegrationTest {
         var expirationDate = DateUtils.addDays(new Date(), -30);
         int updateResult = jdbcTemplate.update("update ba_user set user_type = 'DEMO', user_creation_time = :date where username = :username", Map.of("date", expirationDate, "username", eventAndUser.getRight()));
         assertEquals(1, updateResult);
+        assertTrue(apiKeyCredentialCache.find(eventAndUser.getRight()).isPresent());
         demoModeDataManager.cleanupForDemoMode();
         assertTrue(eventRepository.findOptionalById(event.getId()).isEmpty());
+        assertTrue(apiKeyCredentialCache.find(eventAndUser.getRight()).isEmpty());
 
     }
 
@@ -16,8 +16,8 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.EventCodeIndex;
 import alfio.model.Event;
-import alfio.model.Ticket;
 import alfio.model.TicketCategory;
 import alfio.repository.EventRepository;
 import alfio.repository.SubscriptionRepository;
@@ -26,11 +26,8 @@ import alfio.repository.TicketCategoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -58,7 +55,7 @@ public class EventManagerCategoriesTest {
         EventRepository eventRepository = mock(EventRepository.class);
         event = mock(Event.class);
         when(event.getId()).thenReturn(eventId);
-        eventManager = new EventManager(null, eventRepository, null, ticketCategoryRepository, ticketCategoryDescriptionRepository, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, clockProvider(), mock(SubscriptionRepository.class));
+        eventManager = new EventManager(null, eventRepository, null, ticketCategoryRepository, ticketCategoryDescriptionRepository, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, clockProvider(), mock(SubscriptionRepository.class), mock(EventCodeIndex.class));
         when(eventRepository.countExistingTickets(0)).thenReturn(availableSeats);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
     }
@@ -69,10 +66,9 @@ public class EventManagerCategoriesTest {
     void createTicketsForUnboundedCategory() {
         List<TicketCategory> categories = generateCategoryStream().limit(3).collect(Collectors.toList());
         when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
-        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE);
-        assertNotNull(parameterSources);
-        assertEquals(availableSeats, parameterSources.length);
-        assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
+        List<EventManager.TicketAllocation> allocations = eventManager.planTicketsCreation(event, availableSeats);
+        assertNotNull(allocations);
+        assertEquals(availableSeats, allocations.stream().mapToInt(EventManager.TicketAllocation::getCount).sum());
     }
 
     @Test
@@ -80,10 +76,9 @@ public class EventManagerCategoriesTest {
     void createTicketsForUnboundedCategories() {
         List<TicketCategory> categories = generateCategoryStream().limit(6).collect(Collectors.toList());
         when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
-        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE);
-        assertNotNull(parameterSources);
-        assertEquals(availableSeats, parameterSources.length);
-        assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
+        List<EventManager.TicketAllocation> allocations = eventManager.planTicketsCreation(event, availableSeats);
+        assertNotNull(allocations);
+        assertEquals(availableSeats, allocations.stream().mapToInt(EventManager.TicketAllocation::getCount).sum());
     }
 
     @Test
@@ -91,11 +86,11 @@ public class EventManagerCategoriesTest {
     void createTicketsOnlyForBounded() {
         List<TicketCategory> categories = generateCategoryStream().limit(2).collect(Collectors.toList());
         when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
-        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE);
-        assertNotNull(parameterSources);
-        assertEquals(availableSeats, parameterSources.length);
-        assertEquals(4L, Arrays.stream(parameterSources).filter(p -> p.getValue("categoryId") != null).count());
-        assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
+        List<EventManager.TicketAllocation> allocations = eventManager.planTicketsCreation(event, availableSeats);
+        assertNotNull(allocations);
+        assertEquals(availableSeats, allocations.stream().mapToInt(EventManager.TicketAllocation::getCount).sum());
+        assertEquals(4, allocations.stream().filter(a -> a.getCategoryId() != null).mapToInt(EventManager.TicketAllocation::getCount).sum());
+        assertEquals(1L, allocations.stream().filter(a -> a.getCategoryId() == null).count());
     }
 
 }
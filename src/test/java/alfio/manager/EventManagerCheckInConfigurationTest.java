@@ -16,10 +16,11 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.EventCodeIndex;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
+import alfio.model.system.Configuration;
 import alfio.repository.SubscriptionRepository;
-import alfio.repository.system.ConfigurationRepository;
 import alfio.test.util.TestUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -38,7 +39,6 @@ class EventManagerCheckInConfigurationTest {
     private Event event;
     private EventManager eventManager;
     private ConfigurationManager configurationManager;
-    private ConfigurationRepository configurationRepository;
     private ConfigurationManager.MaybeConfiguration configuration;
     private final int eventId = 0;
 
@@ -49,8 +49,7 @@ class EventManagerCheckInConfigurationTest {
         when(event.getId()).thenReturn(eventId);
         when(event.getOrganizationId()).thenReturn(1);
         configurationManager = mock(ConfigurationManager.class);
-        configurationRepository = mock(ConfigurationRepository.class);
-        eventManager = new EventManager(null, null, null, null, null, null, null, null, configurationManager, null, null, null, null, null, null, null, null, null, null, null, configurationRepository, null, TestUtil.clockProvider(), mock(SubscriptionRepository.class));
+        eventManager = new EventManager(null, null, null, null, null, null, null, null, configurationManager, null, null, null, null, null, null, null, null, null, null, null, null, TestUtil.clockProvider(), mock(SubscriptionRepository.class), mock(EventCodeIndex.class));
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         configuration = mock(ConfigurationManager.MaybeConfiguration.class);
         when(configurationManager.getFor(eq(CHECK_IN_COLOR_CONFIGURATION), any())).thenReturn(configuration);
@@ -60,7 +59,7 @@ class EventManagerCheckInConfigurationTest {
     void insertConfiguration() {
         when(configuration.getValue()).thenReturn(Optional.empty());
         eventManager.saveBadgeColorConfiguration("warning", event, 1);
-        verify(configurationRepository).insertEventLevel(eq(1), eq(eventId), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"warning\",\"categories\":[1]}]}"), isNull());
+        verify(configurationManager).saveConfig(eq(Configuration.from(event, CHECK_IN_COLOR_CONFIGURATION)), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"warning\",\"categories\":[1]}]}"));
     }
 
     @Test
@@ -68,7 +67,7 @@ class EventManagerCheckInConfigurationTest {
         var json = "{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5]}]}";
         when(configuration.getValue()).thenReturn(Optional.of(json));
         eventManager.saveBadgeColorConfiguration("warning", event, 1);
-        verify(configurationRepository).updateEventLevel(eq(eventId), eq(1), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5]},{\"colorName\":\"warning\",\"categories\":[1]}]}"));
+        verify(configurationManager).saveConfig(eq(Configuration.from(event, CHECK_IN_COLOR_CONFIGURATION)), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5]},{\"colorName\":\"warning\",\"categories\":[1]}]}"));
     }
 
     @Test
@@ -76,7 +75,7 @@ class EventManagerCheckInConfigurationTest {
         var json = "{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5]}]}";
         when(configuration.getValue()).thenReturn(Optional.of(json));
         eventManager.saveBadgeColorConfiguration("info", event, 1);
-        verify(configurationRepository).updateEventLevel(eq(eventId), eq(1), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5,1]}]}"));
+        verify(configurationManager).saveConfig(eq(Configuration.from(event, CHECK_IN_COLOR_CONFIGURATION)), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[5,1]}]}"));
     }
 
     @Test
@@ -84,6 +83,6 @@ class EventManagerCheckInConfigurationTest {
         var json = "{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"info\",\"categories\":[1]}]}";
         when(configuration.getValue()).thenReturn(Optional.of(json));
         eventManager.saveBadgeColorConfiguration("warning", event, 1);
-        verify(configurationRepository).updateEventLevel(eq(eventId), eq(1), eq(CHECK_IN_COLOR_CONFIGURATION.name()), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"warning\",\"categories\":[1]}]}"));
+        verify(configurationManager).saveConfig(eq(Configuration.from(event, CHECK_IN_COLOR_CONFIGURATION)), eq("{\"defaultColorName\":\"success\",\"configurations\":[{\"colorName\":\"warning\",\"categories\":[1]}]}"));
     }
 }
\ No newline at end of file
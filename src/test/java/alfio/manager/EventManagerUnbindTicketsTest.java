@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.EventCodeIndex;
 import alfio.manager.user.UserManager;
 import alfio.model.Event;
 import alfio.model.Ticket;
@@ -88,7 +89,7 @@ public class EventManagerUnbindTicketsTest {
             null, null, null,
             null, null, organizationRepository,
             null, null, null, null, null,
-            null, TestUtil.clockProvider(), mock(SubscriptionRepository.class));
+            TestUtil.clockProvider(), mock(SubscriptionRepository.class), mock(EventCodeIndex.class));
     }
 
     @Test
@@ -21,6 +21,7 @@ import alfio.TestConfiguration;
 import alfio.config.DataSourceConfiguration;
 import alfio.config.Initializer;
 import alfio.model.FileBlobMetadata;
+import alfio.model.ImageVariant;
 import alfio.model.modification.UploadBase64FileModification;
 import alfio.util.BaseIntegrationTest;
 import org.apache.commons.lang3.time.DateUtils;
@@ -31,6 +32,9 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.Date;
 import java.util.Optional;
@@ -94,6 +98,30 @@ public class FileUploadManagerIntegrationTest extends BaseIntegrationTest {
         assertFalse(fileUploadManager.findMetadata(id).isPresent());
     }
 
+    @Test
+    public void testImageVariant() throws Exception {
+        BufferedImage image = new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        UploadBase64FileModification toInsert = new UploadBase64FileModification();
+        toInsert.setFile(png.toByteArray());
+        toInsert.setName("image.png");
+        toInsert.setType("image/png");
+        String id = fileUploadManager.insertFile(toInsert);
+        FileBlobMetadata metadata = fileUploadManager.findMetadata(id).orElseThrow();
+
+        assertFalse(fileUploadManager.findImageVariant(metadata, ImageVariant.Size.LARGE, false).isPresent());
+        Optional<ImageVariant> variant = fileUploadManager.findImageVariant(metadata, ImageVariant.Size.SMALL, false);
+        assertTrue(variant.isPresent());
+        assertEquals("image/png", variant.get().getContentType());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        fileUploadManager.outputImageVariant(variant.get(), baos);
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(320, resized.getWidth());
+        assertEquals(160, resized.getHeight());
+    }
+
     @Test
     public void testFindMetadataNotPresent() {
         assertFalse(fileUploadManager.findMetadata("unknownid").isPresent());
@@ -141,6 +141,47 @@ public class GroupManagerIntegrationTest extends BaseIntegrationTest {
 
     }
 
+    @Test
+    public void testLimitedQuantityWithDomainMatch() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 10,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(2), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Pair<Event, String> pair = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        Event event = pair.getKey();
+        Group group = groupManager.createNew("test", "This is a test", event.getOrganizationId());
+        LinkedGroupModification modification = new LinkedGroupModification(null, group.getId(), event.getId(), null, LinkedGroup.Type.LIMITED_QUANTITY, LinkedGroup.MatchType.EMAIL_DOMAIN, 2);
+        groupManager.createLink(group.getId(), event.getId(), modification);
+        assertTrue(groupManager.insertMembers(group.getId(), Collections.singletonList(new GroupMemberModification(null, "@test.ch", "description"))).isSuccess());
+        int categoryId = eventManager.loadTicketCategories(event).get(0).getId();
+        assertTrue(groupManager.isAllowed("first@TEST.ch", event.getId(), categoryId));
+        assertFalse(groupManager.isAllowed("first@test.com", event.getId(), categoryId));
+
+        String firstReservationId = createReservationFor(event, categoryId, "first@test.ch");
+        assertTrue(groupManager.acquireMemberForTicket(ticketRepository.findFirstTicketInReservation(firstReservationId).orElseThrow()));
+        String secondReservationId = createReservationFor(event, categoryId, "second@test.ch");
+        assertTrue(groupManager.acquireMemberForTicket(ticketRepository.findFirstTicketInReservation(secondReservationId).orElseThrow()));
+        String thirdReservationId = createReservationFor(event, categoryId, "third@test.ch");
+        Ticket third = ticketRepository.findFirstTicketInReservation(thirdReservationId).orElseThrow();
+        assertFalse(groupManager.acquireMemberForTicket(third), "max allocation reached");
+
+        // releasing a ticket frees its allocation
+        groupManager.deleteWhitelistedTicketsForReservation(firstReservationId);
+        assertTrue(groupManager.acquireMemberForTicket(third));
+    }
+
+    private String createReservationFor(Event event, int categoryId, String email) {
+        TicketReservationModification ticketReservation = new TicketReservationModification();
+        ticketReservation.setAmount(1);
+        ticketReservation.setTicketCategoryId(categoryId);
+        String reservationId = ticketReservationManager.createTicketReservation(event, Collections.singletonList(new TicketReservationWithOptionalCodeModification(ticketReservation, Optional.empty())),
+            Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+        Ticket ticket = ticketRepository.findFirstTicketInReservation(reservationId).orElseThrow(NullPointerException::new);
+        ticketRepository.updateTicketOwnerById(ticket.getId(), email, "This is a Test", "This is", "a Test");
+        return reservationId;
+    }
+
     @Test
     public void testDuplicates() {
         List<TicketCategoryModification> categories = Collections.singletonList(
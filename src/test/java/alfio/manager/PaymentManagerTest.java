@@ -18,6 +18,9 @@ package alfio.manager;
 
 import alfio.manager.payment.MollieWebhookPaymentManager;
 import alfio.manager.payment.StripeWebhookPaymentManager;
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.transaction.PaymentContext;
 import alfio.model.transaction.PaymentMethod;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.transaction.webhook.MollieWebhookPayload;
@@ -32,14 +35,14 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 class PaymentManagerTest {
 
     private PaymentManager paymentManager;
     private StripeWebhookPaymentManager stripe;
     private MollieWebhookPaymentManager mollie;
+    private ConfigurationManager configurationManager;
 
     @BeforeEach
     void init() {
@@ -49,7 +52,8 @@ class PaymentManagerTest {
         mollie = mock(MollieWebhookPaymentManager.class);
         when(mollie.isActive(any())).thenReturn(true);
         when(mollie.getPaymentProxy()).thenCallRealMethod();
-        paymentManager = new PaymentManager(null, null, null, null, null,
+        configurationManager = mock(ConfigurationManager.class);
+        paymentManager = new PaymentManager(null, configurationManager, null, null, null,
             List.of(stripe, mollie));
     }
 
@@ -70,4 +74,25 @@ class PaymentManagerTest {
         assertSame(entries.get(0).getKey(), PaymentMethod.CREDIT_CARD);
         assertEquals(entries.get(0).getValue(), EnumSet.of(PaymentProxy.STRIPE, PaymentProxy.MOLLIE));
     }
-}
\ No newline at end of file
+
+    @Test
+    void activeProvidersAreEvaluatedOnlyOncePerConfigurationVersion() {
+        when(stripe.getSupportedPaymentMethods(any(), any())).thenReturn(EnumSet.of(PaymentMethod.CREDIT_CARD));
+        when(mollie.getSupportedPaymentMethods(any(), any())).thenReturn(EnumSet.of(PaymentMethod.IDEAL));
+        when(configurationManager.getConfigurationVersion()).thenReturn(0L);
+        paymentManager.validateSelection(List.of(PaymentProxy.STRIPE, PaymentProxy.MOLLIE), 1);
+        paymentManager.validateSelection(List.of(PaymentProxy.STRIPE, PaymentProxy.MOLLIE), 1);
+        verify(stripe, times(1)).isActive(any());
+        verify(mollie, times(1)).isActive(any());
+
+        // a different organization must be evaluated separately
+        paymentManager.validateSelection(List.of(PaymentProxy.STRIPE, PaymentProxy.MOLLIE), 2);
+        verify(stripe, times(2)).isActive(any());
+
+        // configuration has been modified
+        when(configurationManager.getConfigurationVersion()).thenReturn(1L);
+        when(stripe.isActive(any())).thenReturn(false);
+        assertEquals(0, paymentManager.streamActiveProvidersByProxy(PaymentProxy.STRIPE, new PaymentContext(null, ConfigurationLevel.organization(1))).count());
+        verify(stripe, times(3)).isActive(any());
+    }
+}
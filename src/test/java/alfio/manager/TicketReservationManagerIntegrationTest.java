@@ -103,6 +103,9 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
     @Autowired
     private PurchaseContextSearchManager purchaseContextSearchManager;
 
+    @Autowired
+    private PromoCodeDiscountRepository promoCodeDiscountRepository;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -172,6 +175,11 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
         assertEquals(1, reservations.size());
         assertEquals(reservationId, reservations.get(0).getId());
 
+        var searchResult = purchaseContextSearchManager.findAllReservationsFor(event, 0, reservationId.substring(0, 8).toUpperCase(Locale.ROOT), null);
+        assertEquals(1, searchResult.getRight());
+        assertEquals(reservationId, searchResult.getLeft().get(0).getId());
+        assertEquals(0, purchaseContextSearchManager.findAllReservationsFor(event, 0, "this-does-not-exist", null).getRight());
+
         List<Ticket> pendingTickets = ticketRepository.findPendingTicketsInCategories(List.of(bounded.getId(), unbounded.getId()));
         assertEquals(19, pendingTickets.size());
         pendingTickets.forEach(t -> assertEquals(1000, t.getFinalPriceCts()));
@@ -375,6 +383,48 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
 
     }
 
+    @Test
+    public void testPromoCodeUsageCounters() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getKey();
+        TicketCategory unbounded = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        eventManager.addPromoCode("LIMITEDCODE", event.getId(), null, event.getBegin(), event.getEnd(), 10, PromoCodeDiscount.DiscountType.PERCENTAGE, null, 3, "description", "email@reference.ch", PromoCodeDiscount.CodeType.DISCOUNT, null);
+
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(2);
+        tr.setTicketCategoryId(unbounded.getId());
+        TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+        String reservationId = ticketReservationManager.createTicketReservation(event, List.of(mod), Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.of("LIMITEDCODE"), Locale.ENGLISH, false, null);
+
+        Pair<TotalPrice, Optional<PromoCodeDiscount>> priceAndDiscount = ticketReservationManager.totalReservationCostWithVAT(reservationId);
+        int promoCodeId = priceAndDiscount.getRight().orElseThrow().getId();
+        // pending reservations are not counted
+        assertEquals(0, promoCodeDiscountRepository.countUsedPromoCode(promoCodeId, null, null));
+
+        TotalPrice totalPrice = priceAndDiscount.getLeft();
+        PaymentSpecification specification = new PaymentSpecification(reservationId, null, totalPrice.getPriceWithVAT(),
+            event, "email@example.com", new CustomerName("full name", "full", "name", event.mustUseFirstAndLastName()),
+            "billing address", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        assertTrue(ticketReservationManager.performPayment(specification, totalPrice, PaymentProxy.OFFLINE, PaymentMethod.BANK_TRANSFER, null).isSuccessful());
+        assertEquals(2, promoCodeDiscountRepository.countConfirmedPromoCode(promoCodeId, null, null));
+        assertEquals(2, promoCodeDiscountRepository.countConfirmedPromoCode(promoCodeId, Set.of(unbounded.getId()), "X"));
+
+        // only one usage left
+        try {
+            ticketReservationManager.createTicketReservation(event, List.of(mod), Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.of("LIMITEDCODE"), Locale.ENGLISH, false, null);
+            fail("must not enter here");
+        } catch (TicketReservationManager.TooManyTicketsForDiscountCodeException e) {
+        }
+
+        // releasing the reservation frees the usages
+        ticketReservationManager.deleteOfflinePayment(event, reservationId, false, false, null);
+        assertEquals(0, promoCodeDiscountRepository.countUsedPromoCode(promoCodeId, null, null));
+    }
+
     @Test
     public void testAdditionalServiceWithDiscount() {
         List<TicketCategoryModification> categories = Collections.singletonList(
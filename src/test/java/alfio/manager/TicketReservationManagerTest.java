@@ -123,6 +123,7 @@ class TicketReservationManagerTest {
     private TicketReservation ticketReservation;
     private Organization organization;
     private BillingDocumentRepository billingDocumentRepository;
+    private InvoiceSequencesRepository invoiceSequencesRepository;
     private NamedParameterJdbcTemplate jdbcTemplate;
     private Json json;
     private UserRepository userRepository;
@@ -159,7 +160,7 @@ class TicketReservationManagerTest {
         AdditionalServiceRepository additionalServiceRepository = mock(AdditionalServiceRepository.class);
         AdditionalServiceTextRepository additionalServiceTextRepository = mock(AdditionalServiceTextRepository.class);
         AdditionalServiceItemRepository additionalServiceItemRepository = mock(AdditionalServiceItemRepository.class);
-        InvoiceSequencesRepository invoiceSequencesRepository = mock(InvoiceSequencesRepository.class);
+        invoiceSequencesRepository = mock(InvoiceSequencesRepository.class);
         auditingRepository = mock(AuditingRepository.class);
         event = mock(Event.class);
         specialPrice = mock(SpecialPrice.class);
@@ -790,6 +791,25 @@ class TicketReservationManagerTest {
         verify(notificationManager, never()).sendTicketByEmail(any(), any(), any(), any(), any(), any(), any());
     }
 
+    @Test
+    void invoiceNumberIsAllocatedAfterTicketsHaveBeenAcquired() {
+        when(ticketReservationRepository.findOptionalStatusAndValidationById(eq(RESERVATION_ID))).thenReturn(Optional.of(new TicketReservationStatusAndValidation(PENDING, true)));
+        when(configurationManager.getFor(eq(SEND_TICKETS_AUTOMATICALLY), any())).thenReturn(
+            new MaybeConfiguration(SEND_TICKETS_AUTOMATICALLY)
+        );
+        when(configurationManager.getFor(eq(BANKING_KEY), any())).thenReturn(BANKING_INFO);
+        when(configurationManager.getFor(eq(INVOICE_NUMBER_PATTERN), any())).thenReturn(new MaybeConfiguration(INVOICE_NUMBER_PATTERN));
+        when(configurationManager.hasAllConfigurationsForInvoice(eq(event))).thenReturn(true);
+        when(invoiceSequencesRepository.lockReservationForUpdate(eq(ORGANIZATION_ID))).thenReturn(42);
+        mockBillingDocument();
+        testPaidReservation(true, true);
+        var inOrder = inOrder(ticketRepository, invoiceSequencesRepository, ticketReservationRepository);
+        inOrder.verify(ticketRepository).updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.ACQUIRED.toString()));
+        inOrder.verify(invoiceSequencesRepository).lockReservationForUpdate(eq(ORGANIZATION_ID));
+        inOrder.verify(invoiceSequencesRepository).incrementSequenceFor(eq(ORGANIZATION_ID));
+        inOrder.verify(ticketReservationRepository).setInvoiceNumber(eq(RESERVATION_ID), eq("42"));
+    }
+
     @Test
     void confirmAndLockTickets() {
         when(ticketReservationRepository.findOptionalStatusAndValidationById(eq(RESERVATION_ID))).thenReturn(Optional.of(new TicketReservationStatusAndValidation(PENDING, true)));
@@ -39,6 +39,7 @@ import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.*;
@@ -332,7 +333,7 @@ public class TicketReservationManagerUnitTest {
         AdditionalServiceText text = mock(AdditionalServiceText.class);
         when(text.getId()).thenReturn(1);
         when(text.getLocale()).thenReturn("en");
-        when(additionalServiceTextRepository.findBestMatchByLocaleAndType(anyInt(), eq("en"), eq(AdditionalServiceText.TextType.TITLE))).thenReturn(text);
+        when(additionalServiceTextRepository.findBestMatchesByLocaleAndType(anyCollection(), eq("en"), eq(AdditionalServiceText.TextType.TITLE))).thenReturn(Map.of(1, text));
     }
 
     @Test
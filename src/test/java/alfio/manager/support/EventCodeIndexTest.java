@@ -0,0 +1,83 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.model.EventAndOrganizationId;
+import alfio.repository.PromoCodeDiscountRepository;
+import alfio.repository.SpecialPriceRepository;
+import alfio.repository.TicketCategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EventCodeIndexTest {
+
+    private static final int EVENT_ID = 1;
+    private static final int ORGANIZATION_ID = 2;
+    private final EventAndOrganizationId event = new EventAndOrganizationId(EVENT_ID, ORGANIZATION_ID);
+    private SpecialPriceRepository specialPriceRepository;
+    private PromoCodeDiscountRepository promoCodeDiscountRepository;
+    private TicketCategoryRepository ticketCategoryRepository;
+    private EventCodeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        specialPriceRepository = mock(SpecialPriceRepository.class);
+        promoCodeDiscountRepository = mock(PromoCodeDiscountRepository.class);
+        ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        when(specialPriceRepository.findAllCodesForEvent(EVENT_ID)).thenReturn(List.of("SPECIAL"));
+        when(promoCodeDiscountRepository.findPublicCodesForEvent(EVENT_ID, ORGANIZATION_ID)).thenReturn(List.of("PROMOCODE"));
+        when(ticketCategoryRepository.findAllCodesForEvent(EVENT_ID)).thenReturn(List.of("CATEGORY"));
+        index = new EventCodeIndex(specialPriceRepository, promoCodeDiscountRepository, ticketCategoryRepository,
+            new MockEnvironment().withProperty("alfio.code-index.guess-warning-threshold", "1"));
+    }
+
+    @Test
+    void codesAreLoadedOnce() {
+        assertTrue(index.mightContain(event, "SPECIAL"));
+        assertTrue(index.mightContain(event, "PROMOCODE"));
+        assertTrue(index.mightContain(event, "CATEGORY"));
+        assertFalse(index.mightContain(event, "promocode"));
+        verify(specialPriceRepository, times(1)).findAllCodesForEvent(EVENT_ID);
+        verify(promoCodeDiscountRepository, times(1)).findPublicCodesForEvent(EVENT_ID, ORGANIZATION_ID);
+    }
+
+    @Test
+    void indexIsRebuiltAfterInvalidation() {
+        assertFalse(index.mightContain(event, "NEWCODE"));
+        when(promoCodeDiscountRepository.findPublicCodesForEvent(EVENT_ID, ORGANIZATION_ID)).thenReturn(List.of("PROMOCODE", "NEWCODE"));
+        assertFalse(index.mightContain(event, "NEWCODE"));
+        index.invalidate(EVENT_ID);
+        assertTrue(index.mightContain(event, "NEWCODE"));
+        verify(promoCodeDiscountRepository, times(2)).findPublicCodesForEvent(EVENT_ID, ORGANIZATION_ID);
+    }
+
+    @Test
+    void guessesAreCountedByAddress() {
+        index.recordGuess("127.0.0.1");
+        index.recordGuess("127.0.0.1");
+        index.recordGuess("10.0.0.1");
+        assertEquals(2, index.getGuessCount("127.0.0.1"));
+        assertEquals(1, index.getGuessCount("10.0.0.1"));
+        assertEquals(0, index.getGuessCount("10.0.0.2"));
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileBlobCacheTest {
+
+    private static final byte[] CONTENT = {1, 2, 3, 4};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void contentIsLoadedOnlyOnce() throws IOException {
+        var cache = new FileBlobCache(directory, 1024);
+        var loads = new AtomicInteger();
+        Consumer<OutputStream> loader = os -> {
+            loads.incrementAndGet();
+            write(os, CONTENT);
+        };
+        for(int i = 0; i < 3; i++) {
+            var out = new ByteArrayOutputStream();
+            cache.transferTo("abcd", loader, out);
+            assertArrayEquals(CONTENT, out.toByteArray());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadDoesNotLeaveFiles() throws IOException {
+        var cache = new FileBlobCache(directory, 1024);
+        assertThrows(IllegalStateException.class, () -> cache.transferTo("abcd", os -> { throw new IllegalStateException("not found"); }, new ByteArrayOutputStream()));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void invalidKeysAreRejected() {
+        var cache = new FileBlobCache(directory, 1024);
+        assertThrows(IllegalArgumentException.class, () -> cache.transferTo("../abcd", os -> write(os, CONTENT), new ByteArrayOutputStream()));
+    }
+
+    private static void write(OutputStream os, byte[] content) {
+        try {
+            os.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.model.poll.PollOptionStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollTallyPublisherTest {
+
+    @Test
+    void deltaContainsOnlyChangedOptions() {
+        var topic = new PollTallyPublisher.Topic(1, 1L, () -> 10);
+        var first = topic.computeDelta(List.of(new PollOptionStatistics(2, 1L), new PollOptionStatistics(3, 2L)), 10);
+        assertNotNull(first);
+        assertEquals(5, first.getTotalVotes());
+        assertEquals(2, first.getChangedOptions().size());
+
+        assertNull(topic.computeDelta(List.of(new PollOptionStatistics(2, 1L), new PollOptionStatistics(3, 2L)), 10));
+
+        var second = topic.computeDelta(List.of(new PollOptionStatistics(2, 1L), new PollOptionStatistics(4, 2L)), 10);
+        assertNotNull(second);
+        assertEquals(6, second.getTotalVotes());
+        assertEquals(1, second.getChangedOptions().size());
+        assertEquals(2L, second.getChangedOptions().get(0).getOptionId());
+        assertEquals(4, second.getChangedOptions().get(0).getVotes());
+    }
+
+    @Test
+    void removedOptionsAreReportedWithZeroVotes() {
+        var topic = new PollTallyPublisher.Topic(1, 1L, () -> 10);
+        topic.computeDelta(List.of(new PollOptionStatistics(2, 1L), new PollOptionStatistics(3, 2L)), 10);
+        var delta = topic.computeDelta(List.of(new PollOptionStatistics(3, 2L)), 10);
+        assertNotNull(delta);
+        assertEquals(1, delta.getChangedOptions().size());
+        assertEquals(1L, delta.getChangedOptions().get(0).getOptionId());
+        assertEquals(0, delta.getChangedOptions().get(0).getVotes());
+    }
+
+    @Test
+    void changeOfAllowedParticipantsIsPublished() {
+        var topic = new PollTallyPublisher.Topic(1, 1L, () -> 10);
+        topic.computeDelta(List.of(), 10);
+        var delta = topic.computeDelta(List.of(), 11);
+        assertNotNull(delta);
+        assertTrue(delta.getChangedOptions().isEmpty());
+        assertEquals(11, delta.getAllowedParticipants());
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.system.AdminJobExecutor.JobName;
+import alfio.manager.system.AdminJobExecutor.Partition;
+import alfio.model.system.AdminJobSchedule;
+import alfio.repository.system.AdminJobQueueRepository;
+import alfio.test.util.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AdminJobManagerTest {
+
+    private static final long TIMEOUT = 5000L;
+
+    private AdminJobQueueRepository adminJobQueueRepository;
+    private AdminJobExecutor executor;
+    private AdminJobManager manager;
+
+    @BeforeEach
+    void setUp() {
+        adminJobQueueRepository = mock(AdminJobQueueRepository.class);
+        executor = mock(AdminJobExecutor.class);
+        when(executor.getJobNames()).thenReturn(Set.of(JobName.CHECK_OFFLINE_PAYMENTS));
+        when(executor.process(any(), any(Partition.class), any())).thenCallRealMethod();
+        manager = new AdminJobManager(List.of(executor), adminJobQueueRepository, mock(PlatformTransactionManager.class),
+            TestUtil.clockProvider(), 4, 2, Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void processPartitionsAndSkipTheExecutedOnes() {
+        var schedule = schedule(Map.of("CHECK_OFFLINE_PAYMENTS/EVENT:1", "EXECUTED"));
+        when(adminJobQueueRepository.claimPendingSchedules(anyCollection(), any(), any())).thenReturn(List.of(schedule));
+        when(executor.partition(schedule)).thenReturn(List.of(Partition.event(1), Partition.event(2), Partition.event(3)));
+        when(executor.process(eq(schedule), any(Partition.class))).thenReturn("OK");
+
+        manager.processPendingRequests();
+
+        verify(adminJobQueueRepository, timeout(TIMEOUT)).updateSchedule(eq(1L), eq(AdminJobSchedule.Status.EXECUTED), any(), eq(Map.of()));
+        verify(executor, never()).process(schedule, Partition.event(1));
+        verify(executor).process(schedule, Partition.event(2));
+        verify(executor).process(schedule, Partition.event(3));
+        verify(adminJobQueueRepository).updatePartitionProgress(eq(1L), eq("CHECK_OFFLINE_PAYMENTS/EVENT:2"), eq("EXECUTED"), any());
+        verify(adminJobQueueRepository).updatePartitionProgress(eq(1L), eq("CHECK_OFFLINE_PAYMENTS/EVENT:3"), eq("EXECUTED"), any());
+        verify(executor).onComplete(schedule, List.of("OK", "OK"));
+    }
+
+    @Test
+    void retryFailedPartition() {
+        var schedule = schedule(null);
+        when(adminJobQueueRepository.claimPendingSchedules(anyCollection(), any(), any())).thenReturn(List.of(schedule));
+        when(executor.partition(schedule)).thenReturn(List.of(Partition.whole()));
+        var attempts = new AtomicInteger();
+        when(executor.process(eq(schedule), any(Partition.class))).thenAnswer(invocation -> {
+            if(attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("transient error");
+            }
+            return "OK";
+        });
+
+        manager.processPendingRequests();
+
+        verify(adminJobQueueRepository, timeout(TIMEOUT)).updateSchedule(eq(1L), eq(AdminJobSchedule.Status.EXECUTED), any(), eq(Map.of()));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void skipCompletedUnitsOnRetry() {
+        var schedule = schedule(Map.of("CHECK_OFFLINE_PAYMENTS/EVENT:1#first", "EXECUTED"));
+        when(adminJobQueueRepository.claimPendingSchedules(anyCollection(), any(), any())).thenReturn(List.of(schedule));
+        when(executor.partition(schedule)).thenReturn(List.of(Partition.event(1)));
+        var first = new AtomicInteger();
+        var second = new AtomicInteger();
+        var third = new AtomicInteger();
+        when(executor.process(eq(schedule), eq(Partition.event(1)), any())).thenAnswer(invocation -> {
+            AdminJobExecutor.Checkpoint checkpoint = invocation.getArgument(2);
+            checkpoint.runOnce("first", first::incrementAndGet);
+            checkpoint.runOnce("second", second::incrementAndGet);
+            checkpoint.runOnce("third", () -> {
+                if(third.incrementAndGet() == 1) {
+                    throw new IllegalStateException("transient error");
+                }
+                return null;
+            });
+            return "OK";
+        });
+
+        manager.processPendingRequests();
+
+        verify(adminJobQueueRepository, timeout(TIMEOUT)).updateSchedule(eq(1L), eq(AdminJobSchedule.Status.EXECUTED), any(), eq(Map.of()));
+        // completed before the restart
+        assertEquals(0, first.get());
+        // completed by the first attempt
+        assertEquals(1, second.get());
+        assertEquals(2, third.get());
+        verify(adminJobQueueRepository).updatePartitionProgress(eq(1L), eq("CHECK_OFFLINE_PAYMENTS/EVENT:1#second"), eq("EXECUTED"), any());
+        verify(adminJobQueueRepository).updatePartitionProgress(eq(1L), eq("CHECK_OFFLINE_PAYMENTS/EVENT:1#third"), eq("EXECUTED"), any());
+    }
+
+    @Test
+    void markJobAsFailedWhenAttemptsAreExhausted() {
+        var schedule = schedule(null);
+        when(adminJobQueueRepository.claimPendingSchedules(anyCollection(), any(), any())).thenReturn(List.of(schedule));
+        when(executor.partition(schedule)).thenReturn(List.of(Partition.event(1), Partition.event(2)));
+        when(executor.process(schedule, Partition.event(1))).thenThrow(new IllegalStateException("error"));
+        when(executor.process(schedule, Partition.event(2))).thenReturn("OK");
+
+        manager.processPendingRequests();
+
+        verify(adminJobQueueRepository, timeout(TIMEOUT)).updateSchedule(eq(1L), eq(AdminJobSchedule.Status.FAILED), any(), eq(Map.of()));
+        verify(executor, times(2)).process(schedule, Partition.event(1));
+        verify(adminJobQueueRepository).updatePartitionProgress(eq(1L), endsWith("/EVENT:1"), eq("FAILED"), any());
+        verify(executor, never()).onComplete(any(), any());
+    }
+
+    private static AdminJobSchedule schedule(Map<String, String> progress) {
+        return new AdminJobSchedule(1L, JobName.CHECK_OFFLINE_PAYMENTS.name(), ZonedDateTime.now(TestUtil.clockProvider().getClock()),
+            AdminJobSchedule.Status.RUNNING, null, Map.of(), progress);
+    }
+}
@@ -26,6 +26,7 @@ import alfio.model.*;
 import alfio.model.metadata.AlfioMetadata;
 import alfio.model.modification.*;
 import alfio.model.modification.support.LocationDescriptor;
+import alfio.model.system.DataMigrationStep;
 import alfio.model.system.EventMigration;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.Organization;
@@ -35,6 +36,7 @@ import alfio.repository.EventRepository;
 import alfio.repository.TicketCategoryRepository;
 import alfio.repository.TicketRepository;
 import alfio.repository.TicketReservationRepository;
+import alfio.repository.system.DataMigrationStepRepository;
 import alfio.repository.system.EventMigrationRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.BaseIntegrationTest;
@@ -45,6 +47,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 
@@ -85,6 +89,10 @@ public class DataMigratorIntegrationTest extends BaseIntegrationTest {
     private TicketCategoryRepository ticketCategoryRepository;
     @Autowired
     private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private DataMigrationStepRepository dataMigrationStepRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
     @Value("${alfio.version}")
     private String currentVersion;
 
@@ -302,4 +310,38 @@ public class DataMigratorIntegrationTest extends BaseIntegrationTest {
         dataMigrator.fixStuckTickets(event.getId());
         assertSame(Ticket.TicketStatus.RELEASED, ticketRepository.findByUUID(uuid).getStatus());
     }
+
+    @Test
+    public void testStepIsExecutedOncePerBuild() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Pair<Event, String> eventUsername = initEvent(categories);
+        Event event = eventUsername.getKey();
+        try {
+            TicketReservationModification trm = new TicketReservationModification();
+            trm.setAmount(1);
+            trm.setTicketCategoryId(eventManager.loadTicketCategories(event).get(0).getId());
+            TicketReservationWithOptionalCodeModification r = new TicketReservationWithOptionalCodeModification(trm, Optional.empty());
+            String reservationId = ticketReservationManager.createTicketReservation(event, Collections.singletonList(r), Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+            var params = new MapSqlParameterSource("id", reservationId);
+            jdbcTemplate.update("delete from data_migration_step where name = 'fill-reservations-language'", params);
+            jdbcTemplate.update("update tickets_reservation set user_language = null where id = :id", params);
+
+            dataMigrator.migrateEventsToCurrentVersion();
+            assertEquals("en", ticketReservationManager.findById(reservationId).orElseThrow().getUserLanguage());
+            var step = dataMigrationStepRepository.findByName("fill-reservations-language").orElseThrow();
+            assertEquals(DataMigrationStep.Status.COMPLETE, step.getStatus());
+            assertEquals(currentVersion, step.getCurrentVersion());
+
+            // the step has been already completed for the current build, so it must be skipped
+            jdbcTemplate.update("update tickets_reservation set user_language = null where id = :id", params);
+            dataMigrator.migrateEventsToCurrentVersion();
+            assertNull(ticketReservationManager.findById(reservationId).orElseThrow().getUserLanguage());
+        } finally {
+            eventManager.deleteEvent(event.getId(), eventUsername.getValue());
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.system.ScheduledJobRuntime.JobOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ScheduledJobRuntimeTest {
+
+    private DataSource dataSource;
+    private ScheduledJobRuntime runtime;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = mock(DataSource.class);
+        runtime = new ScheduledJobRuntime(dataSource, new MockEnvironment());
+    }
+
+    @AfterEach
+    void tearDown() {
+        runtime.shutdown();
+    }
+
+    @Test
+    void skipExecutionWhileRunning() throws Exception {
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var executions = new AtomicInteger();
+        Runnable job = () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            awaitQuietly(release);
+        };
+        runtime.run("job", JobOptions.allNodes(Duration.ZERO), job);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        runtime.run("job", JobOptions.allNodes(Duration.ZERO), job);
+        release.countDown();
+        var statistics = awaitRuns(1);
+        assertEquals(1, executions.get());
+        assertEquals(1, statistics.getSkippedOverlapping());
+    }
+
+    @Test
+    void recordProcessedItemsAndFailures() throws Exception {
+        runtime.runAndCount("job", JobOptions.allNodes(Duration.ZERO).withBacklog(() -> 42), () -> 3);
+        var statistics = awaitRuns(1);
+        assertEquals(3, statistics.getLastItemsProcessed());
+        assertEquals(42, statistics.getBacklog());
+
+        runtime.run("job", JobOptions.allNodes(Duration.ZERO), () -> { throw new IllegalStateException("error"); });
+        statistics = awaitRuns(2);
+        assertEquals(1, statistics.getFailures());
+        assertEquals("error", statistics.getLastError());
+    }
+
+    @Test
+    void leaderElectionIsDisabledByDefault() throws Exception {
+        runtime.run("job", JobOptions.singleNode(Duration.ZERO), () -> {});
+        awaitRuns(1);
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void exclusiveJobIsSkippedIfLockedByAnotherNode() throws Exception {
+        var connection = mock(Connection.class);
+        var statement = mock(PreparedStatement.class);
+        var resultSet = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(false);
+        var executions = new AtomicInteger();
+
+        runtime.runNow("job", JobOptions.exclusive(), executions::incrementAndGet);
+
+        assertEquals(0, executions.get());
+        assertEquals(1, runtime.getStatistics().get(0).getSkippedNotLeader());
+        verify(connection).prepareStatement("select pg_try_advisory_lock(?)");
+        verify(connection).close();
+    }
+
+    private ScheduledJobRuntime.JobStatistics awaitRuns(long runs) throws InterruptedException {
+        for(int i = 0; i < 500; i++) {
+            var statistics = runtime.getStatistics().get(0);
+            if(statistics.getRuns() >= runs && !statistics.isRunning()) {
+                return statistics;
+            }
+            Thread.sleep(10);
+        }
+        return fail("job has not been executed");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.user;
+
+import alfio.model.user.User;
+import alfio.repository.user.AuthorityRepository;
+import alfio.repository.user.UserRepository;
+import alfio.repository.user.join.UserOrganizationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ApiKeyCredentialCacheTest {
+
+    private static final String API_KEY = "b0a8a7d6-2bde-4d07-a54c-1d5dd3a4a3f0";
+    private UserRepository userRepository;
+    private AuthorityRepository authorityRepository;
+    private UserOrganizationRepository userOrganizationRepository;
+    private ApiKeyCredentialCache cache;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        authorityRepository = mock(AuthorityRepository.class);
+        userOrganizationRepository = mock(UserOrganizationRepository.class);
+        var user = new User(1, API_KEY, "", "", "", true, User.Type.API_KEY, null, "scanner");
+        when(userRepository.findByUsername(API_KEY)).thenReturn(Optional.of(user));
+        when(authorityRepository.findRoles(API_KEY)).thenReturn(List.of("ROLE_OPERATOR"));
+        when(userOrganizationRepository.findOrganizationsForUsers(List.of(1))).thenReturn(List.of(2, 3));
+        cache = new ApiKeyCredentialCache(userRepository, authorityRepository, userOrganizationRepository, new MockEnvironment());
+    }
+
+    @Test
+    void credentialIsLoadedOnce() {
+        var credential = cache.find(API_KEY).orElseThrow();
+        assertEquals(API_KEY, credential.getUser().getUsername());
+        assertEquals(List.of("ROLE_OPERATOR"), credential.getRoles());
+        assertEquals(Set.of(2, 3), credential.getOrganizationIds());
+        assertTrue(cache.find(API_KEY).isPresent());
+        verify(userRepository, times(1)).findByUsername(API_KEY);
+        verify(authorityRepository, times(1)).findRoles(API_KEY);
+    }
+
+    @Test
+    void unknownKeysAreNotCached() {
+        when(userRepository.findByUsername("unknown")).thenReturn(Optional.empty());
+        assertTrue(cache.find("unknown").isEmpty());
+        assertTrue(cache.find("unknown").isEmpty());
+        verify(userRepository, times(2)).findByUsername("unknown");
+    }
+
+    @Test
+    void credentialIsReloadedAfterInvalidation() {
+        cache.find(API_KEY);
+        cache.invalidate(1);
+        cache.find(API_KEY);
+        verify(userRepository, times(2)).findByUsername(API_KEY);
+        cache.invalidate(42);
+        cache.find(API_KEY);
+        verify(userRepository, times(2)).findByUsername(API_KEY);
+    }
+
+    @Test
+    void cacheCanBeDisabled() {
+        var environment = new MockEnvironment().withProperty("alfio.api-key.cache.expiration-seconds", "0");
+        var disabled = new ApiKeyCredentialCache(userRepository, authorityRepository, userOrganizationRepository, environment);
+        disabled.find(API_KEY);
+        disabled.find(API_KEY);
+        verify(userRepository, times(2)).findByUsername(API_KEY);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import alfio.test.util.PriceContainerImpl;
+import alfio.util.MonetaryUtil;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SummaryPriceAggregateTest {
+
+    private static final List<String> CURRENCIES = List.of("CHF", "EUR", "JPY");
+    private static final List<BigDecimal> VAT_PERCENTAGES = List.of(BigDecimal.ZERO, new BigDecimal("2.5"), new BigDecimal("7.70"), new BigDecimal("8.1"), BigDecimal.TEN, new BigDecimal("21.00"), new BigDecimal("22"));
+
+    @Test
+    void matchesPerItemEvaluation() {
+        var random = new Random(42L);
+        for (String currency : CURRENCIES) {
+            for (BigDecimal vat : VAT_PERCENTAGES) {
+                for (PriceContainer.VatStatus vatStatus : PriceContainer.VatStatus.values()) {
+                    for (int i = 0; i < 50; i++) {
+                        int pricePoints = 1 + random.nextInt(3);
+                        int[] prices = new int[pricePoints];
+                        for (int p = 0; p < pricePoints; p++) {
+                            prices[p] = random.nextInt(100_000);
+                        }
+                        List<PriceContainer> items = new ArrayList<>();
+                        int count = 1 + random.nextInt(30);
+                        for (int c = 0; c < count; c++) {
+                            items.add(new PriceContainerImpl(prices[random.nextInt(pricePoints)], currency, vat, vatStatus));
+                        }
+                        assertMatches(items, PriceContainer::getSrcPriceCts);
+                        assertMatches(items, item -> MonetaryUtil.unitToCents(item.getFinalPrice(), currency));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void singleItem() {
+        var aggregate = SummaryPriceAggregate.of(List.of(new PriceContainerImpl(1000, "CHF", new BigDecimal("21.00"), PriceContainer.VatStatus.INCLUDED)), PriceContainer::getSrcPriceCts);
+        assertEquals(1000, aggregate.getUnitPriceCts());
+        assertEquals(826, aggregate.getUnitPriceBeforeVatCts());
+        assertEquals(1, aggregate.getCount());
+        assertEquals(1000, aggregate.getSubTotalCts());
+        assertEquals(826, aggregate.getSubTotalBeforeVatCts());
+    }
+
+    @Test
+    void roundingIsAppliedOnTheSubTotal() {
+        var items = List.<PriceContainer>of(
+            new PriceContainerImpl(1000, "EUR", new BigDecimal("21.00"), PriceContainer.VatStatus.INCLUDED),
+            new PriceContainerImpl(1000, "EUR", new BigDecimal("21.00"), PriceContainer.VatStatus.INCLUDED),
+            new PriceContainerImpl(1000, "EUR", new BigDecimal("21.00"), PriceContainer.VatStatus.INCLUDED)
+        );
+        var aggregate = SummaryPriceAggregate.of(items, PriceContainer::getSrcPriceCts);
+        // 3 * 8.2644628099 = 24.7933884297, whereas 3 * 8.26 would be 24.78
+        assertEquals(2479, aggregate.getSubTotalBeforeVatCts());
+    }
+
+    @Test
+    void emptyListIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SummaryPriceAggregate.of(List.<PriceContainer>of(), PriceContainer::getSrcPriceCts));
+    }
+
+    private static void assertMatches(List<PriceContainer> items, ToIntFunction<PriceContainer> summaryPrice) {
+        var aggregate = SummaryPriceAggregate.of(items, summaryPrice);
+        var first = items.get(0);
+        var description = String.format("%d items, first: %d %s, vat %s %s", items.size(), first.getSrcPriceCts(), first.getCurrencyCode(), first.getVatPercentageOrZero(), first.getVatStatus());
+        assertEquals(summaryPrice.applyAsInt(first), aggregate.getUnitPriceCts(), description);
+        assertEquals(SummaryPriceContainer.getSummaryPriceBeforeVatCts(List.of(first)), aggregate.getUnitPriceBeforeVatCts(), description);
+        assertEquals(items.size(), aggregate.getCount(), description);
+        assertEquals(items.stream().mapToInt(summaryPrice).sum(), aggregate.getSubTotalCts(), description);
+        assertEquals(SummaryPriceContainer.getSummaryPriceBeforeVatCts(items), aggregate.getSubTotalBeforeVatCts(), description);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DeferredInsertTest {
+
+    private final DeferredInsert deferredInsert = new DeferredInsert("my_table", List.of("a", "b"));
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void writeImmediatelyWithoutTransaction() {
+        deferredInsert.add(jdbcTemplate, new MapSqlParameterSource("a", 1).addValue("b", "x"));
+        verify(jdbcTemplate).update(eq("insert into my_table(a, b) values (:a_0, :b_0)"), any(SqlParameterSource.class));
+    }
+
+    @Test
+    void writeAllRowsBeforeCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        deferredInsert.add(jdbcTemplate, new MapSqlParameterSource("a", 1).addValue("b", "x"));
+        deferredInsert.add(jdbcTemplate, new MapSqlParameterSource("a", 2).addValue("b", "y"));
+        verify(jdbcTemplate, never()).update(anyString(), any(SqlParameterSource.class));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.beforeCommit(false));
+
+        var captor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(jdbcTemplate).update(eq("insert into my_table(a, b) values (:a_0, :b_0), (:a_1, :b_1)"), captor.capture());
+        assertEquals(2, captor.getValue().getValue("a_1"));
+        assertEquals("y", captor.getValue().getValue("b_1"));
+    }
+
+    @Test
+    void flushWritesPendingRowsOnlyOnce() {
+        TransactionSynchronizationManager.initSynchronization();
+        deferredInsert.add(jdbcTemplate, new MapSqlParameterSource("a", 1).addValue("b", "x"));
+        deferredInsert.flush();
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.beforeCommit(false));
+        verify(jdbcTemplate, times(1)).update(anyString(), any(SqlParameterSource.class));
+    }
+
+    @Test
+    void splitLargeBatches() {
+        TransactionSynchronizationManager.initSynchronization();
+        for(int i = 0; i < DeferredInsert.MAX_ROWS_PER_STATEMENT + 1; i++) {
+            deferredInsert.add(jdbcTemplate, new MapSqlParameterSource("a", i).addValue("b", "x"));
+        }
+        deferredInsert.flush();
+        verify(jdbcTemplate, times(2)).update(anyString(), any(SqlParameterSource.class));
+    }
+}
@@ -49,6 +49,16 @@ class PinGeneratorTest {
         assertEquals("4TM34T", PinGenerator.uuidToPin("ffffffff-ffff-4183-ba85-77a7a5f77829"));
     }
 
+    @Test
+    void pinToKey() {
+        assertEquals("0cea7af", PinGenerator.pinToKey("CEURQ3").orElseThrow());
+        assertEquals("0cea7af", PinGenerator.pinToKey("ceurq3").orElseThrow());
+        assertEquals("0cea7af", PinGenerator.pinToKey("ACEURQ3").orElseThrow());
+        // cannot be generated from a UUID
+        assertTrue(PinGenerator.pinToKey("CEURQ3A").isEmpty());
+        assertTrue(PinGenerator.pinToKey("CEURZ3").isEmpty());
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {
         "AAAAAA",